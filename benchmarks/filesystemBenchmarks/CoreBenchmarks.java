@@ -0,0 +1,257 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A class of JMH benchmarks for the core operations on trees of items, on trees of every
+ * shape, from small to large.
+ *
+ * Every operation but deleting a whole tree is measured as the mean time of an invocation,
+ * on a tree that is built once per trial; its invocations leave the tree as they found it.
+ * Deleting a whole tree can only be done once per tree, so it is measured as single shots,
+ * each on a freshly built tree.
+ *
+ * Run them with ./gradlew jmh -Pjmh="CoreBenchmarks", and pick operations, shapes and sizes
+ * with JMH options such as -p size=1000,10000. GrowthCheck runs them and reports operations
+ * whose time grows faster with the size of the tree than expected.
+ *
+ * @note    Every fork gets a heap of a few gigabytes, for trees of a million items.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 2.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CoreBenchmarks {
+
+    /**
+     * An enum class with the operations that are benchmarked on a tree that is built once,
+     * together with the largest exponent of the growth of their time with the size of the
+     * tree that is expected.
+     */
+    public enum Operation {
+
+        /**
+         * Make a file in the directory to work in with the constructor, and delete it again,
+         * so the tree keeps its size. Both copy the items of the directory.
+         */
+        ADD_ITEM(1) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                int[] counter = {0};
+                return () -> {
+                    File file = new File(tree.hot, "bench" + counter[0]++, 1, true, FileType.TEXT);
+                    file.delete();
+                    return file.getSize();
+                };
+            }
+        },
+
+        /**
+         * Look up a file in the directory to work in by its name.
+         */
+        GET_ITEM(0) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                String[] names = getNames(tree, false);
+                int[] counter = {0};
+                return () -> tree.hot.getItem(names[counter[0]++ % names.length]).getName().length();
+            }
+        },
+
+        /**
+         * Check whether the directory to work in has an item with a name, regardless of case.
+         */
+        CONTAINS_DISK_ITEM_WITH_NAME(0) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                String[] names = getNames(tree, true);
+                int[] counter = {0};
+                return () -> tree.hot.containsDiskItemWithName(names[counter[0]++ % names.length]) ? 1 : 0;
+            }
+        },
+
+        /**
+         * Move a file from the directory to work in to another directory, or back.
+         */
+        MOVE(1) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                int[] counter = {0};
+                return () -> {
+                    int count = counter[0]++;
+                    File file = tree.files[(count / 2) % tree.files.length];
+                    file.move((count % 2 == 0) ? tree.other : tree.hot);
+                    return count;
+                };
+            }
+        },
+
+        /**
+         * Ask the root for the disk usage of the whole tree.
+         */
+        GET_TOTAL_DISK_USAGE(0) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                return tree.root::getTotalDiskUsage;
+            }
+        },
+
+        /**
+         * Ask a file in the directory to work in for its absolute path.
+         */
+        GET_ABSOLUTE_PATH(0) {
+            @Override
+            LongSupplier prepare(TreeShape.Tree tree) {
+                int[] counter = {0};
+                return () -> tree.files[counter[0]++ % tree.files.length].getAbsolutePath().length();
+            }
+        };
+
+        /**
+         * Initialize a new operation with the given expected exponent.
+         */
+        Operation(double expectedExponent) {
+            this.expectedExponent = expectedExponent;
+        }
+
+        /**
+         * The largest exponent of the growth of the time of this operation with the size
+         * of the tree that is expected.
+         */
+        final double expectedExponent;
+
+        /**
+         * Return a single invocation of this operation on the given tree, after preparing
+         * what it needs. Invocations leave the tree as they found it, and return a value
+         * that depends on what they did, so it can't be optimized away.
+         */
+        abstract LongSupplier prepare(TreeShape.Tree tree);
+
+        /**
+         * Return the names of the files in the directory to work in, in upper case if asked.
+         */
+        static String[] getNames(TreeShape.Tree tree, boolean inUpperCase) {
+            String[] names = new String[tree.files.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = inUpperCase ? tree.files[i].getName().toUpperCase(Locale.ROOT) : tree.files[i].getName();
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Variable registering the largest exponent of the growth of the time of deleting
+     * a whole tree with the size of the tree that is expected.
+     */
+    static final double deleteRecursiveExponent = 1;
+
+    /**
+     * A class of states with a tree of a given shape and size, that is built once per
+     * trial, and an operation that is prepared on it.
+     */
+    @State(Scope.Thread)
+    public static class OperationState {
+
+        /**
+         * The operation to benchmark.
+         */
+        @Param
+        public Operation operation;
+
+        /**
+         * The shape of the tree.
+         */
+        @Param
+        public TreeShape shape;
+
+        /**
+         * The number of items of the tree.
+         */
+        @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+        public int size;
+
+        /**
+         * The prepared invocation of the operation.
+         */
+        LongSupplier invocation;
+
+        /**
+         * Build the tree and prepare the operation on it.
+         *
+         * @throws  IllegalStateException
+         *          The directory to work in of the tree has no files.
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IllegalStateException {
+            TreeShape.Tree tree = shape.build(size);
+            if (tree.files.length == 0) {
+                throw new IllegalStateException("The tree is too small to have files to work with.");
+            }
+            invocation = operation.prepare(tree);
+        }
+    }
+
+    /**
+     * A class of states with a tree of a given shape and size, that is built anew
+     * for every invocation.
+     */
+    @State(Scope.Thread)
+    public static class TreeState {
+
+        /**
+         * The shape of the tree.
+         */
+        @Param
+        public TreeShape shape;
+
+        /**
+         * The number of items of the tree.
+         */
+        @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+        public int size;
+
+        /**
+         * The tree that is built for the next invocation.
+         */
+        TreeShape.Tree tree;
+
+        /**
+         * Build a new tree.
+         */
+        @Setup(Level.Invocation)
+        public void setUp() {
+            tree = shape.build(size);
+        }
+    }
+
+    /**
+     * Invoke the operation of the given state once.
+     */
+    @Benchmark
+    public long operation(OperationState state) {
+        return state.invocation.getAsLong();
+    }
+
+    /**
+     * Delete the whole tree of the given state.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void deleteRecursive(TreeState state) {
+        state.tree.root.deleteRecursive();
+    }
+
+}
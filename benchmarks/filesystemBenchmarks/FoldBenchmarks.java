@@ -0,0 +1,175 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class of JMH benchmarks for folds over a large tree, on fork/join pools with
+ * different numbers of workers.
+ *
+ * A fold that is started by a worker of a fork/join pool forks its tasks to that pool,
+ * so every benchmark starts its fold in a pool of its own with the given number of
+ * workers. With a single worker, the whole tree is folded by one thread; with more
+ * workers, the time of a fold should go down about linearly, up to the number of cores.
+ *
+ * The main method runs the benchmarks for pools of 1, 2, 4, ... workers, up to the number
+ * of cores, and reports the time of a fold for every number of workers, together with the
+ * speed-up over a single worker. Run it with ./gradlew foldBenchmarks, or run the benchmarks
+ * themselves with ./gradlew jmh -Pjmh="FoldBenchmarks -p workers=1,4".
+ *
+ * Usage: FoldBenchmarks [-workers 1,2,4,...] [-size number] [-shape NAME] [-time milliseconds]
+ *
+ * @note    Every fork gets a heap of a few gigabytes, for trees of a million items.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FoldBenchmarks {
+
+    /**
+     * A class of states with a tree that is built once per trial, and a fork/join pool
+     * to fold over it.
+     */
+    @State(Scope.Benchmark)
+    public static class PoolState {
+
+        /**
+         * The number of workers of the pool.
+         */
+        @Param({"1", "2", "4", "8", "16", "32"})
+        public int workers;
+
+        /**
+         * The shape of the tree.
+         */
+        @Param("BALANCED")
+        public TreeShape shape;
+
+        /**
+         * The number of items of the tree.
+         */
+        @Param("1000000")
+        public int size;
+
+        /**
+         * The root of the tree.
+         */
+        Directory root;
+
+        /**
+         * The pool to fold over the tree in.
+         */
+        ForkJoinPool pool;
+
+        /**
+         * Build the tree and start the pool.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            root = shape.build(size).root;
+            pool = new ForkJoinPool(workers);
+        }
+
+        /**
+         * Shut the pool down.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Recount the disk usage of the whole tree of the given state in its pool.
+     */
+    @Benchmark
+    public long computeTotalDiskUsage(PoolState state) {
+        return state.pool.invoke(ForkJoinTask.adapt(state.root::computeTotalDiskUsage));
+    }
+
+    /**
+     * Fold the lengths of the names of all items in the tree of the given state in its pool.
+     */
+    @Benchmark
+    public long fold(PoolState state) {
+        return state.pool.invoke(ForkJoinTask.adapt(() -> state.root.fold(0L,
+                (length, item) -> length + item.getName().length(), Long::sum)));
+    }
+
+    /**
+     * Run the benchmarks for every number of workers given in the arguments, and report
+     * the time of a fold and the speed-up over the first number.
+     */
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(FoldBenchmarks.class.getName() + "\\.");
+        String[] workers = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String[] values = args[i + 1].split(",");
+            switch (args[i]) {
+                case "-workers":
+                    workers = values;
+                    break;
+                case "-size":
+                    options.param("size", values);
+                    break;
+                case "-shape":
+                    options.param("shape", values);
+                    break;
+                case "-time":
+                    TimeValue time = TimeValue.milliseconds(Long.parseLong(values[0]));
+                    options.warmupTime(time).measurementTime(time);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        if (workers == null) {
+            // 1, 2, 4, ... up to the number of cores, and the number of cores itself
+            int nbOfCores = Runtime.getRuntime().availableProcessors();
+            List<String> numbers = new ArrayList<>();
+            for (int n = 1; n < nbOfCores; n *= 2) numbers.add(Integer.toString(n));
+            numbers.add(Integer.toString(nbOfCores));
+            workers = numbers.toArray(new String[0]);
+        }
+        options.param("workers", workers);
+        // the mean time of a fold for every benchmark and number of workers
+        Map<String, TreeMap<Integer, Double>> times = new TreeMap<>();
+        for (RunResult result : new Runner(options.build()).run()) {
+            String benchmark = result.getParams().getBenchmark();
+            times.computeIfAbsent(benchmark.substring(benchmark.lastIndexOf('.') + 1), key -> new TreeMap<>())
+                    .put(Integer.parseInt(result.getParams().getParam("workers")),
+                            result.getPrimaryResult().getScore());
+        }
+        System.out.printf("%n%-22s %8s %10s %9s%n", "benchmark", "workers", "ms/fold", "speed-up");
+        for (Map.Entry<String, TreeMap<Integer, Double>> benchmark : times.entrySet()) {
+            double timeOfFirst = benchmark.getValue().firstEntry().getValue();
+            for (Map.Entry<Integer, Double> time : benchmark.getValue().entrySet()) {
+                System.out.printf("%-22s %8d %10.2f %9.2f%n", benchmark.getKey(), time.getKey(),
+                        time.getValue(), timeOfFirst / time.getValue());
+            }
+        }
+    }
+
+}
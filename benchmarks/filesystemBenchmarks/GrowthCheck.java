@@ -0,0 +1,146 @@
+package filesystemBenchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class that runs the core benchmarks and checks how their times grow with the size
+ * of the tree.
+ *
+ * For every operation and shape, the growth of the time per operation with the size of the
+ * tree is estimated as the exponent of a power law, fitted on the sizes from 1000 items on.
+ * An operation whose exponent exceeds the one that is expected of it is reported as a
+ * regression, and the check then ends with exit status 1, so it can guard a build.
+ *
+ * Usage: GrowthCheck [-sizes 10,100,...] [-time milliseconds] [-operations NAME,...]
+ *                    [-shapes NAME,...]
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class GrowthCheck {
+
+    /**
+     * This class only has static methods.
+     */
+    private GrowthCheck() {
+    }
+
+    /**
+     * Variable registering the name under which deleting a whole tree is reported.
+     */
+    private static final String deleteRecursive = "DELETE_RECURSIVE";
+
+    /**
+     * Variable registering the smallest size of tree that counts for the growth of times.
+     */
+    private static final int smallestFittedSize = 1000;
+
+    /**
+     * Variable registering how much the exponent of an operation may exceed its expected
+     * exponent before it is reported. This allows for logarithmic factors, such as those of
+     * binary searches, and for caches that stop fitting as trees grow, which together make
+     * lookups in a wide directory of a million items look like growing with exponent 0.35;
+     * a regression to a linear time still stands out.
+     */
+    private static final double tolerance = 0.5;
+
+    /**
+     * Run the core benchmarks with the given arguments, and exit with status 1 if some
+     * operation grows faster than expected.
+     */
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(CoreBenchmarks.class.getName() + "\\.");
+        boolean includesDeleteRecursive = true;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String[] values = args[i + 1].split(",");
+            switch (args[i]) {
+                case "-sizes":
+                    options.param("size", values);
+                    break;
+                case "-time":
+                    TimeValue time = TimeValue.milliseconds(Long.parseLong(values[0]));
+                    options.warmupTime(time).measurementTime(time);
+                    break;
+                case "-operations":
+                    includesDeleteRecursive = Arrays.asList(values).contains(deleteRecursive);
+                    String[] operations = Arrays.stream(values)
+                            .filter(value -> !value.equals(deleteRecursive)).toArray(String[]::new);
+                    if (operations.length > 0) {
+                        options.param("operation", operations);
+                    } else {
+                        options.exclude(CoreBenchmarks.class.getName() + "\\.operation$");
+                    }
+                    break;
+                case "-shapes":
+                    options.param("shape", values);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        if (!includesDeleteRecursive) options.exclude(CoreBenchmarks.class.getName() + "\\.deleteRecursive$");
+        Collection<RunResult> results = new Runner(options.build()).run();
+        // the mean time for every operation, shape and size, in the order of their names and sizes
+        Map<String, Map<String, TreeMap<Integer, Double>>> times = new TreeMap<>();
+        for (RunResult result : results) {
+            String operation = result.getParams().getBenchmark().endsWith(".deleteRecursive")
+                    ? deleteRecursive : result.getParams().getParam("operation");
+            times.computeIfAbsent(operation, key -> new TreeMap<>())
+                    .computeIfAbsent(result.getParams().getParam("shape"), key -> new TreeMap<>())
+                    .put(Integer.parseInt(result.getParams().getParam("size")),
+                            result.getPrimaryResult().getScore());
+        }
+        boolean hasRegressions = false;
+        System.out.printf("%n%-30s %-9s %9s %9s%n", "operation", "shape", "exponent", "expected");
+        for (Map.Entry<String, Map<String, TreeMap<Integer, Double>>> operation : times.entrySet()) {
+            double expectedExponent = operation.getKey().equals(deleteRecursive)
+                    ? CoreBenchmarks.deleteRecursiveExponent
+                    : CoreBenchmarks.Operation.valueOf(operation.getKey()).expectedExponent;
+            for (Map.Entry<String, TreeMap<Integer, Double>> shape : operation.getValue().entrySet()) {
+                double exponent = fitExponent(shape.getValue());
+                if (Double.isNaN(exponent)) continue;
+                boolean isRegression = exponent > expectedExponent + tolerance;
+                hasRegressions |= isRegression;
+                System.out.printf("%-30s %-9s %9.2f %9.2f%s%n", operation.getKey(), shape.getKey(), exponent,
+                        expectedExponent, isRegression ? "  REGRESSION" : "");
+            }
+        }
+        System.exit(hasRegressions ? 1 : 0);
+    }
+
+    /**
+     * Return the exponent of the power law that fits the given times for their sizes best,
+     * in the least squares sense on a log-log scale, counting only the sizes from the smallest
+     * fitted size on, or NaN if fewer than two sizes count.
+     */
+    static double fitExponent(Map<Integer, Double> times) {
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        int n = 0;
+        for (Map.Entry<Integer, Double> time : times.entrySet()) {
+            if (time.getKey() < smallestFittedSize || !(time.getValue() > 0)) continue;
+            double x = Math.log10(time.getKey());
+            double y = Math.log10(time.getValue());
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+            n++;
+        }
+        if (n < 2) return Double.NaN;
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+
+}
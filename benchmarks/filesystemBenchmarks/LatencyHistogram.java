@@ -0,0 +1,93 @@
+package filesystemBenchmarks;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A class of histograms of latencies, that any number of threads can record into at once.
+ *
+ * Latencies are counted in buckets whose width grows with the latencies they hold: every
+ * power of two is split in the same number of buckets, so every latency is known up to a
+ * few percent, whatever its magnitude, in a fixed and small amount of memory.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class LatencyHistogram {
+
+    /**
+     * Variable registering the base 2 logarithm of the number of buckets per power of two.
+     */
+    private static final int subBucketBits = 5;
+
+    /**
+     * Variable registering the largest latency that is counted in a bucket of its own,
+     * in nanoseconds; larger latencies count as this one.
+     */
+    private static final long maximumLatency = (1L << 40) - 1;
+
+    /**
+     * Variable referencing the number of latencies in every bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(getBucket(maximumLatency) + 1);
+
+    /**
+     * Return the bucket of the given latency.
+     */
+    private static int getBucket(long latency) {
+        if (latency < (1L << subBucketBits)) return (int) latency;
+        int exponent = 63 - Long.numberOfLeadingZeros(latency);
+        int subBucket = (int) (latency >>> (exponent - subBucketBits)) & ((1 << subBucketBits) - 1);
+        return ((exponent - subBucketBits + 1) << subBucketBits) + subBucket;
+    }
+
+    /**
+     * Return the smallest latency in the given bucket.
+     */
+    private static long getLowestLatency(int bucket) {
+        if (bucket < (1 << subBucketBits)) return bucket;
+        int exponent = (bucket >>> subBucketBits) + subBucketBits - 1;
+        long subBucket = bucket & ((1 << subBucketBits) - 1);
+        return (1L << exponent) + (subBucket << (exponent - subBucketBits));
+    }
+
+    /**
+     * Count the given latency in this histogram.
+     *
+     * @param   latency
+     *          The latency to count, in nanoseconds.
+     */
+    void record(long latency) {
+        counts.incrementAndGet(getBucket(Math.max(0, Math.min(latency, maximumLatency))));
+    }
+
+    /**
+     * Return the number of latencies counted in this histogram.
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Return the latency below which the given fraction of the latencies in this histogram
+     * lie, in nanoseconds, as the middle of its bucket, or 0 if this histogram is empty.
+     *
+     * @param   fraction
+     *          The fraction of the latencies, between 0 and 1.
+     */
+    long getPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * getCount());
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+            if (count >= Math.max(1, target)) {
+                return (getLowestLatency(i) + getLowestLatency(i + 1) - 1) / 2;
+            }
+        }
+        return 0;
+    }
+
+}
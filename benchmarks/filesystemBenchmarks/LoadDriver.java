@@ -0,0 +1,480 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * A class of load drivers, that drive a seeded mix of operations against a generated tree
+ * of items at a given rate, and report the throughput and the latencies per operation.
+ *
+ * The driver is open loop: operations arrive at random moments, with exponentially
+ * distributed times in between, whether or not the operations before them are done. Every
+ * operation is handed to a pool of worker threads the moment it arrives, and its latency is
+ * measured from that moment on, so the time it spends waiting for a worker counts, just as a
+ * request waiting for a busy server would. Operations that arrive during the warm-up are run,
+ * but not measured.
+ *
+ * Every operation that works on a file first claims it from a table of the files in the tree,
+ * so no two operations work on the same file at once, and gives it back when done. The kind of
+ * every operation and the random numbers it uses are drawn from the seed, so the same seed
+ * gives the same operations, although the order in which the workers perform them may differ.
+ *
+ * Usage: LoadDriver [-seed n] [-rate operations/s] [-duration s] [-warmup s] [-threads n]
+ *                   [-mix LOOKUP:50,CREATE:15,...] [-items n] [-depth n]
+ *                   [-fanout median,spread] [-directories fraction] [-names shortest,longest]
+ *                   [-types TEXT:5,JAVA:3,...] [-sizes median,spread]
+ *
+ * @note    An operation that can't be performed, for instance because the file it would
+ *          move has a name that is taken in its new directory, is counted as a failure
+ *          of its kind, and its latency is not recorded.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class LoadDriver {
+
+    /**
+     * An enum class with the operations the driver performs, together with their default weight.
+     */
+    enum Operation {
+
+        /**
+         * Make a new file in a directory.
+         */
+        CREATE(15) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                Directory directory = driver.directories[random.nextInt(driver.directories.length)];
+                File file = new File(directory, "n" + driver.nameIndex.incrementAndGet(),
+                        random.nextInt(1 << 16), true, FileType.values()[random.nextInt(FileType.values().length)]);
+                driver.putFile(file, random);
+                return true;
+            }
+        },
+
+        /**
+         * Look up a file in its directory by its name.
+         */
+        LOOKUP(50) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                int slot = driver.claimFile(random);
+                if (slot < 0) return false;
+                File file = driver.files.get(slot);
+                boolean isFound = file.getParentDirectory().getItem(file.getName()) == file;
+                driver.releaseFile(slot);
+                return isFound;
+            }
+        },
+
+        /**
+         * Move a file to another directory.
+         */
+        MOVE(10) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                int slot = driver.claimFile(random);
+                if (slot < 0) return false;
+                try {
+                    driver.files.get(slot).move(driver.directories[random.nextInt(driver.directories.length)]);
+                } finally {
+                    driver.releaseFile(slot);
+                }
+                return true;
+            }
+        },
+
+        /**
+         * Give a file a new name.
+         */
+        RENAME(10) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                int slot = driver.claimFile(random);
+                if (slot < 0) return false;
+                try {
+                    driver.files.get(slot).changeName("r" + driver.nameIndex.incrementAndGet());
+                } finally {
+                    driver.releaseFile(slot);
+                }
+                return true;
+            }
+        },
+
+        /**
+         * Enlarge or shorten a file.
+         */
+        RESIZE(10) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                int slot = driver.claimFile(random);
+                if (slot < 0) return false;
+                try {
+                    File file = driver.files.get(slot);
+                    long delta = 1 + random.nextInt(1 << 12);
+                    if (random.nextBoolean() && file.getSize() > delta) {
+                        file.shorten(delta);
+                    } else if (File.isValidSize(file.getSize() + delta)) {
+                        file.enlarge(delta);
+                    }
+                } finally {
+                    driver.releaseFile(slot);
+                }
+                return true;
+            }
+        },
+
+        /**
+         * Delete a file.
+         */
+        DELETE(5) {
+            @Override
+            boolean perform(LoadDriver driver, Random random) {
+                int slot = driver.claimFile(random);
+                if (slot < 0) return false;
+                File file = driver.files.get(slot);
+                driver.removeFile(slot);
+                file.delete();
+                return true;
+            }
+        };
+
+        /**
+         * Initialize a new operation with the given default weight.
+         */
+        Operation(double defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        /**
+         * The weight of this operation in the default mix.
+         */
+        final double defaultWeight;
+
+        /**
+         * Perform this operation on the tree of the given driver, with the given random numbers.
+         *
+         * @return  True if and only if the operation could be performed.
+         */
+        abstract boolean perform(LoadDriver driver, Random random);
+    }
+
+    /**
+     * Initialize a new load driver for the given tree.
+     *
+     * @param   root
+     *          The root directory of the tree to drive the operations against.
+     * @param   spareSlots
+     *          The number of files that can be made beyond the files in the tree.
+     */
+    LoadDriver(Directory root, int spareSlots) {
+        List<Item> items = root.streamDepthFirst().collect(Collectors.toList());
+        this.directories = items.stream().filter(item -> item instanceof Directory).toArray(Directory[]::new);
+        List<Item> initialFiles = items.stream().filter(item -> item instanceof File).collect(Collectors.toList());
+        this.files = new AtomicReferenceArray<>(initialFiles.size() + spareSlots);
+        for (int i = 0; i < initialFiles.size(); i++) files.set(i, (File) initialFiles.get(i));
+        this.claimed = new AtomicIntegerArray(files.length());
+        this.nbOfFiles = new AtomicLong(initialFiles.size());
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            failures.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * Variable referencing the directories of the tree, which operations never move nor delete.
+     */
+    private final Directory[] directories;
+
+    /**
+     * Variable referencing the table of the files of the tree, in which claimed and free slots are null.
+     */
+    private final AtomicReferenceArray<File> files;
+
+    /**
+     * Variable registering the number of files in the table of files, claimed ones included.
+     */
+    private final AtomicLong nbOfFiles;
+
+    /**
+     * Variable referencing the index of the last name that was made up by an operation.
+     */
+    private final AtomicLong nameIndex = new AtomicLong();
+
+    /**
+     * Variable registering how many slots are tried to claim a file, or to put one,
+     * before giving up.
+     */
+    private static final int nbOfProbes = 64;
+
+    /**
+     * Variable registering, for every slot of the table of files, whether it is claimed.
+     */
+    private final AtomicIntegerArray claimed;
+
+    /**
+     * Claim a file from the table of files, picked at random.
+     *
+     * @return  The slot of the claimed file, or -1 if no file was found. The file stays in its
+     *          slot, but no other operation can claim it until its slot is released.
+     */
+    private int claimFile(Random random) {
+        for (int probe = 0; probe < nbOfProbes; probe++) {
+            int slot = random.nextInt(files.length());
+            if (claimed.compareAndSet(slot, 0, 1)) {
+                if (files.get(slot) != null) return slot;
+                claimed.set(slot, 0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Release the given claimed slot.
+     */
+    private void releaseFile(int slot) {
+        claimed.set(slot, 0);
+    }
+
+    /**
+     * Remove the file from the given claimed slot, and release the slot.
+     */
+    private void removeFile(int slot) {
+        files.set(slot, null);
+        nbOfFiles.decrementAndGet();
+        claimed.set(slot, 0);
+    }
+
+    /**
+     * Put the given file in a free slot picked at random, if one is found.
+     */
+    private void putFile(File file, Random random) {
+        for (int probe = 0; probe < nbOfProbes; probe++) {
+            int slot = random.nextInt(files.length());
+            if (claimed.compareAndSet(slot, 0, 1)) {
+                boolean isFree = files.get(slot) == null;
+                if (isFree) {
+                    files.set(slot, file);
+                    nbOfFiles.incrementAndGet();
+                }
+                claimed.set(slot, 0);
+                if (isFree) return;
+            }
+        }
+    }
+
+    /**
+     * Drive operations against the tree of this driver, and measure them.
+     *
+     * @param   weights
+     *          The relative weight of every operation in the mix.
+     * @param   rate
+     *          The mean number of operations that arrive per second.
+     * @param   warmUpNanos
+     *          The time during which operations are run, but not measured, in nanoseconds.
+     * @param   durationNanos
+     *          The time during which operations are measured, in nanoseconds.
+     * @param   nbOfThreads
+     *          The number of worker threads that perform the operations.
+     * @param   seed
+     *          The seed of the random numbers of the operations.
+     * @return  The time from the start of the measurements until the last measured
+     *          operation was done, in nanoseconds.
+     */
+    long drive(Map<Operation, Double> weights, double rate, long warmUpNanos, long durationNanos,
+               int nbOfThreads, long seed) throws InterruptedException {
+        Operation[] operations = weights.keySet().toArray(new Operation[0]);
+        double[] cumulativeWeights = new double[operations.length];
+        double totalWeight = 0;
+        for (int i = 0; i < operations.length; i++) {
+            totalWeight += weights.get(operations[i]);
+            cumulativeWeights[i] = totalWeight;
+        }
+        Random random = new Random(seed);
+        ExecutorService workers = Executors.newFixedThreadPool(nbOfThreads);
+        long start = System.nanoTime();
+        long measuredFrom = start + warmUpNanos;
+        long end = measuredFrom + durationNanos;
+        AtomicLong lastDone = new AtomicLong(measuredFrom);
+        long arrival = start;
+        while (true) {
+            arrival += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+            if (arrival >= end) break;
+            double target = random.nextDouble() * totalWeight;
+            int index = 0;
+            while (index < operations.length - 1 && cumulativeWeights[index] <= target) index++;
+            Operation operation = operations[index];
+            long operationSeed = random.nextLong();
+            long wait;
+            while ((wait = arrival - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            if (arrival >= measuredFrom) largestLag = Math.max(largestLag, -wait);
+            long arrivalTime = arrival;
+            workers.execute(() -> {
+                boolean isPerformed;
+                try {
+                    isPerformed = operation.perform(this, new Random(operationSeed));
+                } catch (RuntimeException exception) {
+                    isPerformed = false;
+                }
+                long done = System.nanoTime();
+                if (arrivalTime < measuredFrom) return;
+                if (isPerformed) {
+                    latencies.get(operation).record(done - arrivalTime);
+                } else {
+                    failures.get(operation).incrementAndGet();
+                }
+                lastDone.accumulateAndGet(done, Math::max);
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return lastDone.get() - measuredFrom;
+    }
+
+    /**
+     * Variable referencing the latencies of the measured operations that were performed, per operation.
+     */
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+
+    /**
+     * Variable referencing the number of measured operations that could not be performed, per operation.
+     */
+    private final Map<Operation, AtomicLong> failures = new EnumMap<>(Operation.class);
+
+    /**
+     * Variable registering the largest time by which an operation was handed to the workers
+     * later than it arrived, in nanoseconds.
+     */
+    private long largestLag = 0;
+
+    /**
+     * Generate a tree and drive operations against it with the given arguments,
+     * and report the throughput and the latencies per operation.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long seed = 42;
+        double rate = 10_000, warmUp = 2, duration = 10;
+        int nbOfThreads = Runtime.getRuntime().availableProcessors();
+        Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) weights.put(operation, operation.defaultWeight);
+        String[][] generatorOptions = new String[args.length / 2][];
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String[] values = args[i + 1].split(",");
+            switch (args[i]) {
+                case "-seed":
+                    seed = Long.parseLong(values[0]);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(values[0]);
+                    break;
+                case "-duration":
+                    duration = Double.parseDouble(values[0]);
+                    break;
+                case "-warmup":
+                    warmUp = Double.parseDouble(values[0]);
+                    break;
+                case "-threads":
+                    nbOfThreads = Integer.parseInt(values[0]);
+                    break;
+                case "-mix":
+                    weights.clear();
+                    for (String value : values) {
+                        String[] pair = value.split(":");
+                        weights.put(Operation.valueOf(pair[0]), Double.parseDouble(pair[1]));
+                    }
+                    break;
+                default:
+                    // the other options are settings of the generator, applied once the seed is known
+                    generatorOptions[i / 2] = new String[] {args[i], args[i + 1]};
+            }
+        }
+        TreeGenerator generator = new TreeGenerator(seed);
+        for (String[] option : generatorOptions) {
+            if (option != null) configure(generator, option[0], option[1].split(","));
+        }
+        long generationStart = System.nanoTime();
+        Directory root = generator.generate();
+        long generationNanos = System.nanoTime() - generationStart;
+        double createWeight = weights.getOrDefault(Operation.CREATE, 0.0);
+        double totalWeight = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        long spareSlots = (long) (2 * rate * (warmUp + duration) * createWeight / totalWeight) + 1024;
+        LoadDriver driver = new LoadDriver(root, (int) Math.min(spareSlots, 1 << 26));
+        System.out.printf("tree: %d directories, %d files, %d bytes, generated in %.1f s%n",
+                driver.directories.length, driver.nbOfFiles.get(), root.getTotalDiskUsage(), generationNanos / 1e9);
+        long elapsed = driver.drive(weights, rate, (long) (warmUp * 1e9), (long) (duration * 1e9), nbOfThreads, seed);
+        driver.report(elapsed, rate);
+    }
+
+    /**
+     * Apply the given option with the given values to the given generator.
+     */
+    private static void configure(TreeGenerator generator, String option, String[] values) {
+        switch (option) {
+            case "-items":
+                generator.setNbOfItems(Integer.parseInt(values[0]));
+                break;
+            case "-depth":
+                generator.setMaximumDepth(Integer.parseInt(values[0]));
+                break;
+            case "-fanout":
+                generator.setFanOut(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+                break;
+            case "-directories":
+                generator.setDirectoryFraction(Double.parseDouble(values[0]));
+                break;
+            case "-names":
+                generator.setNameLengths(Integer.parseInt(values[0]), Integer.parseInt(values[1]));
+                break;
+            case "-types":
+                for (FileType type : FileType.values()) generator.setFileTypeWeight(type, 0);
+                for (String value : values) {
+                    String[] pair = value.split(":");
+                    generator.setFileTypeWeight(FileType.valueOf(pair[0]), Double.parseDouble(pair[1]));
+                }
+                break;
+            case "-sizes":
+                generator.setSize(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + option + ".");
+        }
+    }
+
+    /**
+     * Print the throughput and the latencies of the measured operations, which took
+     * the given time, in nanoseconds, at the given offered rate.
+     */
+    private void report(long elapsed, double rate) {
+        double seconds = elapsed / 1e9;
+        long total = 0;
+        System.out.printf("%n%-8s %10s %9s %11s %10s %10s %10s %10s %10s%n", "operation", "performed", "failed",
+                "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Operation operation : latencies.keySet()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            long count = histogram.getCount();
+            if (count + failures.get(operation).get() == 0) continue;
+            total += count + failures.get(operation).get();
+            System.out.printf("%-8s %10d %9d %11.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation, count,
+                    failures.get(operation).get(), count / seconds, histogram.getPercentile(0.5) / 1e3,
+                    histogram.getPercentile(0.9) / 1e3, histogram.getPercentile(0.99) / 1e3,
+                    histogram.getPercentile(0.999) / 1e3, histogram.getPercentile(1) / 1e3);
+        }
+        System.out.printf("%noffered %.1f ops/s, achieved %.1f ops/s, largest dispatch lag %.1f us, %d files left%n",
+                rate, total / seconds, largestLag / 1e3, nbOfFiles.get());
+    }
+
+}
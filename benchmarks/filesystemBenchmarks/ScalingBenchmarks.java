@@ -0,0 +1,210 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class of JMH benchmarks for changes to a tree of items from several threads at once.
+ *
+ * Every thread works in a subtree of its own, directly in the root of a tree that all threads
+ * share: it creates and deletes files, renames files and resizes files. Threads that work in
+ * independent subtrees only share the hierarchy lock of the tree, so the total number of
+ * operations per second should grow with the number of threads, up to the number of cores.
+ *
+ * The main method runs the benchmarks for 1, 2, 4, ..., 32 threads and reports the total
+ * number of operations per second for every number of threads, together with the speed-up
+ * over a single thread.
+ *
+ * Run it with ./gradlew scalingBenchmarks, or run a single number of threads with
+ * ./gradlew jmh -Pjmh="ScalingBenchmarks -t 4".
+ *
+ * Usage: ScalingBenchmarks [-threads 1,2,4,...] [-time milliseconds] [-benchmarks NAME,...]
+ *
+ * @note    Numbers of threads beyond the number of cores can't speed anything up any more;
+ *          they show how much the operations suffer from threads that wait for each other.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmarks {
+
+    /**
+     * Variable registering the number of files in the subtree of every thread.
+     */
+    static final int nbOfFiles = 64;
+
+    /**
+     * A class of states with the tree that all threads share.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedTree {
+
+        /**
+         * The root of the shared tree.
+         */
+        Directory root;
+
+        /**
+         * The number of subtrees made in the shared tree so far.
+         */
+        final AtomicInteger nbOfSubtrees = new AtomicInteger();
+
+        /**
+         * Make the root of the shared tree.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            root = new Directory("root");
+        }
+    }
+
+    /**
+     * A class of states with the subtree of a single thread in the shared tree.
+     */
+    @State(Scope.Thread)
+    public static class Subtree {
+
+        /**
+         * The directory of this subtree, directly in the root of the shared tree.
+         */
+        Directory directory;
+
+        /**
+         * The files in the directory of this subtree.
+         */
+        File[] files;
+
+        /**
+         * The names the files in the directory of this subtree take in turns,
+         * and the names of the files that are created and deleted.
+         */
+        String[] names, otherNames, newNames;
+
+        /**
+         * The number of operations done in this subtree so far.
+         */
+        int counter = 0;
+
+        /**
+         * Make the directory of this subtree, with its files, in the shared tree.
+         */
+        @Setup(Level.Trial)
+        public void setUp(SharedTree tree) {
+            directory = new Directory(tree.root, "subtree" + tree.nbOfSubtrees.getAndIncrement());
+            files = new File[nbOfFiles];
+            names = new String[nbOfFiles];
+            otherNames = new String[nbOfFiles];
+            newNames = new String[nbOfFiles];
+            for (int i = 0; i < nbOfFiles; i++) {
+                names[i] = "file" + i;
+                otherNames[i] = "renamed" + i;
+                newNames[i] = "new" + i;
+                files[i] = new File(directory, names[i], 1, true, FileType.TEXT);
+            }
+        }
+    }
+
+    /**
+     * Create a file in the subtree of the current thread, and delete it again.
+     */
+    @Benchmark
+    public long create(Subtree subtree) {
+        File file = new File(subtree.directory, subtree.newNames[subtree.counter++ % nbOfFiles],
+                1, true, FileType.TEXT);
+        file.delete();
+        return file.getSize();
+    }
+
+    /**
+     * Rename a file in the subtree of the current thread, to its other name or back.
+     */
+    @Benchmark
+    public int rename(Subtree subtree) {
+        int count = subtree.counter++;
+        int i = count % nbOfFiles;
+        subtree.files[i].changeName(((count / nbOfFiles) % 2 == 0) ? subtree.otherNames[i] : subtree.names[i]);
+        return count;
+    }
+
+    /**
+     * Enlarge a file in the subtree of the current thread, or shorten it again.
+     */
+    @Benchmark
+    public long resize(Subtree subtree) {
+        int count = subtree.counter++;
+        File file = subtree.files[count % nbOfFiles];
+        if ((count / nbOfFiles) % 2 == 0) file.enlarge(1);
+        else file.shorten(1);
+        return file.getSize();
+    }
+
+    /**
+     * Run the benchmarks for every number of threads given in the arguments, and report
+     * the total number of operations per second and the speed-up over the first number.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int[] nbsOfThreads = {1, 2, 4, 8, 16, 32};
+        TimeValue time = null;
+        String[] benchmarks = {"create", "rename", "resize"};
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String[] values = args[i + 1].split(",");
+            switch (args[i]) {
+                case "-threads":
+                    nbsOfThreads = Arrays.stream(values).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-time":
+                    time = TimeValue.milliseconds(Long.parseLong(values[0]));
+                    break;
+                case "-benchmarks":
+                    benchmarks = values;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        // the operations per second of every benchmark, for every number of threads
+        Map<String, double[]> results = new TreeMap<>();
+        int nbOfRuns = nbsOfThreads.length;
+        for (int t = 0; t < nbsOfThreads.length; t++) {
+            ChainedOptionsBuilder options = new OptionsBuilder().threads(nbsOfThreads[t]);
+            for (String benchmark : benchmarks) {
+                options.include(ScalingBenchmarks.class.getName() + "\\." + benchmark + "$");
+            }
+            if (time != null) options.warmupTime(time).measurementTime(time);
+            for (RunResult result : new Runner(options.build()).run()) {
+                String benchmark = result.getParams().getBenchmark();
+                benchmark = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+                results.computeIfAbsent(benchmark, key -> new double[nbOfRuns])[t]
+                        = result.getPrimaryResult().getScore();
+            }
+        }
+        System.out.printf("%n%-10s %8s %14s %9s%n", "benchmark", "threads", "ops/s", "speed-up");
+        for (Map.Entry<String, double[]> result : results.entrySet()) {
+            double[] scores = result.getValue();
+            for (int t = 0; t < nbsOfThreads.length; t++) {
+                System.out.printf("%-10s %8d %14.0f %9.2f%n", result.getKey(), nbsOfThreads[t],
+                        scores[t], scores[t] / scores[0]);
+            }
+        }
+    }
+
+}
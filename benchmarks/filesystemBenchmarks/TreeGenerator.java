@@ -0,0 +1,295 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A class of generators of synthetic trees of items, shaped like the trees of real file systems.
+ *
+ * A generator makes its trees breadth first. Every directory gets a number of items drawn
+ * from the fan-out distribution, each of which is a directory with the directory fraction
+ * as probability, unless the maximum depth is reached, and a file otherwise. Files get a file
+ * type drawn from the file type mix and a size drawn from the size distribution. All names
+ * consist of lower case letters, with a length drawn uniformly between the shortest and the
+ * longest name length; names that are taken already get an underscore and a number appended.
+ *
+ * Generators with the same seed and the same settings generate the same trees.
+ *
+ * @note    Both the fan-out and the sizes are drawn from log-normal distributions, which
+ *          fit the fan-out of directories and the sizes of files on real file systems well.
+ *          A spread of 0 gives every directory the same fan-out, or every file the same size.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class TreeGenerator {
+
+    /**
+     * Initialize a new generator with the given seed and the default settings.
+     *
+     * @param   seed
+     *          The seed of the random numbers of the new generator.
+     */
+    public TreeGenerator(long seed) {
+        this.seed = seed;
+        for (FileType type : FileType.values()) fileTypeWeights.put(type, 1.0);
+    }
+
+    /**
+     * Variable registering the seed of the random numbers of this generator.
+     */
+    private final long seed;
+
+    /**
+     * Variable registering the number of items of the trees of this generator, their root included.
+     */
+    private int nbOfItems = 100_000;
+
+    /**
+     * Variable registering the largest depth of the items of the trees of this generator.
+     */
+    private int maximumDepth = 8;
+
+    /**
+     * Variables registering the median and the spread of the log-normal distribution
+     * of the number of items in a directory.
+     */
+    private double fanOutMedian = 8, fanOutSpread = 1;
+
+    /**
+     * Variable registering the probability that an item above the maximum depth is a directory.
+     */
+    private double directoryFraction = 0.15;
+
+    /**
+     * Variables registering the shortest and the longest length of the names of items.
+     */
+    private int minimumNameLength = 4, maximumNameLength = 12;
+
+    /**
+     * Variable registering the relative weight of every file type among the files.
+     */
+    private final Map<FileType, Double> fileTypeWeights = new EnumMap<>(FileType.class);
+
+    /**
+     * Variables registering the median and the spread of the log-normal distribution
+     * of the sizes of files.
+     */
+    private double sizeMedian = 4096, sizeSpread = 2;
+
+    /**
+     * Set the number of items of the trees of this generator, their root included.
+     *
+     * @throws  IllegalArgumentException
+     *          The given number is not positive.
+     *          | nbOfItems < 1
+     */
+    public TreeGenerator setNbOfItems(int nbOfItems) throws IllegalArgumentException {
+        if (nbOfItems < 1) throw new IllegalArgumentException("A tree has at least one item.");
+        this.nbOfItems = nbOfItems;
+        return this;
+    }
+
+    /**
+     * Set the largest depth of the items of the trees of this generator,
+     * the items in the root being at depth 1.
+     *
+     * @throws  IllegalArgumentException
+     *          The given depth is not positive.
+     *          | maximumDepth < 1
+     */
+    public TreeGenerator setMaximumDepth(int maximumDepth) throws IllegalArgumentException {
+        if (maximumDepth < 1) throw new IllegalArgumentException("The maximum depth must be positive.");
+        this.maximumDepth = maximumDepth;
+        return this;
+    }
+
+    /**
+     * Set the median and the spread of the log-normal distribution of the number
+     * of items in a directory.
+     *
+     * @throws  IllegalArgumentException
+     *          The given median is smaller than 1, or the given spread is negative.
+     *          | median < 1 || spread < 0
+     */
+    public TreeGenerator setFanOut(double median, double spread) throws IllegalArgumentException {
+        if (!(median >= 1) || !(spread >= 0)) throw new IllegalArgumentException("Illegal fan-out distribution.");
+        this.fanOutMedian = median;
+        this.fanOutSpread = spread;
+        return this;
+    }
+
+    /**
+     * Set the probability that an item above the maximum depth is a directory.
+     *
+     * @throws  IllegalArgumentException
+     *          The given fraction is not a probability.
+     *          | !(0 <= fraction <= 1)
+     */
+    public TreeGenerator setDirectoryFraction(double fraction) throws IllegalArgumentException {
+        if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("Illegal directory fraction.");
+        this.directoryFraction = fraction;
+        return this;
+    }
+
+    /**
+     * Set the shortest and the longest length of the names of items.
+     *
+     * @throws  IllegalArgumentException
+     *          The given shortest length is not positive, or larger than the given longest length.
+     *          | minimum < 1 || minimum > maximum
+     */
+    public TreeGenerator setNameLengths(int minimum, int maximum) throws IllegalArgumentException {
+        if (minimum < 1 || minimum > maximum) throw new IllegalArgumentException("Illegal name lengths.");
+        this.minimumNameLength = minimum;
+        this.maximumNameLength = maximum;
+        return this;
+    }
+
+    /**
+     * Set the relative weight of the given file type among the files.
+     *
+     * @throws  IllegalArgumentException
+     *          The given weight is negative.
+     *          | weight < 0
+     */
+    public TreeGenerator setFileTypeWeight(FileType type, double weight) throws IllegalArgumentException {
+        if (!(weight >= 0)) throw new IllegalArgumentException("Illegal file type weight.");
+        fileTypeWeights.put(type, weight);
+        return this;
+    }
+
+    /**
+     * Set the median and the spread of the log-normal distribution of the sizes of files.
+     *
+     * @throws  IllegalArgumentException
+     *          The given median is not a valid size for a file, or the given spread is negative.
+     *          | !File.isValidSize((long) median) || spread < 0
+     */
+    public TreeGenerator setSize(double median, double spread) throws IllegalArgumentException {
+        if (!(median >= 0) || !File.isValidSize((long) median) || !(spread >= 0)) {
+            throw new IllegalArgumentException("Illegal size distribution.");
+        }
+        this.sizeMedian = median;
+        this.sizeSpread = spread;
+        return this;
+    }
+
+    /**
+     * Generate a new tree with the settings of this generator.
+     *
+     * @return  A new root directory named root, with the number of items of this generator
+     *          in its subtree, itself included.
+     * @throws  IllegalStateException
+     *          The weights of all file types are zero.
+     */
+    public Directory generate() throws IllegalStateException {
+        double totalWeight = fileTypeWeights.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (!(totalWeight > 0)) throw new IllegalStateException("Some file type must have a weight.");
+        Random random = new Random(seed);
+        Directory root = new Directory("root");
+        List<Directory> directories = new ArrayList<>();
+        directories.add(root);
+        ArrayDeque<Directory> queue = new ArrayDeque<>();
+        queue.add(root);
+        int nbOfItemsLeft = nbOfItems - 1;
+        while (nbOfItemsLeft > 0) {
+            // when every directory got its items, directories picked at random get some more
+            Directory directory = queue.isEmpty()
+                    ? directories.get(random.nextInt(directories.size())) : queue.poll();
+            int depth = getDepth(directory) + 1;
+            long fanOut = Math.max(1, Math.round(sample(random, fanOutMedian, fanOutSpread)));
+            int nbOfNewItems = (int) Math.min(fanOut, nbOfItemsLeft);
+            Set<String> names = new HashSet<>();
+            // a directory gets few items directly; many items are made in small scratch directories
+            // and added all at once, so the items of the directory aren't copied over and over
+            boolean isBatched = nbOfNewItems > scratchSize;
+            List<Item> newItems = new ArrayList<>();
+            Directory parent = directory;
+            for (int i = 0; i < nbOfNewItems; i++) {
+                String name = makeName(random, directory, names);
+                if (isBatched && i % scratchSize == 0) parent = new Directory("scratch");
+                Item item;
+                if (depth < maximumDepth && random.nextDouble() < directoryFraction) {
+                    Directory newDirectory = new Directory(parent, name);
+                    directories.add(newDirectory);
+                    queue.add(newDirectory);
+                    item = newDirectory;
+                } else {
+                    long size = Math.min(Math.round(sample(random, sizeMedian, sizeSpread)), File.getMaximumSize());
+                    item = new File(parent, name, size, true, sampleFileType(random, totalWeight));
+                }
+                if (isBatched) newItems.add(item);
+            }
+            if (isBatched) directory.addItems(newItems);
+            nbOfItemsLeft -= nbOfNewItems;
+        }
+        return root;
+    }
+
+    /**
+     * Variable registering the number of files that are made in the same scratch directory.
+     */
+    private static final int scratchSize = 256;
+
+    /**
+     * Return the depth of the given directory in its tree, the root being at depth 0.
+     */
+    private static int getDepth(Directory directory) {
+        int depth = 0;
+        for (Directory parent = directory.getParentDirectory(); parent != null; parent = parent.getParentDirectory()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Return a new name for an item in the given directory, that is not among the given
+     * names, regardless of case, and add it to the given names.
+     */
+    private String makeName(Random random, Directory directory, Set<String> names) {
+        int length = minimumNameLength + random.nextInt(maximumNameLength - minimumNameLength + 1);
+        char[] characters = new char[length];
+        for (int i = 0; i < length; i++) characters[i] = (char) ('a' + random.nextInt(26));
+        String name = new String(characters);
+        String uniqueName = name;
+        for (int number = 2; directory.containsDiskItemWithName(uniqueName) || !names.add(uniqueName); number++) {
+            uniqueName = name + "_" + number;
+        }
+        return uniqueName;
+    }
+
+    /**
+     * Return a file type drawn from the file type mix of this generator.
+     */
+    private FileType sampleFileType(Random random, double totalWeight) {
+        double target = random.nextDouble() * totalWeight;
+        FileType last = null;
+        for (Map.Entry<FileType, Double> entry : fileTypeWeights.entrySet()) {
+            if (entry.getValue() <= 0) continue;
+            last = entry.getKey();
+            target -= entry.getValue();
+            if (target < 0) return last;
+        }
+        return last;
+    }
+
+    /**
+     * Return a number drawn from the log-normal distribution with the given median and spread,
+     * the spread being the standard deviation of the logarithm of the numbers.
+     */
+    static double sample(Random random, double median, double spread) {
+        return median * Math.exp(spread * random.nextGaussian());
+    }
+
+}
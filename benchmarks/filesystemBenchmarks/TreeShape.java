@@ -0,0 +1,161 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An enum class with the shapes of the trees the core operations are benchmarked on.
+ *
+ * Every shape builds a tree with a given number of items, and points out the directory
+ * the operations work in: the directory at the bottom of the tree with the most files.
+ * That directory gets one more, empty directory to move its files to.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public enum TreeShape {
+
+    /**
+     * A root directory with all other items as files in it.
+     */
+    WIDE {
+        @Override
+        Tree build(int nbOfItems) {
+            Directory root = new Directory("root");
+            addFiles(root, nbOfItems - 1);
+            return new Tree(root, root);
+        }
+    },
+
+    /**
+     * A chain of directories with as many levels as there are files on every level,
+     * which is about the square root of the number of items.
+     */
+    DEEP {
+        @Override
+        Tree build(int nbOfItems) {
+            int depth = Math.max(1, (int) Math.round(Math.sqrt(nbOfItems)));
+            int nbOfFiles = Math.max(0, nbOfItems - 1 - depth) / (depth + 1);
+            Directory root = new Directory("root");
+            Directory directory = root;
+            for (int level = 0; level < depth; level++) {
+                addFiles(directory, nbOfFiles);
+                directory = new Directory(directory, "level" + level);
+            }
+            addFiles(directory, Math.max(0, nbOfItems - 1 - depth - depth * nbOfFiles));
+            return new Tree(root, directory);
+        }
+    },
+
+    /**
+     * A tree in which every directory holds ten directories and ten files,
+     * filled level by level.
+     */
+    BALANCED {
+        @Override
+        Tree build(int nbOfItems) {
+            Directory root = new Directory("root");
+            List<Directory> level = List.of(root);
+            int nbOfItemsLeft = nbOfItems - 1;
+            Directory hot = root;
+            while (nbOfItemsLeft > 0) {
+                List<Directory> nextLevel = new ArrayList<>();
+                for (Directory directory : level) {
+                    int nbOfFiles = Math.min(fanOut, nbOfItemsLeft);
+                    addFiles(directory, nbOfFiles);
+                    nbOfItemsLeft -= nbOfFiles;
+                    if (nbOfFiles > 0) hot = directory;
+                    for (int i = 0; i < fanOut && nbOfItemsLeft > 0; i++) {
+                        nextLevel.add(new Directory(directory, "dir" + i));
+                        nbOfItemsLeft--;
+                    }
+                }
+                level = nextLevel;
+            }
+            return new Tree(root, hot);
+        }
+    };
+
+    /**
+     * Variable registering the number of directories and files in every directory
+     * of a balanced tree.
+     */
+    private static final int fanOut = 10;
+
+    /**
+     * Variable registering the number of files that are made in the same scratch
+     * directory before they are moved to their directory all at once.
+     */
+    private static final int batchSize = 256;
+
+    /**
+     * Build a new tree of this shape with about the given number of items.
+     *
+     * @param   nbOfItems
+     *          The number of items of the tree, its root included.
+     */
+    abstract Tree build(int nbOfItems);
+
+    /**
+     * Add the given number of text files to the given directory, named file0, file1, ...
+     *
+     * @note    Making every file in the directory itself would copy the items of the
+     *          directory for every file. The files are made in small scratch directories
+     *          instead, and moved to the directory in a single batch.
+     */
+    static void addFiles(Directory directory, int nbOfFiles) {
+        List<Item> files = new ArrayList<>(nbOfFiles);
+        Directory scratch = null;
+        for (int i = 0; i < nbOfFiles; i++) {
+            if (i % batchSize == 0) scratch = new Directory("scratch");
+            files.add(new File(scratch, "file" + i, i % 1000, true, FileType.TEXT));
+        }
+        if (!files.isEmpty()) directory.addItems(files);
+    }
+
+    /**
+     * A class of trees that are built for a benchmark.
+     */
+    static final class Tree {
+
+        /**
+         * Initialize a new tree with the given root and the given directory to work in,
+         * in which a new directory to move items to is made.
+         */
+        Tree(Directory root, Directory hot) {
+            this.root = root;
+            this.hot = hot;
+            List<File> files = new ArrayList<>();
+            for (Item item : hot.getItems()) {
+                if (item instanceof File) files.add((File) item);
+            }
+            this.files = files.toArray(new File[0]);
+            this.other = new Directory(hot, "other");
+        }
+
+        /**
+         * The root directory of this tree.
+         */
+        final Directory root;
+
+        /**
+         * The directory at the bottom of this tree the operations work in.
+         */
+        final Directory hot;
+
+        /**
+         * The empty directory in the directory to work in that its files can be moved to.
+         */
+        final Directory other;
+
+        /**
+         * The files in the directory to work in.
+         */
+        final File[] files;
+    }
+
+}
@@ -0,0 +1,121 @@
+package filesystemBenchmarks;
+
+import filesystem.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A class of benchmarks for a single directory with many items, that compare the
+ * current version of the filesystem with older ones.
+ *
+ * For every size, a directory is filled with that many files, one constructor call at
+ * a time and in random order of their names. Then every file is looked up by its name,
+ * the index of every file is asked, and every file is deleted again, in random order as
+ * well. The mean time of each of these operations is reported.
+ *
+ * The benchmarks only use constructors and methods that every version of the filesystem
+ * has, so they can be compiled against an older version as well, and run on both to
+ * compare them, e.g. the version with an array list of items, which inserts and removes
+ * in linear time, with the current one.
+ *
+ * Usage: WideDirectoryBenchmarks [-sizes 1000,10000,...] [-seed number]
+ *
+ * @note    These benchmarks time every size once, after a warm-up on the smallest size,
+ *          with the limits listed for CoreBenchmarks.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class WideDirectoryBenchmarks {
+
+    /**
+     * This class only has static methods.
+     */
+    private WideDirectoryBenchmarks() {
+    }
+
+    /**
+     * Variable that the results of operations are added to, so they can't be optimized away.
+     */
+    static volatile long sink;
+
+    /**
+     * Run the benchmarks with the given arguments.
+     */
+    public static void main(String[] args) {
+        int[] sizes = {1_000, 10_000, 50_000, 200_000};
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-sizes":
+                    sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        // warm up, so the just-in-time compiler has done its work
+        for (int i = 0; i < 3; i++) measure(sizes[0], seed);
+        System.out.printf("%9s %14s %14s %14s %14s%n", "items", "create ns/op", "getItem ns/op",
+                "getIndexOf ns/op", "delete ns/op");
+        for (int size : sizes) {
+            double[] times = measure(size, seed);
+            System.out.printf("%9d %14.1f %14.1f %16.1f %14.1f%n", size, times[0], times[1], times[2], times[3]);
+        }
+    }
+
+    /**
+     * Return the mean times of creating, looking up, asking the index of and deleting
+     * the given number of files in a single directory, in nanoseconds.
+     */
+    static double[] measure(int nbOfFiles, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[nbOfFiles];
+        for (int i = 0; i < nbOfFiles; i++) names[i] = "file" + i;
+        shuffle(names, random);
+        Directory directory = new Directory("wide");
+        File[] files = new File[nbOfFiles];
+        double[] times = new double[4];
+        long start = System.nanoTime();
+        for (int i = 0; i < nbOfFiles; i++) {
+            files[i] = new File(directory, names[i], FileType.TEXT);
+        }
+        times[0] = (double) (System.nanoTime() - start) / nbOfFiles;
+        shuffle(files, random);
+        start = System.nanoTime();
+        for (File file : files) {
+            sink += directory.getItem(file.getName()).getName().length();
+        }
+        times[1] = (double) (System.nanoTime() - start) / nbOfFiles;
+        start = System.nanoTime();
+        for (File file : files) {
+            sink += directory.getIndexOf(file);
+        }
+        times[2] = (double) (System.nanoTime() - start) / nbOfFiles;
+        start = System.nanoTime();
+        for (File file : files) {
+            file.delete();
+        }
+        times[3] = (double) (System.nanoTime() - start) / nbOfFiles;
+        return times;
+    }
+
+    /**
+     * Put the given elements in random order.
+     */
+    private static <T> void shuffle(T[] elements, Random random) {
+        for (int i = elements.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            T element = elements[i];
+            elements[i] = elements[j];
+            elements[j] = element;
+        }
+    }
+
+}
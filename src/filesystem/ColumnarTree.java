@@ -0,0 +1,826 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class of trees of items that are stored outside the Java heap, in columns.
+ *
+ * Every item of a tree is identified by its position in breadth-first order, the root
+ * having identifier 0. The items in a directory have consecutive identifiers, in the
+ * lexicographical order of their names. For every column, the values of all items are
+ * kept next to each other in a direct byte buffer, so a tree of any size consists of a
+ * few objects on the heap, and the garbage collector doesn't need to visit its items.
+ *
+ * A tree is captured from a directory and its subtree, and can be turned back into items
+ * with materialize(). In between, its items can be inspected through their identifiers.
+ *
+ * @invar   The identifiers of the items of a tree range from 0 to the number of items.
+ *          | for each id in 0..getNbOfItems()-1: isValidId(id)
+ *
+ * @note    A tree is immutable: changes to the items it was captured from, after it was
+ *          captured, are not reflected in it.
+ * @note    Names are stored as ASCII bytes, since only letters, digits, dots, hyphens
+ *          and underscores are valid in names.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class ColumnarTree {
+
+    /**********************************************************
+     * columns
+     **********************************************************/
+
+    /**
+     * Variables registering the positions of the columns: the kind and writability,
+     * the file type, the parent, the reference (first item of a directory or linked item
+     * of a link), the number of items in a directory, the offset of the name, the size,
+     * the creation time and the modification time of every item, the names themselves and
+     * the statistics of every directory.
+     *
+     * @note    The statistics are only kept for directories, in breadth-first order, so the size
+     *          column holds the position of its statistics for every directory instead.
+     */
+    static final int kindsColumn = 0, typesColumn = 1, parentsColumn = 2, referencesColumn = 3,
+            nbOfChildrenColumn = 4, nameOffsetsColumn = 5, sizesColumn = 6,
+            creationTimesColumn = 7, modificationTimesColumn = 8, namesColumn = 9,
+            statisticsColumn = 10;
+
+    /**
+     * Variable registering the number of columns of every tree.
+     */
+    static final int nbOfColumns = 11;
+
+    /**
+     * Variable registering the number of bytes per item in every column but the names.
+     */
+    private static final int[] columnWidths = {1, 1, 4, 4, 4, 4, 8, 8, 8};
+
+    /**
+     * Variable registering the maximum number of items in a tree, such that
+     * every column fits in a single byte buffer.
+     */
+    private static final int maximumNbOfItems = Integer.MAX_VALUE / 8 - 1;
+
+    /**
+     * Variable registering the maximum number of directories in a tree, such that
+     * the statistics of all directories fit in a single byte buffer.
+     */
+    static final int maximumNbOfDirectories = Integer.MAX_VALUE / (8 * Directory.nbOfStatistics);
+
+    /**
+     * Variable registering the byte order of all columns.
+     */
+    static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Variables registering the kinds of items, as kept in the kinds column.
+     */
+    private static final byte directoryKind = 0, fileKind = 1, linkKind = 2;
+
+    /**
+     * Variable registering the bit of the kinds column that is set for writable items.
+     */
+    private static final byte writableFlag = 4;
+
+    /**
+     * Variable registering the bit of the kinds column that is set for items that some link
+     * refers to, and for the directories they are in.
+     */
+    private static final byte linkedFlag = 8;
+
+    /**
+     * Return the number of bytes of the given column in a tree with the given number
+     * of items and directories and the given number of bytes in its names.
+     *
+     * @param   column
+     *          The position of the column.
+     * @param   nbOfItems
+     *          The number of items of the tree.
+     * @param   nbOfDirectories
+     *          The number of directories of the tree.
+     * @param   nbOfNameBytes
+     *          The number of bytes of all names of the tree together.
+     */
+    static long getColumnLength(int column, int nbOfItems, int nbOfDirectories, long nbOfNameBytes) {
+        if (column == namesColumn) return nbOfNameBytes;
+        if (column == statisticsColumn) return (long) nbOfDirectories * Directory.nbOfStatistics * 8;
+        // the name offsets have an extra entry for the end of the last name
+        long nbOfEntries = (column == nameOffsetsColumn) ? nbOfItems + 1L : nbOfItems;
+        return nbOfEntries * columnWidths[column];
+    }
+
+    /**
+     * Initialize a new tree with the given columns.
+     *
+     * @param   nbOfItems
+     *          The number of items of the new tree.
+     * @param   nbOfDirectories
+     *          The number of directories of the new tree.
+     * @param   columns
+     *          The columns of the new tree, of the lengths that belong to the number
+     *          of items and directories, in the byte order of trees.
+     * @note    The columns are not copied, so they may as well be mapped from a file.
+     */
+    ColumnarTree(int nbOfItems, int nbOfDirectories, ByteBuffer[] columns) {
+        this.nbOfItems = nbOfItems;
+        this.nbOfDirectories = nbOfDirectories;
+        this.columns = columns;
+        kinds = columns[kindsColumn];
+        types = columns[typesColumn];
+        parents = columns[parentsColumn];
+        references = columns[referencesColumn];
+        nbOfChildren = columns[nbOfChildrenColumn];
+        nameOffsets = columns[nameOffsetsColumn];
+        sizes = columns[sizesColumn];
+        creationTimes = columns[creationTimesColumn];
+        modificationTimes = columns[modificationTimesColumn];
+        names = columns[namesColumn];
+        statistics = columns[statisticsColumn];
+    }
+
+    /**
+     * Initialize a new tree with the given number of items, directories and name bytes,
+     * with columns outside the Java heap that are all zero.
+     */
+    private ColumnarTree(int nbOfItems, int nbOfDirectories, int nbOfNameBytes) {
+        this(nbOfItems, nbOfDirectories, allocateColumns(nbOfItems, nbOfDirectories, nbOfNameBytes));
+    }
+
+    /**
+     * Return new direct byte buffers for the columns of a tree with the given
+     * number of items, directories and name bytes.
+     */
+    @Model
+    private static ByteBuffer[] allocateColumns(int nbOfItems, int nbOfDirectories, int nbOfNameBytes) {
+        ByteBuffer[] columns = new ByteBuffer[nbOfColumns];
+        for (int column = 0; column < nbOfColumns; column++) {
+            columns[column] = ByteBuffer.allocateDirect((int) getColumnLength(
+                    column, nbOfItems, nbOfDirectories, nbOfNameBytes)).order(byteOrder);
+        }
+        return columns;
+    }
+
+    /**
+     * Variable registering the number of items of this tree.
+     */
+    private final int nbOfItems;
+
+    /**
+     * Variable registering the number of directories of this tree.
+     */
+    private final int nbOfDirectories;
+
+    /**
+     * Variable referencing the columns of this tree.
+     */
+    private final ByteBuffer[] columns;
+
+    /**
+     * Variables referencing the columns of this tree, one by one.
+     */
+    private final ByteBuffer kinds, types, parents, references, nbOfChildren, nameOffsets,
+            sizes, creationTimes, modificationTimes, names, statistics;
+
+    /**
+     * Return a read-only view on the given column of this tree.
+     *
+     * @param   column
+     *          The position of the column.
+     */
+    ByteBuffer getColumn(int column) {
+        return columns[column].asReadOnlyBuffer().order(byteOrder);
+    }
+
+    /**
+     * Return the number of items of this tree.
+     */
+    @Basic @Immutable
+    public int getNbOfItems() {
+        return nbOfItems;
+    }
+
+    /**
+     * Return the number of directories of this tree.
+     */
+    @Basic @Immutable
+    public int getNbOfDirectories() {
+        return nbOfDirectories;
+    }
+
+    /**
+     * Return the number of bytes of all names of this tree together.
+     */
+    @Immutable
+    public int getNbOfNameBytes() {
+        return names.capacity();
+    }
+
+
+
+    /**********************************************************
+     * capturing - defensive programming
+     **********************************************************/
+
+    /**
+     * Capture the given directory and its subtree in a new tree.
+     *
+     * @param   directory
+     *          The directory to capture, which becomes the root of the new tree.
+     * @return  A tree with an item for every item in the subtree of the given directory,
+     *          with the same name, kind, writability, file type, size, times and, for links,
+     *          linked item.
+     * @throws  NullPointerException
+     *          The given directory is not effective.
+     *          | directory == null
+     * @throws  IllegalArgumentException
+     *          The subtree has more items than a tree can hold, or some link in the subtree
+     *          refers to an item outside of it.
+     * @note    The hierarchy lock of the tree of the given directory is held exclusively
+     *          while the subtree is captured, so the tree reflects the subtree as it was at
+     *          a single moment, while other trees keep changing. The subtree is only walked
+     *          once while it is held: the numbers of items and directories are known from the
+     *          statistics of the given directory, the names are gathered as they are met, and
+     *          the items links refer to are looked up by their place in their directories.
+     * @note    The statistics of every directory are captured as well, so they don't need
+     *          to be counted again when the tree is materialized lazily. Directories of a
+     *          lazily materialized tree get all of their items when they are captured.
+     */
+    public static ColumnarTree capture(Directory directory)
+            throws NullPointerException, IllegalArgumentException {
+        if (directory == null) {
+            throw new NullPointerException("The directory must be effective.");
+        }
+        ColumnarTree tree;
+        NameBytes names = new NameBytes();
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(directory));
+        try {
+            long nbOfDirectories = directory.getTotalNbOfDirectories() + 1;
+            long nbOfItems = nbOfDirectories + directory.getTotalNbOfFiles() + directory.getTotalNbOfLinks();
+            if (nbOfItems > maximumNbOfItems || nbOfDirectories > maximumNbOfDirectories) {
+                throw new IllegalArgumentException("The subtree is too large to be captured.");
+            }
+            tree = new ColumnarTree((int) nbOfItems, (int) nbOfDirectories, 0);
+            tree.fill(directory, names);
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+        // the names only get a column of their own once their total length is known
+        ByteBuffer[] columns = tree.columns.clone();
+        columns[namesColumn] = ByteBuffer.allocateDirect(names.length).order(byteOrder)
+                .put(0, names.bytes, 0, names.length);
+        return new ColumnarTree(tree.nbOfItems, tree.nbOfDirectories, columns);
+    }
+
+    /**
+     * Fill the columns of this tree, but for the names, with the given directory and its
+     * subtree, in breadth-first order, and add the names to the given name bytes.
+     *
+     * @param   directory
+     *          The directory to store as the root of this tree.
+     * @param   names
+     *          The name bytes to add the names of the items to.
+     * @throws  IllegalArgumentException
+     *          Some link in the subtree refers to an item outside of it, or the names of
+     *          the items are too long together.
+     */
+    @Model
+    private void fill(Directory directory, NameBytes names) throws IllegalArgumentException {
+        Link[] pendingLinks = new Link[0];
+        int nbOfPendingLinks = 0;
+        int[] pendingLinkIds = new int[0];
+        put(directory, 0, -1, names);
+        putStatistics(directory, 0, 0);
+        int nextId = 1;
+        int nextDirectory = 1;
+        // the directories are met in breadth-first order, just like their identifiers
+        ArrayQueue directories = new ArrayQueue();
+        directories.add(directory, 0);
+        while (!directories.isEmpty()) {
+            int id = directories.peekId();
+            List<Item> items = directories.poll().getItems();
+            references.putInt(id * 4, nextId);
+            nbOfChildren.putInt(id * 4, items.size());
+            for (Item item : items) {
+                put(item, nextId, id, names);
+                if (item instanceof Directory) {
+                    putStatistics((Directory) item, nextId, nextDirectory++);
+                    directories.add((Directory) item, nextId);
+                } else if (item instanceof Link) {
+                    if (nbOfPendingLinks == pendingLinks.length) {
+                        pendingLinks = Arrays.copyOf(pendingLinks, Math.max(8, 2 * nbOfPendingLinks));
+                        pendingLinkIds = Arrays.copyOf(pendingLinkIds, pendingLinks.length);
+                    }
+                    pendingLinks[nbOfPendingLinks] = (Link) item;
+                    pendingLinkIds[nbOfPendingLinks++] = nextId;
+                }
+                nextId++;
+            }
+        }
+        nameOffsets.putInt(nbOfItems * 4, names.length);
+        for (int i = 0; i < nbOfPendingLinks; i++) {
+            int linkedId = getIdOf(pendingLinks[i].getLinkedItem(), directory);
+            references.putInt(pendingLinkIds[i] * 4, linkedId);
+            // mark the linked item and the directories it is in, up to the first marked one
+            for (int id = linkedId; id >= 0 && (kinds.get(id) & linkedFlag) == 0; id = parents.getInt(id * 4)) {
+                kinds.put(id, (byte) (kinds.get(id) | linkedFlag));
+            }
+        }
+    }
+
+    /**
+     * Return the identifier under which the given item is stored in this tree,
+     * which stores the given directory as its root.
+     *
+     * @param   item
+     *          The item to look up.
+     * @param   directory
+     *          The directory stored as the root of this tree.
+     * @throws  IllegalArgumentException
+     *          The given item is not in the subtree of the given directory.
+     *          | item != directory && ! item.isDirectOrIndirectChildOf(directory)
+     * @note    The items of a directory are stored next to each other, in the same order as
+     *          in the directory, so the identifier of an item is found from the identifiers
+     *          of the directories above it, in time logarithmic in the number of items of
+     *          each of those directories.
+     */
+    @Model
+    private int getIdOf(Item item, Directory directory) throws IllegalArgumentException {
+        if (item != directory && !item.isDirectOrIndirectChildOf(directory)) {
+            throw new IllegalArgumentException("A link refers to an item outside of the subtree.");
+        }
+        ArrayDeque<Item> path = new ArrayDeque<>();
+        for (Item ancestor = item; ancestor != directory; ancestor = ancestor.getParentDirectory()) {
+            path.push(ancestor);
+        }
+        int id = 0;
+        for (Item ancestor : path) {
+            id = references.getInt(id * 4) + ancestor.getParentDirectory().getIndexOf(ancestor);
+        }
+        return id;
+    }
+
+    /**
+     * Store the given item under the given identifier, with the given parent,
+     * and add its name to the given name bytes.
+     */
+    @Model
+    private void put(Item item, int id, int parentId, NameBytes names) {
+        byte kind;
+        if (item instanceof Directory) {
+            kind = directoryKind;
+            if (((Directory) item).isWritable()) kind |= writableFlag;
+        } else if (item instanceof File) {
+            kind = fileKind;
+            if (((File) item).isWritable()) kind |= writableFlag;
+            types.put(id, (byte) ((File) item).getFileType().ordinal());
+            sizes.putLong(id * 8, ((File) item).getSize());
+        } else {
+            kind = linkKind;
+        }
+        kinds.put(id, kind);
+        parents.putInt(id * 4, parentId);
+        creationTimes.putLong(id * 8, item.getCreationTimeMillis());
+        modificationTimes.putLong(id * 8, item.getModificationTimeMillis());
+        nameOffsets.putInt(id * 4, names.length);
+        names.add(item.getName());
+    }
+
+    /**
+     * A class of growing arrays of the bytes of names.
+     */
+    private static final class NameBytes {
+
+        /**
+         * The bytes of the names, of which the first length are used.
+         */
+        private byte[] bytes = new byte[64];
+
+        /**
+         * The number of bytes in use.
+         */
+        private int length = 0;
+
+        /**
+         * Add the bytes of the given name.
+         *
+         * @throws  IllegalArgumentException
+         *          The names would be too long together to fit in a single byte buffer.
+         */
+        void add(String name) throws IllegalArgumentException {
+            if (length > Integer.MAX_VALUE - 8 - name.length()) {
+                throw new IllegalArgumentException("The subtree is too large to be captured.");
+            }
+            if (length + name.length() > bytes.length) {
+                int newLength = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * bytes.length, length + name.length()));
+                bytes = Arrays.copyOf(bytes, newLength);
+            }
+            for (int i = 0; i < name.length(); i++) {
+                bytes[length++] = (byte) name.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Store the statistics of the given directory, stored under the given identifier,
+     * at the given position among the statistics of all directories.
+     */
+    @Model
+    private void putStatistics(Directory directory, int id, int position) {
+        sizes.putLong(id * 8, position);
+        long[] directoryStatistics = directory.getStatisticsAsItem();
+        for (int i = 0; i < Directory.nbOfStatistics; i++) {
+            statistics.putLong((position * Directory.nbOfStatistics + i) * 8, directoryStatistics[i]);
+        }
+    }
+
+    /**
+     * A class of queues of directories together with their identifiers.
+     */
+    private static final class ArrayQueue {
+
+        /**
+         * The directories in the queue, from the head on.
+         */
+        private Directory[] directories = new Directory[16];
+
+        /**
+         * The identifiers of the directories at the same positions.
+         */
+        private int[] ids = new int[16];
+
+        /**
+         * The position of the head and the position beyond the tail.
+         */
+        private int head = 0, tail = 0;
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        void add(Directory directory, int id) {
+            if (tail == directories.length) {
+                // move the queue to the front, or grow if it fills more than half
+                int size = tail - head;
+                int length = (size > directories.length / 2) ? 2 * directories.length : directories.length;
+                Directory[] newDirectories = new Directory[length];
+                int[] newIds = new int[length];
+                System.arraycopy(directories, head, newDirectories, 0, size);
+                System.arraycopy(ids, head, newIds, 0, size);
+                directories = newDirectories;
+                ids = newIds;
+                head = 0;
+                tail = size;
+            }
+            directories[tail] = directory;
+            ids[tail++] = id;
+        }
+
+        int peekId() {
+            return ids[head];
+        }
+
+        Directory poll() {
+            Directory directory = directories[head];
+            directories[head++] = null;
+            return directory;
+        }
+    }
+
+
+
+    /**********************************************************
+     * materializing - total programming
+     **********************************************************/
+
+    /**
+     * Turn this tree into new items.
+     *
+     * @return  A new root directory with a subtree that has an item for every item
+     *          of this tree, with the same name, kind, writability, file type, size,
+     *          times and, for links, linked item.
+     * @note    The items of every directory are attached at once, from the top of the
+     *          tree down, so this takes time linear in the number of items.
+     */
+    public Directory materialize() {
+        Item[] items = new Item[nbOfItems];
+        for (int id = 0; id < nbOfItems; id++) {
+            if (isDirectory(id)) {
+                items[id] = new Directory(getName(id), isWritable(id),
+                        getCreationTimeMillis(id), getModificationTimeMillis(id));
+            } else if (isFile(id)) {
+                items[id] = new File(getName(id), getSize(id), isWritable(id), getFileType(id),
+                        getCreationTimeMillis(id), getModificationTimeMillis(id));
+            }
+        }
+        // links can only be made once the items they refer to exist
+        for (int id = 0; id < nbOfItems; id++) {
+            if (isLink(id)) {
+                items[id] = new Link(getName(id), items[getLinkedItem(id)],
+                        getCreationTimeMillis(id), getModificationTimeMillis(id));
+            }
+        }
+        for (int id = 0; id < nbOfItems; id++) {
+            if (isDirectory(id) && getNbOfChildren(id) > 0) {
+                int first = getFirstChild(id);
+                ((Directory) items[id]).attachRestoredItems(
+                        Arrays.copyOfRange(items, first, first + getNbOfChildren(id)));
+            }
+        }
+        return (Directory) items[0];
+    }
+
+    /**
+     * Turn this tree into new items, as they are used.
+     *
+     * @return  A new root directory with a subtree that has an item for every item
+     *          of this tree, as with materialize().
+     * @note    Only the root directory is made right away, so this takes constant time in
+     *          the number of items. The items in a directory are made the first time they
+     *          are looked at, and a link only looks up the item it refers to when asked,
+     *          so only the part of the tree that is used takes up memory on the heap.
+     *          The number of items, the disk usage and the statistics of a directory are
+     *          known without making its items.
+     * @note    The items that are not made yet are read from this tree, so the columns
+     *          of this tree must not change as long as the items are in use.
+     */
+    public Directory materializeLazily() {
+        return new LazyTree(this).getRoot();
+    }
+
+
+
+    /**********************************************************
+     * items - defensive programming
+     **********************************************************/
+
+    /**
+     * Check whether the given identifier identifies an item of this tree.
+     *
+     * @param   id
+     *          The identifier to check.
+     * @return  True if and only if the identifier lies between 0 and the number of items.
+     *          | result == (id >= 0 && id < getNbOfItems())
+     */
+    public boolean isValidId(int id) {
+        return id >= 0 && id < nbOfItems;
+    }
+
+    /**
+     * Check the given identifier.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          The given identifier does not identify an item of this tree.
+     *          | ! isValidId(id)
+     */
+    @Model
+    private void checkId(int id) throws IndexOutOfBoundsException {
+        if (!isValidId(id)) {
+            throw new IndexOutOfBoundsException("No item with identifier " + id + ".");
+        }
+    }
+
+    /**
+     * Return the name of the item with the given identifier.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public String getName(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        int offset = nameOffsets.getInt(id * 4);
+        byte[] bytes = new byte[nameOffsets.getInt(id * 4 + 4) - offset];
+        names.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Check whether the item with the given identifier is a directory.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public boolean isDirectory(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return (kinds.get(id) & 3) == directoryKind;
+    }
+
+    /**
+     * Check whether the item with the given identifier is a file.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public boolean isFile(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return (kinds.get(id) & 3) == fileKind;
+    }
+
+    /**
+     * Check whether the item with the given identifier is a link.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public boolean isLink(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return (kinds.get(id) & 3) == linkKind;
+    }
+
+    /**
+     * Check whether the item with the given identifier is a writable file or directory.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public boolean isWritable(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return (kinds.get(id) & writableFlag) != 0;
+    }
+
+    /**
+     * Return the identifier of the parent directory of the item with the given identifier,
+     * or -1 for the root.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public int getParent(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return parents.getInt(id * 4);
+    }
+
+    /**
+     * Return the file type of the item with the given identifier, or null if it is no file.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public FileType getFileType(int id) throws IndexOutOfBoundsException {
+        return isFile(id) ? FileType.values()[types.get(id)] : null;
+    }
+
+    /**
+     * Return the size of the item with the given identifier, which is zero if it is no file.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public long getSize(int id) throws IndexOutOfBoundsException {
+        return isFile(id) ? sizes.getLong(id * 8) : 0;
+    }
+
+    /**
+     * Return the statistics the directory with the given identifier adds to the statistics
+     * of the directories it is in, as they were when this tree was captured.
+     *
+     * @pre     The item with the given identifier is a directory.
+     *          | isDirectory(id)
+     */
+    long[] getStatisticsAsItem(int id) {
+        long[] result = new long[Directory.nbOfStatistics];
+        int position = (int) sizes.getLong(id * 8) * Directory.nbOfStatistics;
+        for (int i = 0; i < Directory.nbOfStatistics; i++) {
+            result[i] = statistics.getLong((position + i) * 8);
+        }
+        return result;
+    }
+
+    /**
+     * Check whether some link refers to the item with the given identifier,
+     * or to an item within the subtree of the item with the given identifier.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    boolean isLinkedOrAboveLinked(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return (kinds.get(id) & linkedFlag) != 0;
+    }
+
+    /**
+     * Return the creation time of the item with the given identifier.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public long getCreationTimeMillis(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return creationTimes.getLong(id * 8);
+    }
+
+    /**
+     * Return the modification time of the item with the given identifier,
+     * or Long.MIN_VALUE if it had not been modified.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public long getModificationTimeMillis(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return modificationTimes.getLong(id * 8);
+    }
+
+    /**
+     * Return the number of items in the directory with the given identifier,
+     * which is zero if it is no directory.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     */
+    public int getNbOfChildren(int id) throws IndexOutOfBoundsException {
+        checkId(id);
+        return isDirectory(id) ? nbOfChildren.getInt(id * 4) : 0;
+    }
+
+    /**
+     * Return the identifier of the first item in the directory with the given identifier.
+     * The other items in the directory follow it, in lexicographical order of their names.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     * @throws  IllegalArgumentException
+     *          The item is no directory.
+     *          | ! isDirectory(id)
+     */
+    public int getFirstChild(int id) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (!isDirectory(id)) {
+            throw new IllegalArgumentException("The item is no directory.");
+        }
+        return references.getInt(id * 4);
+    }
+
+    /**
+     * Return the identifier of the item the link with the given identifier refers to.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     * @throws  IllegalArgumentException
+     *          The item is no link.
+     *          | ! isLink(id)
+     */
+    public int getLinkedItem(int id) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (!isLink(id)) {
+            throw new IllegalArgumentException("The item is no link.");
+        }
+        return references.getInt(id * 4);
+    }
+
+    /**
+     * Return the identifier of the item with the given name in the directory
+     * with the given identifier, or -1 if there is no such item.
+     *
+     * @param   id
+     *          The identifier of the directory.
+     * @param   name
+     *          The name to look for.
+     * @throws  IndexOutOfBoundsException
+     *          | ! isValidId(id)
+     * @throws  IllegalArgumentException
+     *          The item is no directory.
+     *          | ! isDirectory(id)
+     * @note    The items in a directory are sorted by name, so they are binary searched.
+     */
+    public int getChildWithName(int id, String name) throws IndexOutOfBoundsException, IllegalArgumentException {
+        int low = getFirstChild(id);
+        int high = low + getNbOfChildren(id) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareName(middle, name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the name of the item with the given identifier with the given name,
+     * the way strings are compared, without creating a string.
+     */
+    @Model
+    private int compareName(int id, String name) {
+        int offset = nameOffsets.getInt(id * 4);
+        int length = nameOffsets.getInt(id * 4 + 4) - offset;
+        int common = Math.min(length, name.length());
+        for (int i = 0; i < common; i++) {
+            int difference = names.get(offset + i) - name.charAt(i);
+            if (difference != 0) return difference;
+        }
+        return length - name.length();
+    }
+
+}
@@ -0,0 +1,514 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class of immutable lists of items in lexicographical order, together with
+ * the names the items had when they were put in the list.
+ *
+ * The items are kept in the leaves of a B-tree, in chunks of at most a few dozen
+ * items, and every node knows how many items there are under it. Looking up a name
+ * or an index takes logarithmic time. A list with an item more, an item less or an
+ * item at another place is made in logarithmic time as well: it only gets new nodes
+ * on the path to the item that changes, and shares all other nodes with this list.
+ *
+ * @invar   The names are in lexicographical order.
+ *          | for each I in 1..size()-1:
+ *          |   get(I-1).getName().compareTo(get(I).getName()) < 0
+ *
+ * @note    Lists are never changed, so any number of threads can read them without
+ *          locking anything, while other threads make new lists from them.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class Contents extends AbstractList<Item> {
+
+    /**
+     * Variable registering the largest number of items in a leaf, and of children
+     * of a branch.
+     */
+    private static final int maximumNodeSize = 64;
+
+    /**
+     * Variable registering the smallest number of items in a leaf, and of children
+     * of a branch, unless the leaf or branch is the root.
+     */
+    private static final int minimumNodeSize = maximumNodeSize / 4;
+
+    /**
+     * The list without items.
+     */
+    static final Contents empty = new Contents(new Leaf(new Item[0], new String[0]));
+
+    /**
+     * Variable referencing the root node of this list.
+     */
+    private final Node root;
+
+    /**
+     * Initialize a new list with the given root node.
+     */
+    private Contents(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Return a new list with the given items and names.
+     *
+     * @param   items
+     *          The items, in lexicographical order of their names.
+     * @param   names
+     *          The names of the items, at the same indices.
+     * @note    The list is built bottom up, which takes linear time.
+     */
+    static Contents of(Item[] items, String[] names) {
+        int nbOfLeaves = Math.max(1, (items.length + maximumNodeSize - 1) / maximumNodeSize);
+        Node[] nodes = new Node[nbOfLeaves];
+        for (int i = 0; i < nbOfLeaves; i++) {
+            // spread the items evenly, so every leaf is at least half full
+            int from = (int) ((long) items.length * i / nbOfLeaves);
+            int to = (int) ((long) items.length * (i + 1) / nbOfLeaves);
+            nodes[i] = new Leaf(Arrays.copyOfRange(items, from, to), Arrays.copyOfRange(names, from, to));
+        }
+        while (nodes.length > 1) {
+            int nbOfBranches = (nodes.length + maximumNodeSize - 1) / maximumNodeSize;
+            Node[] branches = new Node[nbOfBranches];
+            for (int i = 0; i < nbOfBranches; i++) {
+                int from = (int) ((long) nodes.length * i / nbOfBranches);
+                int to = (int) ((long) nodes.length * (i + 1) / nbOfBranches);
+                branches[i] = new Branch(Arrays.copyOfRange(nodes, from, to));
+            }
+            nodes = branches;
+        }
+        return new Contents(nodes[0]);
+    }
+
+
+
+    /**********************************************************
+     * nodes
+     **********************************************************/
+
+    /**
+     * A class of nodes of the B-tree of a list.
+     */
+    private abstract static class Node {
+
+        /**
+         * Return the number of items under this node.
+         */
+        abstract int getNbOfItems();
+
+        /**
+         * Return the number of items in this leaf, or of children of this branch.
+         */
+        abstract int getNodeSize();
+
+        /**
+         * Return the name of the first item under this node.
+         */
+        abstract String getFirstName();
+
+        /**
+         * Return this node with the given item and name inserted at the given index,
+         * as one node or, if it is too large, as two.
+         */
+        abstract Node[] with(int index, Item item, String name);
+
+        /**
+         * Return this node without the item at the given index, which may be too small.
+         */
+        abstract Node without(int index);
+
+        /**
+         * Return this node and the given node of the same kind, which comes right after it,
+         * as one node or, if that is too large, as two.
+         */
+        abstract Node[] joinedWith(Node next);
+    }
+
+    /**
+     * A class of leaves of the B-tree of a list, that hold the items themselves.
+     */
+    private static final class Leaf extends Node {
+
+        /**
+         * The items of this leaf, in lexicographical order of their names.
+         */
+        private final Item[] items;
+
+        /**
+         * The names of the items of this leaf, at the same indices.
+         */
+        private final String[] names;
+
+        /**
+         * Initialize a new leaf with the given items and names.
+         */
+        private Leaf(Item[] items, String[] names) {
+            this.items = items;
+            this.names = names;
+        }
+
+        @Override
+        int getNbOfItems() {
+            return items.length;
+        }
+
+        @Override
+        int getNodeSize() {
+            return items.length;
+        }
+
+        @Override
+        String getFirstName() {
+            return names[0];
+        }
+
+        @Override
+        Node[] with(int index, Item item, String name) {
+            Item[] newItems = new Item[items.length + 1];
+            String[] newNames = new String[names.length + 1];
+            System.arraycopy(items, 0, newItems, 0, index);
+            System.arraycopy(names, 0, newNames, 0, index);
+            newItems[index] = item;
+            newNames[index] = name;
+            System.arraycopy(items, index, newItems, index + 1, items.length - index);
+            System.arraycopy(names, index, newNames, index + 1, names.length - index);
+            return split(newItems, newNames);
+        }
+
+        @Override
+        Node without(int index) {
+            Item[] newItems = new Item[items.length - 1];
+            String[] newNames = new String[names.length - 1];
+            System.arraycopy(items, 0, newItems, 0, index);
+            System.arraycopy(names, 0, newNames, 0, index);
+            System.arraycopy(items, index + 1, newItems, index, items.length - index - 1);
+            System.arraycopy(names, index + 1, newNames, index, names.length - index - 1);
+            return new Leaf(newItems, newNames);
+        }
+
+        @Override
+        Node[] joinedWith(Node next) {
+            Leaf nextLeaf = (Leaf) next;
+            Item[] newItems = Arrays.copyOf(items, items.length + nextLeaf.items.length);
+            String[] newNames = Arrays.copyOf(names, names.length + nextLeaf.names.length);
+            System.arraycopy(nextLeaf.items, 0, newItems, items.length, nextLeaf.items.length);
+            System.arraycopy(nextLeaf.names, 0, newNames, names.length, nextLeaf.names.length);
+            return split(newItems, newNames);
+        }
+
+        /**
+         * Return a leaf with the given items and names or, if there are too many of them,
+         * two leaves with half of them each.
+         */
+        private static Node[] split(Item[] items, String[] names) {
+            if (items.length <= maximumNodeSize) {
+                return new Node[] {new Leaf(items, names)};
+            }
+            int half = items.length / 2;
+            return new Node[] {
+                    new Leaf(Arrays.copyOfRange(items, 0, half), Arrays.copyOfRange(names, 0, half)),
+                    new Leaf(Arrays.copyOfRange(items, half, items.length),
+                            Arrays.copyOfRange(names, half, names.length))};
+        }
+    }
+
+    /**
+     * A class of branches of the B-tree of a list, that hold other nodes.
+     */
+    private static final class Branch extends Node {
+
+        /**
+         * The children of this branch, in the order of their items.
+         */
+        private final Node[] children;
+
+        /**
+         * The index, under this branch, of the first item of every child,
+         * followed by the number of items under this branch.
+         */
+        private final int[] offsets;
+
+        /**
+         * The name of the first item of every child.
+         */
+        private final String[] firstNames;
+
+        /**
+         * Initialize a new branch with the given children.
+         */
+        private Branch(Node[] children) {
+            this.children = children;
+            this.offsets = new int[children.length + 1];
+            this.firstNames = new String[children.length];
+            for (int i = 0; i < children.length; i++) {
+                offsets[i + 1] = offsets[i] + children[i].getNbOfItems();
+                firstNames[i] = children[i].getFirstName();
+            }
+        }
+
+        @Override
+        int getNbOfItems() {
+            return offsets[children.length];
+        }
+
+        @Override
+        int getNodeSize() {
+            return children.length;
+        }
+
+        @Override
+        String getFirstName() {
+            return firstNames[0];
+        }
+
+        /**
+         * Return the position of the child with the item at the given index under this branch.
+         */
+        private int getChildAt(int index) {
+            // no child is empty, so the offsets of the children are all different
+            int position = Arrays.binarySearch(offsets, 0, children.length, index);
+            return (position >= 0) ? position : -(position + 1) - 1;
+        }
+
+        /**
+         * Return the position of the last child whose first name doesn't come after the given
+         * name, or 0 if there is no such child.
+         */
+        private int getChildFor(String name) {
+            int low = 1;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (firstNames[middle].compareTo(name) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        @Override
+        Node[] with(int index, Item item, String name) {
+            // an item at the end of a child goes into that child, not at the start of the next one
+            int position = (index == 0) ? 0 : getChildAt(index - 1);
+            Node[] newChildren = children[position].with(index - offsets[position], item, name);
+            return split(replace(position, 1, newChildren));
+        }
+
+        @Override
+        Node without(int index) {
+            int position = getChildAt(index);
+            Node child = children[position].without(index - offsets[position]);
+            // only the root can have a single child, and it is replaced by that child
+            if (children.length == 1) {
+                return child;
+            }
+            if (child.getNodeSize() >= minimumNodeSize) {
+                return new Branch(replace(position, 1, new Node[] {child}));
+            }
+            // join a child that got too small with a neighbour
+            if (position > 0) {
+                return new Branch(replace(position - 1, 2, children[position - 1].joinedWith(child)));
+            }
+            return new Branch(replace(position, 2, child.joinedWith(children[position + 1])));
+        }
+
+        @Override
+        Node[] joinedWith(Node next) {
+            Branch nextBranch = (Branch) next;
+            Node[] newChildren = Arrays.copyOf(children, children.length + nextBranch.children.length);
+            System.arraycopy(nextBranch.children, 0, newChildren, children.length, nextBranch.children.length);
+            return split(newChildren);
+        }
+
+        /**
+         * Return the children of this branch with the given number of children from the given
+         * position on replaced by the given nodes.
+         */
+        private Node[] replace(int position, int nbOfReplacedChildren, Node[] nodes) {
+            Node[] newChildren = new Node[children.length - nbOfReplacedChildren + nodes.length];
+            System.arraycopy(children, 0, newChildren, 0, position);
+            System.arraycopy(nodes, 0, newChildren, position, nodes.length);
+            System.arraycopy(children, position + nbOfReplacedChildren, newChildren,
+                    position + nodes.length, children.length - position - nbOfReplacedChildren);
+            return newChildren;
+        }
+
+        /**
+         * Return a branch with the given children or, if there are too many of them,
+         * two branches with half of them each.
+         */
+        private static Node[] split(Node[] children) {
+            if (children.length <= maximumNodeSize) {
+                return new Node[] {new Branch(children)};
+            }
+            int half = children.length / 2;
+            return new Node[] {
+                    new Branch(Arrays.copyOfRange(children, 0, half)),
+                    new Branch(Arrays.copyOfRange(children, half, children.length))};
+        }
+    }
+
+
+
+    /**********************************************************
+     * queries
+     **********************************************************/
+
+    /**
+     * Return the number of items in this list.
+     */
+    @Override
+    public int size() {
+        return root.getNbOfItems();
+    }
+
+    /**
+     * Return the item at the given index.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          The given index is not the index of an item of this list.
+     *          | index < 0 || index >= size()
+     */
+    @Override
+    public Item get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index is not valid.");
+        }
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int position = branch.getChildAt(index);
+            index -= branch.offsets[position];
+            node = branch.children[position];
+        }
+        return ((Leaf) node).items[index];
+    }
+
+    /**
+     * Return the index of the given name, or (-(insertion point) - 1) if it isn't there.
+     *
+     * @param   name
+     *          The name to look up.
+     */
+    int indexOf(String name) {
+        Node node = root;
+        int offset = 0;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int position = branch.getChildFor(name);
+            offset += branch.offsets[position];
+            node = branch.children[position];
+        }
+        int index = Arrays.binarySearch(((Leaf) node).names, name);
+        return (index >= 0) ? offset + index : index - offset;
+    }
+
+    /**
+     * Return an iterator over the items of this list, in lexicographical order.
+     *
+     * @note    The iterator walks the leaves one after the other, so iterating over
+     *          all items takes linear time.
+     */
+    @Override
+    public Iterator<Item> iterator() {
+        return new Iterator<>() {
+
+            /**
+             * The leaf of the next item, the index of its first item, and the index of the next item.
+             */
+            private Leaf leaf;
+            private int leafOffset;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (leaf == null || index - leafOffset == leaf.items.length) {
+                    findLeaf();
+                }
+                return leaf.items[index++ - leafOffset];
+            }
+
+            /**
+             * Look up the leaf of the next item.
+             */
+            private void findLeaf() {
+                Node node = root;
+                leafOffset = 0;
+                while (node instanceof Branch) {
+                    Branch branch = (Branch) node;
+                    int position = branch.getChildAt(index - leafOffset);
+                    leafOffset += branch.offsets[position];
+                    node = branch.children[position];
+                }
+                leaf = (Leaf) node;
+            }
+        };
+    }
+
+
+
+    /**********************************************************
+     * changes
+     **********************************************************/
+
+    /**
+     * Return this list with the given item inserted at the given index, under its current name.
+     *
+     * @param   index
+     *          The index of the new item, which keeps the list ordered.
+     * @param   item
+     *          The item to insert.
+     */
+    Contents with(int index, Item item) {
+        Node[] nodes = root.with(index, item, item.getName());
+        return new Contents((nodes.length == 1) ? nodes[0] : new Branch(nodes));
+    }
+
+    /**
+     * Return this list without the item at the given index.
+     *
+     * @param   index
+     *          The index of the item to remove.
+     */
+    Contents without(int index) {
+        Node node = root.without(index);
+        // a root with a single child is replaced by that child
+        if (node instanceof Branch && node.getNodeSize() == 1) {
+            node = ((Branch) node).children[0];
+        }
+        return new Contents(node);
+    }
+
+    /**
+     * Return this list with the item at the given old index moved to the given new index,
+     * which is its index among the other items, under its current name.
+     *
+     * @param   oldIndex
+     *          The index of the item to move.
+     * @param   newIndex
+     *          The index of the item after it has been moved.
+     */
+    Contents moved(int oldIndex, int newIndex) {
+        return without(oldIndex).with(newIndex, get(oldIndex));
+    }
+
+}
@@ -1,12 +1,35 @@
 package filesystem;
 
 import be.kuleuven.cs.som.annotate.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A class of directories, inheriting from the class Item, within a filesystem
  * @invar   Each directory must have valid contents.
  *          | hasProperItems()
+ * @invar   The disk usage of each directory must be the sum of the disk usages of its items.
+ *          | hasProperDiskUsage()
+ * @invar   The statistics of each directory must match the items in its subtree.
+ *          | hasProperStatistics()
  * @invar   The names of the items in a directory must always be unique.
  *          | for each item in Item:
  *          |       for each otherItem in Item:
@@ -32,20 +55,23 @@ public class Directory extends Item {
      *          The name for this directory
      * @param   writable
      *          The writability of this directory
-     * @effect  A new item is initialized with the given name and parent directory.
-     *          | super(name, dir)
+     * @effect  A new item is initialized with the given name.
+     *          | super(name)
      * @effect	The writability is set to the given boolean
      * 			| setWritable(writable)
+     * @effect  If the given directory is effective, the new directory is moved to it.
+     *          | if (dir != null)
+     *          |   then move(dir)
      * @post    The new directory does not have any contents.
      *          | new.getNbItems() == 0
      */
     @Raw
     public Directory(Directory dir, String name, boolean writable) throws IllegalParentDirectoryException, NullPointerException {
-        super(name, dir); // This throws IllegalParentDirectoryException and NullPointerException
-        if (dir == null) {
-            setParentDirectory(null);
-        }
+        super(name);
         setWritable(writable);
+        if (dir != null) {
+            move(dir); // This throws IllegalParentDirectoryException and NullPointerException
+        }
     }
 
     /**
@@ -97,6 +123,30 @@ public class Directory extends Item {
         this(null, name, true);
     }
 
+    /**
+     * Initialize a new directory that was stored before, without a parent directory.
+     *
+     * @param   name
+     *          The name of the new directory.
+     * @param   writable
+     *          The writability of the new directory.
+     * @param   creationTime
+     *          The time of creation of the new directory.
+     * @param   modificationTime
+     *          The time of the last modification of the new directory, or Long.MIN_VALUE.
+     * @effect  This directory is initialized as an item with the given name and times.
+     *          | super(name, creationTime, modificationTime)
+     * @effect	The writability is set to the given boolean
+     * 			| setWritable(writable)
+     * @post    The new directory does not have any contents.
+     *          | new.getNbItems() == 0
+     */
+    @Raw
+    Directory(String name, boolean writable, long creationTime, long modificationTime) {
+        super(name, creationTime, modificationTime);
+        setWritable(writable);
+    }
+
 
 
     /**********************************************************
@@ -114,21 +164,30 @@ public class Directory extends Item {
      * @throws  NotWritableException
      *          The directory is not writable
      *          | isWriteable() == false
+     * @note    The hierarchy lock of the tree of this directory is shared, and this directory
+     *          and its parent directory are locked, so no item can be added to this directory
+     *          between the check for items and the deletion, while other directories of the
+     *          tree keep changing.
      */
     @Override
     public void delete() throws DirectoryNotEmptyException, NotWritableException {
-        if (!isWritable()){
-            throw new NotWritableException(this);
-        }
-        if (getNbOfItems() != 0) {
-            throw new DirectoryNotEmptyException(this);
+        Locks locks = lockWith(null, false);
+        try {
+            if (!isWritable()){
+                throw new NotWritableException(this);
+            }
+            if (getNbOfItems() != 0) {
+                throw new DirectoryNotEmptyException(this);
+            }
+            super.delete();
+        } finally {
+            locks.unlock();
         }
-        super.delete();
     }
 
 
     /**
-     * A recursive method for deleting a directory recursively
+     * A method for deleting a directory recursively
      *
      * @post    The directory and its contents are deleted
      *          | for each item in items:
@@ -138,30 +197,73 @@ public class Directory extends Item {
      *          When the directory is not recursively deletable
      *          because a file or directory within is not writable
      *          | ! isRecursivelyDeletable()
+     * @note    The whole subtree is checked first, so nothing is deleted if some item
+     *          within is not writable. Every directory in the subtree is then emptied
+     *          at once instead of item by item, so the time needed is linear in the
+     *          number of items in the subtree.
+     * @note    The hierarchy lock of the tree of this directory is held exclusively, so no
+     *          item in the subtree can be changed between the check and the deletion.
      */
     @Override
     public void deleteRecursive() throws NotWritableException {
-        if (!isRecursivelyDeletable()) throw new NotWritableException(this);
-        while (0 < getNbOfItems()) {
-            Item item = getItemAt(0);
-            item.deleteRecursive();
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(this));
+        try {
+            if (!isRecursivelyDeletable()) throw new NotWritableException(this);
+            changeDiskUsageBy(-getTotalDiskUsage());
+            // this directory itself is only counted off when it is deleted at the end
+            long[] subtreeStatistics = getStatisticsAsItem();
+            subtreeStatistics[nbOfDirectoriesSlot]--;
+            changeStatisticsBy(subtreeStatistics, -1);
+            ArrayDeque<Directory> directories = new ArrayDeque<>();
+            directories.push(this);
+            while (!directories.isEmpty()) {
+                Directory directory = directories.pop();
+                directory.setDiskUsage(0);
+                directory.clearStatistics();
+                for (Item item : directory.removeAllItems()) {
+                    item.isDeleted = true;
+                    item.setParentDirectory(null);
+                    if (item instanceof Directory) {
+                        directories.push((Directory) item);
+                    } else {
+                        item.updateRootAndDepth();
+                    }
+                }
+                // the directory is empty by now, so this doesn't walk a subtree
+                directory.updateRootAndDepth();
+            }
+            delete();
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
         }
-        super.delete();
     }
 
     /**
-     * A recursive method for checking if a directory is recursively deletable
+     * A method for checking if a directory is recursively deletable
      *
      * @return  True if the directory is deletable
      *          | for each item in directory:
      *          |   item.isWritable()
+     * @note    The subtree is folded by a subtree fold, so large subtrees are checked by
+     *          several threads at once, and the check stops as soon as some item fails it.
+     * @note    The fold walks a snapshot of the subtree, without any lock, so it checks the
+     *          items that were in the subtree when it started, while other threads go on
+     *          changing the subtree. The writability of every item is checked as it is at
+     *          the moment the fold gets there.
      */
     public boolean isRecursivelyDeletable() {
-        if (!isWritable()) return false;
-        for (Item item : items) {
-            if (item instanceof Directory && !((Directory) item).isRecursivelyDeletable()) return false;
+        try (SubtreeSnapshot snapshot = takeSnapshot()) {
+            boolean[] deletable = SubtreeFold.collect(snapshot, () -> new boolean[] {true},
+                    (result, item) -> {
+                        if (item instanceof Directory && !((Directory) item).isWritable()
+                                || item instanceof File && !((File) item).isWritable()) {
+                            result[0] = false;
+                        }
+                    },
+                    (result, other) -> result[0] &= other[0],
+                    result -> !result[0]);
+            return deletable[0];
         }
-        return true;
     }
 
 
@@ -184,7 +286,104 @@ public class Directory extends Item {
      */
     @Override
     public boolean isValidName(String name) {
-        return (name != null && name.matches("[a-zA-Z_0-9-]+"));
+        return NameTable.isValidDirectoryName(name);
+    }
+
+
+
+    /**********************************************************
+     * locking
+     **********************************************************/
+
+    /**
+     * Variable registering the number of directories that have been created so far.
+     */
+    private static final AtomicLong nbOfDirectories = new AtomicLong();
+
+    /**
+     * Variable referencing the lock that guards the items of this directory.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Variable registering the place of this directory in the order in which
+     * directories are locked.
+     */
+    private final long lockOrder = nbOfDirectories.getAndIncrement();
+
+    /**
+     * Return the place of this directory in the order in which directories are locked,
+     * which is unique among all directories.
+     */
+    @Basic @Immutable
+    long getLockOrder() {
+        return lockOrder;
+    }
+
+    /**
+     * A method for locking the given directories, skipping null and repeated directories.
+     *
+     * @param   directories
+     *          The directories to lock.
+     * @return  The locked directories, to be unlocked with unlockAll().
+     * @note    Directories are always locked in the order in which they were created, so two
+     *          threads that each lock several directories never wait for one another in a
+     *          circle. A thread that shares the hierarchy lock and holds the lock of a
+     *          directory must therefore not lock another directory, except through this method.
+     */
+    @Model
+    protected static Directory[] lockAll(Directory... directories) {
+        Directory[] lockedDirectories = new Directory[directories.length];
+        int nbOfLockedDirectories = 0;
+        // an insertion sort, because only a few directories are locked at once
+        for (Directory dir : directories) {
+            if (dir == null) continue;
+            int i = nbOfLockedDirectories;
+            while (i > 0 && lockedDirectories[i - 1].lockOrder > dir.lockOrder) i--;
+            if (i > 0 && lockedDirectories[i - 1] == dir) continue;
+            System.arraycopy(lockedDirectories, i, lockedDirectories, i + 1, nbOfLockedDirectories - i);
+            lockedDirectories[i] = dir;
+            nbOfLockedDirectories++;
+        }
+        for (int i = 0; i < nbOfLockedDirectories; i++) {
+            lockedDirectories[i].lock.lock();
+        }
+        return lockedDirectories;
+    }
+
+    /**
+     * A method for locking the given directories, skipping null and repeated directories,
+     * for when many directories are locked at once.
+     *
+     * @param   directories
+     *          The directories to lock.
+     * @return  The locked directories, to be unlocked with unlockAll().
+     * @note    The directories are locked in the same order as by lockAll(Directory...),
+     *          but they are sorted in time n log n rather than quadratic time.
+     */
+    @Model
+    protected static Directory[] lockAll(Collection<Directory> directories) {
+        Directory[] lockedDirectories = directories.stream().filter(dir -> dir != null).distinct()
+                .sorted(Comparator.comparingLong(dir -> dir.lockOrder)).toArray(Directory[]::new);
+        for (Directory dir : lockedDirectories) {
+            dir.lock.lock();
+        }
+        return lockedDirectories;
+    }
+
+    /**
+     * A method for unlocking directories that were locked by lockAll().
+     *
+     * @param   lockedDirectories
+     *          The directories returned by lockAll().
+     */
+    @Model
+    protected static void unlockAll(Directory[] lockedDirectories) {
+        for (int i = lockedDirectories.length - 1; i >= 0; i--) {
+            if (lockedDirectories[i] != null) {
+                lockedDirectories[i].lock.unlock();
+            }
+        }
     }
 
 
@@ -195,8 +394,127 @@ public class Directory extends Item {
 
     /**
      * A variable referencing the items within this directory.
+     *
+     * @note    The contents are never changed: every change to the items of this
+     *          directory replaces them, while the lock of this directory is held.
+     *          Readers take the contents as they are at that moment and use them
+     *          without any lock, however long they need them.
+     * @note    New contents share all but a logarithmic part of the old ones, so
+     *          replacing them takes logarithmic time in the number of items.
+     */
+    private volatile Contents contents = Contents.empty;
+
+    /**
+     * Variable referencing the contents this directory had before, as long as some
+     * snapshot may need them, or null.
      */
-    private ArrayList<Item> items = new ArrayList<>();
+    private volatile History<Contents> olderContents = null;
+
+    /**
+     * A variable referencing the items within this directory, indexed by their
+     * name in lower case.
+     *
+     * @note    Names are unique in a directory, but names that only differ in the case
+     *          of their letters are not, so every lower case name maps to a (mostly
+     *          singleton) list of items.
+     * @note    The index is only changed while the lock of this directory is held,
+     *          but it can be read without that lock.
+     */
+    private final ConcurrentHashMap<String, List<Item>> itemsByFoldedName = new ConcurrentHashMap<>();
+
+    /**
+     * Return the given name in lower case, as it is used to index the items
+     * of a directory.
+     *
+     * @param   name
+     *          The name to fold.
+     * @return  The given name with all letters in lower case.
+     *          | result == name.toLowerCase()
+     * @note    For names in use, the folded name is kept by the name table.
+     */
+    private static String getFoldedName(String name) {
+        return NameTable.getFoldedName(name);
+    }
+
+    /**
+     * A method for adding an item to the index on folded names of this directory.
+     *
+     * @param   item
+     *          The item to index.
+     * @post    The item can be found by its name, regardless of the case of the letters.
+     *          | new.containsDiskItemWithName(item.getName())
+     */
+    @Raw
+    private void indexItem(Item item) {
+        String foldedName = getFoldedName(item.getName());
+        List<Item> namesakes = itemsByFoldedName.get(foldedName);
+        if (namesakes == null) {
+            itemsByFoldedName.put(foldedName, List.of(item));
+        } else {
+            ArrayList<Item> newNamesakes = new ArrayList<>(namesakes);
+            newNamesakes.add(item);
+            itemsByFoldedName.put(foldedName, List.copyOf(newNamesakes));
+        }
+    }
+
+    /**
+     * A method for removing an item from the index on folded names of this directory.
+     *
+     * @param   item
+     *          The item to remove from the index.
+     * @post    The item can no longer be found by its name.
+     *          | new.getItemWithName(item.getName()) == null
+     */
+    @Raw
+    private void unindexItem(Item item) {
+        unindexItem(item, item.getName());
+    }
+
+    /**
+     * A method for removing an item from the index on folded names of this directory,
+     * where it is indexed under the given name.
+     *
+     * @param   item
+     *          The item to remove from the index.
+     * @param   name
+     *          The name under which the item is indexed.
+     * @post    The item can no longer be found by the given name.
+     */
+    @Raw
+    private void unindexItem(Item item, String name) {
+        String foldedName = getFoldedName(name);
+        List<Item> namesakes = itemsByFoldedName.get(foldedName);
+        if (namesakes == null) return;
+        if (namesakes.size() == 1) {
+            if (namesakes.get(0) == item) itemsByFoldedName.remove(foldedName);
+        } else {
+            ArrayList<Item> newNamesakes = new ArrayList<>(namesakes);
+            newNamesakes.remove(item);
+            itemsByFoldedName.put(foldedName, List.copyOf(newNamesakes));
+        }
+    }
+
+    /**
+     * Return the item in this directory with exactly the given name, or null
+     * if there is no such item.
+     *
+     * @param   name
+     *          The name of the item to look up.
+     * @return  The item with the given name, if there is one.
+     *          | if (for some item in items: item.getName().equals(name))
+     *          |   then result.getName().equals(name)
+     *          |   else result == null
+     */
+    @Raw
+    private Item getItemWithName(String name) {
+        ensureLoaded();
+        List<Item> namesakes = itemsByFoldedName.get(getFoldedName(name));
+        if (namesakes == null) return null;
+        for (Item item : namesakes) {
+            if (item.getName().equals(name)) return item;
+        }
+        return null;
+    }
 
     /**
      * A method for adding an item to a directory
@@ -205,6 +523,12 @@ public class Directory extends Item {
      *          | setModificationTime()
      * @effect  The parent directory of the item is set to this directory
      *          | item.setParentDirectory(this)
+     * @effect  The disk usage of this directory and its ancestors is increased
+     *          with the disk usage of the item.
+     *          | changeDiskUsageBy(item.getTotalDiskUsage())
+     * @effect  The statistics of this directory and its ancestors are increased
+     *          with the statistics of the item.
+     *          | changeStatisticsBy(item.getStatisticsAsItem(), 1)
      * @post    The item is added to the directory
      *          | new.getNbItems() == getNbItems() + 1
      * @post    The item is at the correct index so that the directory
@@ -216,22 +540,378 @@ public class Directory extends Item {
      * @throws  NullPointerException
      *          The item is null.
      *          | item == null
+     * @throws  ArithmeticException
+     *          The disk usage of this directory or of some directory it is in would overflow,
+     *          in which case the item is not added.
+     *          | ! canChangeDiskUsageBy(item.getTotalDiskUsage())
      */
     @Raw @Model
     protected void addItem(Item item) throws
-            NullPointerException, NotWritableException {
+            NullPointerException, NotWritableException, ArithmeticException {
         if (!isWritable()) {
             throw new NotWritableException(this);
         }
         if (item == null) {
             throw new NullPointerException("Item is null.");
         }
-        int index = getIndexForItem(item);
-        insertItemAtIndex(index, item);
-        setModificationTime();
-        changeDiskUsageBy(item.getTotalDiskUsage());
+        lock.lock();
+        try {
+            if (!canChangeDiskUsageBy(item.getTotalDiskUsage())) {
+                throw new ArithmeticException("The disk usage would overflow.");
+            }
+            int index = getIndexForItem(item);
+            insertItemAtIndex(index, item);
+            setModificationTime();
+            changeDiskUsageBy(item.getTotalDiskUsage());
+            changeStatisticsBy(item.getStatisticsAsItem(), 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A method for moving a batch of items to this directory at once.
+     *
+     * @param   newItems
+     *          The items to be moved to this directory.
+     * @effect  Every item that has an effective parent directory is removed from
+     *          that parent directory.
+     *          | for each item in newItems:
+     *          |   if (item.getParentDirectory() != null)
+     *          |       then item.getParentDirectory().removeAsItem(item)
+     * @effect  The parent directory of every item is set to this directory
+     *          | for each item in newItems:
+     *          |   item.setParentDirectory(this)
+     * @effect  The modification time is set to the current time, once for the whole batch.
+     *          | setModificationTime()
+     * @post    All items are added to the directory.
+     *          | new.getNbOfItems() == getNbOfItems() + newItems.size()
+     * @post    The items are at the correct index so that the directory
+     *          is ordered.
+     *          | new.hasProperItems() && new.isOrdered()
+     * @throws  NotWritableException
+     *          The directory is not writable.
+     *          | ! isWritable()
+     * @throws  NullPointerException
+     *          The collection or one of its items is null.
+     *          | newItems == null || newItems.contains(null)
+     * @throws  IllegalParentDirectoryException
+     *          One of the items cannot be added to this directory, or two items
+     *          in the batch have the same name. In that case no item is moved.
+     *          | for some item in newItems:
+     *          |   ! item.isAddableToDirectory(this)
+     *          |   || ( for some other in newItems:
+     *          |           other != item && other.getName().equals(item.getName()) )
+     * @throws  ArithmeticException
+     *          The disk usage of this directory or of some directory it is in would
+     *          overflow. In that case no item is moved.
+     *          | ! canTakeDiskUsageOf(newItems)
+     * @note    The effect is the same as moving each item to this directory on its own,
+     *          but the new items are sorted once and merged with the items already in
+     *          this directory in a single pass, instead of being inserted one by one.
+     * @note    Like move(), this shares the hierarchy locks of the trees involved and only
+     *          locks this directory, the directories the items leave and the items that are
+     *          directories, unless one of the items can only be moved while the hierarchy
+     *          locks are held exclusively. Each directory is locked once for the whole batch,
+     *          so the batch is moved at once.
+     */
+    public void addItems(Collection<? extends Item> newItems) throws
+            NotWritableException, NullPointerException, IllegalParentDirectoryException, ArithmeticException {
+        if (addItems(newItems, false)) return;
+        addItems(newItems, true);
+    }
+
+    /**
+     * A method for moving a batch of items to this directory at once while holding
+     * the hierarchy locks exclusively or sharing them, as given.
+     *
+     * @param   newItems
+     *          The items to be moved to this directory.
+     * @param   exclusively
+     *          Whether the hierarchy locks are to be held exclusively.
+     * @return  False if the hierarchy locks are shared and one of the items can only be
+     *          moved while they are held exclusively, in which case nothing has changed;
+     *          true otherwise.
+     * @effect  See addItems(newItems).
+     */
+    @Model
+    private boolean addItems(Collection<? extends Item> newItems, boolean exclusively) throws
+            NotWritableException, NullPointerException, IllegalParentDirectoryException, ArithmeticException {
+        ArrayList<Item> involvedItems = new ArrayList<>();
+        if (newItems != null) {
+            for (Item item : newItems) {
+                if (item != null) involvedItems.add(item);
+            }
+        }
+        Locks locks = lockWith(involvedItems, this, exclusively);
+        try {
+            Set<MutationJournal> journalsToCommit;
+            try {
+                if (!isWritable()) {
+                    throw new NotWritableException(this);
+                }
+                if (newItems == null) {
+                    throw new NullPointerException("Collection of items is null.");
+                }
+                HashSet<String> newNames = new HashSet<>();
+                for (Item item : newItems) {
+                    if (item == null) {
+                        throw new NullPointerException("Item is null.");
+                    }
+                    if (!exclusively && item.needsExclusiveMoveTo(this)) return false;
+                    if (!item.isAddableToDirectory(this) || !newNames.add(item.getName())) {
+                        throw new IllegalParentDirectoryException(this);
+                    }
+                }
+                if (!canTakeDiskUsageOf(newItems)) {
+                    throw new ArithmeticException("The disk usage would overflow.");
+                }
+                ArrayList<Item> sortedItems = new ArrayList<>(newItems);
+                sortedItems.sort(Comparator.comparing(Item::getName));
+                MutationJournal[] oldJournals = new MutationJournal[sortedItems.size()];
+                String[] oldPaths = new String[sortedItems.size()];
+                // detach in reverse order, so that items taken from the end of their
+                // old parent directory don't cause the remaining items to shift
+                for (int i = sortedItems.size() - 1; i >= 0; i--) {
+                    Item item = sortedItems.get(i);
+                    if (item.getParentDirectory() != null) {
+                        oldJournals[i] = item.getJournal();
+                        if (oldJournals[i] != null) oldPaths[i] = oldJournals[i].getPathOf(item);
+                        item.getParentDirectory().removeAsItem(item);
+                    }
+                    item.setParentDirectory(this);
+                    item.updateRootAndDepth();
+                }
+                mergeItems(sortedItems);
+                registerHierarchyChange(locks.getLockedTrees());
+                for (ItemTree oldTree : locks.getLockedTrees()) getTree().addUnloadedDirectoriesOf(oldTree);
+                setModificationTime();
+                long deltaDiskUsage = 0;
+                long[] deltaStatistics = new long[nbOfStatistics];
+                for (Item item : sortedItems) {
+                    deltaDiskUsage += item.getTotalDiskUsage();
+                    long[] statistics = item.getStatisticsAsItem();
+                    for (int i = 0; i < nbOfStatistics; i++) {
+                        deltaStatistics[i] += statistics[i];
+                    }
+                }
+                changeDiskUsageBy(deltaDiskUsage);
+                changeStatisticsBy(deltaStatistics, 1);
+                journalsToCommit = recordMoves(sortedItems, oldJournals, oldPaths);
+            } finally {
+                locks.unlockDirectories();
+            }
+            for (MutationJournal journal : journalsToCommit) {
+                journal.commit();
+            }
+            return true;
+        } finally {
+            locks.unlock();
+        }
+    }
+
+    /**
+     * Check whether the disk usage of this directory and of the directories it is in
+     * can be increased with the disk usage of the given items, once those items have
+     * left the directories they are in now.
+     *
+     * @param   newItems
+     *          The items to be moved to this directory.
+     * @return  True if and only if, for this directory and every directory it is in,
+     *          its disk usage, increased with the disk usage of the given items that are
+     *          not in it already, does not overflow.
+     *          | result == ( for each dir in {this} union {dir | this.isDirectOrIndirectChildOf(dir)}:
+     *          |     dir.getTotalDiskUsage()
+     *          |       + sum({item.getTotalDiskUsage() | item in newItems
+     *          |               && !item.isDirectOrIndirectChildOf(dir)}) <= Long.MAX_VALUE )
+     * @note    The disk usage of an item that is moved within the same tree already counts
+     *          in the directories that hold both its old and its new place, so it doesn't
+     *          change their disk usage.
+     */
+    boolean canTakeDiskUsageOf(Collection<? extends Item> newItems) {
+        ArrayList<Directory> directories = new ArrayList<>();
+        IdentityHashMap<Directory, Integer> positions = new IdentityHashMap<>();
+        for (Directory dir = this; dir != null; dir = dir.getParentDirectory()) {
+            positions.put(dir, directories.size());
+            directories.add(dir);
+        }
+        // for every directory, the disk usage of the new items that are in it already
+        long[] diskUsagesInside = new long[directories.size()];
+        long deltaDiskUsage = 0;
+        for (Item item : newItems) {
+            long diskUsage = item.getTotalDiskUsage();
+            if (deltaDiskUsage > Long.MAX_VALUE - diskUsage) return false;
+            deltaDiskUsage += diskUsage;
+            if (item.getParentDirectory() == null || item.getRoot() != getRoot()) continue;
+            for (Directory dir = item.getParentDirectory(); dir != null; dir = dir.getParentDirectory()) {
+                Integer position = positions.get(dir);
+                if (position != null) {
+                    diskUsagesInside[position] += diskUsage;
+                    break;
+                }
+            }
+        }
+        long diskUsageInside = 0;
+        for (int i = 0; i < directories.size(); i++) {
+            diskUsageInside += diskUsagesInside[i];
+            if (directories.get(i).getTotalDiskUsage() > Long.MAX_VALUE - (deltaDiskUsage - diskUsageInside)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record the moves of the given items to this directory in the journals concerned.
+     *
+     * @param   movedItems
+     *          The items that have been moved to this directory.
+     * @param   oldJournals
+     *          The journals of the trees the items were in, if any.
+     * @param   oldPaths
+     *          The paths of the items within those trees.
+     * @return  The journals in which a move is recorded, which are still to be committed.
+     * @effect  The move of every item is recorded.
+     *          | for each i in 0..movedItems.size()-1:
+     *          |   MutationJournal.recordMove(oldJournals[i], oldPaths[i], movedItems.get(i))
+     */
+    @Model
+    private Set<MutationJournal> recordMoves(List<Item> movedItems, MutationJournal[] oldJournals, String[] oldPaths) {
+        MutationJournal journal = getJournal();
+        Set<MutationJournal> journalsToCommit = new HashSet<>();
+        for (int i = 0; i < movedItems.size(); i++) {
+            if (oldJournals[i] == null && journal == null) continue;
+            MutationJournal.recordMove(oldJournals[i], oldPaths[i], movedItems.get(i));
+            if (oldJournals[i] != null) journalsToCommit.add(oldJournals[i]);
+            if (journal != null) journalsToCommit.add(journal);
+        }
+        return journalsToCommit;
+    }
+
+    /**
+     * A method for attaching items that were stored before to this directory at once.
+     *
+     * @param   sortedItems
+     *          The items to attach, in lexicographical order of their names.
+     * @pre     This directory has no items yet, and the given items have no parent
+     *          directory, have distinct names and have no items in them yet.
+     *          | getNbOfItems() == 0
+     * @post    The given items are the items of this directory, in the given order.
+     *          | for each I in 0..sortedItems.length-1:
+     *          |   new.getItemAt(I+1) == sortedItems[I]
+     * @effect  The disk usage and the statistics of this directory and its ancestors
+     *          are increased with those of the given items.
+     * @note    Neither the writability nor the modification time of this directory is
+     *          involved: the items were in it already when it was stored. Attaching the
+     *          items of a restored tree from the top down takes time linear in the
+     *          number of items and the depth of the tree.
+     */
+    @Raw
+    void attachRestoredItems(Item[] sortedItems) {
+        lock.lock();
+        try {
+            attach(sortedItems);
+            long deltaDiskUsage = 0;
+            long[] deltaStatistics = new long[nbOfStatistics];
+            for (Item item : sortedItems) {
+                deltaDiskUsage += item.getTotalDiskUsage();
+                long[] statistics = item.getStatisticsAsItem();
+                for (int j = 0; j < nbOfStatistics; j++) {
+                    deltaStatistics[j] += statistics[j];
+                }
+            }
+            changeDiskUsageBy(deltaDiskUsage);
+            changeStatisticsBy(deltaStatistics, 1);
+            registerHierarchyChange(getTree());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A method for making the given items the items of this directory, without
+     * changing the disk usage or the statistics of any directory.
+     *
+     * @param   sortedItems
+     *          The items to attach, in lexicographical order of their names.
+     * @pre     The lock of this directory is held, this directory has no items yet, and the
+     *          given items have no parent directory, have distinct names and have no items
+     *          in them yet.
+     * @post    The given items are the items of this directory, in the given order.
+     *          | for each I in 0..sortedItems.length-1:
+     *          |   new.getItemAt(I+1) == sortedItems[I]
+     */
+    @Raw @Model
+    private void attach(Item[] sortedItems) {
+        String[] names = new String[sortedItems.length];
+        for (int i = 0; i < sortedItems.length; i++) {
+            Item item = sortedItems[i];
+            names[i] = item.getName();
+            item.setParentDirectory(this);
+            item.updateRootAndDepth();
+            indexItem(item);
+        }
+        contents = Contents.of(sortedItems, names);
+    }
+
+    /**
+     * A method for merging a sorted list of new items with the items of this directory.
+     *
+     * @param   sortedItems
+     *          The new items, in lexicographical order of their names.
+     * @pre     None of the new items has the name of an item that is already in this directory.
+     * @post    The new items are added to this directory.
+     *          | new.getNbOfItems() == getNbOfItems() + sortedItems.size()
+     * @post    The directory is ordered.
+     *          | new.isOrdered()
+     */
+    @Raw
+    private void mergeItems(ArrayList<Item> sortedItems) {
+        lock.lock();
+        try {
+            Contents oldContents = getContents();
+            if ((long) sortedItems.size() * mergeFactor < oldContents.size()) {
+                // a few new items are inserted one by one, in logarithmic time each
+                Contents newContents = oldContents;
+                for (Item item : sortedItems) {
+                    int index = newContents.indexOf(item.getName());
+                    newContents = newContents.with(-(index + 1), item);
+                }
+                replaceContents(newContents);
+            } else {
+                int size = oldContents.size() + sortedItems.size();
+                Item[] mergedItems = new Item[size];
+                String[] mergedNames = new String[size];
+                Iterator<Item> oldItems = oldContents.iterator();
+                Item oldItem = oldItems.hasNext() ? oldItems.next() : null;
+                int j = 0;
+                for (int k = 0; k < size; k++) {
+                    if (j == sortedItems.size() || (oldItem != null
+                            && oldItem.getName().compareTo(sortedItems.get(j).getName()) < 0)) {
+                        mergedItems[k] = oldItem;
+                        oldItem = oldItems.hasNext() ? oldItems.next() : null;
+                    } else {
+                        mergedItems[k] = sortedItems.get(j++);
+                    }
+                    mergedNames[k] = mergedItems[k].getName();
+                }
+                replaceContents(Contents.of(mergedItems, mergedNames));
+            }
+            for (Item item : sortedItems) {
+                indexItem(item);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Variable registering how many times more items a directory must have than are
+     * merged with them, for the new items to be inserted one by one rather than
+     * all items to be merged in a single pass.
+     */
+    private static final int mergeFactor = 16;
+
     /**
      * A method for checking the index of a certain item
      *
@@ -241,14 +921,27 @@ public class Directory extends Item {
      */
     @Raw
     private int getIndexForItem(Item item) {
-        // get the index based on the lexicographical order
-        int index = 0;
-        for (Item otherItem : items) {
-            if (otherItem.getName().compareTo(item.getName()) < 0) {
-                index++;
-            }
-        }
-        return index;
+        int index = getIndexForName(item.getName());
+        return (index >= 0) ? index : -(index + 1);
+    }
+
+    /**
+     * A method for looking up the position of a name among the items of this directory.
+     *
+     * @param   name
+     *          The name to look up.
+     * @return  The index of the item with the given name if it is present in this directory,
+     *          otherwise (-(insertion point) - 1), where the insertion point is the index
+     *          at which an item with the given name would have to be inserted.
+     *          | if (for some I in 0..getNbOfItems()-1: getItemAt(I).getName().equals(name))
+     *          |   then getItemAt(result).getName().equals(name)
+     *          |   else result < 0
+     * @note    Because the items are kept in lexicographical order, a binary search is used,
+     *          so this takes logarithmic time in the number of items.
+     */
+    @Raw
+    private int getIndexForName(String name) {
+        return getContents().indexOf(name);
     }
 
     /**
@@ -269,7 +962,8 @@ public class Directory extends Item {
         if(!canHaveAsIndex(index)) {
             throw new IndexOutOfBoundsException();
         }
-        items.add(index, item);
+        replaceContents(getContents().with(index, item));
+        indexItem(item);
     }
 
     /**
@@ -286,15 +980,11 @@ public class Directory extends Item {
      */
     public Item getItem(String name) throws IllegalArgumentException {
         if (!super.isValidName(name)) throw new IllegalArgumentException("Name is not valid.");
-        if (!containsDiskItemWithNameCaseSensitive(name)) {
+        Item item = getItemWithName(name);
+        if (item == null) {
             throw new IllegalArgumentException("No item with the given name in the directory.");
         }
-        for (Item item : items) {
-            if (item.getName().equals(name)) {
-                return item;
-            }
-        }
-        throw new IllegalArgumentException("No item with the given name in the directory.");
+        return item;
     }
 
     /**
@@ -307,10 +997,7 @@ public class Directory extends Item {
      *          | ! canHaveAsIndex(index)
      */
     public Item getItemAt(int index) throws IndexOutOfBoundsException {
-        if (!canHaveAsIndex(index)) {
-            throw new IndexOutOfBoundsException("Index is not valid.");
-        }
-        return items.get(index);
+        return getContents().get(index);
     }
 
     /**
@@ -324,12 +1011,27 @@ public class Directory extends Item {
      * @throws  NullPointerException
      *          The item is null.
      *          | item == null
+     * @note    The item is looked up by its name, in logarithmic time. Only while the item
+     *          is being renamed, its name and the items of this directory are looked up
+     *          again with the lock of this directory held.
      */
     public int getIndexOf(Item item) throws NullPointerException, IllegalArgumentException {
         if (!hasAsItem(item)) {
             throw new IllegalArgumentException("Item is not in directory.");
         }
-        return items.indexOf(item);
+        Contents contents = getContents();
+        int index = contents.indexOf(item.getName());
+        if (index >= 0 && contents.get(index) == item) return index;
+        // the item is being renamed: its name and the contents match while the lock is held
+        lock.lock();
+        try {
+            if (!hasAsItem(item)) {
+                throw new IllegalArgumentException("Item is not in directory.");
+            }
+            return getIndexForName(item.getName());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -356,12 +1058,15 @@ public class Directory extends Item {
      * @throws  NullPointerException
      *          The item is null.
      *          | item == null
+     * @note    An item is in a directory if and only if that directory is its parent
+     *          directory, so this is checked through the parent directory of the item
+     *          instead of by searching the items of this directory.
      */
     public boolean hasAsItem(Item item) throws NullPointerException{
         if (item == null) {
             throw new NullPointerException("Item is null.");
         }
-        return items.contains(item);
+        return item.getParentDirectory() == this;
     }
 
     /**
@@ -380,12 +1085,8 @@ public class Directory extends Item {
         if (!super.isValidName(name)) {
             throw new IllegalArgumentException("Name is not valid.");
         }
-        for (Item item : items) {
-            if (item.getName().equalsIgnoreCase(name)) {
-                return true;
-            }
-        }
-        return false;
+        ensureLoaded();
+        return itemsByFoldedName.containsKey(getFoldedName(name));
     }
 
     /**
@@ -404,20 +1105,34 @@ public class Directory extends Item {
         if (!super.isValidName(name)) {
             throw new IllegalArgumentException("Name is not valid.");
         }
-        if (getNbOfItems() == 0) return false;
-        for (Item item : items) {
-            if (item.getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        return getItemWithName(name) != null;
     }
 
     /**
      * A method for getting the number of items in a directory.
+     *
+     * @note    The items of a directory that is materialized lazily are not made for this.
      */
     public int getNbOfItems() {
-        return items.size();
+        LazyTree tree = unloadedTree;
+        if (tree != null) return tree.getNbOfItems(unloadedId);
+        return contents.size();
+    }
+
+    /**
+     * Return the items in this directory, as they are at this moment.
+     *
+     * @return  A list with the items in this directory, in lexicographical order.
+     *          | for each I in 0..getNbOfItems()-1:
+     *          |   result.get(I) == getItemAt(I)
+     * @note    The returned list can't be changed and doesn't follow later changes to this
+     *          directory, so it can be iterated without any lock while other threads
+     *          change this directory. Taking it takes constant time.
+     * @note    The list is only a view on this directory: items in a directory within
+     *          still change, and so do the names and sizes of the items in the list.
+     */
+    public List<Item> getItems() {
+        return getContents();
     }
 
     /**
@@ -446,7 +1161,7 @@ public class Directory extends Item {
      */
     @Raw
     public boolean hasProperItems() {
-        for (Item item : items) {
+        for (Item item : getContents()) {
             if ( !canHaveAsItem(item) ) {
                 return false;
             }
@@ -466,10 +1181,11 @@ public class Directory extends Item {
     @Raw
     public boolean isOrdered() {
         String previousName = "";
-        for (Item item : items) {
+        for (Item item : getContents()) {
             if (item.getName().compareTo(previousName) < 0) {
                 return false;
             }
+            previousName = item.getName();
         }
         return true;
     }
@@ -479,6 +1195,16 @@ public class Directory extends Item {
      *
      * @param   item
      *          The item to be removed.
+     * @post    The item is no longer in the directory.
+     *          | new.getNbOfItems() == getNbOfItems() - 1
+     * @effect  The disk usage of this directory and its ancestors is decreased
+     *          with the disk usage of the item.
+     *          | changeDiskUsageBy(-item.getTotalDiskUsage())
+     * @effect  The statistics of this directory and its ancestors are decreased
+     *          with the statistics of the item.
+     *          | changeStatisticsBy(item.getStatisticsAsItem(), -1)
+     * @note    The position of the item is found with a binary search on its name,
+     *          so no scan over the items of this directory is needed.
      * @throws  IllegalItemException
      *          The item is not valid.
      *          | ! hasAsItem(item)
@@ -487,102 +1213,1110 @@ public class Directory extends Item {
      *          | item == null
      */
     protected void removeAsItem(Item item) throws NullPointerException, IllegalItemException {
-        if (!hasAsItem(item)) {
-            throw new IllegalItemException(item);
+        lock.lock();
+        try {
+            if (!hasAsItem(item)) {
+                throw new IllegalItemException(item);
+            }
+            replaceContents(getContents().without(getIndexForName(item.getName())));
+            unindexItem(item);
+            changeDiskUsageBy(-item.getTotalDiskUsage());
+            changeStatisticsBy(item.getStatisticsAsItem(), -1);
+        } finally {
+            lock.unlock();
         }
-        items.remove(item);
     }
 
-
-
-    /**********************************************************
-     * parent directory - defensive programming
-     **********************************************************/
-
     /**
-     * A method for making a directory a root directory
+     * A method for removing all items from a directory at once.
      *
-     * @effect  The parent directory is set to null
-     *          | setParentDirectory(null)
-     * @effect  The modification time is set to the current time
-     *          | setModificationTime()
+     * @return  The items that were in this directory, in lexicographical order.
+     *          | result.equals(items)
+     * @post    The directory has no items.
+     *          | new.getNbOfItems() == 0
+     * @note    The parent directory of the removed items is not changed,
+     *          this is left to the caller.
      */
-    public void makeRoot() {
-        setParentDirectory(null);
-        setModificationTime();
+    @Raw @Model
+    private Item[] removeAllItems() {
+        lock.lock();
+        try {
+            Item[] removedItems = getContents().toArray(new Item[0]);
+            replaceContents(Contents.empty);
+            itemsByFoldedName.clear();
+            return removedItems;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Check whether this directory can have the given directory as its
-     * parent directory.
+     * A method for putting an item of this directory back in order,
+     * right after that item has been given a new name.
      *
-     * @param   dir
-     *          The directory to check.
-     * @return  True if the given directory can be the parent directory
-     *          of an item and if no loops wil be created.
-     *          | result == ( super.canHaveAsParentDirectory(dir)
-     *          |  && !dir.isDirectOrIndirectChildOf(this) && dir != this)
+     * @param   item
+     *          The item that has been renamed.
+     * @param   oldName
+     *          The name of the item before it was renamed.
+     * @pre     The item is in this directory.
+     *          | hasAsItem(item)
+     * @post    The item is at the correct index so that the directory
+     *          is ordered.
+     *          | new.hasProperItems() && new.isOrdered()
+     * @note    The contents of this directory are replaced at once, so readers either
+     *          find the item at its old place or at its new one.
+     * @note    The modification time of this directory is not changed, renaming an item
+     *          only changes the item itself.
      */
-    @Override
-    public boolean canHaveAsParentDirectory(Directory dir) {
-        return (dir == null) || (( super.canHaveAsParentDirectory(dir) )
-                // check for loops
-                && ( !dir.isDirectOrIndirectChildOf(this) ) && (dir != this));
+    @Raw @Model
+    protected void finishRenaming(Item item, String oldName) {
+        lock.lock();
+        try {
+            int oldIndex = getContents().indexOf(oldName);
+            // the index among the other items is one less past the old index
+            int newIndex = getIndexForItem(item);
+            if (newIndex > oldIndex) newIndex--;
+            replaceContents(contents.moved(oldIndex, newIndex));
+            indexItem(item);
+            unindexItem(item, oldName);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
 
     /**********************************************************
-     * disk usage - nominal programming
+     * lazy loading - total programming
      **********************************************************/
 
     /**
-     * @note variable diskUsage and getter getDiskUsage() are inherited from Item.
+     * Variable referencing the lazily materialized tree the items of this directory are
+     * still to be made from, or null if this directory has all of its items.
      */
+    private volatile LazyTree unloadedTree = null;
 
     /**
-     * A method for incrementing or decrementing the disk usage of this directory.
-     *
-     * @param   delta
-     *          The number of bytes to change the disk usage by.
-     *          This can be a positive or negative number.
-     * @effect  The disk usage is set to the current disk usage, increased with
-     *          the given delta (positive or negative).
-     *          | setDiskUsage(getDiskUsage() + delta);
+     * Variable registering the identifier of this directory in the tree its items
+     * are still to be made from.
      */
-    private void changeDiskUsageBy(int delta) {
-        setDiskUsage(getTotalDiskUsage() + delta);
-    }
+    private int unloadedId;
 
     /**
-     * A method for checking if the disk usage of this directory is valid.
-     * @param   nbOfBytes
-     *          The amount of bytes (size) to check.
-     * @return  True if the given number of bytes is positive and if this
-     *          number is equal to the sum of all disk usages of every item
-     *          in this directory.
-     *          | result ==
-     *          |    isValidDiskUsage(nbOfBytes) &&
-     *          |    ( nbOfBytes == getTotalDiskUsage() )
+     * A method for setting off the making of the items of this directory until they
+     * are first looked at.
+     *
+     * @param   tree
+     *          The lazily materialized tree to make the items from.
+     * @param   id
+     *          The identifier of this directory in the columnar tree of the given tree.
+     * @param   statisticsAsItem
+     *          The statistics this directory adds to the directories it is in, as captured.
+     * @pre     This directory has no parent directory and no items yet.
+     *          | getParentDirectory() == null && getNbOfItems() == 0
+     * @post    The number of items, the disk usage and the statistics of this directory are
+     *          those of the directory with the given identifier in the given tree.
+     *          | new.getNbOfItems() == tree.getNbOfItems(id)
      */
-    public boolean canHaveAsDiskUsage(int nbOfBytes) {
-        return isValidDiskUsage(nbOfBytes) && (nbOfBytes == getTotalDiskUsage());
+    @Raw
+    void deferItems(LazyTree tree, int id, long[] statisticsAsItem) {
+        long diskUsage = 0;
+        for (int i = 0; i < nbOfStatistics; i++) {
+            long statistic = (i == nbOfDirectoriesSlot) ? statisticsAsItem[i] - 1 : statisticsAsItem[i];
+            statistics.set(i, statistic);
+            if (i < nbOfFileTypes) diskUsage += statistic;
+        }
+        setDiskUsage(diskUsage);
+        unloadedId = id;
+        // the identifier is written before the tree, so readers of the tree see it
+        unloadedTree = tree;
     }
 
     /**
-     * A method for calculating the som of all disk usages of the items in this directory.
-     * @return  The sum of all disk usages of the items in this directory.
-     *          | result == ( sum ( for each item in items:
-     *          |                   item.getTotalDiskUsage() ) )
+     * A method for making the items of this directory, if they are still to be made.
+     *
+     * @post    This directory has all of its items.
+     * @note    The items are made while the lock of this directory is held, and no other
+     *          lock is taken in the meantime, so threads that look at the same directory
+     *          at once wait for one another, but never in a circle.
+     * @note    Once the items are made, this takes no lock at all.
      */
-    @Override @Raw
-    public int getTotalDiskUsage() {
-        int sum = 0;
-        if (items == null || getNbOfItems() == 0) return 0;
-        for (Item item : items) {
-            sum += item.getTotalDiskUsage();
+    void ensureLoaded() {
+        if (unloadedTree == null) return;
+        lock.lock();
+        try {
+            LazyTree tree = unloadedTree;
+            if (tree == null) return;
+            attach(tree.makeItems(unloadedId));
+            unloadedTree = null;
+            tree.registerLoaded();
+        } finally {
+            lock.unlock();
         }
-        return sum;
+    }
+
+    /**
+     * Return the contents of this directory, after making its items if they are
+     * still to be made.
+     */
+    @Model
+    private Contents getContents() {
+        ensureLoaded();
+        return contents;
+    }
+
+    /**
+     * Replace the contents of this directory with the given contents.
+     *
+     * @param   newContents
+     *          The new contents of this directory.
+     * @pre     The lock of this directory is held.
+     * @post    The given contents are the contents of this directory.
+     * @note    The old contents are kept for as long as some snapshot may need them.
+     */
+    @Raw @Model
+    private void replaceContents(Contents newContents) {
+        olderContents = History.record(contents, olderContents);
+        contents = newContents;
+    }
+
+    /**
+     * Return the contents this directory had in the given version, after making its
+     * items if they are still to be made.
+     *
+     * @param   version
+     *          The version to return the contents in.
+     * @pre     Some pinned snapshot has the given version, or the given version is the
+     *          current version.
+     * @note    Making the items of a directory is not a change to the directory, so the items
+     *          that are made show up in every version from before they were made as well.
+     */
+    @Model
+    Contents getContentsIn(long version) {
+        ensureLoaded();
+        Contents currentContents = contents;
+        return History.valueIn(currentContents, olderContents, version);
+    }
+
+    /**
+     * A method for making the items of every directory in the subtree of this directory
+     * that are still to be made.
+     *
+     * @note    If no directory in the tree of this directory is waiting for its items,
+     *          the subtree isn't walked. Directories in other trees don't matter.
+     */
+    @Model
+    private void ensureSubtreeLoaded() {
+        if (!getTree().mayHaveUnloadedDirectories()) return;
+        // walking the subtree looks at the items of every directory within
+        countItems(item -> false);
+    }
+
+
+
+    /**********************************************************
+     * parent directory - defensive programming
+     **********************************************************/
+
+    /**
+     * Variable referencing the journal that records the changes to the tree of this
+     * directory, if this directory is the root of a tree with a journal, or null.
+     */
+    volatile MutationJournal journal = null;
+
+    /**
+     * Variable referencing the tree of this directory, if this directory is the root
+     * of a tree whose tree was asked for, or null.
+     */
+    private volatile ItemTree tree = null;
+
+    /**
+     * Variable referencing the updater that sets the tree of a root directory once.
+     */
+    private static final AtomicReferenceFieldUpdater<Directory, ItemTree> treeUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Directory.class, ItemTree.class, "tree");
+
+    /**
+     * Return the tree of which this directory is the root.
+     *
+     * @return  The tree of this directory, which is made first if this directory is
+     *          a root directory without a tree, or null if this directory has a parent
+     *          directory and so is not the root of a tree.
+     * @note    The tree is set without locking, so this can be asked while holding the
+     *          locks of other directories. A thread that asks for the tree of the root it
+     *          read before that root entered another tree must check again once the tree
+     *          is locked, as Item.lockWith() does.
+     */
+    @Model
+    ItemTree getTreeAsRoot() {
+        ItemTree tree = this.tree;
+        if (tree == null && getParentDirectory() == null) {
+            treeUpdater.compareAndSet(this, null, new ItemTree());
+            tree = this.tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Return the tree whose hierarchy lock must be held to move this directory,
+     * which has no parent directory.
+     *
+     * @return  Null if this directory has neither a tree nor items, the tree of this
+     *          directory otherwise.
+     *          | if (tree == null && getNbOfItems() == 0)
+     *          |   then result == null
+     *          |   else result == getTreeAsRoot()
+     */
+    @Model
+    ItemTree getTreeForMoveAsRoot() {
+        if (tree == null && getNbOfItems() == 0) return null;
+        return getTreeAsRoot();
+    }
+
+    /**
+     * A method for making a directory a root directory
+     *
+     * @effect  If the parent directory is effective, this directory is removed
+     *          from its parent directory.
+     *          | if (getParentDirectory() != null)
+     *          |   then getParentDirectory().removeAsItem(this)
+     * @effect  The parent directory is set to null
+     *          | setParentDirectory(null)
+     * @effect  The root and depth of this directory and all items within
+     *          are brought up to date.
+     *          | updateRootAndDepth()
+     * @effect  The change to the hierarchy is registered.
+     *          | registerHierarchyChange(getTree())
+     * @effect  The modification time is set to the current time
+     *          | setModificationTime()
+     * @note    This directory drags its subtree along, so the hierarchy lock of the tree
+     *          it leaves is held exclusively. The new tree of this directory is locked
+     *          exclusively as well until all of its items know their new root.
+     */
+    public void makeRoot() {
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(this));
+        ItemTree newTree = null;
+        try {
+            MutationJournal journal = null;
+            String path = null;
+            if (getParentDirectory() != null) {
+                journal = getJournal();
+                if (journal != null) path = journal.getPathOf(this);
+                newTree = new ItemTree();
+                ItemTree.lockAll(true, newTree);
+                tree = newTree;
+                newTree.addUnloadedDirectoriesOf(lockedTrees[0]);
+                getParentDirectory().removeAsItem(this);
+            }
+            setParentDirectory(null);
+            updateRootAndDepth();
+            registerHierarchyChange(lockedTrees);
+            setModificationTime();
+            // the subtree leaves the tree of the journal
+            if (journal != null) {
+                journal.recordDeletion(path);
+                journal.commit();
+            }
+        } finally {
+            if (newTree != null) ItemTree.unlockAll(new ItemTree[] {newTree}, true);
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+    }
+
+    /**
+     * A method for bringing the root and depth of this directory and all items
+     * within up to date, after its parent directory has changed.
+     *
+     * @effect  The root and depth of this directory are brought up to date.
+     *          | super.updateRootAndDepth()
+     * @effect  The root and depth of every item in this directory are brought up to date.
+     *          | for each item in items:
+     *          |   item.updateRootAndDepth()
+     * @note    The subtree is walked with a stack of its own, from the top down, so a deep
+     *          subtree doesn't overflow the stack of the current thread.
+     * @note    The keys of the directories in the subtree in the index of their tree are only
+     *          made for directories with files, from the key of the parent directory of this
+     *          directory, which keeps its place, and then passed down. The keys the directories
+     *          in the subtree remember are not used: the path change that makes them invalid
+     *          is only registered once the move is done.
+     */
+    @Override @Model
+    protected void updateRootAndDepth() {
+        ArrayDeque<Directory> directories = new ArrayDeque<>();
+        // the keys of the directories on the stack in the index of their tree, at the same
+        // places, or the unmade key for the directories whose key hasn't been made yet
+        ArrayDeque<String> keys = new ArrayDeque<>();
+        directories.push(this);
+        keys.push(unmadeKey);
+        while (!directories.isEmpty()) {
+            Directory directory = directories.pop();
+            String key = keys.pop();
+            if (key == unmadeKey) key = null;
+            directory.updateOwnRootAndDepth();
+            // a root directory that enters another tree gives up its own tree
+            if (directory.getParentDirectory() != null) directory.tree = null;
+            // the items of a directory that is still being constructed are not initialized yet,
+            // and the items that are still to be made take their root and depth when attached
+            if (directory.contents == null) continue;
+            // the key of the directory is only made if it has files, and then passed down
+            for (Item item : directory.contents) {
+                if (!(item instanceof Directory)) {
+                    item.updateOwnRootAndDepth();
+                    if (item instanceof File) {
+                        if (key == null) key = getIndexKeyInSubtree(directory);
+                        ((File) item).updateIndexEntry(key);
+                    }
+                }
+            }
+            for (Item item : directory.contents) {
+                if (item instanceof Directory) {
+                    directories.push((Directory) item);
+                    keys.push((key == null) ? unmadeKey : FileIndex.getKeyOf(key, (Directory) item));
+                }
+            }
+        }
+    }
+
+    /**
+     * A key that stands for a key that hasn't been made yet, on a stack that can't hold null.
+     */
+    private static final String unmadeKey = new String();
+
+    /**
+     * Return the key of the given directory in the index of its tree, while this directory
+     * is being moved.
+     *
+     * @param   directory
+     *          A directory in the subtree of this directory.
+     * @return  The key of the parent directory of this directory, followed by the identifiers
+     *          of the directories from this directory down to the given directory.
+     * @note    The keys the directories in the subtree remember are not used, because they
+     *          are not invalid yet, while the key of the parent directory of this directory
+     *          doesn't change.
+     */
+    @Model
+    private String getIndexKeyInSubtree(Directory directory) {
+        ArrayDeque<Directory> directories = new ArrayDeque<>();
+        for (Directory ancestor = directory; ancestor != this; ancestor = ancestor.getParentDirectory()) {
+            directories.push(ancestor);
+        }
+        directories.push(this);
+        Directory parent = getParentDirectory();
+        return FileIndex.getKeyOf((parent == null) ? "" : parent.getIndexKey(), directories);
+    }
+
+    /**
+     * Check whether this directory can have the given directory as its
+     * parent directory.
+     *
+     * @param   dir
+     *          The directory to check.
+     * @return  True if the given directory can be the parent directory
+     *          of an item and if no loops wil be created.
+     *          | result == ( super.canHaveAsParentDirectory(dir)
+     *          |  && !dir.isDirectOrIndirectChildOf(this) && dir != this)
+     */
+    @Override
+    public boolean canHaveAsParentDirectory(Directory dir) {
+        return (dir == null) || (( super.canHaveAsParentDirectory(dir) )
+                // check for loops
+                && ( !dir.isDirectOrIndirectChildOf(this) ) && (dir != this));
+    }
+
+
+
+    /**********************************************************
+     * path resolution - defensive programming
+     **********************************************************/
+
+    /**
+     * Return the item with the given absolute path in the tree of this directory.
+     *
+     * @param   path
+     *          The absolute path to resolve, as returned by getAbsolutePath().
+     * @return  The item in the tree of this directory with the given absolute path.
+     *          | result.getAbsolutePath().equals(path)
+     *          |   && result.getRoot() == getRoot()
+     * @throws  IllegalArgumentException
+     *          The path is null, or there is no item with the given path in the tree
+     *          of this directory.
+     *          | path == null || ( for each item in the tree of getRoot():
+     *          |                       ! item.getAbsolutePath().equals(path) )
+     * @note    A file is found by its name followed by a dot and the extension of its
+     *          type. If a file and a link share the same path, the file is returned.
+     * @note    The tree of the root directory remembers the resolved paths. Those are
+     *          forgotten as soon as an item in that tree is moved, renamed or deleted, or
+     *          a new file takes over the path of a link in it; new items with paths of their
+     *          own and changes to other trees don't matter. Of many resolved paths, only
+     *          those that were looked up most recently are remembered.
+     * @note    The remembered paths are looked up and added without locking. A resolved
+     *          path is only remembered if the tree didn't change in the meantime.
+     */
+    public Item resolve(String path) throws IllegalArgumentException {
+        if (path == null) throw new IllegalArgumentException("Path is null.");
+        Directory root = getRoot();
+        ItemTree tree = root.getTreeAsRoot();
+        // the root has entered another tree in the meantime, so nothing is remembered
+        if (tree == null) return root.resolveUncached(path);
+        long nbOfResolutionChanges = tree.getNbOfResolutionChanges();
+        Item item = tree.getResolvedItem(path, nbOfResolutionChanges);
+        if (item == null) {
+            item = root.resolveUncached(path);
+            tree.rememberResolvedItem(path, item, nbOfResolutionChanges);
+        }
+        return item;
+    }
+
+    /**
+     * Return the item with the given absolute path in the tree of this root directory,
+     * without using the remembered paths.
+     *
+     * @param   path
+     *          The absolute path to resolve.
+     * @pre     This directory is a root directory.
+     *          | getParentDirectory() == null
+     * @return  The item in the tree of this directory with the given absolute path.
+     *          | result.getAbsolutePath().equals(path)
+     * @throws  IllegalArgumentException
+     *          There is no item with the given path in the tree of this directory.
+     */
+    private Item resolveUncached(String path) throws IllegalArgumentException {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path is not absolute.");
+        }
+        int start = 1;
+        int end = path.indexOf('/', start);
+        if (end < 0) end = path.length();
+        if (!path.regionMatches(start, getName(), 0, end - start) || getName().length() != end - start) {
+            throw new IllegalArgumentException("No item with the given path.");
+        }
+        Item item = this;
+        while (end < path.length()) {
+            if (!(item instanceof Directory)) {
+                throw new IllegalArgumentException("No item with the given path.");
+            }
+            start = end + 1;
+            end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            item = ((Directory) item).getItemForPathSegment(path.substring(start, end), end == path.length());
+        }
+        return item;
+    }
+
+    /**
+     * Check whether the given file takes over the path of another item in this directory.
+     *
+     * @param   file
+     *          The file to check.
+     * @return  True if and only if this directory has an item that is not a file, whose name
+     *          is the name of the given file followed by a dot and the extension of its type.
+     *          | result == (for some item in items:
+     *          |               !(item instanceof File) && item.getName().equals(
+     *          |                   file.getName() + "." + file.getFileType().getExtension()))
+     * @note    Such an item is a link, whose path resolves to the given file from now on.
+     */
+    @Raw
+    boolean hasPathTakenOverBy(File file) {
+        Item item = getItemWithName(file.getName() + "." + file.getFileType().getExtension());
+        return item != null && !(item instanceof File);
+    }
+
+    /**
+     * Return the item in this directory that corresponds to the given segment of a path.
+     *
+     * @param   segment
+     *          The segment of the path.
+     * @param   isLast
+     *          Whether the segment is the last one of the path.
+     * @return  If the segment is the last one and consists of the name of a file in
+     *          this directory, followed by a dot and the extension of its type, that file.
+     *          | if (isLast && for some file in items:
+     *          |       segment.equals(file.getName() + "." + file.getFileType().getExtension()))
+     *          |   then result == file
+     * @return  Otherwise, the item in this directory that is not a file and has
+     *          the segment as its name.
+     *          | result.getName().equals(segment) && !(result instanceof File)
+     * @throws  IllegalArgumentException
+     *          There is no such item in this directory.
+     */
+    private Item getItemForPathSegment(String segment, boolean isLast) throws IllegalArgumentException {
+        lock.lock();
+        try {
+            if (isLast) {
+                int dot = segment.lastIndexOf('.');
+                if (dot > 0) {
+                    Item item = getItemWithName(segment.substring(0, dot));
+                    if (item instanceof File && ((File) item).getFileType().getExtension()
+                            .equals(segment.substring(dot + 1))) {
+                        return item;
+                    }
+                }
+            }
+            Item item = getItemWithName(segment);
+            if (item == null || item instanceof File) {
+                throw new IllegalArgumentException("No item with the given path.");
+            }
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+
+    /**********************************************************
+     * folding - total programming
+     **********************************************************/
+
+    /**
+     * Fold over all items in the subtree of this directory, this directory included.
+     *
+     * @param   identity
+     *          The result of folding over no items at all.
+     * @param   accumulator
+     *          A function that returns the result of accumulating an item into a result.
+     * @param   combiner
+     *          A function that combines two results. It must be associative and compatible
+     *          with the accumulator: combining a result with the result of accumulating an
+     *          item into the identity must give the same as accumulating that item into it.
+     * @return  The result of accumulating every item in the subtree of this directory,
+     *          starting from the identity, in some order.
+     *          | result == combination of accumulator(identity, item)
+     *          |   for each item in {this} union { item | item.isDirectOrIndirectChildOf(this) }
+     * @throws  NullPointerException
+     *          The given accumulator or combiner is not effective.
+     *          | accumulator == null || combiner == null
+     * @note    Large subtrees are folded by several threads of the common fork/join pool
+     *          at once, so the accumulator and combiner may be called from any of those
+     *          threads. Small subtrees are folded by the calling thread alone.
+     * @note    Like computeTotalDiskUsage(), the fold walks a snapshot of the subtree without
+     *          locking anything, so it meets the items that were in the subtree when it started.
+     */
+    public <R> R fold(R identity, BiFunction<R, ? super Item, R> accumulator,
+                      BinaryOperator<R> combiner) throws NullPointerException {
+        if (accumulator == null || combiner == null) {
+            throw new NullPointerException("The accumulator and combiner must be effective.");
+        }
+        try (SubtreeSnapshot snapshot = takeSnapshot()) {
+            List<R> result = SubtreeFold.collect(snapshot,
+                    () -> new ArrayList<>(Collections.singletonList(identity)),
+                    (partial, item) -> partial.set(0, accumulator.apply(partial.get(0), item)),
+                    (partial, other) -> partial.set(0, combiner.apply(partial.get(0), other.get(0))),
+                    partial -> false);
+            return result.get(0);
+        }
+    }
+
+    /**
+     * Return the number of items in the subtree of this directory, this directory
+     * included, that satisfy the given condition.
+     *
+     * @param   condition
+     *          The condition to check for every item.
+     * @return  The number of items in the subtree of this directory that satisfy the condition.
+     *          | result == card({ item | (item == this || item.isDirectOrIndirectChildOf(this))
+     *          |                           && condition.test(item) })
+     * @throws  NullPointerException
+     *          The given condition is not effective.
+     *          | condition == null
+     * @note    The condition may be checked from several threads at once, see fold().
+     */
+    public long countItems(Predicate<? super Item> condition) throws NullPointerException {
+        if (condition == null) {
+            throw new NullPointerException("The condition must be effective.");
+        }
+        try (SubtreeSnapshot snapshot = takeSnapshot()) {
+            return SubtreeFold.collect(snapshot, () -> new long[1],
+                    (count, item) -> {
+                        if (condition.test(item)) count[0]++;
+                    },
+                    (count, other) -> count[0] += other[0],
+                    count -> false)[0];
+        }
+    }
+
+
+
+    /**********************************************************
+     * snapshots - total programming
+     **********************************************************/
+
+    /**
+     * Take a snapshot of the subtree of this directory.
+     *
+     * @return  A snapshot of the subtree of this directory, as it is at this moment.
+     *          | result.getDirectory() == this && ! result.isClosed()
+     * @note    Taking a snapshot takes constant time, whatever the size of the subtree: the
+     *          hierarchy lock of the tree of this directory is only held exclusively while
+     *          changes that are in progress finish. Reading the snapshot doesn't lock anything.
+     * @note    The snapshot must be closed once it isn't needed any more, so older items
+     *          and sizes are no longer kept for it.
+     */
+    public SubtreeSnapshot takeSnapshot() {
+        return SubtreeSnapshot.take(this);
+    }
+
+
+
+    /**********************************************************
+     * traversal - total programming
+     **********************************************************/
+
+    /**
+     * Return a stream of all items in the subtree of this directory, this directory
+     * included, in depth-first order.
+     *
+     * @return  A stream that reports this directory first, and then, for every item in
+     *          this directory in the order of their names, that item followed by the
+     *          items in its subtree in depth-first order, if it is a directory.
+     * @note    The stream is lazy: the items of a directory are taken from a snapshot of
+     *          that directory when the stream gets there, and no list of all items is built.
+     * @note    The stream is ordered. A parallel stream splits the subtree at directory
+     *          boundaries, so the parts of the subtree are traversed by several threads.
+     */
+    public Stream<Item> streamDepthFirst() {
+        return StreamSupport.stream(SubtreeSpliterator.depthFirst(this), false);
+    }
+
+    /**
+     * Return a stream of all items in the subtree of this directory, this directory
+     * included, in breadth-first order.
+     *
+     * @return  A stream that reports this directory first, and then every item in its
+     *          subtree, each one before all items at a greater depth.
+     * @note    Like streamDepthFirst(), the stream is lazy. The order only holds for
+     *          sequential streams: a parallel stream is not ordered, since its parts each
+     *          traverse their own directories breadth-first.
+     */
+    public Stream<Item> streamBreadthFirst() {
+        return StreamSupport.stream(SubtreeSpliterator.breadthFirst(this), false);
+    }
+
+
+
+    /**********************************************************
+     * file index - total programming
+     **********************************************************/
+
+    /**
+     * A class of keys in the index of the files in a tree, together with that tree
+     * and the number of path changes of that tree at the moment they were made.
+     */
+    private static final class RememberedKey {
+
+        /**
+         * The key in the index.
+         */
+        private final String key;
+
+        /**
+         * The tree the directory was in when the key was made.
+         */
+        private final ItemTree tree;
+
+        /**
+         * The number of path changes of that tree at the moment the key was made.
+         */
+        private final long nbOfPathChanges;
+
+        /**
+         * Initialize a new remembered key with given key, tree and number of path changes.
+         */
+        private RememberedKey(String key, ItemTree tree, long nbOfPathChanges) {
+            this.key = key;
+            this.tree = tree;
+            this.nbOfPathChanges = nbOfPathChanges;
+        }
+
+        /**
+         * Check whether this key is still the key of a directory in the given tree,
+         * with the given number of path changes.
+         */
+        private boolean isValidIn(ItemTree tree, long nbOfPathChanges) {
+            return this.tree == tree && this.nbOfPathChanges == nbOfPathChanges;
+        }
+    }
+
+    /**
+     * Variable referencing the key of this directory in the index of the files in its tree,
+     * as it was last made, possibly null.
+     *
+     * @note    The key and the number of path changes it belongs to are kept in one
+     *          immutable object, so other threads never see one without the other.
+     */
+    private volatile RememberedKey indexKey = null;
+
+    /**
+     * Return the key of this directory in the index of the files in its tree.
+     *
+     * @return  The key of the parent directory of this directory, or the empty string if
+     *          it has none, followed by the identifier of this directory.
+     *          | result == FileIndex.getKeyOf(getParentDirectory() == null ? ""
+     *          |              : getParentDirectory().getIndexKey(), this)
+     * @note    The key is remembered until an item in the same tree is moved, renamed or
+     *          deleted. After such a change, it is made again in a single pass from the
+     *          nearest directory above this directory whose key is still remembered. The
+     *          directories above are walked without recursion, so a deep tree doesn't
+     *          overflow the stack of the current thread.
+     */
+    String getIndexKey() {
+        ItemTree tree = getTree();
+        long nbOfPathChanges = tree.getNbOfPathChanges();
+        RememberedKey rememberedKey = indexKey;
+        if (rememberedKey != null && rememberedKey.isValidIn(tree, nbOfPathChanges)) {
+            return rememberedKey.key;
+        }
+        // the directories below the nearest one above with a valid key, from the top down
+        ArrayDeque<Directory> directories = new ArrayDeque<>();
+        String key = "";
+        for (Directory directory = this; directory != null; directory = directory.getParentDirectory()) {
+            rememberedKey = directory.indexKey;
+            if (rememberedKey != null && rememberedKey.isValidIn(tree, nbOfPathChanges)) {
+                key = rememberedKey.key;
+                break;
+            }
+            directories.push(directory);
+        }
+        key = FileIndex.getKeyOf(key, directories);
+        indexKey = new RememberedKey(key, tree, nbOfPathChanges);
+        return key;
+    }
+
+    /**
+     * Return all files of the given type in the subtree of this directory.
+     *
+     * @param   type
+     *          The type of the files to return.
+     * @return  The files of the given type that are a direct or indirect child of this directory.
+     *          | result == { file | file.getFileType() == type
+     *          |                     && file.isDirectOrIndirectChildOf(this) }
+     * @throws  IllegalArgumentException
+     *          The given file type is not valid.
+     *          | ! File.isValidFileType(type)
+     * @note    The files are looked up in the index of the files in the tree of this directory,
+     *          which is kept up to date as files are created, moved, renamed and deleted, so
+     *          the subtree isn't walked. The files of a given type in the subtree are a single
+     *          range of that index, so no file outside of the subtree is looked at.
+     * @note    The files in directories that are materialized lazily are only indexed once
+     *          they are made, so those are made first.
+     */
+    public List<File> getFilesOfType(FileType type) throws IllegalArgumentException {
+        if (!File.isValidFileType(type)) {
+            throw new IllegalArgumentException("This is not a valid file type.");
+        }
+        ensureSubtreeLoaded();
+        return getTree().getFileIndex().getFilesOfType(type, this);
+    }
+
+    /**
+     * Return all files whose name starts with the given prefix in the subtree of this directory.
+     *
+     * @param   prefix
+     *          The prefix of the names of the files to return.
+     * @return  The files whose name, without extension, starts with the given prefix and
+     *          that are a direct or indirect child of this directory.
+     *          | result == { file | file.getName().startsWith(prefix)
+     *          |                     && file.isDirectOrIndirectChildOf(this) }
+     * @throws  NullPointerException
+     *          The given prefix is not effective.
+     *          | prefix == null
+     * @note    Like getFilesOfType(), the files are looked up in the index of the tree of
+     *          this directory, sorted by name, so only files in that tree whose name starts
+     *          with the prefix are checked.
+     */
+    public List<File> getFilesWithNamePrefix(String prefix) throws NullPointerException {
+        if (prefix == null) {
+            throw new NullPointerException("The prefix must be effective.");
+        }
+        ensureSubtreeLoaded();
+        return getTree().getFileIndex().getFilesWithNamePrefix(prefix, this);
+    }
+
+
+
+    /**********************************************************
+     * disk usage - nominal programming
+     **********************************************************/
+
+    /**
+     * @note variable diskUsage, getter getTotalDiskUsage() and changeDiskUsageBy()
+     *       are inherited from Item. The disk usage of a directory is kept up to date
+     *       whenever an item within is added, removed or resized, so reading it
+     *       doesn't require a walk over the subtree.
+     */
+
+    /**
+     * A method for checking if the disk usage of this directory is valid.
+     * @param   nbOfBytes
+     *          The amount of bytes (size) to check.
+     * @return  True if the given number of bytes is positive and if this
+     *          number is equal to the sum of all disk usages of every item
+     *          in this directory.
+     *          | result ==
+     *          |    isValidDiskUsage(nbOfBytes) &&
+     *          |    ( nbOfBytes == getTotalDiskUsage() )
+     */
+    public boolean canHaveAsDiskUsage(long nbOfBytes) {
+        return isValidDiskUsage(nbOfBytes) && (nbOfBytes == getTotalDiskUsage());
+    }
+
+    /**
+     * A method for recounting the som of all disk usages of the items in this directory.
+     * @return  The sum of all disk usages of the items in this directory.
+     *          | result == ( sum ( for each item in items:
+     *          |                   item.getTotalDiskUsage() ) )
+     * @note    The disk usage of every file in the subtree is added up again,
+     *          so this takes linear time in the size of the subtree. It is meant
+     *          for checking the disk usage that is kept by this directory.
+     * @note    The disk usage is added up over a snapshot of the subtree, taken when the
+     *          recount starts, so the result is the disk usage of the subtree at a single
+     *          moment, while other threads go on changing the subtree.
+     */
+    public long computeTotalDiskUsage() {
+        try (SubtreeSnapshot snapshot = takeSnapshot()) {
+            return snapshot.computeTotalDiskUsage();
+        }
+    }
+
+    /**
+     * A checker for the class invariant stating that the disk usage of a directory
+     * must be equal to the sum of the disk usages of its items.
+     *
+     * @return  True if and only if the kept disk usage of this directory equals
+     *          a full recount of the disk usages in its subtree.
+     *          | result == canHaveAsDiskUsage(computeTotalDiskUsage())
+     */
+    public boolean hasProperDiskUsage() {
+        return canHaveAsDiskUsage(computeTotalDiskUsage());
+    }
+
+
+
+    /**********************************************************
+     * statistics - nominal programming
+     **********************************************************/
+
+    /**
+     * Variable registering the number of file types.
+     */
+    private static final int nbOfFileTypes = FileType.values().length;
+
+    /**
+     * Variable registering the number of statistics every directory keeps: the number
+     * of bytes and the number of files of every file type, the number of directories
+     * and the number of links.
+     */
+    static final int nbOfStatistics = 2 * nbOfFileTypes + 2;
+
+    /**
+     * Variable registering the position of the number of directories among the statistics.
+     */
+    private static final int nbOfDirectoriesSlot = 2 * nbOfFileTypes;
+
+    /**
+     * Variable registering the position of the number of links among the statistics.
+     */
+    private static final int nbOfLinksSlot = 2 * nbOfFileTypes + 1;
+
+    /**
+     * Return the position of the number of bytes of files of the given type among the statistics.
+     */
+    @Model
+    static int getNbOfBytesSlot(FileType type) {
+        return type.ordinal();
+    }
+
+    /**
+     * Return the position of the number of files of the given type among the statistics.
+     */
+    @Model
+    private static int getNbOfFilesSlot(FileType type) {
+        return nbOfFileTypes + type.ordinal();
+    }
+
+    /**
+     * Variable referencing the statistics of the items in the subtree of this directory,
+     * this directory itself excluded.
+     *
+     * @note    Like the disk usage, the statistics are kept up to date whenever an item
+     *          within is added, removed or resized, and every statistic is changed atomically.
+     */
+    private final AtomicLongArray statistics = new AtomicLongArray(nbOfStatistics);
+
+    /**
+     * Return the statistics this directory adds to the statistics of the directories it is in.
+     *
+     * @return  The statistics of this directory, with one more directory.
+     */
+    @Override
+    long[] getStatisticsAsItem() {
+        long[] result = new long[nbOfStatistics];
+        for (int i = 0; i < nbOfStatistics; i++) {
+            result[i] = statistics.get(i);
+        }
+        result[nbOfDirectoriesSlot]++;
+        return result;
+    }
+
+    /**
+     * Return the statistics a file or link that isn't a directory adds to the
+     * statistics of the directories it is in.
+     *
+     * @param   item
+     *          The file or link.
+     * @return  For a file, its size as number of bytes of its type and one file of its type;
+     *          for a link, one link.
+     */
+    static long[] getStatisticsOfLeaf(Item item) {
+        long[] result = new long[nbOfStatistics];
+        if (item instanceof File) {
+            FileType type = ((File) item).getFileType();
+            result[getNbOfBytesSlot(type)] = ((File) item).getSize();
+            result[getNbOfFilesSlot(type)] = 1;
+        } else if (item instanceof Link) {
+            result[nbOfLinksSlot] = 1;
+        }
+        return result;
+    }
+
+    /**
+     * Change the statistic at the given position of this directory and of all directories
+     * it is in by the given delta.
+     *
+     * @param   slot
+     *          The position of the statistic.
+     * @param   delta
+     *          The amount to change the statistic by.
+     */
+    @Model
+    void changeStatisticBy(int slot, long delta) {
+        for (Directory directory = this; directory != null; directory = directory.getParentDirectory()) {
+            directory.statistics.addAndGet(slot, delta);
+        }
+    }
+
+    /**
+     * Change the statistics of this directory and of all directories it is in
+     * by the given statistics, multiplied by the given sign.
+     *
+     * @param   delta
+     *          The statistics to change by.
+     * @param   sign
+     *          1 to add the given statistics, -1 to subtract them.
+     */
+    @Model
+    private void changeStatisticsBy(long[] delta, int sign) {
+        for (Directory directory = this; directory != null; directory = directory.getParentDirectory()) {
+            for (int i = 0; i < nbOfStatistics; i++) {
+                if (delta[i] != 0) directory.statistics.addAndGet(i, sign * delta[i]);
+            }
+        }
+    }
+
+    /**
+     * Reset all statistics of this directory to zero.
+     */
+    @Model
+    private void clearStatistics() {
+        for (int i = 0; i < nbOfStatistics; i++) {
+            statistics.set(i, 0);
+        }
+    }
+
+    /**
+     * Return the number of bytes of files of the given type in the subtree of this directory.
+     *
+     * @param   type
+     *          The file type.
+     * @return  The sum of the sizes of all files of the given type in the subtree.
+     *          | result == sum( { file.getSize() | file.getFileType() == type
+     *          |                                   && file.isDirectOrIndirectChildOf(this) } )
+     * @note    The number is kept up to date, so this takes constant time.
+     */
+    public long getTotalDiskUsage(FileType type) {
+        return statistics.get(getNbOfBytesSlot(type));
+    }
+
+    /**
+     * Return the number of files of the given type in the subtree of this directory.
+     *
+     * @param   type
+     *          The file type.
+     * @return  The number of files of the given type in the subtree.
+     *          | result == card( { file | file.getFileType() == type
+     *          |                          && file.isDirectOrIndirectChildOf(this) } )
+     */
+    public long getTotalNbOfFiles(FileType type) {
+        return statistics.get(getNbOfFilesSlot(type));
+    }
+
+    /**
+     * Return the number of files in the subtree of this directory.
+     *
+     * @return  The number of files of any type in the subtree.
+     *          | result == sum( { getTotalNbOfFiles(type) | type in FileType.values() } )
+     */
+    public long getTotalNbOfFiles() {
+        long result = 0;
+        for (FileType type : FileType.values()) {
+            result += getTotalNbOfFiles(type);
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of directories in the subtree of this directory, this directory excluded.
+     *
+     * @return  The number of directories in the subtree.
+     *          | result == card( { dir | dir.isDirectOrIndirectChildOf(this) } )
+     */
+    public long getTotalNbOfDirectories() {
+        return statistics.get(nbOfDirectoriesSlot);
+    }
+
+    /**
+     * Return the number of links in the subtree of this directory.
+     *
+     * @return  The number of links in the subtree.
+     *          | result == card( { link | link.isDirectOrIndirectChildOf(this) } )
+     */
+    public long getTotalNbOfLinks() {
+        return statistics.get(nbOfLinksSlot);
+    }
+
+    /**
+     * A checker for the class invariant stating that the statistics of a directory
+     * must match the items in its subtree.
+     *
+     * @return  True if and only if every statistic kept by this directory equals
+     *          a full recount of that statistic over its subtree.
+     * @note    Like computeTotalDiskUsage(), the recount takes linear time in the size of the subtree.
+     */
+    public boolean hasProperStatistics() {
+        long[] recount;
+        try (SubtreeSnapshot snapshot = takeSnapshot()) {
+            recount = SubtreeFold.collect(snapshot, () -> new long[nbOfStatistics],
+                    (sum, item) -> {
+                        if (item instanceof Directory) {
+                            if (item != this) sum[nbOfDirectoriesSlot]++;
+                        } else {
+                            long[] statistics = getStatisticsOfLeaf(item);
+                            for (int i = 0; i < nbOfStatistics; i++) {
+                                sum[i] += statistics[i];
+                            }
+                        }
+                    },
+                    (sum, other) -> {
+                        for (int i = 0; i < nbOfStatistics; i++) {
+                            sum[i] += other[i];
+                        }
+                    },
+                    sum -> false);
+        }
+        for (int i = 0; i < nbOfStatistics; i++) {
+            if (recount[i] != statistics.get(i)) return false;
+        }
+        return true;
     }
 
 
@@ -594,7 +2328,7 @@ public class Directory extends Item {
     /**
      * Variable registering whether this file is writable.
      */
-    private boolean isWritable = true;
+    private volatile boolean isWritable = true;
 
     /**
      * Check whether this file is writable.
@@ -612,10 +2346,16 @@ public class Directory extends Item {
      * @post  The given writability is registered as the new writability
      *        for this file.
      *        | new.isWritable() == isWritable
+     * @note  If the tree of this directory has a journal, the change is recorded in it
+     *        while the parent directory and this directory are locked.
      */
     @Raw
     public void setWritable(boolean isWritable) {
-        this.isWritable = isWritable;
+        if (getJournal() == null) {
+            this.isWritable = isWritable;
+        } else {
+            changeWritability(isWritable, () -> this.isWritable = isWritable);
+        }
     }
 
 
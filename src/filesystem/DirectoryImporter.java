@@ -0,0 +1,245 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class for importing directory trees of the real file system as trees of items.
+ *
+ * Every directory of the real tree becomes a directory, and every regular file becomes a
+ * file, with the file type that goes with its extension. The sizes, the modification times
+ * and, as far as the file system keeps them, the creation times are taken over, and so is
+ * whether the entry can be written by this program.
+ *
+ * The real tree is walked by the threads of the common fork/join pool, one task for every
+ * directory. A task reads the entries of its directory, makes an item for each of them and
+ * attaches them to its directory all at once, before it forks the tasks for the directories
+ * within. Since the imported tree can't be reached by any other thread until it is complete,
+ * no hierarchy lock is needed, and the time taken is linear in the number of entries.
+ *
+ * @note    Names that are not valid for items are made valid, by replacing every character
+ *          that is not allowed by an underscore. A name that is taken in its directory
+ *          already, which happens for files that only differ in their extension, gets a
+ *          hyphen and a number appended.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class DirectoryImporter {
+
+    /**
+     * This class only has static methods.
+     */
+    private DirectoryImporter() {
+    }
+
+    /**
+     * Import the directory with the given path, together with everything within it.
+     *
+     * @param   path
+     *          The path of the directory to import.
+     * @param   defaultType
+     *          The file type of files whose extension is not the extension of any file
+     *          type, or null if such files are to be skipped.
+     * @return  A new root directory with the name of the given directory, made valid, with
+     *          an item for every directory and every regular file within the given directory.
+     * @throws  NullPointerException
+     *          The given path is not effective.
+     *          | path == null
+     * @throws  IOException
+     *          The given path is not a directory, or it could not be read.
+     * @note    Symbolic links and other entries that are neither a directory nor a regular
+     *          file are skipped, and so are entries that can't be read, such as directories
+     *          without permission to list them, or entries that disappear while importing.
+     * @note    To import a directory into an existing tree, the items of the imported root
+     *          can be moved there in one batch, with Directory.addItems().
+     */
+    public static Directory importTree(Path path, FileType defaultType) throws NullPointerException, IOException {
+        if (path == null) {
+            throw new NullPointerException("The path must be effective.");
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!attributes.isDirectory()) {
+            throw new NotDirectoryException(path.toString());
+        }
+        Path fileName = path.toAbsolutePath().normalize().getFileName();
+        long now = System.currentTimeMillis();
+        Directory root = makeDirectory((fileName == null) ? "root" : sanitize(fileName.toString(), false),
+                path, attributes, now);
+        // a thread outside the pool performs the task itself; forked tasks go to the common pool
+        new ImportTask(root, path, defaultType, now).invoke();
+        return root;
+    }
+
+    /**
+     * Return the given name with every character that is not allowed in the names of
+     * files, or directories if specified, replaced by an underscore.
+     *
+     * @param   name
+     *          The name to make valid.
+     * @param   isFileName
+     *          Whether the name is the name of a file, which may contain dots.
+     */
+    @Model
+    private static String sanitize(String name, boolean isFileName) {
+        if (name.isEmpty()) return "_";
+        char[] characters = name.toCharArray();
+        for (int i = 0; i < characters.length; i++) {
+            char character = characters[i];
+            boolean isAllowed = (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')
+                    || (character >= '0' && character <= '9') || character == '_' || character == '-'
+                    || (isFileName && character == '.');
+            if (!isAllowed) characters[i] = '_';
+        }
+        return new String(characters);
+    }
+
+    /**
+     * Return the file type with the given extension, regardless of the case of its letters,
+     * or null if there is none.
+     */
+    @Model
+    private static FileType getFileTypeWithExtension(String extension) {
+        String lowerCaseExtension = extension.toLowerCase(Locale.ROOT);
+        for (FileType type : FileType.values()) {
+            if (type.getExtension().equals(lowerCaseExtension)) return type;
+        }
+        return null;
+    }
+
+    /**
+     * Return a new directory without a parent directory, with the given name, for the
+     * directory with the given path and attributes.
+     */
+    @Model
+    private static Directory makeDirectory(String name, Path path, BasicFileAttributes attributes, long now) {
+        long modificationTime = Math.min(attributes.lastModifiedTime().toMillis(), now);
+        long creationTime = Math.min(attributes.creationTime().toMillis(), modificationTime);
+        return new Directory(name, Files.isWritable(path), creationTime, modificationTime);
+    }
+
+    /**
+     * A class of tasks that import the entries of a single directory, and fork
+     * the tasks for the directories within.
+     */
+    private static final class ImportTask extends RecursiveAction {
+
+        /**
+         * Required because this class inherits from ForkJoinTask, which is serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Initialize a new task that imports the entries of the directory with the
+         * given path into the given directory.
+         */
+        ImportTask(Directory directory, Path path, FileType defaultType, long now) {
+            this.directory = directory;
+            this.path = path;
+            this.defaultType = defaultType;
+            this.now = now;
+        }
+
+        /**
+         * The directory the entries are imported into.
+         */
+        private final Directory directory;
+
+        /**
+         * The path of the directory whose entries are imported.
+         */
+        private final Path path;
+
+        /**
+         * The file type of files with an unknown extension, or null to skip them.
+         */
+        private final FileType defaultType;
+
+        /**
+         * The time at which the import started, beyond which no time is taken over.
+         */
+        private final long now;
+
+        /**
+         * Import the entries of the directory of this task, and then the entries
+         * of the directories within, in parallel.
+         */
+        @Override
+        protected void compute() {
+            Path[] entries;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                List<Path> entryList = new ArrayList<>();
+                stream.forEach(entryList::add);
+                entries = entryList.toArray(new Path[0]);
+            } catch (IOException | SecurityException exception) {
+                // the directory can't be listed, so it is imported without items
+                return;
+            }
+            // the entries are handled in order of their names, so names are made unique the same way every time
+            Arrays.sort(entries, Comparator.comparing(entry -> entry.getFileName().toString()));
+            List<Item> items = new ArrayList<>(entries.length);
+            List<ImportTask> subtasks = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            for (Path entry : entries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException | SecurityException exception) {
+                    continue;
+                }
+                String entryName = entry.getFileName().toString();
+                if (attributes.isDirectory()) {
+                    Directory subdirectory = makeDirectory(makeUnique(sanitize(entryName, false), names),
+                            entry, attributes, now);
+                    items.add(subdirectory);
+                    subtasks.add(new ImportTask(subdirectory, entry, defaultType, now));
+                } else if (attributes.isRegularFile() && File.isValidSize(attributes.size())) {
+                    int dot = entryName.lastIndexOf('.');
+                    FileType type = (dot > 0) ? getFileTypeWithExtension(entryName.substring(dot + 1)) : null;
+                    String name = (type != null) ? entryName.substring(0, dot) : entryName;
+                    if (type == null) type = defaultType;
+                    if (type == null) continue;
+                    long modificationTime = Math.min(attributes.lastModifiedTime().toMillis(), now);
+                    long creationTime = Math.min(attributes.creationTime().toMillis(), modificationTime);
+                    items.add(new File(makeUnique(sanitize(name, true), names), attributes.size(),
+                            Files.isWritable(entry), type, creationTime, modificationTime));
+                }
+            }
+            Item[] sortedItems = items.toArray(new Item[0]);
+            Arrays.sort(sortedItems, Comparator.comparing(Item::getName));
+            if (sortedItems.length > 0) directory.attachRestoredItems(sortedItems);
+            invokeAll(subtasks);
+        }
+
+        /**
+         * Return the given name, with a hyphen and a number appended if it is among the given
+         * names already, and add the returned name to the given names.
+         */
+        @Model
+        private static String makeUnique(String name, Set<String> names) {
+            String uniqueName = name;
+            for (int number = 2; !names.add(uniqueName); number++) {
+                uniqueName = name + "-" + number;
+            }
+            return uniqueName;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package filesystem;
+
+/**
+ * An enum class with the guarantees a mutation journal can give
+ * about the changes it records.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public enum Durability {
+
+    /**
+     * Changes are written to the journal file once the buffer of the journal is full,
+     * or when the journal is synced or closed. Changes since then are lost when the
+     * program stops unexpectedly.
+     */
+    BUFFERED,
+
+    /**
+     * Every change is written to the journal file before it returns, so changes survive
+     * when the program stops unexpectedly, but not when the operating system does.
+     */
+    WRITTEN,
+
+    /**
+     * Every change is forced to the storage device before it returns. Changes that are
+     * made at the same time share a single force.
+     */
+    SYNCED
+
+}
@@ -2,6 +2,8 @@ package filesystem;
 
 import be.kuleuven.cs.som.annotate.*;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A class of files, inheriting from the class of items, within a filesystem.
  *
@@ -39,8 +41,10 @@ public class File extends Item {
      * 			| setSize(size)
      * @effect	The writability is set to the given flag
      * 			| setWritable(writable)
-     * @effect  This file is further initialized as a new item with the given parent directory and name.
-     *          | super(name, dir)
+     * @effect  This file is further initialized as a new item with the given name.
+     *          | super(name)
+     * @effect  Once it is completely initialized, the new file is moved to the given directory.
+     *          | move(dir)
      * @post    The new creation time of this file is initialized to some time during
      *          constructor execution.
      *          | (new.getCreationTime().getTime() >= System.currentTimeMillis()) &&
@@ -50,16 +54,20 @@ public class File extends Item {
      * @throws  IllegalArgumentException
      *          The provided file type is not a valid type.
      *          | ! isValidFileType()
+     * @throws  IllegalParentDirectoryException
+     *          The given directory is not a valid parent directory for this file.
+     *          | ! isAddableToDirectory(dir)
      */
     @Raw
-    public File(Directory dir, String name, int size, boolean writable, FileType type) throws IllegalParentDirectoryException, IllegalArgumentException, NullPointerException {
-        super(name, dir); // This throws IllegalParentDirectoryException and NullPointerException
+    public File(Directory dir, String name, long size, boolean writable, FileType type) throws IllegalParentDirectoryException, IllegalArgumentException, NullPointerException {
+        super(name);
         if (!isValidFileType(type)) {
             throw new IllegalArgumentException("This is not a valid file type.");
         }
         fileType = type; // final variable must be initialized this way
         setWritable(writable);
         setSize(size); // this also sets the disk usage
+        move(dir); // This throws IllegalParentDirectoryException
     }
 
     /**
@@ -80,6 +88,36 @@ public class File extends Item {
         this(dir, name, 0, true, type);
     }
 
+    /**
+     * Initialize a new file that was stored before, without a parent directory.
+     *
+     * @param   name
+     *          The name of the new file.
+     * @param   size
+     *          The size of the new file, which must be valid.
+     * @param   writable
+     *          The writability of the new file.
+     * @param   type
+     *          The type of the new file, which must be valid.
+     * @param   creationTime
+     *          The time of creation of the new file.
+     * @param   modificationTime
+     *          The time of the last modification of the new file, or Long.MIN_VALUE.
+     * @effect  This file is initialized as an item with the given name and times.
+     *          | super(name, creationTime, modificationTime)
+     * @effect  The writability and size are set to the given ones.
+     *          | setWritable(writable) && setSize(size)
+     * @note    The new file must be attached to a directory right away,
+     *          with Directory.attachRestoredItems().
+     */
+    @Raw
+    File(String name, long size, boolean writable, FileType type, long creationTime, long modificationTime) {
+        super(name, creationTime, modificationTime);
+        fileType = type;
+        setWritable(writable);
+        setSize(size);
+    }
+
 
 
     /**********************************************************
@@ -111,19 +149,28 @@ public class File extends Item {
     /**
      * Variable registering the size of this file (in bytes).
      */
-    private int size = 0;
+    private volatile long size = 0;
+
+    /**
+     * Variable referencing the sizes this file had before, as long as some
+     * snapshot may need them, or null.
+     */
+    private volatile History<Long> olderSizes = null;
 
     /**
      * Variable registering the maximum size of any file (in bytes).
+     *
+     * @note    This is 2^48 bytes (256 TiB), so the disk usage of a directory,
+     *          which is a long, can hold the sizes of 2^15 files of maximum size.
      */
-    private static final int maximumSize = Integer.MAX_VALUE;
+    private static final long maximumSize = 1L << 48;
 
 
     /**
      * Return the size of this file (in bytes).
      */
     @Raw @Basic
-    public int getSize() {
+    public long getSize() {
         return size;
     }
 
@@ -134,22 +181,55 @@ public class File extends Item {
      *         The new size for this file.
      * @pre    The given size must be legal.
      *         | isValidSize(size)
-     * @effect The disk usage is set to the valid file size.
-     *         | setDiskUsage(size)
+     * @effect The disk usage of this file and of the directories it is in
+     *         is changed by the difference between the given size and the old size.
+     *         | changeDiskUsageBy(size - getSize())
+     * @effect The number of bytes of the type of this file is changed by the same
+     *         difference in the directories this file is in.
+     *         | if (getParentDirectory() != null)
+     *         |   then getParentDirectory().changeStatisticBy(
+     *         |           Directory.getNbOfBytesSlot(getFileType()), size - getSize())
      * @post   The given size is registered as the size of this file.
      *         | new.getSize() == size
+     * @throws ArithmeticException
+     *         The disk usage of some directory this file is in would overflow,
+     *         in which case the size of this file is not changed.
+     *         | ! canChangeDiskUsageBy(size - getSize())
+     * @note   The old size is kept for as long as some snapshot may need it.
      */
     @Raw @Model
-    private void setSize(int size) {
+    private void setSize(long size) throws ArithmeticException {
+        long delta = size - this.size;
+        if (!canChangeDiskUsageBy(delta)) {
+            throw new ArithmeticException("The disk usage would overflow.");
+        }
+        olderSizes = History.record(this.size, olderSizes);
         this.size = size;
-        setDiskUsage(size);
+        changeDiskUsageBy(delta);
+        if (getParentDirectory() != null) {
+            getParentDirectory().changeStatisticBy(Directory.getNbOfBytesSlot(getFileType()), delta);
+        }
+    }
+
+    /**
+     * Return the size this file had in the given version.
+     *
+     * @param   version
+     *          The version to return the size in.
+     * @pre     Some pinned snapshot has the given version, or the given version is the
+     *          current version.
+     */
+    @Model
+    long getSizeIn(long version) {
+        long currentSize = size;
+        return History.valueIn(currentSize, olderSizes, version);
     }
 
     /**
      * Return the maximum file size.
      */
     @Basic @Immutable
-    public static int getMaximumSize() {
+    public static long getMaximumSize() {
         return maximumSize;
     }
 
@@ -163,7 +243,7 @@ public class File extends Item {
      *         | result == ((size >= 0) && (size <= getMaximumSize()))
      */
     @Raw
-    public static boolean isValidSize(int size) {
+    public static boolean isValidSize(long size) {
         return ((size >= 0) && (size <= getMaximumSize()));
     }
 
@@ -178,7 +258,7 @@ public class File extends Item {
      * @effect  The size of this file is increased with the given delta.
      *          | changeSize(delta)
      */
-    public void enlarge(int delta) throws NotWritableException {
+    public void enlarge(long delta) throws NotWritableException {
         changeSize(delta);
     }
 
@@ -193,7 +273,7 @@ public class File extends Item {
      * @effect  The size of this file is decreased with the given delta.
      *          | changeSize(-delta)
      */
-    public void shorten(int delta) throws NotWritableException {
+    public void shorten(long delta) throws NotWritableException {
         changeSize(-delta);
     }
 
@@ -212,12 +292,29 @@ public class File extends Item {
      * @throws NotWritableException(this)
      *         This file is not writable.
      *         | ! isWritable()
+     * @note   The parent directory of this file is locked while its size changes,
+     *         so the size can't change while the file is moved, and two changes
+     *         at the same time both count.
+     * @note   If the tree of this file has a journal, the change is recorded in it.
      */
     @Model
-    private void changeSize(int delta) throws NotWritableException{
+    private void changeSize(long delta) throws NotWritableException{
         if (isWritable()) {
-            setSize(getSize()+delta);
-            setModificationTime();
+            Locks locks = lockWith(null, false);
+            try {
+                MutationJournal journal;
+                try {
+                    setSize(getSize()+delta);
+                    setModificationTime();
+                    journal = getJournal();
+                    if (journal != null) journal.recordResize(this);
+                } finally {
+                    locks.unlockDirectories();
+                }
+                if (journal != null) journal.commit();
+            } finally {
+                locks.unlock();
+            }
         }else{
             throw new NotWritableException(this);
         }
@@ -232,7 +329,7 @@ public class File extends Item {
     /**
      * Variable registering whether this file is writable.
      */
-    private boolean isWritable = true;
+    private volatile boolean isWritable = true;
 
     /**
      * Check whether this file is writable.
@@ -250,10 +347,16 @@ public class File extends Item {
      * @post  The given writability is registered as the new writability
      *        for this file.
      *        | new.isWritable() == isWritable
+     * @note  If the tree of this file has a journal, the change is recorded in it
+     *        while the parent directory of this file is locked.
      */
     @Raw
     public void setWritable(boolean isWritable) {
-        this.isWritable = isWritable;
+        if (getJournal() == null) {
+            this.isWritable = isWritable;
+        } else {
+            changeWritability(isWritable, () -> this.isWritable = isWritable);
+        }
     }
 
 
@@ -321,16 +424,110 @@ public class File extends Item {
      **********************************************************/
 
     /**
-     * A method to return a string with the complete path to the item.
+     * Return the name of this file as it appears in its absolute path.
+     *
+     * @return  The name of this file, followed by a dot and the extension of its type.
+     *         | result == getName() + "." + getFileType().getExtension()
+     */
+    @Override
+    protected String getNameInPath() {
+        return getName() + "." + getFileType().getExtension();
+    }
+
+    /**
+     * Append what follows the name of this file in its absolute path
+     * to the given string builder.
      *
-     * @return  A string with the complete path to the item, starting with a slash
-     *          followed by the root directory, then a slash with the next directory, ...,
-     *          and ending with a slash and the name of the item.
-     *         | result == "/" + super.getAbsolutePathRecursive() + "." + getFileType().getExtension()
+     * @param   builder
+     *          The string builder to append to.
+     * @effect  A dot and the extension of the type of this file are appended.
+     *          | builder.append('.').append(getFileType().getExtension())
      */
     @Override
-    public String getAbsolutePath() {
-        return "/" + super.getAbsolutePathRecursive() + "." + getFileType().getExtension();
+    protected void appendExtensionTo(StringBuilder builder) {
+        builder.append('.').append(getFileType().getExtension());
+    }
+
+
+
+    /**********************************************************
+     * file index
+     **********************************************************/
+
+    /**
+     * Variable registering the number of files that were made so far.
+     */
+    private static final AtomicLong nbOfFiles = new AtomicLong();
+
+    /**
+     * Variable registering the identifier of this file in the index of its tree.
+     */
+    private final long indexId = nbOfFiles.getAndIncrement();
+
+    /**
+     * Variable referencing the tree in whose index this file is, or null if it is in none.
+     */
+    private ItemTree indexedTree = null;
+
+    /**
+     * Variable registering the key of this file in the index of its tree, or null
+     * if it is in none.
+     */
+    private String indexKey = null;
+
+    /**
+     * A method for bringing the root and depth of this file up to date, after its
+     * parent directory has changed, and moving it to its place in the index of its tree.
+     *
+     * @effect  The root and depth of this file are brought up to date.
+     *          | super.updateRootAndDepth()
+     * @effect  This file is moved to its place in the index of its tree.
+     *          | updateIndexEntry(getParentDirectory() == null ? null
+     *          |                       : getParentDirectory().getIndexKey())
+     */
+    @Override @Model
+    protected void updateRootAndDepth() {
+        super.updateRootAndDepth();
+        Directory parent = getParentDirectory();
+        updateIndexEntry((parent == null) ? null : parent.getIndexKey());
+    }
+
+    /**
+     * A method for moving this file to its place in the index of its tree, after
+     * its root and depth are brought up to date.
+     *
+     * @param   parentKey
+     *          The key of the parent directory of this file, or null if it has none.
+     * @post    If this file has a parent directory, it is in the index of its tree under
+     *          the given key followed by its identifier, and in no other index. Otherwise,
+     *          it is in no index at all.
+     * @note    A file that stays in the same tree is moved within its index, so the
+     *          index by name doesn't change.
+     */
+    @Model
+    void updateIndexEntry(String parentKey) {
+        ItemTree tree = (parentKey == null) ? null : getTree();
+        String key = (tree == null) ? null : FileIndex.getKeyOf(parentKey, indexId);
+        if (tree == indexedTree) {
+            if (tree != null && !key.equals(indexKey)) tree.getFileIndex().move(this, indexKey, key);
+        } else {
+            if (indexedTree != null) indexedTree.getFileIndex().remove(this, indexKey);
+            if (tree != null) tree.getFileIndex().add(this, key);
+        }
+        indexedTree = tree;
+        indexKey = key;
+    }
+
+    /**
+     * A method for moving this file to its new name in the index of its tree,
+     * after it was renamed.
+     *
+     * @param   oldName
+     *          The name of this file before it was renamed.
+     */
+    @Model
+    void renameInIndex(String oldName) {
+        if (indexedTree != null) indexedTree.getFileIndex().rename(this, oldName);
     }
 
 }
@@ -0,0 +1,302 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A class of indexes of the files in a tree of items, by file type and by name.
+ * Every tree has an index of its own, which is kept up to date whenever a file
+ * in it is created, moved, renamed or deleted, and which is dropped together with
+ * the tree, so the files of a tree that is no longer used are not kept alive.
+ *
+ * Every file has a key that consists of the identifiers of the directories above it,
+ * from the root directory down, followed by the identifier of the file itself. Identifiers
+ * of directories are even and those of files are odd, so they never coincide. The keys
+ * of the files in the subtree of a directory all start with the key of that directory,
+ * so the files of a given type in a subtree are a single range of the index by type,
+ * which is found without looking at any other file.
+ *
+ * @note    A file is added to, moved in and removed from an index while its parent
+ *          directory is locked, or while the hierarchy lock of the tree is held
+ *          exclusively, so the changes for the same file happen one after the other.
+ *          Queries don't lock anything, so they may miss changes that are going on.
+ * @note    Keys only consist of the identifiers of directories and files, not of their
+ *          names, so renaming a directory doesn't change the keys of the files within.
+ *          Moving a directory changes the keys of all files within, but it walks its
+ *          subtree to update the roots and depths of its items anyway.
+ * @note    Every directory remembers its key until the paths in its tree change, so the
+ *          key of a new file is the remembered key of its parent directory followed by
+ *          the identifier of the file, without a walk over the directories above it.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 2.0
+ */
+final class FileIndex {
+
+    /**
+     * Initialize a new index without any files.
+     */
+    FileIndex() {
+        for (FileType type : FileType.values()) {
+            filesByType.put(type, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Variable referencing the files in this index, by file type and then by key.
+     */
+    private final Map<FileType, ConcurrentSkipListMap<String, File>> filesByType = new EnumMap<>(FileType.class);
+
+    /**
+     * A class of buckets with the files that share a name.
+     */
+    private static final class Bucket {
+
+        /**
+         * The files with the name of this bucket.
+         */
+        private final Set<File> files = new HashSet<>();
+
+        /**
+         * Whether this bucket has been removed from the index, because it became empty.
+         */
+        private boolean isRetired = false;
+    }
+
+    /**
+     * Variable referencing the buckets of files in this index, by name,
+     * in lexicographic order of the names.
+     */
+    private final ConcurrentSkipListMap<String, Bucket> filesByName = new ConcurrentSkipListMap<>();
+
+    /**
+     * Variable registering the number of characters that an identifier takes in a key.
+     */
+    private static final int idLength = 4;
+
+    /**
+     * Return the key of the given directory in the directory with the given key.
+     *
+     * @param   parentKey
+     *          The key of the parent directory of the given directory, or the empty
+     *          string if it has none.
+     * @param   directory
+     *          The directory whose key is to be returned.
+     * @return  The given key followed by the identifier of the given directory.
+     */
+    static String getKeyOf(String parentKey, Directory directory) {
+        return appendId(parentKey, directory.getLockOrder() << 1);
+    }
+
+    /**
+     * Return the key of the last of the given directories in the directory with the given key.
+     *
+     * @param   key
+     *          The key of the parent directory of the first of the given directories, or the
+     *          empty string if it has none.
+     * @param   directories
+     *          The directories from the first one down to the directory whose key is to be
+     *          returned, each the parent directory of the next one.
+     * @return  The given key followed by the identifiers of the given directories, in order.
+     */
+    static String getKeyOf(String key, Collection<Directory> directories) {
+        char[] newKey = new char[key.length() + directories.size() * idLength];
+        key.getChars(0, key.length(), newKey, 0);
+        int offset = key.length();
+        for (Directory directory : directories) {
+            putId(newKey, offset, directory.getLockOrder() << 1);
+            offset += idLength;
+        }
+        return new String(newKey);
+    }
+
+    /**
+     * Return the key of a file with the given identifier in the directory with the given key.
+     *
+     * @param   directoryKey
+     *          The key of the parent directory of the file.
+     * @param   fileId
+     *          The identifier of the file.
+     * @return  The given key followed by the identifier of the file.
+     */
+    static String getKeyOf(String directoryKey, long fileId) {
+        return appendId(directoryKey, (fileId << 1) | 1);
+    }
+
+    /**
+     * Return the given key followed by the given identifier.
+     */
+    @Model
+    private static String appendId(String key, long id) {
+        char[] newKey = new char[key.length() + idLength];
+        key.getChars(0, key.length(), newKey, 0);
+        putId(newKey, key.length(), id);
+        return new String(newKey);
+    }
+
+    /**
+     * Write the given identifier in the given key at the given position, most
+     * significant character first, so keys sort like their identifiers.
+     *
+     * @note    Identifiers are not negative, so the first character of an identifier is
+     *          never the largest character, and every key that starts with the key of a
+     *          directory sorts below that key followed by the largest character.
+     */
+    @Model
+    private static void putId(char[] key, int position, long id) {
+        for (int i = idLength - 1; i >= 0; i--) {
+            key[position + i] = (char) id;
+            id >>>= Character.SIZE;
+        }
+    }
+
+    /**
+     * Add the given file to this index under the given key.
+     *
+     * @param   file
+     *          The file to add, which is not deleted.
+     * @param   key
+     *          The key of the file.
+     */
+    void add(File file, String key) {
+        filesByType.get(file.getFileType()).put(key, file);
+        addByName(file.getName(), file);
+    }
+
+    /**
+     * Remove the given file, which is in this index under the given key, from this index.
+     *
+     * @param   file
+     *          The file to remove.
+     * @param   key
+     *          The key of the file in this index.
+     */
+    void remove(File file, String key) {
+        filesByType.get(file.getFileType()).remove(key, file);
+        removeByName(file.getName(), file);
+    }
+
+    /**
+     * Move the given file, which is in this index, from its old key to its new key.
+     *
+     * @param   file
+     *          The file that has been moved.
+     * @param   oldKey
+     *          The key of the file before it was moved.
+     * @param   newKey
+     *          The key of the file after it was moved.
+     */
+    void move(File file, String oldKey, String newKey) {
+        ConcurrentSkipListMap<String, File> files = filesByType.get(file.getFileType());
+        files.remove(oldKey, file);
+        files.put(newKey, file);
+    }
+
+    /**
+     * Move the given file to its new name in the index by name.
+     *
+     * @param   file
+     *          The file that has been renamed.
+     * @param   oldName
+     *          The name of the file before it was renamed.
+     */
+    void rename(File file, String oldName) {
+        removeByName(oldName, file);
+        addByName(file.getName(), file);
+    }
+
+    /**
+     * Add the given file to the bucket for the given name.
+     *
+     * @note    A bucket is retired once it becomes empty, in which case
+     *          a new bucket is tried.
+     */
+    @Model
+    private void addByName(String name, File file) {
+        while (true) {
+            Bucket bucket = filesByName.computeIfAbsent(name, key -> new Bucket());
+            synchronized (bucket) {
+                if (!bucket.isRetired) {
+                    bucket.files.add(file);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the given file from the bucket for the given name,
+     * and remove that bucket if it becomes empty.
+     */
+    @Model
+    private void removeByName(String name, File file) {
+        Bucket bucket = filesByName.get(name);
+        if (bucket == null) return;
+        synchronized (bucket) {
+            bucket.files.remove(file);
+            if (bucket.files.isEmpty()) {
+                bucket.isRetired = true;
+                filesByName.remove(name, bucket);
+            }
+        }
+    }
+
+    /**
+     * Return the files of the given type in the subtree of the given directory.
+     *
+     * @param   type
+     *          The type of the files to return.
+     * @param   directory
+     *          The directory in the tree of this index whose subtree is to be searched.
+     * @return  The files of the given type in this index that are a direct or indirect
+     *          child of the given directory, in order of their keys.
+     *          | result == { file | file.getFileType() == type && !file.isDeleted()
+     *          |                     && file.isDirectOrIndirectChildOf(directory) }
+     * @note    Only the range of keys that start with the key of the given directory is
+     *          looked at, so this takes time logarithmic in the number of files of the given
+     *          type in this index, plus the size of the result. The key of the directory is
+     *          remembered by the directory, so it is only made again after a path change.
+     */
+    List<File> getFilesOfType(FileType type, Directory directory) {
+        String key = directory.getIndexKey();
+        return new ArrayList<>(filesByType.get(type).subMap(key, true, key + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * Return the files whose name starts with the given prefix in the subtree
+     * of the given directory.
+     *
+     * @param   prefix
+     *          The prefix of the names of the files to return.
+     * @param   directory
+     *          The directory in the tree of this index whose subtree is to be searched.
+     * @return  The files whose name starts with the given prefix in this index that
+     *          are a direct or indirect child of the given directory.
+     *          | result == { file | file.getName().startsWith(prefix) && !file.isDeleted()
+     *          |                     && file.isDirectOrIndirectChildOf(directory) }
+     * @note    Names only consist of ASCII characters, so every name with the
+     *          prefix sorts below the prefix followed by the largest character.
+     */
+    List<File> getFilesWithNamePrefix(String prefix, Directory directory) {
+        List<File> result = new ArrayList<>();
+        for (Bucket bucket : filesByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            synchronized (bucket) {
+                for (File file : bucket.files) {
+                    if (file.isDirectOrIndirectChildOf(directory)) result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+}
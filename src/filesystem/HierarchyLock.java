@@ -0,0 +1,118 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A class of locks that coordinate changes to the hierarchy of a tree of items between
+ * threads. Every tree has a lock of its own. Changes that only involve a few directories,
+ * such as creating, renaming, resizing, moving or deleting a file, share the lock and lock
+ * the directories involved themselves. Changes that drag a whole subtree along, such as
+ * moving or deleting a directory with items in it, hold the lock exclusively.
+ *
+ * @note    The lock is striped: a thread that shares the lock only locks the stripe that
+ *          belongs to it, so threads sharing the lock don't all update the same counter.
+ *          Holding the lock exclusively means locking every stripe, in a fixed order.
+ * @note    Like its stripes, the lock is reentrant, and a thread that holds the lock
+ *          exclusively can also share it. A thread that shares the lock must not
+ *          try to hold it exclusively.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class HierarchyLock {
+
+    /**
+     * Variable registering the number of stripes of every hierarchy lock,
+     * which is a power of two.
+     */
+    private static final int nbOfStripes =
+            Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+
+    /**
+     * Variable referencing the stripes of this lock.
+     */
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[nbOfStripes];
+
+    /**
+     * Initialize a new hierarchy lock, which is not locked.
+     */
+    HierarchyLock() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Return the stripe of this lock that belongs to the current thread.
+     */
+    @Model
+    private ReentrantReadWriteLock getStripe() {
+        int hash = System.identityHashCode(Thread.currentThread());
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Share this lock with other threads that share it.
+     */
+    void lockShared() {
+        getStripe().readLock().lock();
+    }
+
+    /**
+     * Stop sharing this lock.
+     */
+    void unlockShared() {
+        getStripe().readLock().unlock();
+    }
+
+    /**
+     * Hold this lock exclusively, waiting until no other thread shares or holds it.
+     */
+    void lockExclusively() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+
+    /**
+     * Stop holding this lock exclusively.
+     */
+    void unlockExclusively() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hold this lock exclusively or share it, as given.
+     *
+     * @param   exclusively
+     *          Whether the lock is to be held exclusively.
+     */
+    void lock(boolean exclusively) {
+        if (exclusively) {
+            lockExclusively();
+        } else {
+            lockShared();
+        }
+    }
+
+    /**
+     * Release this lock, which is held exclusively or shared, as given.
+     *
+     * @param   exclusively
+     *          Whether the lock is held exclusively.
+     */
+    void unlock(boolean exclusively) {
+        if (exclusively) {
+            unlockExclusively();
+        } else {
+            unlockShared();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package filesystem;
+
+/**
+ * A class of histories of a field of an item: the older values of the field, newest first,
+ * each with the version in which it was replaced.
+ *
+ * A field with a history is read at a version by starting from its current value and going
+ * back through the values that were replaced after that version. Older values are only kept
+ * as long as some snapshot might need them: without snapshots, a field has no history at all.
+ *
+ * @note    A history is changed by one thread at a time, which holds the lock that guards
+ *          the field, and read by any number of threads without locks. A field is changed by
+ *          first recording its old value and then writing the new one, and read by first
+ *          reading its current value and then its history, so a reader never misses a value.
+ *
+ * @param   <T>
+ *          The type of the values of the field.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class History<T> {
+
+    /**
+     * Initialize a new history with the given value, replaced in the given version,
+     * in front of the given older history.
+     */
+    private History(T value, long replacedIn, History<T> older) {
+        this.value = value;
+        this.replacedIn = replacedIn;
+        this.older = older;
+    }
+
+    /**
+     * The value the field had.
+     */
+    private final T value;
+
+    /**
+     * The version in which the value was replaced.
+     */
+    private final long replacedIn;
+
+    /**
+     * The values the field had before, or null if they aren't needed any more.
+     */
+    private volatile History<T> older;
+
+    /**
+     * Return the history of a field whose given old value is replaced in the current version.
+     *
+     * @param   oldValue
+     *          The value of the field that is replaced.
+     * @param   history
+     *          The history of the field so far, possibly null.
+     * @return  The given history with the old value in front of it, without the values that
+     *          no pinned snapshot needs, or null if no pinned snapshot needs any of them.
+     * @note    Values that were replaced in the version of the oldest pinned snapshot or before
+     *          are never read again, so they are cut off. Snapshots that are pinned later get
+     *          newer versions, so they don't need them either.
+     */
+    static <T> History<T> record(T oldValue, History<T> history) {
+        long oldestPinnedVersion = SubtreeSnapshot.getOldestPinnedVersion();
+        long version = SubtreeSnapshot.getCurrentVersion();
+        if (version <= oldestPinnedVersion) return null;
+        if (history != null && history.replacedIn <= oldestPinnedVersion) {
+            history = null;
+        } else {
+            for (History<T> newer = history; newer != null; newer = newer.older) {
+                History<T> older = newer.older;
+                if (older != null && older.replacedIn <= oldestPinnedVersion) {
+                    newer.older = null;
+                    break;
+                }
+            }
+        }
+        return new History<>(oldValue, version, history);
+    }
+
+    /**
+     * Return the value a field had in the given version.
+     *
+     * @param   currentValue
+     *          The current value of the field, read before its history.
+     * @param   history
+     *          The history of the field, possibly null.
+     * @param   version
+     *          The version to read the field in.
+     * @return  The oldest value in the history that was replaced after the given version,
+     *          or the current value if no value was replaced after it.
+     */
+    static <T> T valueIn(T currentValue, History<T> history, long version) {
+        T value = currentValue;
+        for (History<T> older = history; older != null && older.replacedIn > version; older = older.older) {
+            value = older.value;
+        }
+        return value;
+    }
+
+}
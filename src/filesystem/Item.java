@@ -2,8 +2,13 @@ package filesystem;
 
 import be.kuleuven.cs.som.annotate.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.lang.String;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * A class of items within a filesystem.
@@ -19,6 +24,12 @@ import java.lang.String;
  * @invar   Each item must have a valid disk usage.
  *          | isValidDiskUsage(getTotalDiskUsage());
  *
+ * @note    Items can be used from several threads at once. Every change to the hierarchy
+ *          locks the directories it involves, in a fixed order, while sharing the hierarchy
+ *          locks of the trees it involves; changes that drag a subtree along hold those
+ *          hierarchy locks exclusively. Every root directory has a tree with a hierarchy
+ *          lock of its own, so changes to independent trees never wait for each other.
+ *
  * @author  Vincent Van Schependom
  * @author  Flor De Meulemeester
  * @author  Arne Claerhout
@@ -55,7 +66,7 @@ public abstract class Item {
      */
     @Raw
     public Item(String name, Directory dir) throws IllegalParentDirectoryException, NullPointerException {
-        setName(name);
+        this(name);
         if (dir != null) {
             move(dir);
         } else if (!(this instanceof Directory)) {
@@ -63,6 +74,49 @@ public abstract class Item {
         }
     }
 
+    /**
+     * Initialize a new item with given name, without a parent directory.
+     *
+     * @param   name
+     *          The name of the new item.
+     * @effect  The name of the item is set to the given name.
+     * 			If the given name is not valid, a default name is set.
+     *          | setName(name)
+     * @post    The new item has no parent directory.
+     *          | new.getParentDirectory() == null
+     * @note    Subclasses use this constructor to initialize themselves completely
+     *          before they move the new item to its parent directory, where
+     *          other threads can see it.
+     */
+    @Raw
+    protected Item(String name) {
+        this(name, System.currentTimeMillis(), noModificationTime);
+    }
+
+    /**
+     * Initialize a new item with given name and times, without a parent directory.
+     *
+     * @param   name
+     *          The name of the new item.
+     * @param   creationTime
+     *          The time of creation of the new item, in milliseconds since the epoch.
+     * @param   modificationTime
+     *          The time of the last modification of the new item, in milliseconds since
+     *          the epoch, or Long.MIN_VALUE if it has not been modified.
+     * @effect  The name of the item is set to the given name.
+     *          | setName(name)
+     * @post    The new item has the given times.
+     *          | new.getCreationTimeMillis() == creationTime
+     *          |   && new.getModificationTimeMillis() == modificationTime
+     * @note    This constructor is used to restore items that were stored before.
+     */
+    @Raw
+    Item(String name, long creationTime, long modificationTime) {
+        this.creationTime = creationTime;
+        this.modificationTime = modificationTime;
+        setName(name);
+    }
+
 
 
     /**********************************************************
@@ -72,7 +126,7 @@ public abstract class Item {
     /**
      * A variable to check whether the item is deleted or not.
      */
-    protected boolean isDeleted = false;
+    protected volatile boolean isDeleted = false;
 
     /**
      * A destructor for this item.
@@ -89,12 +143,28 @@ public abstract class Item {
      *          | new.isDeleted() == true
      */
     public void delete(){
-        if (!isDeleted()) {
-            isDeleted = true;
-            if (getParentDirectory() != null) {
-                getParentDirectory().removeAsItem(this);
-                setParentDirectory(null);
+        Locks locks = lockWith(null, false);
+        try {
+            MutationJournal journal = null;
+            try {
+                if (!isDeleted()) {
+                    journal = getJournal();
+                    String path = (journal == null) ? null : journal.getPathOf(this);
+                    isDeleted = true;
+                    if (getParentDirectory() != null) {
+                        getParentDirectory().removeAsItem(this);
+                        setParentDirectory(null);
+                        updateRootAndDepth();
+                    }
+                    registerHierarchyChange(locks.getLockedTrees());
+                    if (journal != null) journal.recordDeletion(path);
+                }
+            } finally {
+                locks.unlockDirectories();
             }
+            if (journal != null) journal.commit();
+        } finally {
+            locks.unlock();
         }
     }
 
@@ -128,12 +198,12 @@ public abstract class Item {
     /**
      * Variable referencing the name of this item.
      */
-    private String name = null;
+    private volatile String name = null;
 
     /**
      * Variable for keeping track of the default name index.
      */
-    private static int nameIndex = 1;
+    private static final AtomicInteger nameIndex = new AtomicInteger(1);
 
     /**
      * Return the name of this item.
@@ -153,10 +223,11 @@ public abstract class Item {
      * 			hyphens and underscores; false otherwise.
      * 			| result ==
      * 			|	(name != null) && name.matches("[a-zA-Z_0-9.-]+")
+     * @note    The check is done by the shared name table, without a regular expression.
      */
     @Raw
     public boolean isValidName(String name) {
-        return (name != null && name.matches("[a-zA-Z_0-9.-]+"));
+        return NameTable.isValidItemName(name);
     }
 
     /**
@@ -170,13 +241,15 @@ public abstract class Item {
      *          | if (isValidName(name))
      *          |      then new.getName().equals(name)
      *          |      else new.getName().equals(getDefaultName())
+     * @note    The name is stored as the string shared through the name table,
+     *          so items with equal names don't each keep a copy.
      */
     @Raw @Model
     private void setName(String name) {
         if (isValidName(name)) {
-            this.name = name;
+            this.name = NameTable.intern(name);
         } else {
-            this.name = getDefaultName();
+            this.name = NameTable.intern(getDefaultName());
         }
     }
 
@@ -189,7 +262,7 @@ public abstract class Item {
      */
     @Raw @Model
     private static String getDefaultName() {
-        return "new_item_" + nameIndex++;
+        return "new_item_" + nameIndex.getAndIncrement();
     }
 
     /**
@@ -206,13 +279,68 @@ public abstract class Item {
      * 			of this item is updated.
      *          | if (isValidName(name))
      *          | then setModificationTime()
+     * @post    If the name is valid, this item keeps its place in the lexicographical
+     *          order of its parent directory.
+     *          | if (getParentDirectory() != null)
+     *          | then getParentDirectory().isOrdered()
+     * @note    If the parent directory already contains an item with the given name,
+     *          there is no change, so names within a directory stay unique.
+     * @note    The parent directory is locked while the item is renamed, so the check
+     *          for a name that is taken and the renaming itself happen at once.
      */
     public void changeName(String name) {
         if (this instanceof Directory && !((Directory) this).isWritable()) throw new NotWritableException(this);
         if (this instanceof File && !((File) this).isWritable()) throw new NotWritableException(this);
         if (isValidName(name)){
-            setName(name);
-            setModificationTime();
+            if (!changeName(name, false)) changeName(name, true);
+        }
+    }
+
+    /**
+     * A method for changing the name of this item to the given valid name while
+     * holding the hierarchy lock exclusively or sharing it, as given.
+     *
+     * @param   name
+     *          The new name for this item.
+     * @param   exclusively
+     *          Whether the hierarchy lock is to be held exclusively.
+     * @return  False if the hierarchy lock is shared and this item turns out to be a
+     *          directory with items in it in a tree with a journal, in which case nothing
+     *          has changed; true otherwise.
+     * @effect  See changeName(name).
+     * @note    The journal refers to items by their paths, and renaming a directory changes
+     *          the paths of the items within it without locking them. So a directory with
+     *          items in a tree with a journal is only renamed while the hierarchy lock is
+     *          held exclusively.
+     */
+    @Model
+    private boolean changeName(String name, boolean exclusively) {
+        Locks locks = lockWith(null, exclusively);
+        try {
+            MutationJournal journal;
+            try {
+                journal = getJournal();
+                if (!exclusively && journal != null && hasItems()) return false;
+                Directory parent = getParentDirectory();
+                String oldName = getName();
+                if (parent == null) {
+                    setName(name);
+                } else {
+                    if (parent.containsDiskItemWithNameCaseSensitive(name)) return true;
+                    setName(name);
+                    parent.finishRenaming(this, oldName);
+                    if (this instanceof File) ((File) this).renameInIndex(oldName);
+                }
+                registerHierarchyChange(locks.getLockedTrees());
+                setModificationTime();
+                if (journal != null) journal.recordRename(this, oldName);
+            } finally {
+                locks.unlockDirectories();
+            }
+            if (journal != null) journal.commit();
+            return true;
+        } finally {
+            locks.unlock();
         }
     }
 
@@ -223,15 +351,30 @@ public abstract class Item {
      **********************************************************/
 
     /**
-     * Variable referencing the time of creation.
+     * Variable registering the time of creation, in milliseconds since the epoch.
+     *
+     * @note    Times are kept as primitive values; a Date is only created when one is asked for.
      */
-    private final Date creationTime = new Date();
+    private final long creationTime;
 
     /**
      * Return the time at which this item was created.
+     *
+     * @return  A new date for the time of creation.
+     *          | result.getTime() == getCreationTimeMillis()
+     * @note    Every invocation returns a new date, so changing the result
+     *          doesn't change the creation time of this item.
      */
-    @Raw @Basic @Immutable
+    @Raw @Immutable
     public Date getCreationTime() {
+        return new Date(creationTime);
+    }
+
+    /**
+     * Return the time at which this item was created, in milliseconds since the epoch.
+     */
+    @Raw @Basic @Immutable
+    public long getCreationTimeMillis() {
         return creationTime;
     }
 
@@ -258,21 +401,54 @@ public abstract class Item {
      **********************************************************/
 
     /**
-     * Variable referencing the time of the last modification,
-     * possibly null.
+     * Variable registering the value of the modification time of items
+     * that have not been modified.
      */
-    private Date modificationTime = null;
+    private static final long noModificationTime = Long.MIN_VALUE;
+
+    /**
+     * Variable registering the time of the last modification, in milliseconds
+     * since the epoch, or noModificationTime if there is none.
+     */
+    private volatile long modificationTime = noModificationTime;
 
     /**
      * Return the time at which this item was last modified.
      * If this item has not yet been modified after construction,
      * null is returned.
+     *
+     * @return  Null if this item has not been modified, otherwise a new date
+     *          for the time of the last modification.
+     *          | if (! hasBeenModified()) then result == null
+     *          | else result.getTime() == getModificationTimeMillis()
      */
-    @Raw @Basic
+    @Raw
     public Date getModificationTime() {
+        long modificationTime = this.modificationTime;
+        return (modificationTime == noModificationTime) ? null : new Date(modificationTime);
+    }
+
+    /**
+     * Return the time at which this item was last modified, in milliseconds since
+     * the epoch. If this item has not yet been modified after construction,
+     * Long.MIN_VALUE is returned.
+     */
+    @Raw @Basic
+    public long getModificationTimeMillis() {
         return modificationTime;
     }
 
+    /**
+     * Check whether this item has been modified after construction.
+     *
+     * @return  True if and only if this item has a modification time.
+     *          | result == (getModificationTimeMillis() != Long.MIN_VALUE)
+     */
+    @Raw
+    public boolean hasBeenModified() {
+        return modificationTime != noModificationTime;
+    }
+
     /**
      * Check whether this item can have the given date as modification time.
      *
@@ -288,7 +464,7 @@ public abstract class Item {
     @Raw
     public boolean canHaveAsModificationTime(Date date) {
         return (date == null) ||
-                ( (date.getTime() >= getCreationTime().getTime()) &&
+                ( (date.getTime() >= getCreationTimeMillis()) &&
                         (date.getTime() <= System.currentTimeMillis()) );
     }
 
@@ -304,10 +480,25 @@ public abstract class Item {
      *         |                    System.currentTimeMillis()) &&
      *         | (new.getModificationTime().getTime() <=
      *         |                    (new System).currentTimeMillis())
+     * @note   No object is allocated, so modifying items creates no garbage.
      */
     @Model
     protected void setModificationTime() {
-        modificationTime = new Date();
+        modificationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Set the modification time of this item to the given time.
+     *
+     * @param   modificationTime
+     *          The time of the last modification, in milliseconds since the epoch.
+     * @post    The modification time of this item is the given time.
+     *          | new.getModificationTimeMillis() == modificationTime
+     * @note    This is used to restore changes that were recorded before.
+     */
+    @Model
+    void restoreModificationTime(long modificationTime) {
+        this.modificationTime = modificationTime;
     }
 
     /**
@@ -334,11 +525,13 @@ public abstract class Item {
      */
     public boolean hasOverlappingUsePeriod(Item other) {
         if (other == null) return false;
-        if(getModificationTime() == null || other.getModificationTime() == null) return false;
-        return ! (getCreationTime().before(other.getCreationTime()) &&
-                getModificationTime().before(other.getCreationTime()) ) &&
-                ! (other.getCreationTime().before(getCreationTime()) &&
-                        other.getModificationTime().before(getCreationTime()) );
+        long modificationTime = getModificationTimeMillis();
+        long otherModificationTime = other.getModificationTimeMillis();
+        if (modificationTime == noModificationTime || otherModificationTime == noModificationTime) return false;
+        return ! (getCreationTimeMillis() < other.getCreationTimeMillis() &&
+                modificationTime < other.getCreationTimeMillis() ) &&
+                ! (other.getCreationTimeMillis() < getCreationTimeMillis() &&
+                        otherModificationTime < getCreationTimeMillis() );
     }
 
 
@@ -350,7 +543,7 @@ public abstract class Item {
     /**
      * A variable referencing the parent directory of this item.
      */
-    private Directory parentDirectory = null;
+    private volatile Directory parentDirectory = null;
 
     /**
      * Return the parent directory of this item, possibly null.
@@ -415,7 +608,7 @@ public abstract class Item {
     }
 
     /**
-     * A recursive method for checking if this item is a direct or indirect
+     * A method for checking if this item is a direct or indirect
      * child of the given directory.
      *
      * @param   dir
@@ -423,11 +616,133 @@ public abstract class Item {
      * @return  True if the given directory is a direct or indirect parent of this item.
      *          | result == (dir == getParentDirectory()) && ( dir != null || getParentDirectory() == null )
      *          |   || ( getParentDirectory().isDirectOrIndirectChildOf(dir) )
+     * @note    Items in different trees, or with a depth that is not larger than the depth
+     *          of the given directory, are rejected right away, and for a root directory
+     *          comparing the roots suffices. Otherwise, the ancestor of this item at the depth
+     *          of the given directory is found with jumps, in time logarithmic in the depth.
      */
     public boolean isDirectOrIndirectChildOf(Directory dir) {
         if (dir == getParentDirectory()) return true;
         if (dir == null || getParentDirectory() == null) return false;
-        return getParentDirectory().isDirectOrIndirectChildOf(dir);
+        if (dir.getParentDirectory() == null) return getRoot() == dir;
+        if (getDepth() - dir.getDepth() <= 1 || getRoot() != dir.getRoot()) return false;
+        return getAncestorAt(dir.getDepth()) == dir;
+    }
+
+    /**
+     * Return the directory above this item at the given depth.
+     *
+     * @param   depth
+     *          The depth of the directory to return.
+     * @pre     The given depth is smaller than the depth of this item, and not negative.
+     *          | 0 <= depth && depth < getDepth()
+     * @return  The parent directory of this item if the given depth is one less than the
+     *          depth of this item, and otherwise the directory at the given depth above
+     *          that parent directory.
+     *          | if (depth == getDepth() - 1)
+     *          |   then result == getParentDirectory()
+     *          |   else result == getParentDirectory().getAncestorAt(depth)
+     * @note    Every item refers to an ancestor further up as well, chosen so that at most
+     *          a logarithmic number of steps lead to any ancestor. This is the jump pointer
+     *          scheme of Myers, which needs only one extra reference per item.
+     */
+    @Model
+    private Directory getAncestorAt(int depth) {
+        Item ancestor = this;
+        while (ancestor.getDepth() > depth) {
+            Directory jump = ancestor.jump;
+            ancestor = (jump != null && jump.getDepth() >= depth) ? jump : ancestor.getParentDirectory();
+        }
+        return (Directory) ancestor;
+    }
+
+
+
+    /**********************************************************
+     * root and depth
+     **********************************************************/
+
+    /**
+     * Variable referencing the root directory of the tree this item is in,
+     * or null if this item has no parent directory.
+     */
+    private volatile Directory root = null;
+
+    /**
+     * Variable registering the number of directories above this item.
+     */
+    private volatile int depth = 0;
+
+    /**
+     * Variable referencing a directory above this item that lets getAncestorAt() skip
+     * the directories in between, or null if this item has no parent directory.
+     *
+     * @note    The jump of an item is the jump of the jump of its parent directory, if the
+     *          jump of the parent directory skips as many levels as the jump after it, and
+     *          the parent directory itself otherwise. So it only depends on the directories
+     *          above the item, and is kept up to date together with the root and depth.
+     */
+    private volatile Directory jump = null;
+
+    /**
+     * Return the number of directories above this item.
+     *
+     * @return  Zero if this item has no parent directory, otherwise one more
+     *          than the depth of its parent directory.
+     *          | if ( getParentDirectory() == null ) then
+     *          |   result == 0
+     *          | else
+     *          |   result == getParentDirectory().getDepth() + 1
+     */
+    @Basic
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * A method for bringing the root and depth of this item up to date,
+     * after its parent directory has changed.
+     *
+     * @post    The root of this item is the root of its parent directory,
+     *          if it has one.
+     *          | if (getParentDirectory() != null)
+     *          |   then new.getRoot() == getParentDirectory().getRoot()
+     * @post    The depth of this item is one more than the depth of its parent
+     *          directory, or zero if it has none.
+     *          | if (getParentDirectory() != null)
+     *          |   then new.getDepth() == getParentDirectory().getDepth() + 1
+     *          |   else new.getDepth() == 0
+     */
+    @Model
+    protected void updateRootAndDepth() {
+        updateOwnRootAndDepth();
+    }
+
+    /**
+     * A method for bringing the root and depth of this item up to date, but not
+     * those of the items within, after its parent directory has changed.
+     *
+     * @post    See updateRootAndDepth().
+     */
+    @Model
+    protected final void updateOwnRootAndDepth() {
+        Directory parent = getParentDirectory();
+        if (parent == null) {
+            root = null;
+            depth = 0;
+            jump = null;
+        } else {
+            root = parent.getRoot();
+            depth = parent.getDepth() + 1;
+            Directory parentJump = ((Item) parent).jump;
+            Directory nextJump = (parentJump == null) ? null : ((Item) parentJump).jump;
+            if (nextJump != null
+                    && parent.getDepth() - parentJump.getDepth() == parentJump.getDepth() - nextJump.getDepth()) {
+                jump = nextJump;
+            } else {
+                jump = parent;
+            }
+        }
     }
 
 
@@ -439,13 +754,19 @@ public abstract class Item {
     /**
      * A variable referencing the disk usage of this item.
      */
-    private int diskUsage = 0;
+    private volatile long diskUsage = 0;
+
+    /**
+     * Variable referencing the updater that changes the disk usage of items atomically.
+     */
+    private static final AtomicLongFieldUpdater<Item> diskUsageUpdater =
+            AtomicLongFieldUpdater.newUpdater(Item.class, "diskUsage");
 
     /**
      * Return the disk usage of this item.
      */
     @Basic
-    public int getTotalDiskUsage() {
+    public long getTotalDiskUsage() {
         return diskUsage;
     }
 
@@ -457,7 +778,7 @@ public abstract class Item {
      * @return  True if the given amount of bits is positive or equal to zero.
      *          | result == (amtOfBits >= 0)
      */
-    public static boolean isValidDiskUsage(int amtOfBits) {
+    public static boolean isValidDiskUsage(long amtOfBits) {
         return (amtOfBits >= 0);
     }
 
@@ -473,10 +794,87 @@ public abstract class Item {
      * @note    We implemented this nominally, so we expect a legal value.
      */
     @Raw
-    protected void setDiskUsage(int diskUsage) {
+    protected void setDiskUsage(long diskUsage) {
         this.diskUsage = diskUsage;
     }
 
+    /**
+     * A method for incrementing or decrementing the disk usage of this item
+     * and of all directories it is in.
+     *
+     * @param   delta
+     *          The number of bytes to change the disk usage by.
+     *          This can be a positive or negative number.
+     * @effect  The disk usage is set to the current disk usage, increased with
+     *          the given delta (positive or negative).
+     *          | setDiskUsage(getTotalDiskUsage() + delta)
+     * @effect  If the parent directory is effective, its disk usage is changed
+     *          by the same delta.
+     *          | if (getParentDirectory() != null)
+     *          |   then getParentDirectory().changeDiskUsageBy(delta)
+     * @throws  ArithmeticException
+     *          The disk usage of this item or of some directory it is in would overflow,
+     *          in which case no disk usage is changed.
+     *          | ! canChangeDiskUsageBy(delta)
+     * @note    Every disk usage is changed atomically, so changes in different places of
+     *          the same tree don't need to lock the directories they have in common.
+     *          If a change elsewhere makes some disk usage overflow after all of them have
+     *          been checked, the disk usages that were changed already are changed back.
+     */
+    @Raw @Model
+    protected void changeDiskUsageBy(long delta) throws ArithmeticException {
+        if (!canChangeDiskUsageBy(delta)) {
+            throw new ArithmeticException("The disk usage would overflow.");
+        }
+        Item item = this;
+        try {
+            for (; item != null; item = item.getParentDirectory()) {
+                diskUsageUpdater.getAndUpdate(item, diskUsage -> Math.addExact(diskUsage, delta));
+            }
+        } catch (ArithmeticException e) {
+            for (Item changedItem = this; changedItem != item; changedItem = changedItem.getParentDirectory()) {
+                diskUsageUpdater.addAndGet(changedItem, -delta);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the disk usage of this item and of all directories it is in
+     * can be changed by the given delta.
+     *
+     * @param   delta
+     *          The number of bytes to change the disk usage by.
+     * @return  True if and only if neither the disk usage of this item, nor the disk usage
+     *          of any directory it is in, would overflow.
+     *          | result ==
+     *          |   ( getTotalDiskUsage() + delta <= Long.MAX_VALUE
+     *          |     && ( getParentDirectory() == null
+     *          |          || getParentDirectory().canChangeDiskUsageBy(delta) ) )
+     * @note    Every new disk usage is checked, so a change is checked completely
+     *          before the state of any item is changed.
+     */
+    @Raw
+    protected boolean canChangeDiskUsageBy(long delta) {
+        for (Item item = this; item != null; item = item.getParentDirectory()) {
+            long diskUsage = item.getTotalDiskUsage();
+            if (delta > 0 && diskUsage > Long.MAX_VALUE - delta) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Return the statistics this item adds to the statistics of the directories it is in.
+     *
+     * @return  The number of bytes and files of every file type, the number of directories
+     *          and the number of links this item accounts for, in the order kept by directories.
+     */
+    @Model
+    long[] getStatisticsAsItem() {
+        return Directory.getStatisticsOfLeaf(this);
+    }
+
 
     /**********************************************************
      * hierarchy - defensive programming
@@ -487,80 +885,564 @@ public abstract class Item {
      *
      * @param   dir
      *          The directory to move the item to.
+     * @effect  If the given directory is a valid parent directory, the item is added
+     *          to the given directory.
+     *          | if (isAddableToDirectory(dir))
+     *          |   then dir.addItem(this)
      * @effect  If the given directory is a valid parent directory and
      *          the current parent directory is effective, the item is removed
      *          from the current parent directory.
      *          | if (isAddableToDirectory(dir) && getParentDirectory() != null)
      *          |   then getParentDirectory().removeAsItem(this)
-     * @effect  If the given directory is a valid parent directory, the item is added
-     *          to the given directory.
-     *          | if (isAddableToDirectory(dir))
-     *          |   then dir.addItem(this)
      * @effect  If the given directory is a valid parent directory, the parent directory
      *          of this item is set to the given directory.
      *          | if (isAddableToDirectory(dir))
      *          |   then setParentDirectory(dir)
+     * @effect  If the given directory is a valid parent directory, the root and depth
+     *          of this item and all items within are brought up to date.
+     *          | if (isAddableToDirectory(dir))
+     *          |   then updateRootAndDepth()
      * @throws  IllegalParentDirectoryException
      *          The given directory is not a valid parent directory.
      *          | ! isAddableToDirectory(dir)
+     * @throws  NotWritableException
+     *          The given directory is not writable, in which case the item
+     *          stays in its current parent directory.
+     *          | ! dir.isWritable()
+     * @throws  ArithmeticException
+     *          The disk usage of the given directory or of some directory it is in
+     *          would overflow, in which case the item stays in its current parent directory.
+     *          | ! dir.canTakeDiskUsageOf(List.of(this))
      * @throws  NullPointerException
      *          The given directory is null
      *          | dir == null
+     * @note    The old and the new parent directory (and this item, if it is a directory)
+     *          are locked while the item is moved, so moves within independent parts of
+     *          a tree happen in parallel. A directory with items in it drags its subtree
+     *          along, so it is only moved while the hierarchy locks of the tree it leaves
+     *          and the tree of the given directory are held exclusively.
      */
     @Raw
-    public void move(Directory dir) throws IllegalParentDirectoryException, NullPointerException {
-        if (!isAddableToDirectory(dir)) {
-            throw new IllegalParentDirectoryException(dir);
+    public void move(Directory dir) throws IllegalParentDirectoryException, NotWritableException, NullPointerException {
+        if (!needsExclusiveMoveTo(dir) && move(dir, false)) return;
+        move(dir, true);
+    }
+
+    /**
+     * A method for moving this item while holding the hierarchy lock
+     * exclusively or sharing it, as given.
+     *
+     * @param   dir
+     *          The directory to move the item to.
+     * @param   exclusively
+     *          Whether the hierarchy lock is to be held exclusively.
+     * @return  False if the hierarchy lock is shared and this item turns out to have
+     *          items in it, in which case nothing has changed; true otherwise.
+     * @effect  See move(dir).
+     */
+    @Raw @Model
+    private boolean move(Directory dir, boolean exclusively)
+            throws IllegalParentDirectoryException, NotWritableException {
+        Locks locks = lockWith(dir, exclusively);
+        try {
+            MutationJournal oldJournal, newJournal;
+            try {
+                if (!exclusively && needsExclusiveMoveTo(dir)) return false;
+                if (!isAddableToDirectory(dir)) {
+                    throw new IllegalParentDirectoryException(dir);
+                }
+                Directory oldParent = getParentDirectory();
+                // a root directory that enters another tree takes its journal, if any, along
+                oldJournal = (oldParent == null) ? null : getJournal();
+                String oldPath = (oldJournal == null) ? null : oldJournal.getPathOf(this);
+                // a file or link without a parent directory is being created, so
+                // there are no existing paths through it that could change
+                boolean isNewLeaf = oldParent == null && !(this instanceof Directory);
+                // check everything that can fail first, so nothing has changed when it does
+                if (!dir.isWritable()) {
+                    throw new NotWritableException(dir);
+                }
+                if (!dir.canTakeDiskUsageOf(List.of(this))) {
+                    throw new ArithmeticException("The disk usage would overflow.");
+                }
+                // remove first, so the disk usage of directories this item stays in never
+                // counts this item twice
+                if (oldParent != null) {
+                    oldParent.removeAsItem(this);
+                }
+                dir.addItem(this);
+                setParentDirectory(dir);
+                updateRootAndDepth();
+                if (!isNewLeaf) {
+                    registerHierarchyChange(locks.getLockedTrees());
+                } else if (this instanceof File && dir.hasPathTakenOverBy((File) this)) {
+                    getTree().registerTakenOverPath();
+                }
+                if (this instanceof Directory) {
+                    // the subtree may take directories whose items are still to be made along
+                    for (ItemTree oldTree : locks.getLockedTrees()) getTree().addUnloadedDirectoriesOf(oldTree);
+                }
+                newJournal = getJournal();
+                if (oldJournal != null || newJournal != null) {
+                    MutationJournal.recordMove(oldJournal, oldPath, this);
+                }
+            } finally {
+                locks.unlockDirectories();
+            }
+            if (oldJournal != null) oldJournal.commit();
+            if (newJournal != null && newJournal != oldJournal) newJournal.commit();
+            return true;
+        } finally {
+            locks.unlock();
+        }
+    }
+
+    /**
+     * Check whether this item can only be moved to the given directory while the
+     * hierarchy lock is held exclusively.
+     *
+     * @return  True if this item is a directory with items in it, or a new link that
+     *          is moved to a tree with a journal; false otherwise.
+     *          | result == hasItems()
+     *          |   || (this instanceof Link && getParentDirectory() == null
+     *          |       && dir != null && dir.getJournal() != null)
+     * @note    A directory with items in it drags its subtree along. A journal refers to
+     *          the item a new link refers to by its path, which other threads could change
+     *          without locking any directory this link is moved from or to.
+     */
+    @Raw @Model
+    boolean needsExclusiveMoveTo(Directory dir) {
+        return hasItems() || (this instanceof Link && getParentDirectory() == null
+                && dir != null && dir.getJournal() != null);
+    }
+
+    /**
+     * Check whether this item has items in it.
+     *
+     * @return  True if this item is a directory with at least one item in it.
+     *          | result == (this instanceof Directory)
+     *          |   && ((Directory) this).getNbOfItems() > 0
+     */
+    @Raw @Model
+    private boolean hasItems() {
+        return (this instanceof Directory) && ((Directory) this).getNbOfItems() > 0;
+    }
+
+    /**
+     * Return the tree this item is in.
+     *
+     * @return  The tree of the root directory of this item, or null if this item
+     *          is a file or link without a parent directory.
+     *          | if (getParentDirectory() == null && !(this instanceof Directory))
+     *          |   then result == null
+     *          |   else result == getRoot().getTreeAsRoot()
+     */
+    @Raw @Model
+    ItemTree getTree() {
+        Directory root = this.root;
+        if (root == null) {
+            return (this instanceof Directory) ? ((Directory) this).getTreeAsRoot() : null;
+        }
+        return root.getTreeAsRoot();
+    }
+
+    /**
+     * Return the tree whose hierarchy lock must be held to move this item.
+     *
+     * @return  Null if this item is a file or link without a parent directory, or a
+     *          directory without a parent directory, a tree or items; the tree of this
+     *          item otherwise.
+     * @note    Every new directory is moved to its parent directory by its constructor.
+     *          Like a new file, it has nothing in it that other threads could reach, so
+     *          no tree is made for it only to be locked and dropped again. The lock of the
+     *          directory itself keeps other threads from adding items to it while it is
+     *          moved; a thread that finds it got a tree or items before that lock was held
+     *          must start over, as lockWith() does.
+     */
+    @Raw @Model
+    ItemTree getTreeForMove() {
+        Directory root = this.root;
+        if (root == null) {
+            return (this instanceof Directory) ? ((Directory) this).getTreeForMoveAsRoot() : null;
+        }
+        return root.getTreeAsRoot();
+    }
+
+    /**
+     * A class of the locks that a thread holds while it changes an item: the hierarchy
+     * locks of the trees involved, and the directories involved.
+     */
+    static final class Locks {
+
+        /**
+         * Initialize new locks with the given locked trees and directories.
+         */
+        private Locks(ItemTree[] lockedTrees, boolean exclusively, Directory[] lockedDirectories) {
+            this.lockedTrees = lockedTrees;
+            this.exclusively = exclusively;
+            this.lockedDirectories = lockedDirectories;
+        }
+
+        /**
+         * Variable referencing the trees whose hierarchy locks are held.
+         */
+        private final ItemTree[] lockedTrees;
+
+        /**
+         * Variable registering whether the hierarchy locks are held exclusively.
+         */
+        private final boolean exclusively;
+
+        /**
+         * Variable referencing the locked directories, or null once they are unlocked.
+         */
+        private Directory[] lockedDirectories;
+
+        /**
+         * Return the trees whose hierarchy locks are held.
+         */
+        ItemTree[] getLockedTrees() {
+            return lockedTrees;
+        }
+
+        /**
+         * Unlock the directories, but keep holding the hierarchy locks.
+         */
+        void unlockDirectories() {
+            if (lockedDirectories != null) {
+                Directory.unlockAll(lockedDirectories);
+                lockedDirectories = null;
+            }
+        }
+
+        /**
+         * Unlock the directories, if that didn't happen yet, and the hierarchy locks.
+         */
+        void unlock() {
+            unlockDirectories();
+            ItemTree.unlockAll(lockedTrees, exclusively);
+        }
+    }
+
+    /**
+     * A method for locking the hierarchy locks of the tree of this item and of the
+     * given directory, and then the directories that lockDirectoriesWith() locks.
+     *
+     * @param   dir
+     *          The directory this item is moved to, or null if it isn't moved.
+     * @param   exclusively
+     *          Whether the hierarchy locks are to be held exclusively.
+     * @return  The locks that are held, to be unlocked with unlock().
+     * @note    An item that is moved only needs the tree of getTreeForMove() locked.
+     * @note    This item or the given directory may enter another tree while the current
+     *          thread waits for the locks, in which case everything is unlocked and the
+     *          new trees are locked. Once the parent directory of this item is locked, and
+     *          the tree of its root directory is, this item stays in that tree.
+     */
+    @Raw @Model
+    Locks lockWith(Directory dir, boolean exclusively) {
+        while (true) {
+            ItemTree tree = (dir == null) ? getTree() : getTreeForMove();
+            ItemTree otherTree = (dir == null) ? null : dir.getTree();
+            ItemTree[] lockedTrees = ItemTree.lockAll(exclusively, tree, otherTree);
+            Directory[] lockedDirectories = lockDirectoriesWith(dir);
+            if (tree == ((dir == null) ? getTree() : getTreeForMove())
+                    && (dir == null || otherTree == dir.getTree())) {
+                return new Locks(lockedTrees, exclusively, lockedDirectories);
+            }
+            Directory.unlockAll(lockedDirectories);
+            ItemTree.unlockAll(lockedTrees, exclusively);
         }
-        if (getParentDirectory() != null) {
-            getParentDirectory().removeAsItem(this);
+    }
+
+    /**
+     * A method for locking the hierarchy locks of the trees of the given items and of
+     * the given directory, and then the given directory, the parent directories of the
+     * given items and the given items that are directories.
+     *
+     * @param   items
+     *          The items to lock, of which none is null.
+     * @param   dir
+     *          The directory to lock.
+     * @param   exclusively
+     *          Whether the hierarchy locks are to be held exclusively.
+     * @return  The locks that are held, to be unlocked with unlock().
+     * @note    This is lockWith() for many items at once: each tree and each directory
+     *          is locked once, however many of the given items it concerns. If one of the
+     *          items or the given directory enters another tree or directory while the
+     *          current thread waits for the locks, everything is unlocked and locked again.
+     */
+    @Raw @Model
+    static Locks lockWith(Collection<? extends Item> items, Directory dir, boolean exclusively) {
+        while (true) {
+            ItemTree[] trees = new ItemTree[items.size() + 1];
+            Directory[] parents = new Directory[items.size()];
+            ArrayList<Directory> directories = new ArrayList<>();
+            directories.add(dir);
+            int i = 0;
+            for (Item item : items) {
+                trees[i] = item.getTreeForMove();
+                parents[i] = item.getParentDirectory();
+                directories.add(parents[i]);
+                if (item instanceof Directory) directories.add((Directory) item);
+                i++;
+            }
+            trees[i] = dir.getTree();
+            ItemTree[] lockedTrees = ItemTree.lockAll(exclusively, trees);
+            Directory[] lockedDirectories = Directory.lockAll(directories);
+            boolean isUnchanged = trees[i] == dir.getTree();
+            i = 0;
+            for (Item item : items) {
+                if (!isUnchanged) break;
+                isUnchanged = trees[i] == item.getTreeForMove() && parents[i] == item.getParentDirectory();
+                i++;
+            }
+            if (isUnchanged) return new Locks(lockedTrees, exclusively, lockedDirectories);
+            Directory.unlockAll(lockedDirectories);
+            ItemTree.unlockAll(lockedTrees, exclusively);
         }
-        setParentDirectory(dir);
-        dir.addItem(this);
     }
 
     /**
-     * A recursive method to find the root directory in which the item is located.
+     * A method for locking the parent directory of this item, the given directory and
+     * this item itself, if it is a directory.
+     *
+     * @param   dir
+     *          The other directory to lock, possibly null.
+     * @return  The locked directories, to be unlocked with Directory.unlockAll().
+     * @note    The parent directory may change while the current thread waits for its lock,
+     *          in which case everything is unlocked and the new parent directory is locked.
+     */
+    @Raw @Model
+    protected Directory[] lockDirectoriesWith(Directory dir) {
+        while (true) {
+            Directory parent = getParentDirectory();
+            Directory[] lockedDirectories = Directory.lockAll(parent, dir,
+                    (this instanceof Directory) ? (Directory) this : null);
+            if (parent == getParentDirectory()) return lockedDirectories;
+            Directory.unlockAll(lockedDirectories);
+        }
+    }
+
+    /**
+     * Register a change to the hierarchy of items that may change the paths
+     * of existing items in the given trees.
+     *
+     * @param   trees
+     *          The trees the items that changed were in before or are in after the change,
+     *          some of which may be null.
+     * @effect  A path change is registered in each of the given trees.
+     *          | for each tree in trees:
+     *          |   if (tree != null) then tree.registerPathChange()
+     * @note    Other trees are not involved, so what is remembered about them stays valid.
+     */
+    @Model
+    protected static void registerHierarchyChange(ItemTree... trees) {
+        for (ItemTree tree : trees) {
+            if (tree != null) tree.registerPathChange();
+        }
+    }
+
+    /**
+     * Apply the given change of the writability of this item, which is in a tree with
+     * a journal, and record it in that journal.
+     *
+     * @param   isWritable
+     *          The new writability of this item.
+     * @param   change
+     *          The change that sets the writability of this item.
+     * @note    The parent directory of this item (and this item, if it is a directory)
+     *          are locked while the writability changes, so the change is recorded under
+     *          the path this item has at that moment.
+     */
+    @Model
+    void changeWritability(boolean isWritable, Runnable change) {
+        Locks locks = lockWith(null, false);
+        try {
+            MutationJournal journal;
+            try {
+                change.run();
+                journal = getJournal();
+                if (journal != null) journal.recordWritability(this, isWritable);
+            } finally {
+                locks.unlockDirectories();
+            }
+            if (journal != null) journal.commit();
+        } finally {
+            locks.unlock();
+        }
+    }
+
+    /**
+     * Return the journal that records the changes to the tree of this item, if any.
+     *
+     * @return  The journal of the root directory of this item, or null if this item
+     *          is a file or link without a parent directory.
+     *          | if (getParentDirectory() == null && !(this instanceof Directory))
+     *          |   then result == null
+     *          |   else result == getRoot().journal
+     */
+    @Raw @Model
+    MutationJournal getJournal() {
+        Directory root = this.root;
+        if (root == null) {
+            return (this instanceof Directory) ? ((Directory) this).journal : null;
+        }
+        return root.journal;
+    }
+
+    /**
+     * A method to find the root directory in which the item is located.
      *
      * @return  The root directory of the item
      *          | if ( getParentDirectory() == null ) then
      *          |   result == this
      *          | else
      *          |   result == getParentDirectory().getRoot()
+     * @note    The root is kept up to date whenever the item or one of its parent
+     *          directories is moved, so this takes constant time.
      */
     public Directory getRoot() {
-        // if the parent directory is null, the item is definitely a directory
-        if ((getParentDirectory() == null)) {
+        Directory root = this.root;
+        // if there is no root, the item is a root and definitely a directory
+        if (root == null) {
             return (Directory) this;
         } else {
-            return getParentDirectory().getRoot();
+            return root;
         }
     }
 
+    /**
+     * A class of absolute paths, together with the tree of the item and the number
+     * of path changes of that tree at the moment they were computed.
+     */
+    private static final class RememberedPath {
+
+        /**
+         * The absolute path.
+         */
+        private final String path;
+
+        /**
+         * The tree the item was in when the path was computed.
+         */
+        private final ItemTree tree;
+
+        /**
+         * The number of path changes of that tree at the moment the path was computed.
+         */
+        private final long nbOfPathChanges;
+
+        /**
+         * Initialize a new remembered path with given path, tree and number of path changes.
+         */
+        private RememberedPath(String path, ItemTree tree, long nbOfPathChanges) {
+            this.path = path;
+            this.tree = tree;
+            this.nbOfPathChanges = nbOfPathChanges;
+        }
+
+        /**
+         * Check whether this path is still the path of an item in the given tree.
+         */
+        private boolean isValidIn(ItemTree tree) {
+            return this.tree == tree && nbOfPathChanges == tree.getNbOfPathChanges();
+        }
+    }
+
+    /**
+     * Variable referencing the absolute path of this item, as it was last computed,
+     * possibly null.
+     *
+     * @note    The path and the number of path changes it belongs to are kept in one
+     *          immutable object, so other threads never see one without the other.
+     */
+    private volatile RememberedPath absolutePath = null;
+
     /**
      * A method to return a string with the complete path to the item.
      *
      * @return A string with the complete path to the item, starting with a slash
      *         followed by the root directory, then a slash with the next directory, ...,
      *         and ending with a slash and the name of the item.
-     *         | result == "/" + getAbsolutePathRecursive()
+     *         | if (getParentDirectory() == null)
+     *         |   then result == "/" + getNameInPath()
+     *         |   else result == getParentDirectory().getAbsolutePath() + "/" + getNameInPath()
+     * @note   The path is remembered until an item in the same tree is moved, renamed
+     *         or deleted, so asking for it again doesn't rebuild it. After such a change
+     *         it is rebuilt from the (remembered) path of the parent directory. Changes
+     *         in other trees leave the path remembered.
      */
     public String getAbsolutePath() {
-        return "/" + getAbsolutePathRecursive();
+        ItemTree tree = getTree();
+        // a file or link without a parent directory has a path of a single name
+        if (tree == null) return "/" + getNameInPath();
+        RememberedPath rememberedPath = absolutePath;
+        long nbOfPathChanges = tree.getNbOfPathChanges();
+        if (rememberedPath == null || rememberedPath.tree != tree
+                || rememberedPath.nbOfPathChanges != nbOfPathChanges) {
+            Directory parent = getParentDirectory();
+            String path;
+            if (parent == null) {
+                path = "/" + getNameInPath();
+            } else {
+                path = parent.getAbsolutePath() + "/" + getNameInPath();
+            }
+            rememberedPath = new RememberedPath(path, tree, nbOfPathChanges);
+            absolutePath = rememberedPath;
+        }
+        return rememberedPath.path;
     }
 
     /**
-     * A recursive help function for getAbsolutePath().
+     * A method to append the complete path to the item to the given string builder.
      *
-     * @return  A part of the absolute path.
-     *          | if isRoot() then result == getName()
-     *          | else result == getParentDirectory().getAbsolutePathRecursive() + "/" + getName()
+     * @param   builder
+     *          The string builder to append the path to.
+     * @effect  The absolute path of this item is appended to the given builder.
+     *          | builder.append(getAbsolutePath())
+     * @return  The given string builder.
+     *          | result == builder
+     * @throws  NullPointerException
+     *          The given builder is null.
+     *          | builder == null
+     * @note    If the path isn't remembered, it is written piece by piece into the
+     *          builder, without creating any strings.
      */
-    protected String getAbsolutePathRecursive() {
-        if (getParentDirectory() == null) {
-            return getName();
+    public StringBuilder appendAbsolutePathTo(StringBuilder builder) throws NullPointerException {
+        RememberedPath rememberedPath = absolutePath;
+        ItemTree tree = getTree();
+        if (rememberedPath != null && tree != null && rememberedPath.isValidIn(tree)) {
+            return builder.append(rememberedPath.path);
+        }
+        Directory parent = getParentDirectory();
+        if (parent != null) {
+            parent.appendAbsolutePathTo(builder);
         }
-        return getParentDirectory().getAbsolutePathRecursive() + "/" + getName();
+        builder.append('/').append(getName());
+        appendExtensionTo(builder);
+        return builder;
+    }
+
+    /**
+     * Return the name of this item as it appears in its absolute path.
+     *
+     * @return  The name of this item.
+     *          | result == getName()
+     */
+    protected String getNameInPath() {
+        return getName();
+    }
+
+    /**
+     * Append what follows the name of this item in its absolute path
+     * to the given string builder.
+     *
+     * @param   builder
+     *          The string builder to append to.
+     * @effect  Nothing is appended for an item in general.
+     */
+    protected void appendExtensionTo(StringBuilder builder) {
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,403 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A class of trees of items, holding the state that all items with the same root
+ * directory share. Every root directory that is in use has a tree of its own, which it
+ * gives up when it is moved into another tree, so independent trees never coordinate.
+ *
+ * @note    A tree that is no longer the tree of any root directory is only referred to
+ *          by threads that are still using it, and is released once they are done.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class ItemTree {
+
+    /**
+     * Initialize a new tree.
+     */
+    ItemTree() {
+    }
+
+    /**
+     * Variable referencing the lock that coordinates changes to the hierarchy of this tree.
+     */
+    private final HierarchyLock hierarchyLock = new HierarchyLock();
+
+    /**
+     * Variable registering the number of changes made so far to this tree that may change
+     * the item a path resolves to: every move of an item that was in a tree already, rename
+     * and deletion of an item in it counts as one change, and so does every new file that
+     * takes over the path of another item.
+     */
+    private final AtomicLong nbOfResolutionChanges = new AtomicLong();
+
+    /**
+     * Return the number of changes made so far to this tree that may change the item
+     * a path resolves to.
+     *
+     * @note    The item a path resolves to in this tree stays the same as long as this
+     *          number doesn't change. New files and links get paths of their own, so they
+     *          don't count, unless a new file takes over the path of another item.
+     */
+    long getNbOfResolutionChanges() {
+        return nbOfResolutionChanges.get();
+    }
+
+    /**
+     * Variable registering the number of changes made so far to the hierarchy of this
+     * tree that may have changed the path of an item in it.
+     */
+    private final AtomicLong nbOfPathChanges = new AtomicLong();
+
+    /**
+     * Return the number of changes made so far to the hierarchy of this tree that may
+     * have changed the path of an item in it.
+     *
+     * @note    The absolute path of an item in this tree stays valid as long as this
+     *          number doesn't change and the item stays in this tree.
+     */
+    long getNbOfPathChanges() {
+        return nbOfPathChanges.get();
+    }
+
+    /**
+     * Register a change to the hierarchy of this tree that may change the paths of its items.
+     *
+     * @post    The number of resolution changes of this tree is incremented.
+     *          | new.getNbOfResolutionChanges() == getNbOfResolutionChanges() + 1
+     * @post    The number of path changes of this tree is incremented.
+     *          | new.getNbOfPathChanges() == getNbOfPathChanges() + 1
+     */
+    void registerPathChange() {
+        nbOfResolutionChanges.incrementAndGet();
+        nbOfPathChanges.incrementAndGet();
+    }
+
+    /**
+     * Register the addition of a new file to this tree that takes over the path of another item.
+     *
+     * @post    The number of resolution changes of this tree is incremented.
+     *          | new.getNbOfResolutionChanges() == getNbOfResolutionChanges() + 1
+     * @note    No existing item gets another path, so no path change is registered.
+     */
+    void registerTakenOverPath() {
+        nbOfResolutionChanges.incrementAndGet();
+    }
+
+    /**
+     * Variable registering the maximum number of resolved paths that is remembered by a tree.
+     */
+    private static final int maximumNbOfResolvedPaths = 1024;
+
+    /**
+     * A class of paths that were resolved in a tree, with the item they resolved to.
+     */
+    private static final class ResolvedPath {
+
+        /**
+         * Initialize a new resolved path with the given path and item.
+         */
+        private ResolvedPath(String path, Item item) {
+            this.path = path;
+            this.item = item;
+        }
+
+        /**
+         * The resolved path.
+         */
+        private final String path;
+
+        /**
+         * The item the path resolved to.
+         */
+        private final Item item;
+
+        /**
+         * Whether the path was looked up since the clock hand last passed it.
+         */
+        private volatile boolean isReferenced = false;
+    }
+
+    /**
+     * A class of paths that were resolved in a tree, with the items they resolved to,
+     * together with the number of resolution changes of the tree when they were resolved.
+     *
+     * @note    Once the maximum number of resolved paths is reached, a path is forgotten
+     *          for every new one by the clock algorithm: a hand goes round the paths, gives
+     *          those that were looked up since it last passed them another round, and
+     *          forgets the first one that wasn't. Paths that are looked up often are kept,
+     *          and looking up a path only sets a flag, without any lock.
+     */
+    private static final class ResolvedPaths {
+
+        /**
+         * Initialize new resolved paths, without any paths, for the given number of
+         * resolution changes.
+         */
+        private ResolvedPaths(long nbOfResolutionChanges) {
+            this.nbOfResolutionChanges = nbOfResolutionChanges;
+        }
+
+        /**
+         * The number of resolution changes of the tree when the paths were resolved.
+         */
+        private final long nbOfResolutionChanges;
+
+        /**
+         * The resolved paths, indexed by path.
+         */
+        private final ConcurrentHashMap<String, ResolvedPath> paths = new ConcurrentHashMap<>();
+
+        /**
+         * The resolved paths in the order the clock hand goes round them.
+         */
+        private final ResolvedPath[] clock = new ResolvedPath[maximumNbOfResolvedPaths];
+
+        /**
+         * The number of resolved paths on the clock.
+         */
+        private int nbOfPaths = 0;
+
+        /**
+         * The index of the resolved path on the clock that is checked next.
+         */
+        private int hand = 0;
+
+        /**
+         * Return the item the given path resolved to, or null if it isn't remembered.
+         */
+        private Item get(String path) {
+            ResolvedPath resolvedPath = paths.get(path);
+            if (resolvedPath == null) return null;
+            // only write the flag when it changes, so frequent lookups don't contend
+            if (!resolvedPath.isReferenced) resolvedPath.isReferenced = true;
+            return resolvedPath.item;
+        }
+
+        /**
+         * Remember that the given path resolved to the given item, forgetting another
+         * path if the maximum number of resolved paths is reached.
+         */
+        private synchronized void put(String path, Item item) {
+            if (paths.containsKey(path)) return;
+            ResolvedPath resolvedPath = new ResolvedPath(path, item);
+            if (nbOfPaths < clock.length) {
+                clock[nbOfPaths++] = resolvedPath;
+            } else {
+                while (clock[hand].isReferenced) {
+                    clock[hand].isReferenced = false;
+                    hand = (hand + 1) % clock.length;
+                }
+                paths.remove(clock[hand].path);
+                clock[hand] = resolvedPath;
+                hand = (hand + 1) % clock.length;
+            }
+            paths.put(path, resolvedPath);
+        }
+    }
+
+    /**
+     * Variable referencing the paths that were resolved in this tree since the items
+     * paths resolve to last changed, or null as long as no path has been resolved in it.
+     *
+     * @note    The paths and the number of resolution changes they belong to are kept in
+     *          one object, so other threads never see the one without the other.
+     */
+    private volatile ResolvedPaths resolvedPaths = null;
+
+    /**
+     * Return the item that the given path was resolved to in this tree.
+     *
+     * @param   path
+     *          The resolved path.
+     * @param   nbOfResolutionChanges
+     *          The number of resolution changes of this tree, as it was just asked.
+     * @return  The item the given path was resolved to after the given number of resolution
+     *          changes, or null if the path wasn't resolved after exactly that number.
+     */
+    Item getResolvedItem(String path, long nbOfResolutionChanges) {
+        ResolvedPaths resolvedPaths = this.resolvedPaths;
+        if (resolvedPaths == null || resolvedPaths.nbOfResolutionChanges != nbOfResolutionChanges) {
+            return null;
+        }
+        return resolvedPaths.get(path);
+    }
+
+    /**
+     * Remember that the given path resolved to the given item in this tree.
+     *
+     * @param   path
+     *          The resolved path.
+     * @param   item
+     *          The item the path resolved to.
+     * @param   nbOfResolutionChanges
+     *          The number of resolution changes of this tree before the path was resolved.
+     * @note    The path is only remembered if no resolution change was made to this tree
+     *          while it was resolved. Paths of older numbers of resolution changes are
+     *          forgotten, and so are the paths that were looked up least recently once
+     *          there are too many of them.
+     */
+    void rememberResolvedItem(String path, Item item, long nbOfResolutionChanges) {
+        if (getNbOfResolutionChanges() != nbOfResolutionChanges) return;
+        ResolvedPaths resolvedPaths = this.resolvedPaths;
+        if (resolvedPaths == null || resolvedPaths.nbOfResolutionChanges < nbOfResolutionChanges) {
+            resolvedPaths = new ResolvedPaths(nbOfResolutionChanges);
+            this.resolvedPaths = resolvedPaths;
+        } else if (resolvedPaths.nbOfResolutionChanges > nbOfResolutionChanges) {
+            return;
+        }
+        resolvedPaths.put(path, item);
+    }
+
+    /**
+     * Variable referencing the index of the files in this tree, or null as long as
+     * it wasn't asked for.
+     */
+    private volatile FileIndex fileIndex = null;
+
+    /**
+     * Variable referencing the updater that sets the index of a tree once.
+     */
+    private static final AtomicReferenceFieldUpdater<ItemTree, FileIndex> fileIndexUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(ItemTree.class, FileIndex.class, "fileIndex");
+
+    /**
+     * Return the index of the files in this tree.
+     *
+     * @note    The index is only made the first time it is asked for, so a tree that
+     *          never holds a file doesn't have one.
+     */
+    @Model
+    FileIndex getFileIndex() {
+        FileIndex fileIndex = this.fileIndex;
+        if (fileIndex == null) {
+            fileIndexUpdater.compareAndSet(this, null, new FileIndex());
+            fileIndex = this.fileIndex;
+        }
+        return fileIndex;
+    }
+
+    /**
+     * Variable referencing the numbers of directories whose items are still to be made,
+     * of the lazily materialized trees whose directories may be in this tree.
+     */
+    private final Set<AtomicLong> nbsOfUnloadedDirectories = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Register that directories of a lazily materialized tree may be in this tree.
+     *
+     * @param   nbOfUnloadedDirectories
+     *          The number of directories of the lazily materialized tree whose items
+     *          are still to be made.
+     */
+    void addUnloadedDirectories(AtomicLong nbOfUnloadedDirectories) {
+        nbsOfUnloadedDirectories.add(nbOfUnloadedDirectories);
+    }
+
+    /**
+     * Register that directories of the lazily materialized trees whose directories
+     * may be in the given tree may be in this tree as well.
+     *
+     * @param   tree
+     *          The tree whose items are, partly or completely, moved to this tree,
+     *          possibly null.
+     */
+    void addUnloadedDirectoriesOf(ItemTree tree) {
+        if (tree != null && tree != this) nbsOfUnloadedDirectories.addAll(tree.nbsOfUnloadedDirectories);
+    }
+
+    /**
+     * Check whether this tree may have directories whose items are still to be made.
+     *
+     * @return  False if no lazily materialized tree whose directories may be in this
+     *          tree has a directory whose items are still to be made.
+     * @note    A lazily materialized tree that has all of its items made never gets
+     *          directories without items again, so it is forgotten.
+     */
+    boolean mayHaveUnloadedDirectories() {
+        nbsOfUnloadedDirectories.removeIf(nbOfUnloadedDirectories -> nbOfUnloadedDirectories.get() == 0);
+        return !nbsOfUnloadedDirectories.isEmpty();
+    }
+
+    /**
+     * Variable registering the order in which this tree is locked among other trees.
+     */
+    private final long lockOrder = nextLockOrder.getAndIncrement();
+
+    /**
+     * Variable registering the lock order of the next tree.
+     */
+    private static final AtomicLong nextLockOrder = new AtomicLong();
+
+    /**
+     * Lock the hierarchy locks of the given trees, shared or exclusively.
+     *
+     * @param   exclusively
+     *          Whether the hierarchy locks are to be held exclusively.
+     * @param   trees
+     *          The trees to lock, some of which may be null or the same.
+     * @return  The locked trees, to be unlocked with unlockAll().
+     * @note    Trees are always locked in the same order, so threads that lock
+     *          several trees at once can't wait for each other forever.
+     */
+    static ItemTree[] lockAll(boolean exclusively, ItemTree... trees) {
+        ItemTree[] lockedTrees = Arrays.stream(trees).filter(tree -> tree != null).distinct()
+                .sorted(Comparator.comparingLong(tree -> tree.lockOrder)).toArray(ItemTree[]::new);
+        for (ItemTree tree : lockedTrees) {
+            tree.hierarchyLock.lock(exclusively);
+        }
+        return lockedTrees;
+    }
+
+    /**
+     * Lock the hierarchy locks of the trees of the given items exclusively.
+     *
+     * @param   items
+     *          The items whose trees are to be locked.
+     * @return  The locked trees, to be unlocked with unlockAll(), which are the trees
+     *          of the given items until they are unlocked.
+     * @note    An item may enter another tree while the current thread waits for the
+     *          locks, in which case everything is unlocked and the trees are locked again.
+     */
+    static ItemTree[] lockTreesOf(Collection<? extends Item> items) {
+        while (true) {
+            ItemTree[] trees = items.stream().map(Item::getTree).toArray(ItemTree[]::new);
+            ItemTree[] lockedTrees = lockAll(true, trees);
+            int i = 0;
+            for (Item item : items) {
+                if (item.getTree() != trees[i]) break;
+                i++;
+            }
+            if (i == trees.length) return lockedTrees;
+            unlockAll(lockedTrees, true);
+        }
+    }
+
+    /**
+     * Unlock the hierarchy locks of trees that were locked by lockAll().
+     *
+     * @param   lockedTrees
+     *          The trees returned by lockAll().
+     * @param   exclusively
+     *          Whether the hierarchy locks are held exclusively.
+     */
+    static void unlockAll(ItemTree[] lockedTrees, boolean exclusively) {
+        for (int i = lockedTrees.length - 1; i >= 0; i--) {
+            lockedTrees[i].hierarchyLock.unlock(exclusively);
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class of trees of items that are made from a columnar tree bit by bit, as they are used.
+ *
+ * The root directory is made right away. The items in a directory are only made the first
+ * time that directory is looked at, and until then the directory knows its number of items,
+ * its disk usage and its statistics from the columnar tree. A link only looks up the item it
+ * refers to when it is asked for it, by making the directories on the way to that item.
+ *
+ * @invar   Every item that was made for an item of the columnar tree some link refers to,
+ *          or for a directory above such an item, can be found by its identifier.
+ *
+ * @note    Directories whose items are still to be made refer to this tree, and so do
+ *          links that haven't looked up their linked item yet. Once every item is made,
+ *          this tree and its columnar tree can be garbage collected.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class LazyTree {
+
+    /**
+     * Initialize a new lazily materialized tree for the given columnar tree.
+     *
+     * @param   tree
+     *          The columnar tree to make the items from.
+     * @post    The root directory of the new tree is made for the root of the given tree.
+     */
+    LazyTree(ColumnarTree tree) {
+        this.tree = tree;
+        this.root = (Directory) makeItem(0);
+        root.getTree().addUnloadedDirectories(nbOfUnloadedDirectories);
+    }
+
+    /**
+     * Variable referencing the columnar tree the items are made from.
+     */
+    private final ColumnarTree tree;
+
+    /**
+     * Variable referencing the root directory of this tree.
+     */
+    private final Directory root;
+
+    /**
+     * Variable referencing the items that were made for items some link refers to,
+     * and for the directories above them, by their identifier.
+     */
+    private final ConcurrentHashMap<Integer, Item> linkedItems = new ConcurrentHashMap<>();
+
+    /**
+     * Variable registering the number of directories of this tree whose items are still
+     * to be made.
+     *
+     * @note    The trees of items this tree's directories end up in refer to this number,
+     *          and not to this tree, so they don't keep this tree alive.
+     */
+    private final AtomicLong nbOfUnloadedDirectories = new AtomicLong();
+
+    /**
+     * Register that the items of a directory of this tree have been made.
+     *
+     * @post    The number of directories whose items are still to be made is decremented.
+     */
+    void registerLoaded() {
+        nbOfUnloadedDirectories.decrementAndGet();
+    }
+
+    /**
+     * Return the root directory of this tree.
+     */
+    @Basic @Immutable
+    Directory getRoot() {
+        return root;
+    }
+
+    /**
+     * Return the number of items in the directory with the given identifier.
+     */
+    int getNbOfItems(int id) {
+        return tree.getNbOfChildren(id);
+    }
+
+    /**
+     * Make the items in the directory with the given identifier.
+     *
+     * @param   id
+     *          The identifier of the directory.
+     * @return  A new item for every item in the directory, in lexicographical order of
+     *          their names, without a parent directory.
+     * @note    This is called once for every directory, while its lock is held.
+     */
+    Item[] makeItems(int id) {
+        int first = tree.getFirstChild(id);
+        Item[] items = new Item[tree.getNbOfChildren(id)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = makeItem(first + i);
+        }
+        return items;
+    }
+
+    /**
+     * Make a new item for the item with the given identifier, without a parent directory.
+     * A directory with items gets its items once it is first looked at.
+     */
+    @Model
+    private Item makeItem(int id) {
+        Item item;
+        if (tree.isDirectory(id)) {
+            Directory directory = new Directory(tree.getName(id), tree.isWritable(id),
+                    tree.getCreationTimeMillis(id), tree.getModificationTimeMillis(id));
+            if (tree.getNbOfChildren(id) > 0) {
+                // counted before the directory above is counted off, so the number only
+                // drops to zero once every item is made
+                nbOfUnloadedDirectories.incrementAndGet();
+                directory.deferItems(this, id, tree.getStatisticsAsItem(id));
+            }
+            item = directory;
+        } else if (tree.isFile(id)) {
+            item = new File(tree.getName(id), tree.getSize(id), tree.isWritable(id), tree.getFileType(id),
+                    tree.getCreationTimeMillis(id), tree.getModificationTimeMillis(id));
+        } else {
+            item = new LazyLink(tree.getName(id), tree.getLinkedItem(id),
+                    tree.getCreationTimeMillis(id), tree.getModificationTimeMillis(id));
+        }
+        if (tree.isLinkedOrAboveLinked(id)) linkedItems.put(id, item);
+        return item;
+    }
+
+    /**
+     * Return the item that was made for the item with the given identifier, which some link
+     * refers to or which lies above such an item, making the directories on the way to it.
+     */
+    @Model
+    private Item getLinkedItem(int id) {
+        if (id == 0) return root;
+        ((Directory) getLinkedItem(tree.getParent(id))).ensureLoaded();
+        return linkedItems.get(id);
+    }
+
+    /**
+     * A class of links that look up the item they refer to once they are asked for it.
+     */
+    private final class LazyLink extends Link {
+
+        /**
+         * Initialize a new link that refers to the item with the given identifier.
+         */
+        LazyLink(String name, int linkedId, long creationTime, long modificationTime) {
+            super(name, null, creationTime, modificationTime);
+            this.linkedId = linkedId;
+        }
+
+        /**
+         * Variable registering the identifier of the item this link refers to.
+         */
+        private final int linkedId;
+
+        /**
+         * Variable referencing the item this link refers to, once it is looked up.
+         */
+        private volatile Item linkedItem = null;
+
+        /**
+         * Return the item this link refers to, looking it up the first time.
+         */
+        @Override
+        public Item getLinkedItem() {
+            if (isDeleted()) return null;
+            Item item = linkedItem;
+            if (item == null) {
+                item = LazyTree.this.getLinkedItem(linkedId);
+                linkedItem = item;
+            }
+            return item;
+        }
+    }
+
+}
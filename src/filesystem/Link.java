@@ -30,21 +30,51 @@ public class Link extends Item {
      *          The parent directory of the new link.
      * @param   linkedItem
      *          The item which the link is referring to.
-     * @effect  A new item is initialized with the given name and directory.
-     *          | super(name, dir)
+     * @effect  A new item is initialized with the given name.
+     *          | super(name)
+     * @effect  Once it is completely initialized, the new link is moved to the given directory.
+     *          | move(dir)
      * @post    The linked item of this link is set to the given linked item.
      *          | new.getLinkedItem() == linkedItem
      * @throws  IllegalItemException
      *          The given item is not a valid linked item.
      *          | !isValidLinkedItem(linkedItem)
+     * @throws  IllegalParentDirectoryException
+     *          The given directory is not a valid parent directory for this link.
+     *          | ! isAddableToDirectory(dir)
      */
     @Raw
     public Link(String name, Directory dir, Item linkedItem) throws IllegalItemException, IllegalParentDirectoryException, NullPointerException {
-        super(name, dir); // This throws IllegalParentDirectoryException and NullPointerException
+        super(name);
         if (!isValidLinkedItem(linkedItem))
             throw new IllegalItemException(linkedItem);
         // set the final variable
         this.linkedItem = linkedItem;
+        move(dir); // This throws IllegalParentDirectoryException
+    }
+
+    /**
+     * Initialize a new link that was stored before, without a parent directory.
+     *
+     * @param   name
+     *          The name of the new link.
+     * @param   linkedItem
+     *          The item the new link refers to, which must be valid.
+     * @param   creationTime
+     *          The time of creation of the new link.
+     * @param   modificationTime
+     *          The time of the last modification of the new link, or Long.MIN_VALUE.
+     * @effect  This link is initialized as an item with the given name and times.
+     *          | super(name, creationTime, modificationTime)
+     * @post    The linked item of this link is set to the given linked item.
+     *          | new.getLinkedItem() == linkedItem
+     * @note    The new link must be attached to a directory right away,
+     *          with Directory.attachRestoredItems().
+     */
+    @Raw
+    Link(String name, Item linkedItem, long creationTime, long modificationTime) {
+        super(name, creationTime, modificationTime);
+        this.linkedItem = linkedItem;
     }
 
 
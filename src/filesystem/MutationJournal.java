@@ -0,0 +1,984 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * A class of journals that record the changes made to a tree of items, so that
+ * the changes made since the last image of the tree was saved are not lost.
+ *
+ * A journal records every creation, move, renaming, change of size, change of
+ * writability and deletion of an item in the tree of its root directory, in the
+ * order in which they happen. A checkpoint saves an image of the tree and starts
+ * the journal over. After a restart, the tree is recovered by loading the image and
+ * replaying the journal on top of it.
+ *
+ * Records refer to items by their path of names within the tree. They are appended
+ * to a buffer while the directories involved are locked, so that the order of the
+ * records is the order of the changes, and the buffer is written to the journal file
+ * as its durability demands: when it is full, at the end of every change, or forced to
+ * the storage device at the end of every change. Threads that wait for a force at the
+ * same time share a single force.
+ *
+ * @invar   The root directory of every journal has no parent directory.
+ *          | getRoot().getParentDirectory() == null
+ *
+ * @note    A change is visible to other threads before it is forced, but once a
+ *          change is forced, every change that happened before it is forced as well.
+ * @note    Links to items outside of the tree of a journal can't be replayed, just like
+ *          they can't be captured in an image.
+ * @note    Every image and journal has a generation. A checkpoint saves the image of
+ *          the next generation before it starts the journal over, so a journal is only
+ *          replayed on top of the image of its own generation.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class MutationJournal implements Closeable {
+
+    /**********************************************************
+     * constructors
+     **********************************************************/
+
+    /**
+     * Initialize a new journal for the tree of the given root directory.
+     *
+     * @param   channel
+     *          The channel on the journal file.
+     * @param   imagePath
+     *          The path of the file with the image of the tree.
+     * @param   root
+     *          The root directory of the tree.
+     * @param   durability
+     *          The durability of the new journal.
+     * @param   generation
+     *          The generation of the journal file.
+     * @param   position
+     *          The position in the journal file after its last record.
+     * @post    The root directory of the tree records its changes in the new journal.
+     *          | root.journal == new
+     */
+    private MutationJournal(FileChannel channel, Path imagePath, Directory root,
+                            Durability durability, long generation, long position) {
+        this.channel = channel;
+        this.imagePath = imagePath;
+        this.root = root;
+        this.durability = durability;
+        this.generation = generation;
+        this.appendedPosition = position;
+        this.writtenPosition = position;
+        this.forcedPosition = position;
+        root.journal = this;
+    }
+
+    /**
+     * Start a new journal for the tree of the given root directory.
+     *
+     * @param   root
+     *          The root directory of the tree.
+     * @param   imagePath
+     *          The path of the file to save images of the tree to.
+     * @param   journalPath
+     *          The path of the journal file.
+     * @param   durability
+     *          The durability of the new journal.
+     * @return  A new journal for the tree of the given root directory, with the given durability.
+     *          | result.getRoot() == root && result.getDurability() == durability
+     * @effect  An image of the first generation of the tree is saved,
+     *          and the journal file is started over.
+     * @throws  NullPointerException
+     *          One of the arguments is not effective.
+     * @throws  IllegalArgumentException
+     *          The given directory is not a root directory, already has a journal,
+     *          or its tree can't be captured.
+     *          | root.getParentDirectory() != null || root.journal != null
+     * @throws  IOException
+     *          The image or the journal file could not be written.
+     */
+    public static MutationJournal create(Directory root, Path imagePath, Path journalPath, Durability durability)
+            throws NullPointerException, IllegalArgumentException, IOException {
+        if (root == null || imagePath == null || journalPath == null || durability == null) {
+            throw new NullPointerException("The arguments must be effective.");
+        }
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(root));
+        try {
+            if (root.getParentDirectory() != null || root.journal != null) {
+                throw new IllegalArgumentException("The directory must be a root without a journal.");
+            }
+            TreeImage.save(ColumnarTree.capture(root), imagePath, 1);
+            FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                startOver(channel, 1);
+            } catch (IOException exception) {
+                channel.close();
+                throw exception;
+            }
+            return new MutationJournal(channel, imagePath, root, durability, 1, headerLength);
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+    }
+
+    /**
+     * Recover a tree from its image and its journal, and go on with that journal.
+     *
+     * @param   imagePath
+     *          The path of the file with the image of the tree.
+     * @param   journalPath
+     *          The path of the journal file.
+     * @param   durability
+     *          The durability of the recovered journal.
+     * @return  A journal for the tree in the image, with the changes in the journal file
+     *          replayed on top of it if the journal file is of the generation of the image.
+     * @note    Records at the end of the journal file that were not completely written are
+     *          dropped, and a journal file of an older generation is started over.
+     * @note    The tree is materialized lazily, so recovering takes time linear in the
+     *          number of records rather than in the size of the tree: only the directories
+     *          that the records touch get their items.
+     * @throws  NullPointerException
+     *          One of the arguments is not effective.
+     * @throws  IOException
+     *          The image or the journal file could not be read, or the journal file
+     *          is newer than the image or doesn't match it.
+     */
+    public static MutationJournal recover(Path imagePath, Path journalPath, Durability durability)
+            throws NullPointerException, IOException {
+        if (imagePath == null || journalPath == null || durability == null) {
+            throw new NullPointerException("The arguments must be effective.");
+        }
+        long generation = TreeImage.getGeneration(imagePath);
+        Directory root = TreeImage.load(imagePath).materializeLazily();
+        FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long position = headerLength;
+            // a journal file without a complete header has no records yet
+            long journalGeneration = (channel.size() < headerLength) ? -1 : readHeader(channel);
+            if (journalGeneration == generation) {
+                position = replay(channel, root);
+                channel.truncate(position);
+            } else if (journalGeneration < generation) {
+                startOver(channel, generation);
+            } else {
+                throw new IOException("The journal is newer than the image.");
+            }
+            ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(root));
+            try {
+                return new MutationJournal(channel, imagePath, root, durability, generation, position);
+            } finally {
+                ItemTree.unlockAll(lockedTrees, true);
+            }
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+
+
+    /**********************************************************
+     * journal file
+     **********************************************************/
+
+    /**
+     * Variable registering the magic number every journal file starts with, "OGPJRNL" followed by a zero.
+     */
+    private static final long magicNumber = 0x004c4e524a50474fL;
+
+    /**
+     * Variable registering the version of the format of journal files.
+     */
+    private static final int version = 1;
+
+    /**
+     * Variable registering the number of bytes of the header of a journal file,
+     * which holds the magic number, the version and the generation.
+     */
+    private static final int headerLength = 24;
+
+    /**
+     * Variable registering the number of bytes in front of every record,
+     * which hold the length and the checksum of the record.
+     */
+    private static final int recordHeaderLength = 8;
+
+    /**
+     * Variable registering the number of bytes of a record without its names.
+     */
+    private static final int fixedRecordLength = 2 + 4 * 8 + 3 * 4;
+
+    /**
+     * Variable registering the largest number of bytes of a record that is accepted
+     * when a journal is replayed, so a damaged length is never trusted.
+     */
+    private static final int maximumRecordLength = 1 << 26;
+
+    /**
+     * Variable registering the number of bytes of the buffer of a journal.
+     */
+    private static final int bufferCapacity = 1 << 20;
+
+    /**
+     * Variable registering the kinds of records.
+     */
+    private static final byte createDirectoryRecord = 1, createFileRecord = 2, createLinkRecord = 3,
+            moveRecord = 4, renameRecord = 5, resizeRecord = 6, writabilityRecord = 7, deleteRecord = 8;
+
+    /**
+     * Variable registering the flag of a record for a writable item.
+     */
+    private static final byte writableFlag = 1;
+
+    /**
+     * Variable referencing the channel on the journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Variable referencing the path of the file with the image of the tree.
+     */
+    private final Path imagePath;
+
+    /**
+     * Variable registering the generation of the journal file.
+     */
+    private long generation;
+
+    /**
+     * Return the generation of the journal file of this journal.
+     */
+    @Basic
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Start the journal file the given channel is open on over, with the given generation.
+     *
+     * @note    The records are cut off and forced before the new generation is written,
+     *          so the journal file never holds records with the wrong generation.
+     */
+    @Model
+    private static void startOver(FileChannel channel, long generation) throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ColumnarTree.byteOrder);
+        header.putLong(magicNumber).putInt(version).putInt(0).putLong(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Read the header of the journal file the given channel is open on,
+     * and return its generation.
+     */
+    @Model
+    private static long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ColumnarTree.byteOrder);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("The file is too short to hold a journal.");
+            }
+        }
+        header.flip();
+        if (header.getLong() != magicNumber) {
+            throw new IOException("The file doesn't hold a journal.");
+        }
+        if (header.getInt() != version) {
+            throw new IOException("The journal has a version that is not supported.");
+        }
+        header.getInt();
+        return header.getLong();
+    }
+
+
+
+    /**********************************************************
+     * tree
+     **********************************************************/
+
+    /**
+     * Variable referencing the root directory of the tree of this journal.
+     */
+    private final Directory root;
+
+    /**
+     * Return the root directory of the tree of this journal.
+     */
+    @Basic @Immutable
+    public Directory getRoot() {
+        return root;
+    }
+
+    /**
+     * Return the path of the given item within the tree of this journal: the names
+     * of the item and the directories it is in below the root, separated by slashes.
+     *
+     * @param   item
+     *          An item in the tree of this journal.
+     * @return  The empty string for the root, and otherwise the path of the parent
+     *          directory of the given item followed by its name.
+     */
+    String getPathOf(Item item) {
+        if (item == root) return "";
+        List<String> names = new ArrayList<>();
+        for (Item current = item; current != root; current = current.getParentDirectory()) {
+            names.add(current.getName());
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            path.append(names.get(i));
+            if (i > 0) path.append('/');
+        }
+        return path.toString();
+    }
+
+    /**
+     * Return the path of the item with the given name within the directory at the given path.
+     */
+    @Model
+    private static String getPathWithin(String directoryPath, String name) {
+        return directoryPath.isEmpty() ? name : directoryPath + '/' + name;
+    }
+
+
+
+    /**********************************************************
+     * recording
+     **********************************************************/
+
+    /**
+     * Record that the given item has been moved from the given path in the tree of
+     * the given journal, if any, to its current place.
+     *
+     * @param   oldJournal
+     *          The journal of the tree the item was in, possibly null.
+     * @param   oldPath
+     *          The path of the item within that tree.
+     * @param   item
+     *          The item that has been moved.
+     * @effect  If the item is in the tree of the given journal, the move is recorded there.
+     *          Otherwise, the item is recorded as deleted in the given journal, if any, and
+     *          as created, together with its subtree, in the journal of its current tree, if any.
+     */
+    static void recordMove(MutationJournal oldJournal, String oldPath, Item item) {
+        MutationJournal newJournal = item.getJournal();
+        if (oldJournal != null && oldJournal == newJournal) {
+            Directory parent = item.getParentDirectory();
+            newJournal.append(moveRecord, (byte) 0, parent.getModificationTimeMillis(),
+                    oldPath, null, newJournal.getPathOf(parent), 0, 0, 0);
+        } else {
+            if (oldJournal != null) oldJournal.recordDeletion(oldPath);
+            if (newJournal != null) newJournal.recordCreation(item);
+        }
+    }
+
+    /**
+     * Record the creation of the given item, together with its subtree.
+     *
+     * @note    Links are recorded after all other items, so the items they
+     *          refer to already exist when they are replayed.
+     */
+    @Model
+    private void recordCreation(Item item) {
+        if (!(item instanceof Directory) || ((Directory) item).getNbOfItems() == 0) {
+            appendCreation(item);
+            return;
+        }
+        List<Link> links = new ArrayList<>();
+        ((Directory) item).streamDepthFirst().forEach(each -> {
+            if (each instanceof Link) {
+                links.add((Link) each);
+            } else {
+                appendCreation(each);
+            }
+        });
+        links.forEach(this::appendCreation);
+    }
+
+    /**
+     * Append a record for the creation of the given item on its own.
+     */
+    @Model
+    private void appendCreation(Item item) {
+        Directory parent = item.getParentDirectory();
+        String parentPath = getPathOf(parent);
+        long time = parent.getModificationTimeMillis();
+        long creationTime = item.getCreationTimeMillis();
+        long modificationTime = item.getModificationTimeMillis();
+        if (item instanceof Directory) {
+            byte flags = ((Directory) item).isWritable() ? writableFlag : 0;
+            append(createDirectoryRecord, flags, time, parentPath, item.getName(), null,
+                    creationTime, modificationTime, 0);
+        } else if (item instanceof File) {
+            File file = (File) item;
+            byte flags = (byte) ((file.isWritable() ? writableFlag : 0) | (file.getFileType().ordinal() << 1));
+            append(createFileRecord, flags, time, parentPath, item.getName(), null,
+                    creationTime, modificationTime, file.getSize());
+        } else {
+            Item linkedItem = ((Link) item).getLinkedItem();
+            String linkedPath = (linkedItem.getJournal() == this) ? getPathOf(linkedItem) : null;
+            append(createLinkRecord, (byte) 0, time, parentPath, item.getName(), linkedPath,
+                    creationTime, modificationTime, 0);
+        }
+    }
+
+    /**
+     * Record that the given item has been renamed.
+     *
+     * @param   item
+     *          The item that has been renamed.
+     * @param   oldName
+     *          The name of the item before it was renamed.
+     */
+    void recordRename(Item item, String oldName) {
+        String oldPath = (item == root) ? "" : getPathWithin(getPathOf(item.getParentDirectory()), oldName);
+        append(renameRecord, (byte) 0, item.getModificationTimeMillis(), oldPath, item.getName(), null, 0, 0, 0);
+    }
+
+    /**
+     * Record that the size of the given file has changed.
+     */
+    void recordResize(File file) {
+        append(resizeRecord, (byte) 0, file.getModificationTimeMillis(), getPathOf(file), null, null,
+                file.getSize(), 0, 0);
+    }
+
+    /**
+     * Record that the writability of the given item has been set to the given writability.
+     */
+    void recordWritability(Item item, boolean isWritable) {
+        append(writabilityRecord, isWritable ? writableFlag : 0, 0, getPathOf(item), null, null, 0, 0, 0);
+    }
+
+    /**
+     * Record that the item at the given path has been deleted, together with its subtree.
+     */
+    void recordDeletion(String path) {
+        append(deleteRecord, (byte) 0, 0, path, null, null, 0, 0, 0);
+    }
+
+
+
+    /**********************************************************
+     * buffer
+     **********************************************************/
+
+    /**
+     * Variable referencing the lock that guards the buffer and the writing of the buffer.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Variable referencing the buffer with the records that are not written yet.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(bufferCapacity).order(ColumnarTree.byteOrder);
+
+    /**
+     * Variable referencing the checksum used to append records.
+     */
+    private final CRC32C checksum = new CRC32C();
+
+    /**
+     * Variable registering the position in the journal file after the last record appended.
+     */
+    private volatile long appendedPosition;
+
+    /**
+     * Variable registering the position in the journal file after the last record written.
+     */
+    private long writtenPosition;
+
+    /**
+     * Variable registering the exception that made writing the journal file fail, if any.
+     */
+    private volatile IOException failure = null;
+
+    /**
+     * Append a record with the given kind, flags, time, paths and numbers to the buffer.
+     *
+     * @note    Every record has the same fields, in this order: the kind, the flags, the time,
+     *          three numbers and three names, which may be null. What they mean depends on
+     *          the kind of the record.
+     */
+    @Model
+    private void append(byte kind, byte flags, long time, String path, String name, String otherPath,
+                        long first, long second, long third) {
+        int length = fixedRecordLength + getEncodedLength(path) + getEncodedLength(name) + getEncodedLength(otherPath);
+        appendLock.lock();
+        try {
+            if (buffer.remaining() < recordHeaderLength + length) {
+                writeBuffer();
+                if (buffer.capacity() < recordHeaderLength + length) {
+                    buffer = ByteBuffer.allocateDirect(recordHeaderLength + length).order(ColumnarTree.byteOrder);
+                }
+            }
+            int start = buffer.position();
+            buffer.position(start + recordHeaderLength);
+            buffer.put(kind).put(flags).putLong(time).putLong(first).putLong(second).putLong(third);
+            putName(path);
+            putName(name);
+            putName(otherPath);
+            checksum.reset();
+            checksum.update(buffer.duplicate().limit(buffer.position()).position(start + recordHeaderLength));
+            buffer.putInt(start, length).putInt(start + 4, (int) checksum.getValue());
+            appendedPosition += recordHeaderLength + length;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of bytes the given name takes up in a record.
+     */
+    @Model
+    private static int getEncodedLength(String name) {
+        return (name == null) ? 0 : name.length();
+    }
+
+    /**
+     * Put the given name in the buffer, preceded by its length, or -1 if it is null.
+     *
+     * @note    Names only consist of ASCII characters, so every character takes up one byte.
+     */
+    @Model
+    private void putName(String name) {
+        if (name == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            buffer.put((byte) name.charAt(i));
+        }
+    }
+
+    /**
+     * Write the records in the buffer to the journal file.
+     * The append lock must be held.
+     *
+     * @throws  UncheckedIOException
+     *          The records could not be written, in which case the journal fails.
+     */
+    @Model
+    private void writeBuffer() throws UncheckedIOException {
+        checkFailure();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                writtenPosition += channel.write(buffer, writtenPosition);
+            }
+        } catch (IOException exception) {
+            failure = exception;
+            throw new UncheckedIOException(exception);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Check whether writing the journal file has failed before.
+     *
+     * @throws  UncheckedIOException
+     *          Writing the journal file has failed before.
+     */
+    @Model
+    private void checkFailure() throws UncheckedIOException {
+        if (failure != null) {
+            throw new UncheckedIOException("The journal has failed before.", failure);
+        }
+    }
+
+
+
+    /**********************************************************
+     * durability
+     **********************************************************/
+
+    /**
+     * Variable registering the durability of this journal.
+     */
+    private final Durability durability;
+
+    /**
+     * Return the durability of this journal.
+     */
+    @Basic @Immutable
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Variable referencing the lock that lets only one thread at a time force the journal file.
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    /**
+     * Variable registering the position in the journal file up to which it has been forced.
+     */
+    private volatile long forcedPosition;
+
+    /**
+     * Make the records appended so far as durable as the durability of this journal demands.
+     *
+     * @throws  UncheckedIOException
+     *          The journal file could not be written or forced.
+     * @note    This is called at the end of every change, after the directories
+     *          involved are unlocked.
+     */
+    void commit() throws UncheckedIOException {
+        if (durability == Durability.WRITTEN) {
+            appendLock.lock();
+            try {
+                if (writtenPosition < appendedPosition) writeBuffer();
+            } finally {
+                appendLock.unlock();
+            }
+        } else if (durability == Durability.SYNCED) {
+            force(appendedPosition);
+        }
+    }
+
+    /**
+     * Force the journal file up to at least the given position.
+     *
+     * @note    A thread that gets the force lock writes and forces every record appended so
+     *          far, so the threads that wait for the lock meanwhile mostly find their records
+     *          forced once they get it.
+     */
+    @Model
+    private void force(long position) throws UncheckedIOException {
+        if (forcedPosition >= position) return;
+        forceLock.lock();
+        try {
+            if (forcedPosition >= position) return;
+            long upTo;
+            appendLock.lock();
+            try {
+                writeBuffer();
+                upTo = writtenPosition;
+            } finally {
+                appendLock.unlock();
+            }
+            channel.force(false);
+            forcedPosition = upTo;
+        } catch (IOException exception) {
+            failure = exception;
+            throw new UncheckedIOException(exception);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Write and force every record appended so far, whatever the durability of this journal.
+     *
+     * @throws  IOException
+     *          The journal file could not be written or forced.
+     */
+    public void sync() throws IOException {
+        try {
+            force(appendedPosition);
+            checkFailure();
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Save an image of the tree of this journal and start the journal over.
+     *
+     * @effect  An image of the next generation of the tree is saved.
+     * @post    The generation of this journal is incremented, and the journal file
+     *          holds no records.
+     *          | new.getGeneration() == getGeneration() + 1
+     * @throws  IOException
+     *          The image or the journal file could not be written.
+     * @note    The hierarchy lock of the tree is held exclusively, so the tree doesn't
+     *          change during a checkpoint.
+     */
+    public void checkpoint() throws IOException {
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(root));
+        try {
+            if (failure != null) throw failure;
+            TreeImage.save(ColumnarTree.capture(root), imagePath, generation + 1);
+            appendLock.lock();
+            try {
+                // the records that are not written yet are part of the image
+                buffer.clear();
+                startOver(channel, generation + 1);
+                generation++;
+                appendedPosition = writtenPosition = forcedPosition = headerLength;
+            } catch (IOException exception) {
+                failure = exception;
+                throw exception;
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+    }
+
+    /**
+     * Write and force every record appended so far, stop recording the changes
+     * to the tree of this journal and close the journal file.
+     *
+     * @effect  The journal is synced.
+     *          | sync()
+     * @post    The changes to the tree are no longer recorded.
+     *          | getRoot().journal == null
+     */
+    @Override
+    public void close() throws IOException {
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(root));
+        try {
+            if (root.journal != this) return;
+            root.journal = null;
+            try {
+                sync();
+            } finally {
+                channel.close();
+            }
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+    }
+
+
+
+    /**********************************************************
+     * replay
+     **********************************************************/
+
+    /**
+     * A class of readers of the records in a journal file.
+     */
+    private static final class Reader {
+
+        /**
+         * Initialize a new reader of the records the given channel is open on.
+         */
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            input.flip();
+        }
+
+        /**
+         * The channel on the journal file.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The bytes that have been read from the journal file, but not taken yet.
+         */
+        private ByteBuffer input = ByteBuffer.allocate(bufferCapacity).order(ColumnarTree.byteOrder);
+
+        /**
+         * The position in the journal file of the next byte that is to be read.
+         */
+        private long filePosition = headerLength;
+
+        /**
+         * Make sure at least the given number of bytes have been read and not taken,
+         * and return whether that succeeded before the end of the journal file.
+         */
+        boolean request(int length) throws IOException {
+            if (input.remaining() >= length) return true;
+            if (input.capacity() < length) {
+                input = ByteBuffer.allocate(length).order(ColumnarTree.byteOrder).put(input);
+            } else {
+                input.compact();
+            }
+            while (input.position() < length) {
+                int nbOfBytesRead = channel.read(input, filePosition);
+                if (nbOfBytesRead < 0) break;
+                filePosition += nbOfBytesRead;
+            }
+            input.flip();
+            return input.remaining() >= length;
+        }
+
+        /**
+         * Take a name from the bytes that have been read.
+         */
+        String takeName() {
+            int length = input.getInt();
+            if (length < 0) return null;
+            char[] characters = new char[length];
+            for (int i = 0; i < length; i++) {
+                characters[i] = (char) input.get();
+            }
+            return new String(characters);
+        }
+    }
+
+    /**
+     * Replay the records in the journal file the given channel is open on,
+     * on the tree of the given root directory.
+     *
+     * @return  The position in the journal file after the last complete record.
+     * @throws  IOException
+     *          The journal file could not be read, or it doesn't match the tree.
+     * @note    Replaying stops at the first record that is not complete or whose checksum
+     *          doesn't match, which is what a crash while writing a record leaves behind.
+     */
+    @Model
+    private static long replay(FileChannel channel, Directory root) throws IOException {
+        Reader reader = new Reader(channel);
+        CRC32C checksum = new CRC32C();
+        long position = headerLength;
+        while (reader.request(recordHeaderLength)) {
+            int length = reader.input.getInt(reader.input.position());
+            int expectedChecksum = reader.input.getInt(reader.input.position() + 4);
+            if (length < fixedRecordLength || length > maximumRecordLength
+                    || !reader.request(recordHeaderLength + length)) {
+                break;
+            }
+            ByteBuffer input = reader.input;
+            int start = input.position() + recordHeaderLength;
+            checksum.reset();
+            checksum.update(input.duplicate().position(start).limit(start + length));
+            if ((int) checksum.getValue() != expectedChecksum) break;
+            input.position(start);
+            try {
+                apply(root, input.get(), input.get(), input.getLong(), input.getLong(), input.getLong(),
+                        input.getLong(), reader.takeName(), reader.takeName(), reader.takeName());
+            } catch (RuntimeException exception) {
+                throw new IOException("The journal doesn't match the image.", exception);
+            }
+            input.position(start + length);
+            position += recordHeaderLength + length;
+        }
+        return position;
+    }
+
+    /**
+     * Apply the change of the record with the given fields to the tree of the given root directory.
+     */
+    @Model
+    private static void apply(Directory root, byte kind, byte flags, long time, long first, long second,
+                              long third, String path, String name, String otherPath) throws IOException {
+        boolean isWritable = (flags & writableFlag) != 0;
+        switch (kind) {
+            case createDirectoryRecord: {
+                Directory parent = resolveDirectory(root, path);
+                new Directory(name, isWritable, first, second).move(parent);
+                parent.restoreModificationTime(time);
+                break;
+            }
+            case createFileRecord: {
+                Directory parent = resolveDirectory(root, path);
+                FileType type = FileType.values()[flags >> 1];
+                new File(name, third, isWritable, type, first, second).move(parent);
+                parent.restoreModificationTime(time);
+                break;
+            }
+            case createLinkRecord: {
+                Directory parent = resolveDirectory(root, path);
+                if (otherPath == null) {
+                    throw new IOException("A link in the journal refers to an item outside of its tree.");
+                }
+                Item linkedItem = resolve(root, otherPath);
+                if (!Link.isValidLinkedItem(linkedItem)) throw new IllegalItemException(linkedItem);
+                new Link(name, linkedItem, first, second).move(parent);
+                parent.restoreModificationTime(time);
+                break;
+            }
+            case moveRecord: {
+                Directory parent = resolveDirectory(root, otherPath);
+                resolve(root, path).move(parent);
+                parent.restoreModificationTime(time);
+                break;
+            }
+            case renameRecord: {
+                Item item = resolve(root, path);
+                item.changeName(name);
+                item.restoreModificationTime(time);
+                break;
+            }
+            case resizeRecord: {
+                Item item = resolve(root, path);
+                if (!(item instanceof File)) throw new IOException("Only files can change size.");
+                File file = (File) item;
+                if (first > file.getSize()) file.enlarge(first - file.getSize());
+                if (first < file.getSize()) file.shorten(file.getSize() - first);
+                file.restoreModificationTime(time);
+                break;
+            }
+            case writabilityRecord: {
+                Item item = resolve(root, path);
+                if (item instanceof File) {
+                    ((File) item).setWritable(isWritable);
+                } else if (item instanceof Directory) {
+                    ((Directory) item).setWritable(isWritable);
+                }
+                break;
+            }
+            case deleteRecord: {
+                Item item = resolve(root, path);
+                if (item instanceof Directory && ((Directory) item).getNbOfItems() > 0) {
+                    item.deleteRecursive();
+                } else {
+                    item.delete();
+                }
+                break;
+            }
+            default:
+                throw new IOException("The journal has a record of an unknown kind.");
+        }
+    }
+
+    /**
+     * Return the item at the given path within the tree of the given root directory.
+     *
+     * @throws  IllegalArgumentException
+     *          There is no item at the given path.
+     */
+    @Model
+    private static Item resolve(Directory root, String path) throws IllegalArgumentException {
+        if (path == null) throw new IllegalArgumentException("The record has no path.");
+        Item item = root;
+        if (path.isEmpty()) return item;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            if (!(item instanceof Directory)) throw new IllegalArgumentException("No directory on the path.");
+            item = ((Directory) item).getItem(path.substring(start, end));
+            start = end + 1;
+        }
+        return item;
+    }
+
+    /**
+     * Return the directory at the given path within the tree of the given root directory.
+     *
+     * @throws  IllegalArgumentException
+     *          There is no directory at the given path.
+     */
+    @Model
+    private static Directory resolveDirectory(Directory root, String path) throws IllegalArgumentException {
+        Item item = resolve(root, path);
+        if (!(item instanceof Directory)) throw new IllegalArgumentException("No directory at the path.");
+        return (Directory) item;
+    }
+
+}
@@ -0,0 +1,201 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class of tables with the names that are in use within a filesystem.
+ * Every name is validated and folded to lower case only once, and all items
+ * with the same name share a single string.
+ *
+ * @note    The table only refers weakly to the shared strings, so a name is removed
+ *          from the table once no item has it anymore: the table holds the names in
+ *          use, not every name that was ever used.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.1
+ */
+final class NameTable {
+
+    /**
+     * This class only has static methods.
+     */
+    private NameTable() {
+    }
+
+    /**
+     * A class of entries in the name table, that refer weakly to the shared string
+     * of their name.
+     */
+    private static final class Entry extends WeakReference<String> {
+
+        /**
+         * The key of this entry in the table, a string equal to the name that is not
+         * the shared string, so the table itself doesn't keep the shared string alive.
+         */
+        private final String key;
+
+        /**
+         * The name in lower case, shared with the entry of that name if there was one,
+         * or null if the name is in lower case already.
+         */
+        private final String foldedName;
+
+        /**
+         * Whether the name can be used for a directory.
+         */
+        private final boolean isValidDirectoryName;
+
+        /**
+         * Initialize a new entry for the given valid item name, which becomes the shared string.
+         */
+        private Entry(String name) {
+            super(name, releasedNames);
+            this.key = new String(name);
+            String foldedName = name.toLowerCase(Locale.ROOT);
+            if (foldedName.equals(name)) {
+                // an entry must not refer strongly to its own shared string
+                this.foldedName = null;
+            } else {
+                // share the string of a lower case name that is in the table already
+                Entry foldedEntry = entries.get(foldedName);
+                String sharedFoldedName = (foldedEntry != null) ? foldedEntry.get() : null;
+                this.foldedName = (sharedFoldedName != null) ? sharedFoldedName : foldedName;
+            }
+            this.isValidDirectoryName = consistsOfNameCharacters(name, false);
+        }
+    }
+
+    /**
+     * Variable referencing the entries of the name table, indexed by name.
+     */
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Variable referencing the queue of entries whose shared string is no longer in use.
+     */
+    private static final ReferenceQueue<String> releasedNames = new ReferenceQueue<>();
+
+    /**
+     * Return the shared string for the given name, adding the name to the table
+     * if it isn't in it yet.
+     *
+     * @param   name
+     *          The name to look up.
+     * @pre     The given name is a valid name for an item.
+     *          | isValidItemName(name)
+     * @return  A string equal to the given name, which is the same object for
+     *          every invocation with an equal name, as long as that object is in use.
+     *          | result.equals(name)
+     * @note    The entries of names that are no longer in use are removed first.
+     */
+    static String intern(String name) {
+        removeReleasedEntries();
+        while (true) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                Entry newEntry = new Entry(name);
+                if (entries.putIfAbsent(newEntry.key, newEntry) == null) return name;
+            } else {
+                String sharedName = entry.get();
+                if (sharedName != null) return sharedName;
+                // the name is no longer in use, but its entry hasn't been removed yet
+                entries.remove(entry.key, entry);
+            }
+        }
+    }
+
+    /**
+     * Remove the entries of the names that are no longer in use from the table.
+     */
+    @Model
+    private static void removeReleasedEntries() {
+        Reference<? extends String> reference;
+        while ((reference = releasedNames.poll()) != null) {
+            Entry entry = (Entry) reference;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Check whether the given name is a legal name for an item.
+     *
+     * @param   name
+     *          The name to check.
+     * @return  True if the given string is effective, not empty and consisting only
+     *          of letters, digits, dots, hyphens and underscores; false otherwise.
+     *          | result ==
+     *          |   (name != null) && name.matches("[a-zA-Z_0-9.-]+")
+     * @note    Names in the table are known to be valid, other names are checked
+     *          character by character, so no regular expression is involved.
+     */
+    static boolean isValidItemName(String name) {
+        if (name == null) return false;
+        return entries.containsKey(name) || consistsOfNameCharacters(name, true);
+    }
+
+    /**
+     * Check whether the given name is a legal name for a directory.
+     *
+     * @param   name
+     *          The name to check.
+     * @return  True if the given string is effective, not empty and consisting only
+     *          of letters, digits, hyphens and underscores; false otherwise.
+     *          | result ==
+     *          |   (name != null) && name.matches("[a-zA-Z_0-9-]+")
+     */
+    static boolean isValidDirectoryName(String name) {
+        if (name == null) return false;
+        Entry entry = entries.get(name);
+        if (entry != null) return entry.isValidDirectoryName;
+        return consistsOfNameCharacters(name, false);
+    }
+
+    /**
+     * Return the given name in lower case.
+     *
+     * @param   name
+     *          The name to fold.
+     * @return  The given name with all letters in lower case.
+     *          | result.equals(name.toLowerCase())
+     * @note    For a name in the table, the folded name is shared and no new
+     *          string is created. The properties of a name don't depend on the shared
+     *          string, so they can be looked up in an entry whose string is no longer in use.
+     */
+    static String getFoldedName(String name) {
+        Entry entry = entries.get(name);
+        if (entry != null) return (entry.foldedName != null) ? entry.foldedName : name;
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check whether the given string consists only of characters that are allowed
+     * in names.
+     *
+     * @param   name
+     *          The string to check.
+     * @param   allowDots
+     *          Whether dots are allowed.
+     * @return  True if the given string is not empty and consists only of letters,
+     *          digits, hyphens, underscores and, if allowed, dots.
+     */
+    @Model
+    private static boolean consistsOfNameCharacters(String name, boolean allowDots) {
+        if (name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean isNameCharacter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_' || c == '-' || (allowDots && c == '.');
+            if (!isNameCharacter) return false;
+        }
+        return true;
+    }
+
+}
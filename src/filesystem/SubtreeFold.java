@@ -0,0 +1,199 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A class of tasks that fold over the items in the subtrees of directories, spreading
+ * the work over the threads of a fork/join pool.
+ *
+ * Every task walks its directories with an explicit stack and accumulates the items it
+ * meets into a container of its own. Directories within are set aside in a batch; once
+ * the items directly in a batch reach the sequential threshold, and the pool doesn't have
+ * enough queued work already, the batch is forked off as a new task that idle threads can
+ * steal. Directories in a batch that isn't forked are walked by the task itself. In the end
+ * the containers of the forked tasks are combined into the container of the task; forked
+ * tasks that no thread has stolen are taken back, and their directories walked by the task
+ * itself, so the depth of the stack doesn't grow with the depth of the tree.
+ *
+ * @note    Small subtrees never reach the sequential threshold, so they are folded by the
+ *          calling thread alone, without involving the pool.
+ * @note    The items of every directory are taken from a snapshot of the whole subtree,
+ *          so the fold sees the subtree as it was at a single moment, however long it takes
+ *          and whatever other threads change in the meantime.
+ *
+ * @param   <A>
+ *          The type of the containers the items are accumulated into.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+final class SubtreeFold<A> extends RecursiveTask<A> {
+
+    /**
+     * Required because this class inherits from ForkJoinTask, which is serializable.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Variable registering the number of items that must be directly in a batch of
+     * directories before that batch is forked off as a task of its own.
+     */
+    static final int sequentialThreshold = 256;
+
+    /**
+     * Variable registering the number of queued tasks of the current thread above which
+     * no more tasks are forked, because there is enough work for idle threads to steal.
+     */
+    private static final int maximumSurplus = 3;
+
+    /**
+     * Initialize a new fold over the items in the subtrees of the given directories.
+     */
+    private SubtreeFold(long version, List<Directory> directories, Supplier<A> supplier,
+                        BiConsumer<A, ? super Item> accumulator, BiConsumer<A, A> combiner,
+                        Predicate<? super A> isFinished, AtomicBoolean finished) {
+        this.version = version;
+        this.directories = directories;
+        this.supplier = supplier;
+        this.accumulator = accumulator;
+        this.combiner = combiner;
+        this.isFinished = isFinished;
+        this.finished = finished;
+    }
+
+    /**
+     * The version of the snapshot that is folded.
+     */
+    private final long version;
+
+    /**
+     * The directories whose subtrees are folded by this task.
+     */
+    private final List<Directory> directories;
+
+    /**
+     * The supplier of new, empty containers.
+     */
+    private final Supplier<A> supplier;
+
+    /**
+     * The function that accumulates an item into a container.
+     */
+    private final BiConsumer<A, ? super Item> accumulator;
+
+    /**
+     * The function that combines the second container into the first one.
+     */
+    private final BiConsumer<A, A> combiner;
+
+    /**
+     * The condition on a container under which the outcome of the whole fold is known.
+     */
+    private final Predicate<? super A> isFinished;
+
+    /**
+     * The flag that is shared by all tasks of the same fold, set once the outcome is known.
+     */
+    private final AtomicBoolean finished;
+
+    /**
+     * Fold over all items in the subtree of the given snapshot, its directory included.
+     *
+     * @param   snapshot
+     *          The snapshot whose subtree is to be folded, which is not closed until
+     *          the fold is done.
+     * @param   supplier
+     *          A supplier of new, empty containers.
+     * @param   accumulator
+     *          A function that accumulates an item into a container.
+     * @param   combiner
+     *          A function that combines the second container into the first one. It must be
+     *          compatible with the accumulator: combining two containers must give the same
+     *          result as accumulating the items of the second one into the first one.
+     * @param   isFinished
+     *          A condition on a container under which accumulating more items can't change
+     *          the outcome any more, such as a check that has failed for some item.
+     * @return  A container into which every item of the subtree in the version of the
+     *          snapshot is accumulated, except that items may be skipped once some
+     *          container meets the given condition.
+     * @note    The items are met in no particular order, and the accumulator and combiner
+     *          may be called from several threads at once, each for containers of its own.
+     */
+    static <A> A collect(SubtreeSnapshot snapshot, Supplier<A> supplier,
+                         BiConsumer<A, ? super Item> accumulator, BiConsumer<A, A> combiner,
+                         Predicate<? super A> isFinished) {
+        Directory directory = snapshot.getDirectory();
+        A result = supplier.get();
+        accumulator.accept(result, directory);
+        if (isFinished.test(result)) return result;
+        SubtreeFold<A> task = new SubtreeFold<>(snapshot.getVersion(), List.of(directory), supplier,
+                accumulator, combiner, isFinished, new AtomicBoolean());
+        // a thread outside the pool performs the task itself; forked tasks go to the common pool
+        combiner.accept(result, task.invoke());
+        return result;
+    }
+
+    /**
+     * Fold over the subtrees of the directories of this task.
+     *
+     * @return  A container into which all items in the subtrees of the directories of this
+     *          task are accumulated, the directories themselves excluded.
+     */
+    @Override
+    protected A compute() {
+        A result = supplier.get();
+        ArrayDeque<Directory> stack = new ArrayDeque<>(directories);
+        ArrayList<Directory> batch = new ArrayList<>();
+        int nbOfItemsInBatch = 0;
+        ArrayList<SubtreeFold<A>> forkedTasks = new ArrayList<>();
+        while (true) {
+            while (!stack.isEmpty() && !finished.get()) {
+                for (Item item : stack.pop().getContentsIn(version)) {
+                    accumulator.accept(result, item);
+                    if (item instanceof Directory) {
+                        batch.add((Directory) item);
+                        nbOfItemsInBatch += ((Directory) item).getContentsIn(version).size();
+                    }
+                }
+                if (isFinished.test(result)) {
+                    finished.set(true);
+                } else if (nbOfItemsInBatch >= sequentialThreshold
+                        && getSurplusQueuedTaskCount() <= maximumSurplus) {
+                    SubtreeFold<A> task = new SubtreeFold<>(version, batch, supplier,
+                            accumulator, combiner, isFinished, finished);
+                    task.fork();
+                    forkedTasks.add(task);
+                    batch = new ArrayList<>();
+                    nbOfItemsInBatch = 0;
+                } else if (stack.isEmpty() || nbOfItemsInBatch >= sequentialThreshold) {
+                    // walk the batch here, either because there is nothing else to do
+                    // or because there is enough work queued up already
+                    stack.addAll(batch);
+                    batch.clear();
+                    nbOfItemsInBatch = 0;
+                }
+            }
+            if (forkedTasks.isEmpty()) return result;
+            // the most recently forked task is the least likely to be stolen; if it wasn't, its
+            // directories are walked here, rather than in a nested join that deepens the stack
+            SubtreeFold<A> task = forkedTasks.remove(forkedTasks.size() - 1);
+            if (task.tryUnfork()) {
+                stack.addAll(task.directories);
+            } else {
+                combiner.accept(result, task.join());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class of snapshots of the subtree of a directory, as it was at a single moment.
+ *
+ * A snapshot shows which items were in every directory of the subtree, and the sizes of the
+ * files, at the moment it was taken, while other threads go on changing the subtree. Taking a
+ * snapshot doesn't copy anything: every change to the items of a directory or to the size of
+ * a file is stamped with the current version, and a snapshot only remembers the version it
+ * was taken in. As long as a snapshot is pinned, the values that are replaced by changes in
+ * later versions are kept, so the snapshot can read the subtree as it was.
+ *
+ * @invar   The version of a snapshot is at most the current version.
+ *          | getVersion() <= getCurrentVersion()
+ *
+ * @note    Reading a snapshot doesn't lock anything, so readers never wait for threads that
+ *          change the subtree, and a long walk over a snapshot sees every directory as it was
+ *          at the same moment, rather than each one as it is when the walk gets there.
+ * @note    A snapshot is pinned until it is closed. Older values are kept for every pinned
+ *          snapshot, so a snapshot should be closed as soon as it isn't needed any more,
+ *          best with a try-with-resources statement.
+ * @note    The names, writability and times of the items are not part of a snapshot: they
+ *          are read from the items themselves, as they are at the moment they are read.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class SubtreeSnapshot implements AutoCloseable {
+
+    /**********************************************************
+     * constructors
+     **********************************************************/
+
+    /**
+     * Initialize a new snapshot of the subtree of the given directory in the given version.
+     */
+    @Raw
+    private SubtreeSnapshot(Directory directory, long version) {
+        this.directory = directory;
+        this.version = version;
+    }
+
+    /**
+     * Take a snapshot of the subtree of the given directory.
+     *
+     * @param   directory
+     *          The directory whose subtree is to be taken a snapshot of.
+     * @return  A pinned snapshot of the subtree of the given directory in the current version.
+     *          | result.getDirectory() == directory && result.getVersion() == getCurrentVersion()
+     *          | && ! result.isClosed()
+     * @post    The current version is incremented, so changes from now on are not in the snapshot.
+     *          | new.getCurrentVersion() == getCurrentVersion() + 1
+     * @throws  NullPointerException
+     *          The given directory is not effective.
+     *          | directory == null
+     * @note    The hierarchy lock of the tree of the given directory is held exclusively for
+     *          as long as it takes to increment the current version, so changes to the tree
+     *          that are in progress are finished first, and changes that start later are
+     *          stamped with a later version. Changes to other trees don't matter.
+     */
+    static SubtreeSnapshot take(Directory directory) throws NullPointerException {
+        if (directory == null) {
+            throw new NullPointerException("The directory must be effective.");
+        }
+        ItemTree[] lockedTrees = ItemTree.lockTreesOf(List.of(directory));
+        try {
+            long version = currentVersion.getAndIncrement();
+            pin(version);
+            return new SubtreeSnapshot(directory, version);
+        } finally {
+            ItemTree.unlockAll(lockedTrees, true);
+        }
+    }
+
+
+
+    /**********************************************************
+     * versions
+     **********************************************************/
+
+    /**
+     * Variable registering the current version, in which changes to items are made.
+     *
+     * @note    There is a single current version for all trees, so an item that moves to
+     *          another tree after a snapshot was taken only gets changes of later versions.
+     */
+    private static final AtomicLong currentVersion = new AtomicLong();
+
+    /**
+     * Return the current version, in which changes to items are made.
+     *
+     * @note    The current version only changes while the tree of a snapshot is locked
+     *          exclusively, so it can't change while a thread holds the hierarchy lock of
+     *          the tree of the items it changes.
+     */
+    static long getCurrentVersion() {
+        return currentVersion.get();
+    }
+
+    /**
+     * Variable referencing the number of pinned snapshots of every version
+     * that has pinned snapshots.
+     */
+    private static final TreeMap<Long, Integer> pinnedVersions = new TreeMap<>();
+
+    /**
+     * Variable registering the version of the oldest pinned snapshot,
+     * or Long.MAX_VALUE if no snapshot is pinned.
+     */
+    private static volatile long oldestPinnedVersion = Long.MAX_VALUE;
+
+    /**
+     * Return the version of the oldest pinned snapshot, or Long.MAX_VALUE if no snapshot is pinned.
+     *
+     * @note    A thread that isn't synchronized with the closing of a snapshot may find the
+     *          version of that snapshot for a while, and keep some older values for nothing.
+     */
+    static long getOldestPinnedVersion() {
+        return oldestPinnedVersion;
+    }
+
+    /**
+     * Pin a snapshot of the given version.
+     */
+    private static void pin(long version) {
+        synchronized (pinnedVersions) {
+            pinnedVersions.merge(version, 1, Integer::sum);
+            oldestPinnedVersion = pinnedVersions.firstKey();
+        }
+    }
+
+    /**
+     * Unpin a snapshot of the given version.
+     */
+    private static void unpin(long version) {
+        synchronized (pinnedVersions) {
+            pinnedVersions.computeIfPresent(version, (key, count) -> (count == 1) ? null : count - 1);
+            oldestPinnedVersion = pinnedVersions.isEmpty() ? Long.MAX_VALUE : pinnedVersions.firstKey();
+        }
+    }
+
+    /**
+     * Variable registering the version of this snapshot.
+     */
+    private final long version;
+
+    /**
+     * Return the version of this snapshot.
+     */
+    @Basic @Immutable
+    public long getVersion() {
+        return version;
+    }
+
+
+
+    /**********************************************************
+     * directory
+     **********************************************************/
+
+    /**
+     * Variable referencing the directory whose subtree this snapshot is of.
+     */
+    private final Directory directory;
+
+    /**
+     * Return the directory whose subtree this snapshot is of.
+     */
+    @Basic @Immutable
+    public Directory getDirectory() {
+        return directory;
+    }
+
+
+
+    /**********************************************************
+     * reading - defensive programming
+     **********************************************************/
+
+    /**
+     * Return the items that were in the given directory when this snapshot was taken.
+     *
+     * @param   directory
+     *          The directory to return the items of.
+     * @pre     The given directory was in the subtree of this snapshot when it was taken.
+     * @return  A list with the items in the given directory in the version of this snapshot,
+     *          in the lexicographical order of the names they had then.
+     * @throws  NullPointerException
+     *          The given directory is not effective.
+     *          | directory == null
+     * @throws  IllegalStateException
+     *          This snapshot is closed.
+     *          | isClosed()
+     * @note    The list can't be changed and doesn't follow later changes to the directory.
+     */
+    public List<Item> getItems(Directory directory) throws NullPointerException, IllegalStateException {
+        if (directory == null) {
+            throw new NullPointerException("The directory must be effective.");
+        }
+        checkOpen();
+        return directory.getContentsIn(version);
+    }
+
+    /**
+     * Return the size the given file had when this snapshot was taken.
+     *
+     * @param   file
+     *          The file to return the size of.
+     * @pre     The given file was in the subtree of this snapshot when it was taken.
+     * @return  The size of the given file in the version of this snapshot.
+     * @throws  NullPointerException
+     *          The given file is not effective.
+     *          | file == null
+     * @throws  IllegalStateException
+     *          This snapshot is closed.
+     *          | isClosed()
+     */
+    public long getSize(File file) throws NullPointerException, IllegalStateException {
+        if (file == null) {
+            throw new NullPointerException("The file must be effective.");
+        }
+        checkOpen();
+        return file.getSizeIn(version);
+    }
+
+    /**
+     * Return the total disk usage of the subtree of this snapshot, as it was when it was taken.
+     *
+     * @return  The sum of the sizes of all files in the subtree of this snapshot,
+     *          in the version of this snapshot.
+     *          | result == sum( { getSize(file) | file is in the subtree of this snapshot } )
+     * @throws  IllegalStateException
+     *          This snapshot is closed.
+     *          | isClosed()
+     * @note    The subtree is folded by a subtree fold, so large subtrees are added up by
+     *          several threads at once.
+     */
+    public long computeTotalDiskUsage() throws IllegalStateException {
+        checkOpen();
+        return SubtreeFold.collect(this, () -> new long[1],
+                (sum, item) -> {
+                    if (item instanceof File) sum[0] += getSize((File) item);
+                },
+                (sum, other) -> sum[0] += other[0],
+                sum -> false)[0];
+    }
+
+
+
+    /**********************************************************
+     * closing
+     **********************************************************/
+
+    /**
+     * Variable registering whether this snapshot is closed.
+     */
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+
+    /**
+     * Check whether this snapshot is closed.
+     */
+    @Basic
+    public boolean isClosed() {
+        return isClosed.get();
+    }
+
+    /**
+     * Check that this snapshot is not closed.
+     *
+     * @throws  IllegalStateException
+     *          This snapshot is closed.
+     *          | isClosed()
+     */
+    @Model
+    private void checkOpen() throws IllegalStateException {
+        if (isClosed()) throw new IllegalStateException("The snapshot is closed.");
+    }
+
+    /**
+     * Close this snapshot, so the values it needs are no longer kept for it.
+     *
+     * @post    This snapshot is closed.
+     *          | new.isClosed()
+     * @note    Closing a snapshot that is closed already has no effect.
+     */
+    @Override
+    public void close() {
+        if (isClosed.compareAndSet(false, true)) unpin(version);
+    }
+
+}
@@ -0,0 +1,376 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A class of spliterators over the items in the subtree of a directory, the directory
+ * included. The items within a directory are taken from a snapshot of that directory
+ * the moment the spliterator gets there, so no list of all items is ever built.
+ *
+ * Spliterators split at directory boundaries: a spliterator hands over part of the
+ * items of a directory it has yet to get to, and with those items their subtrees.
+ *
+ * @note    The size of a subtree is not known in advance, so the estimated size of a
+ *          spliterator starts out unknown and is halved every time it is split.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+abstract class SubtreeSpliterator implements Spliterator<Item> {
+
+    /**
+     * Initialize a new spliterator that first reports the given item, if any.
+     *
+     * @param   pending
+     *          The item to report before any other item, or null.
+     * @param   estimatedSize
+     *          The estimated number of items this spliterator reports.
+     */
+    private SubtreeSpliterator(Item pending, long estimatedSize) {
+        this.pending = pending;
+        this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * Return a spliterator over the subtree of the given directory, in depth-first order.
+     * Every directory is reported before the items within it, and those items are
+     * reported in the order of their names.
+     *
+     * @param   directory
+     *          The directory whose subtree is to be traversed.
+     */
+    static Spliterator<Item> depthFirst(Directory directory) {
+        return new DepthFirst(directory);
+    }
+
+    /**
+     * Return a spliterator over the subtree of the given directory, in breadth-first order.
+     * Every item is reported before the items that are deeper in the subtree, as long as
+     * the spliterator isn't split.
+     *
+     * @param   directory
+     *          The directory whose subtree is to be traversed.
+     */
+    static Spliterator<Item> breadthFirst(Directory directory) {
+        return new BreadthFirst(directory);
+    }
+
+    /**
+     * Variable referencing the item this spliterator reports before any other item,
+     * or null if there is no such item (any more).
+     */
+    Item pending;
+
+    /**
+     * Variable registering the estimated number of items this spliterator reports.
+     */
+    long estimatedSize;
+
+    /**
+     * Return the pending item of this spliterator and clear it.
+     */
+    Item takePending() {
+        Item item = pending;
+        pending = null;
+        return item;
+    }
+
+    /**
+     * Return the estimated number of items this spliterator has yet to report.
+     */
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Halve the estimated size of this spliterator and return the other half.
+     */
+    long halveEstimatedSize() {
+        if (estimatedSize != Long.MAX_VALUE) {
+            estimatedSize -= estimatedSize >>> 1;
+        } else {
+            estimatedSize >>>= 1;
+        }
+        return estimatedSize;
+    }
+
+    /**
+     * A class of ranges of items within a directory that a spliterator has yet to report.
+     */
+    private static final class Range {
+
+        /**
+         * Initialize a new range over the items at the given indices of the given list.
+         */
+        Range(List<Item> items, int next, int end) {
+            this.items = items;
+            this.next = next;
+            this.end = end;
+        }
+
+        /**
+         * Initialize a new range over all items in a snapshot of the given directory.
+         */
+        Range(Directory directory) {
+            this(directory.getItems(), 0, 0);
+            end = items.size();
+        }
+
+        /**
+         * The snapshot of items the range is part of.
+         */
+        final List<Item> items;
+
+        /**
+         * The index of the next item in the range, and the index beyond the range.
+         */
+        int next, end;
+
+        /**
+         * Return the number of items in this range.
+         */
+        int size() {
+            return end - next;
+        }
+
+        /**
+         * Split off the second half of this range, which must hold at least two items.
+         */
+        Range splitOffSecondHalf() {
+            int middle = (next + end) >>> 1;
+            Range second = new Range(items, middle, end);
+            end = middle;
+            return second;
+        }
+
+    }
+
+
+
+    /**********************************************************
+     * depth-first traversal
+     **********************************************************/
+
+    /**
+     * A class of spliterators that traverse a subtree in depth-first order.
+     *
+     * @note    The ranges still to be reported form a stack, with the range in the directory
+     *          closest to the top of the subtree at the bottom. A spliterator splits by
+     *          handing over everything it would report before the second half of its
+     *          bottom range, so both spliterators keep reporting in order.
+     */
+    private static final class DepthFirst extends SubtreeSpliterator {
+
+        /**
+         * Initialize a new spliterator over the subtree of the given directory.
+         */
+        DepthFirst(Directory directory) {
+            super(directory, Long.MAX_VALUE);
+            ranges.add(new Range(directory));
+        }
+
+        /**
+         * Initialize a new spliterator that first reports the given item, if any,
+         * and then the given ranges, the last one first.
+         */
+        DepthFirst(Item pending, ArrayList<Range> ranges, long estimatedSize) {
+            super(pending, estimatedSize);
+            this.ranges = ranges;
+        }
+
+        /**
+         * The ranges still to be reported, the one on top of the stack last.
+         */
+        private ArrayList<Range> ranges = new ArrayList<>();
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            Item item = takePending();
+            if (item == null) {
+                item = advance();
+                if (item == null) return false;
+            }
+            action.accept(item);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Item> action) {
+            Item item = takePending();
+            if (item != null) action.accept(item);
+            while ((item = advance()) != null) {
+                action.accept(item);
+            }
+        }
+
+        /**
+         * Move on to the next item and return it, or return null if there is none.
+         */
+        private Item advance() {
+            while (!ranges.isEmpty()) {
+                Range top = ranges.get(ranges.size() - 1);
+                if (top.next < top.end) {
+                    Item item = top.items.get(top.next++);
+                    if (item instanceof Directory) {
+                        ranges.add(new Range((Directory) item));
+                    }
+                    return item;
+                }
+                ranges.remove(ranges.size() - 1);
+            }
+            return null;
+        }
+
+        @Override
+        public Spliterator<Item> trySplit() {
+            // ranges at the bottom that are done don't matter any more
+            int bottom = 0;
+            while (bottom < ranges.size() && ranges.get(bottom).size() == 0) bottom++;
+            if (bottom == ranges.size()) return null;
+            if (bottom > 0) ranges.subList(0, bottom).clear();
+            Range first = ranges.get(0);
+            if (first.size() >= 2) {
+                return splitBefore(first.splitOffSecondHalf());
+            }
+            if (pending != null || ranges.size() > 1) {
+                // hand over everything before the last item of the bottom range
+                first.end--;
+                return splitBefore(new Range(first.items, first.end, first.end + 1));
+            }
+            // a single item is left; hand over the item itself, keep its subtree
+            Item item = first.items.get(first.next);
+            if (!(item instanceof Directory) || ((Directory) item).getNbOfItems() == 0) return null;
+            ranges.set(0, new Range((Directory) item));
+            return new DepthFirst(item, new ArrayList<>(), 1);
+        }
+
+        /**
+         * Hand over everything this spliterator would report before the given range,
+         * and keep only that range.
+         */
+        private Spliterator<Item> splitBefore(Range rest) {
+            DepthFirst prefix = new DepthFirst(takePending(), ranges, halveEstimatedSize());
+            ranges = new ArrayList<>();
+            ranges.add(rest);
+            return prefix;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+    }
+
+
+
+    /**********************************************************
+     * breadth-first traversal
+     **********************************************************/
+
+    /**
+     * A class of spliterators that traverse a subtree in breadth-first order.
+     *
+     * @note    Every directory is queued when it is reported, and its items are reported
+     *          once every directory queued before it is done. A spliterator splits by
+     *          handing over half of its queued directories, or otherwise half of the
+     *          range it is reporting, so the order only holds within a spliterator.
+     */
+    private static final class BreadthFirst extends SubtreeSpliterator {
+
+        /**
+         * Initialize a new spliterator over the subtree of the given directory.
+         */
+        BreadthFirst(Directory directory) {
+            super(directory, Long.MAX_VALUE);
+            current = new Range(directory);
+        }
+
+        /**
+         * Initialize a new spliterator that reports the given range first and then
+         * the items in the subtrees of the given directories.
+         */
+        BreadthFirst(Range current, ArrayDeque<Directory> queue, long estimatedSize) {
+            super(null, estimatedSize);
+            this.current = current;
+            this.queue = queue;
+        }
+
+        /**
+         * The range that is being reported.
+         */
+        private Range current;
+
+        /**
+         * The directories whose items are still to be reported.
+         */
+        private ArrayDeque<Directory> queue = new ArrayDeque<>();
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            Item item = takePending();
+            if (item == null) {
+                item = advance();
+                if (item == null) return false;
+            }
+            action.accept(item);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Item> action) {
+            Item item = takePending();
+            if (item != null) action.accept(item);
+            while ((item = advance()) != null) {
+                action.accept(item);
+            }
+        }
+
+        /**
+         * Move on to the next item and return it, or return null if there is none.
+         */
+        private Item advance() {
+            while (current.next == current.end) {
+                if (queue.isEmpty()) return null;
+                current = new Range(queue.poll());
+            }
+            Item item = current.items.get(current.next++);
+            if (item instanceof Directory) {
+                queue.add((Directory) item);
+            }
+            return item;
+        }
+
+        @Override
+        public Spliterator<Item> trySplit() {
+            if (queue.size() >= 2 || (queue.size() == 1 && current.size() > 0)) {
+                ArrayDeque<Directory> handedOver = new ArrayDeque<>();
+                for (int i = (queue.size() + 1) / 2; i > 0; i--) {
+                    handedOver.addFirst(queue.pollLast());
+                }
+                return new BreadthFirst(new Range(List.of(), 0, 0), handedOver, halveEstimatedSize());
+            }
+            if (current.size() >= 2) {
+                return new BreadthFirst(current.splitOffSecondHalf(), new ArrayDeque<>(),
+                        halveEstimatedSize());
+            }
+            return null;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL;
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class of images of trees of items, as they are saved in files.
+ *
+ * An image consists of a header followed by the columns of a columnar tree, each
+ * one starting at a multiple of eight bytes. The header holds a magic number, the
+ * version of the format, the number of items, the number of name bytes, the
+ * offset of every column in the file, the generation of the image, which ties
+ * it to a mutation journal, and the number of directories. All numbers are
+ * little endian.
+ *
+ * Loading an image maps its columns into memory, without reading them, so the loaded
+ * tree can be used right away, whatever its size: the operating system reads the
+ * parts of the file that are used, when they are used.
+ *
+ * @note    A file that is being loaded must not be changed while the loaded tree is in
+ *          use. Saving an image writes a new file and moves it into place, so saving over
+ *          a file that was loaded before is safe.
+ *
+ * @author  Vincent Van Schependom
+ * @author  Flor De Meulemeester
+ * @author  Arne Claerhout
+ * @version 1.0
+ */
+public final class TreeImage {
+
+    /**
+     * This class only has static methods.
+     */
+    private TreeImage() {
+    }
+
+    /**
+     * Variable registering the magic number every image starts with, "OGPTREE" followed by a zero.
+     */
+    private static final long magicNumber = 0x004545525450474fL;
+
+    /**
+     * Variable registering the version of the format of images.
+     */
+    private static final int version = 2;
+
+    /**
+     * Variable registering the number of bytes of the header of an image.
+     */
+    private static final int headerLength = 128;
+
+    /**
+     * Variable registering the position of the generation in the header of an image.
+     */
+    private static final int generationPosition = 24 + 8 * ColumnarTree.nbOfColumns;
+
+    /**
+     * Variable registering the position of the number of directories in the header of an image.
+     */
+    private static final int nbOfDirectoriesPosition = generationPosition + 8;
+
+    /**
+     * Save the given directory and its subtree as an image in the file with the given path.
+     *
+     * @param   directory
+     *          The directory to save.
+     * @param   path
+     *          The path of the file to save to.
+     * @effect  The subtree of the given directory is captured, and the captured tree is saved.
+     *          | save(ColumnarTree.capture(directory), path)
+     */
+    public static void save(Directory directory, Path path)
+            throws NullPointerException, IllegalArgumentException, IOException {
+        save(ColumnarTree.capture(directory), path);
+    }
+
+    /**
+     * Save the given tree as an image in the file with the given path.
+     *
+     * @param   tree
+     *          The tree to save.
+     * @param   path
+     *          The path of the file to save to.
+     * @post    The file with the given path holds an image of the given tree.
+     *          | load(path) is equivalent to tree
+     * @throws  NullPointerException
+     *          The given tree or path is not effective.
+     *          | tree == null || path == null
+     * @throws  IOException
+     *          The image could not be written.
+     * @note    The image is written to a temporary file next to the given one, which is
+     *          forced to the storage device and then moved in place of the given file,
+     *          so the file always holds either the old or the new image.
+     */
+    public static void save(ColumnarTree tree, Path path) throws NullPointerException, IOException {
+        save(tree, path, 0);
+    }
+
+    /**
+     * Save the given tree as an image of the given generation in the file with the given path.
+     *
+     * @param   tree
+     *          The tree to save.
+     * @param   path
+     *          The path of the file to save to.
+     * @param   generation
+     *          The generation of the image.
+     * @effect  The tree is saved as in save(tree, path).
+     * @post    The image has the given generation.
+     *          | getGeneration(path) == generation
+     */
+    static void save(ColumnarTree tree, Path path, long generation) throws NullPointerException, IOException {
+        if (tree == null || path == null) {
+            throw new NullPointerException("The tree and the path must be effective.");
+        }
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long[] offsets = getColumnOffsets(tree.getNbOfItems(), tree.getNbOfDirectories(),
+                    tree.getNbOfNameBytes());
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ColumnarTree.byteOrder);
+            header.putLong(magicNumber).putInt(version).putInt(tree.getNbOfItems())
+                    .putLong(tree.getNbOfNameBytes());
+            for (int column = 0; column < ColumnarTree.nbOfColumns; column++) {
+                header.putLong(offsets[column]);
+            }
+            header.putLong(generation).putInt(tree.getNbOfDirectories());
+            header.clear();
+            writeFully(channel, header, 0);
+            for (int column = 0; column < ColumnarTree.nbOfColumns; column++) {
+                writeFully(channel, tree.getColumn(column), offsets[column]);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write all remaining bytes of the given buffer to the given channel,
+     * from the given position on.
+     */
+    @Model
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Return the offsets of the columns in an image of a tree with the given number
+     * of items, directories and name bytes, followed by the length of the image.
+     */
+    @Model
+    private static long[] getColumnOffsets(int nbOfItems, int nbOfDirectories, long nbOfNameBytes) {
+        long[] offsets = new long[ColumnarTree.nbOfColumns + 1];
+        long offset = headerLength;
+        for (int column = 0; column < ColumnarTree.nbOfColumns; column++) {
+            offsets[column] = offset;
+            offset += ColumnarTree.getColumnLength(column, nbOfItems, nbOfDirectories, nbOfNameBytes);
+            // start every column at a multiple of eight bytes
+            offset = (offset + 7) & ~7L;
+        }
+        offsets[ColumnarTree.nbOfColumns] = offset;
+        return offsets;
+    }
+
+    /**
+     * Load the image in the file with the given path.
+     *
+     * @param   path
+     *          The path of the file to load.
+     * @return  The tree of which the file holds an image, with its columns mapped
+     *          from the file.
+     * @throws  NullPointerException
+     *          The given path is not effective.
+     *          | path == null
+     * @throws  IOException
+     *          The file could not be read, or doesn't hold an image of this version.
+     * @note    Only the header is read, so this takes constant time in the size of the image.
+     */
+    public static ColumnarTree load(Path path) throws NullPointerException, IOException {
+        if (path == null) {
+            throw new NullPointerException("The path must be effective.");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            int nbOfItems = header.getInt();
+            long nbOfNameBytes = header.getLong();
+            int nbOfDirectories = header.getInt(nbOfDirectoriesPosition);
+            if (nbOfItems < 1 || nbOfNameBytes < 0 || nbOfNameBytes > Integer.MAX_VALUE
+                    || nbOfDirectories < 1 || nbOfDirectories > nbOfItems
+                    || nbOfDirectories > ColumnarTree.maximumNbOfDirectories) {
+                throw new IOException("The header of the image is corrupt.");
+            }
+            long[] offsets = getColumnOffsets(nbOfItems, nbOfDirectories, nbOfNameBytes);
+            for (int column = 0; column < ColumnarTree.nbOfColumns; column++) {
+                if (header.getLong() != offsets[column]) {
+                    throw new IOException("The header of the image is corrupt.");
+                }
+            }
+            if (channel.size() < offsets[ColumnarTree.nbOfColumns - 1] + ColumnarTree.getColumnLength(
+                    ColumnarTree.nbOfColumns - 1, nbOfItems, nbOfDirectories, nbOfNameBytes)) {
+                throw new IOException("The image is truncated.");
+            }
+            ByteBuffer[] columns = new ByteBuffer[ColumnarTree.nbOfColumns];
+            for (int column = 0; column < ColumnarTree.nbOfColumns; column++) {
+                // a mapping stays valid after its channel is closed
+                columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[column],
+                        ColumnarTree.getColumnLength(column, nbOfItems, nbOfDirectories, nbOfNameBytes))
+                        .order(ColumnarTree.byteOrder);
+            }
+            return new ColumnarTree(nbOfItems, nbOfDirectories, columns);
+        }
+    }
+
+    /**
+     * Return the generation of the image in the file with the given path.
+     *
+     * @param   path
+     *          The path of the file that holds the image.
+     * @throws  IOException
+     *          The file could not be read, or doesn't hold an image of this version.
+     */
+    static long getGeneration(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel).getLong(generationPosition);
+        }
+    }
+
+    /**
+     * Read the header of the image the given channel is open on, and check its magic
+     * number and version. The returned header is positioned right after the version.
+     */
+    @Model
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ColumnarTree.byteOrder);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("The file is too short to hold an image.");
+            }
+        }
+        header.flip();
+        if (header.getLong() != magicNumber) {
+            throw new IOException("The file doesn't hold an image.");
+        }
+        if (header.getInt() != version) {
+            throw new IOException("The image has a version that is not supported.");
+        }
+        return header;
+    }
+
+}
@@ -0,0 +1,177 @@
+package filesystemTests;
+
+import filesystem.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit 5 test class for testing the public methods of the ColumnarTree Class.
+ *
+ * @author  Flor Demeulemeester
+ * @author  Arne Claerhout
+ * @author  Vincent Van Schependom
+ * @version 1.0
+ */
+public class ColumnarTreeTest {
+
+    Directory rootDir, subDir, subSubDir, readOnlyDir;
+    File file1, main;
+    Link link;
+
+    @BeforeEach
+    public void setUpFixture(){
+        rootDir = new Directory("rootDir");
+        subDir = new Directory(rootDir,"subDir");
+        subSubDir = new Directory(subDir,"subSubDir");
+        file1 = new File(subSubDir, "file1", 100, true, FileType.PDF);
+        main = new File(subDir, "main", 20, false, FileType.JAVA);
+        link = new Link("link_to_main", rootDir, main);
+        readOnlyDir = new Directory(rootDir, "readOnly", false);
+        file1.enlarge(5);
+    }
+
+    @Test
+    public void testCapture() {
+        ColumnarTree tree = ColumnarTree.capture(rootDir);
+        assertEquals(7, tree.getNbOfItems());
+        assertEquals("rootDir", tree.getName(0));
+        assertEquals(-1, tree.getParent(0));
+        assertEquals(3, tree.getNbOfChildren(0));
+        // the items of the root, in order, come first
+        assertEquals(1, tree.getFirstChild(0));
+        assertEquals("link_to_main", tree.getName(1));
+        assertEquals("readOnly", tree.getName(2));
+        assertEquals("subDir", tree.getName(3));
+        assertTrue(tree.isLink(1));
+        assertFalse(tree.isWritable(2));
+        assertEquals(3, tree.getChildWithName(0, "subDir"));
+        assertEquals(-1, tree.getChildWithName(0, "subdir"));
+        int main = tree.getChildWithName(3, "main");
+        assertEquals(main, tree.getLinkedItem(1));
+        assertTrue(tree.isFile(main));
+        assertFalse(tree.isWritable(main));
+        assertEquals(FileType.JAVA, tree.getFileType(main));
+        assertEquals(20, tree.getSize(main));
+        int file1 = tree.getChildWithName(tree.getChildWithName(3, "subSubDir"), "file1");
+        assertEquals(105, tree.getSize(file1));
+        assertEquals(this.file1.getModificationTimeMillis(), tree.getModificationTimeMillis(file1));
+        assertEquals(this.file1.getCreationTimeMillis(), tree.getCreationTimeMillis(file1));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.getName(7));
+        assertThrows(IllegalArgumentException.class, () -> tree.getFirstChild(1));
+    }
+
+    @Test
+    public void testCapture_IllegalCase() {
+        assertThrows(NullPointerException.class, () -> ColumnarTree.capture(null));
+        // the link refers to an item outside of the subtree
+        new Link("link", subSubDir, rootDir);
+        assertThrows(IllegalArgumentException.class, () -> ColumnarTree.capture(subSubDir));
+    }
+
+    @Test
+    public void testCapture_Links() {
+        for (int i = 0; i < 100; i++) {
+            new File(subSubDir, "file" + (1000 + i), i, true, FileType.TEXT);
+        }
+        new Link("link_to_file", subDir, (File) subSubDir.getItem("file1050"));
+        new Link("link_to_root", subSubDir, rootDir);
+        ColumnarTree tree = ColumnarTree.capture(rootDir);
+        assertEquals(109, tree.getNbOfItems());
+        int subDir = tree.getChildWithName(0, "subDir");
+        int subSubDir = tree.getChildWithName(subDir, "subSubDir");
+        int file = tree.getLinkedItem(tree.getChildWithName(subDir, "link_to_file"));
+        assertEquals("file1050", tree.getName(file));
+        assertEquals(subSubDir, tree.getParent(file));
+        assertEquals(50, tree.getSize(file));
+        assertEquals(0, tree.getLinkedItem(tree.getChildWithName(subSubDir, "link_to_root")));
+        assertEquals("file1099", tree.getName(tree.getChildWithName(subSubDir, "file1099")));
+    }
+
+    @Test
+    public void testMaterialize() {
+        Directory copy = ColumnarTree.capture(rootDir).materialize();
+        assertEquals("rootDir", copy.getName());
+        assertNull(copy.getParentDirectory());
+        assertEquals(rootDir.getTotalDiskUsage(), copy.getTotalDiskUsage());
+        assertEquals(rootDir.countItems(item -> true), copy.countItems(item -> true));
+        assertTrue(copy.hasProperItems());
+        assertTrue(copy.hasProperDiskUsage());
+        assertTrue(copy.hasProperStatistics());
+        Directory copyOfSubDir = (Directory) copy.getItem("subDir");
+        File copyOfFile1 = (File) ((Directory) copyOfSubDir.getItem("subSubDir")).getItem("file1");
+        assertEquals(105, copyOfFile1.getSize());
+        assertEquals(file1.getCreationTimeMillis(), copyOfFile1.getCreationTimeMillis());
+        assertEquals(file1.getModificationTimeMillis(), copyOfFile1.getModificationTimeMillis());
+        assertEquals(3, copyOfFile1.getDepth());
+        assertSame(copy, copyOfFile1.getRoot());
+        assertEquals("/rootDir/subDir/subSubDir/file1.pdf", copyOfFile1.getAbsolutePath());
+        Link copyOfLink = (Link) copy.getItem("link_to_main");
+        assertSame(copyOfSubDir.getItem("main"), copyOfLink.getLinkedItem());
+        assertFalse(((Directory) copy.getItem("readOnly")).isWritable());
+        assertEquals(1, copy.getFilesOfType(FileType.PDF).size());
+        // the copy can be changed like any other tree
+        new File(copyOfSubDir, "extra", 1, true, FileType.TEXT);
+        assertEquals(rootDir.getTotalDiskUsage() + 1, copy.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testMaterializeLazily() {
+        ColumnarTree tree = ColumnarTree.capture(rootDir);
+        assertEquals(4, tree.getNbOfDirectories());
+        Directory copy = tree.materializeLazily();
+        // the directories know their items, disk usage and statistics before they have their items
+        Directory copyOfSubDir = (Directory) copy.getItem("subDir");
+        assertEquals(2, copyOfSubDir.getNbOfItems());
+        assertEquals(125, copyOfSubDir.getTotalDiskUsage());
+        assertEquals(105, copyOfSubDir.getTotalDiskUsage(FileType.PDF));
+        assertEquals(1, copyOfSubDir.getTotalNbOfDirectories());
+        assertEquals(rootDir.getTotalDiskUsage(), copy.getTotalDiskUsage());
+        assertEquals(rootDir.getTotalNbOfFiles(), copy.getTotalNbOfFiles());
+        // the link looks up the item it refers to
+        Link copyOfLink = (Link) copy.getItem("link_to_main");
+        assertSame(copyOfSubDir.getItem("main"), copyOfLink.getLinkedItem());
+        // items that are made on the way are part of the tree
+        File copyOfFile1 = (File) copy.resolve("/rootDir/subDir/subSubDir/file1.pdf");
+        assertEquals(3, copyOfFile1.getDepth());
+        assertSame(copy, copyOfFile1.getRoot());
+        assertEquals(file1.getModificationTimeMillis(), copyOfFile1.getModificationTimeMillis());
+        copyOfFile1.enlarge(10);
+        assertEquals(rootDir.getTotalDiskUsage() + 10, copy.getTotalDiskUsage());
+        assertEquals(1, copy.getFilesOfType(FileType.JAVA).size());
+        assertTrue(copy.hasProperItems());
+        assertTrue(copy.hasProperDiskUsage());
+        assertTrue(copy.hasProperStatistics());
+        assertEquals(rootDir.countItems(item -> true), copy.countItems(item -> true));
+    }
+
+    @Test
+    public void testMaterializeLazily_LinkFirst() {
+        Directory copy = ColumnarTree.capture(rootDir).materializeLazily();
+        // the link is followed before any directory on the way to its item has its items
+        Item copyOfMain = ((Link) copy.getItem("link_to_main")).getLinkedItem();
+        assertEquals("/rootDir/subDir/main.java", copyOfMain.getAbsolutePath());
+        assertSame(copyOfMain, ((Directory) copy.getItem("subDir")).getItem("main"));
+        // a directory that is moved before it has its items takes them along
+        Directory copyOfSubSubDir = (Directory) copy.resolve("/rootDir/subDir/subSubDir");
+        copyOfSubSubDir.move(copy);
+        assertEquals(20, ((Directory) copy.getItem("subDir")).getTotalDiskUsage());
+        File copyOfFile1 = (File) copyOfSubSubDir.getItem("file1");
+        assertEquals("/rootDir/subSubDir/file1.pdf", copyOfFile1.getAbsolutePath());
+        assertEquals(2, copyOfFile1.getDepth());
+        assertEquals(1, copy.getFilesOfType(FileType.PDF).size());
+        assertTrue(copy.hasProperStatistics());
+    }
+
+    @Test
+    public void testMaterializeLazily_OtherTree() {
+        Directory copy = ColumnarTree.capture(rootDir).materializeLazily();
+        // a directory that moves to another tree before it has its items takes them along
+        Directory other = new Directory("other");
+        copy.getItem("subDir").move(other);
+        assertEquals(1, other.getFilesOfType(FileType.PDF).size());
+        assertEquals(1, other.getFilesOfType(FileType.JAVA).size());
+        assertEquals(0, copy.getFilesOfType(FileType.PDF).size());
+    }
+
+}
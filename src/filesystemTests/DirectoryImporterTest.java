@@ -0,0 +1,92 @@
+package filesystemTests;
+
+import filesystem.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit 5 test class for testing the public methods of the DirectoryImporter Class.
+ *
+ * @author  Flor Demeulemeester
+ * @author  Arne Claerhout
+ * @author  Vincent Van Schependom
+ * @version 1.0
+ */
+public class DirectoryImporterTest {
+
+    Path path;
+
+    @BeforeEach
+    public void setUpFixture() throws IOException {
+        path = Files.createTempDirectory("import");
+        Path docs = Files.createDirectory(path.resolve("docs"));
+        Files.write(docs.resolve("report.pdf"), new byte[100]);
+        Files.write(docs.resolve("notes.txt"), new byte[10]);
+        // only differs from the previous file in its extension
+        Files.write(docs.resolve("notes.PDF"), new byte[20]);
+        Files.write(docs.resolve("my notes.txt"), new byte[5]);
+        Files.write(docs.resolve("picture.png"), new byte[1000]);
+        Path src = Files.createDirectories(path.resolve("src.main").resolve("java"));
+        Files.write(src.resolve("Main.java"), new byte[30]);
+        Files.createDirectory(path.resolve("empty"));
+    }
+
+    @AfterEach
+    public void tearDownFixture() throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path entry : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(entry);
+            }
+        }
+    }
+
+    @Test
+    public void testImportTree() throws IOException {
+        Directory root = DirectoryImporter.importTree(path, null);
+        assertNull(root.getParentDirectory());
+        assertEquals(3, root.getNbOfItems());
+        Directory docs = (Directory) root.getItem("docs");
+        assertEquals(FileType.PDF, ((File) docs.getItem("report")).getFileType());
+        assertEquals(100, ((File) docs.getItem("report")).getSize());
+        // the entries are handled in order of their names, so the second file gets a number
+        assertEquals(FileType.PDF, ((File) docs.getItem("notes")).getFileType());
+        assertEquals(10, ((File) docs.getItem("notes-2")).getSize());
+        assertEquals(5, ((File) docs.getItem("my_notes")).getSize());
+        // files of an unknown type are skipped
+        assertEquals(4, docs.getNbOfItems());
+        File main = (File) root.resolve("/" + root.getName() + "/src_main/java/Main.java");
+        assertEquals(30, main.getSize());
+        assertEquals(3, main.getDepth());
+        assertEquals(0, ((Directory) root.getItem("empty")).getNbOfItems());
+        assertEquals(165, root.getTotalDiskUsage());
+        assertEquals(2, root.getFilesOfType(FileType.PDF).size());
+        assertTrue(root.hasProperItems());
+        assertTrue(root.hasProperDiskUsage());
+        assertTrue(root.hasProperStatistics());
+    }
+
+    @Test
+    public void testImportTree_DefaultType() throws IOException {
+        Directory root = DirectoryImporter.importTree(path, FileType.TEXT);
+        File picture = (File) ((Directory) root.getItem("docs")).getItem("picture.png");
+        assertEquals(FileType.TEXT, picture.getFileType());
+        assertEquals(1165, root.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testImportTree_IllegalCase() throws IOException {
+        assertThrows(NullPointerException.class, () -> DirectoryImporter.importTree(null, null));
+        assertThrows(NotDirectoryException.class,
+                () -> DirectoryImporter.importTree(path.resolve("docs").resolve("report.pdf"), null));
+        assertThrows(IOException.class, () -> DirectoryImporter.importTree(path.resolve("missing"), null));
+    }
+
+}
@@ -7,7 +7,13 @@ import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -228,6 +234,41 @@ public class DirectoryTest {
         });
     }
 
+    @Test
+    public void testDirectoryRecursivelyDelete_IllegalCaseFileNotWritable() {
+        File file = new File(subDir, "readOnly", 5, false, FileType.TEXT);
+        assertFalse(rootDir.isRecursivelyDeletable());
+        assertThrows(NotWritableException.class, () -> {
+            rootDir.deleteRecursive();
+        });
+        // nothing has been deleted
+        assertFalse(file1.isDeleted());
+        assertFalse(subsubDir.isDeleted());
+        assertEquals(subDir, file.getParentDirectory());
+        assertEquals(2, rootDir.getNbOfItems());
+    }
+
+    @Test
+    public void testDirectoryRecursivelyDelete_ManyItems() {
+        Directory dir = new Directory(rootDir, "many");
+        for (int i = 0; i < 100; i++) {
+            Directory child = new Directory(dir, "child" + i);
+            for (int j = 0; j < 10; j++) {
+                new File(child, "file" + j, 1, true, FileType.TEXT);
+            }
+        }
+        Directory child = (Directory) dir.getItem("child42");
+        File file = (File) child.getItem("file7");
+        dir.deleteRecursive();
+        assertTrue(dir.isDeleted());
+        assertTrue(child.isDeleted());
+        assertTrue(file.isDeleted());
+        assertNull(file.getParentDirectory());
+        assertEquals(0, child.getNbOfItems());
+        assertFalse(rootDir.containsDiskItemWithName("many"));
+        assertEquals(10, rootDir.getTotalDiskUsage());
+    }
+
     @Test
     public void testDirectoryIsRecursivelyDeletable() {
         assertFalse(dirNameAndWriteable.isRecursivelyDeletable());
@@ -235,6 +276,65 @@ public class DirectoryTest {
         assertTrue(subsubDir.isRecursivelyDeletable());
 
     }
+    @Test
+    public void testDirectoryAddItems_LegalCase() {
+        Directory staging = new Directory("staging");
+        File fileA = new File(staging, "aFile", 5, true, FileType.TEXT);
+        File fileZ = new File(staging, "zFile", 7, true, FileType.JAVA);
+        Directory dir = new Directory(staging, "middle");
+        rootDir.addItems(List.of(fileZ, dir, fileA));
+        assertEquals(0, staging.getNbOfItems());
+        assertEquals(5, rootDir.getNbOfItems());
+        assertTrue(rootDir.hasProperItems());
+        assertEquals(fileA, rootDir.getItemAt(0));
+        assertEquals(rootDir, fileZ.getParentDirectory());
+        assertEquals(dir, rootDir.getItem("middle"));
+        assertEquals(22, rootDir.getTotalDiskUsage());
+        assertNotNull(rootDir.getModificationTime());
+    }
+
+    @Test
+    public void testDirectoryAddItems_IllegalCaseNameTaken() {
+        Directory staging = new Directory("staging");
+        File file = new File(staging, "aFile", FileType.TEXT);
+        File taken = new File(staging, "subDir", FileType.TEXT);
+        assertThrows(IllegalParentDirectoryException.class, () -> {
+            rootDir.addItems(List.of(file, taken));
+        });
+        // nothing has been moved
+        assertEquals(staging, file.getParentDirectory());
+        assertEquals(2, staging.getNbOfItems());
+        assertEquals(2, rootDir.getNbOfItems());
+    }
+
+    @Test
+    public void testDirectoryAddItems_IllegalCaseDuplicateNames() {
+        Directory staging1 = new Directory("staging1");
+        Directory staging2 = new Directory("staging2");
+        File file1 = new File(staging1, "same", FileType.TEXT);
+        File file2 = new File(staging2, "same", FileType.PDF);
+        assertThrows(IllegalParentDirectoryException.class, () -> {
+            rootDir.addItems(List.of(file1, file2));
+        });
+        assertFalse(rootDir.containsDiskItemWithName("same"));
+    }
+
+    @Test
+    public void testDirectoryAddItems_IllegalCaseLoop() {
+        assertThrows(IllegalParentDirectoryException.class, () -> {
+            subsubDir.addItems(List.of(subDir));
+        });
+    }
+
+    @Test
+    public void testDirectoryAddItems_IllegalCaseNotWritable() {
+        Directory staging = new Directory("staging");
+        File file = new File(staging, "aFile", FileType.TEXT);
+        assertThrows(NotWritableException.class, () -> {
+            dirNameAndWriteable.addItems(List.of(file));
+        });
+    }
+
     @Test
     public void testDirectoryGetItem_LegalCase() {
         assertEquals(file1, subsubDir.getItem("file1"));
@@ -336,6 +436,20 @@ public class DirectoryTest {
         });
     }
 
+    @Test
+    public void testDirectoryContainsDiskItemWithName_NamesDifferingInCase() {
+        File upper = new File(subsubDir, "FILE1", FileType.TEXT);
+        assertTrue(subsubDir.containsDiskItemWithNameCaseSensitive("FILE1"));
+        assertEquals(upper, subsubDir.getItem("FILE1"));
+        assertEquals(file1, subsubDir.getItem("file1"));
+        file1.delete();
+        assertTrue(subsubDir.containsDiskItemWithName("file1"));
+        assertFalse(subsubDir.containsDiskItemWithNameCaseSensitive("file1"));
+        upper.changeName("other");
+        assertFalse(subsubDir.containsDiskItemWithName("file1"));
+        assertTrue(subsubDir.containsDiskItemWithName("OTHER"));
+    }
+
     @Test
     public void testDirectoryContainsDiskItemWithNameCaseSensitive_LegalCase() {
         // test different ways to write subdir
@@ -378,12 +492,154 @@ public class DirectoryTest {
         assertTrue(dirNameAndWriteable.isOrdered());
     }
 
+    @Test
+    public void testDirectoryIsOrdered_AfterRenaming() {
+        File fileA = new File(rootDir, "aaa", FileType.TEXT);
+        File fileZ = new File(rootDir, "zzz", FileType.TEXT);
+        fileA.changeName("zzzz");
+        assertTrue(rootDir.isOrdered());
+        assertEquals(fileA, rootDir.getItemAt(rootDir.getNbOfItems() - 1));
+        assertEquals(fileA, rootDir.getItem("zzzz"));
+        assertFalse(rootDir.containsDiskItemWithNameCaseSensitive("aaa"));
+        // a name that is already taken in the directory is not accepted
+        fileZ.changeName("zzzz");
+        assertEquals("zzz", fileZ.getName());
+        assertEquals(fileZ, rootDir.getItem("zzz"));
+    }
+
+    @Test
+    public void testDirectoryGetItem_ManyItems() {
+        Directory dir = new Directory("manyItems");
+        for (int i = 999; i >= 0; i--) {
+            new File(dir, "file" + i, FileType.TEXT);
+        }
+        assertEquals(1000, dir.getNbOfItems());
+        assertTrue(dir.isOrdered());
+        for (int i = 0; i < 1000; i++) {
+            File file = (File) dir.getItem("file" + i);
+            assertEquals("file" + i, file.getName());
+            assertEquals(file, dir.getItemAt(dir.getIndexOf(file)));
+        }
+        assertFalse(dir.containsDiskItemWithNameCaseSensitive("file1000"));
+    }
+
     @Test
     public void testDirectoryMakeRoot() {
         Directory dir = new Directory(rootDir, "Directory");
         dir.makeRoot();
         assertNull(dir.getParentDirectory());
         assertNotNull(dir.getModificationTime());
+        assertFalse(rootDir.hasAsItem(dir));
+        assertFalse(rootDir.containsDiskItemWithName("Directory"));
+        assertEquals(2, rootDir.getNbOfItems());
+    }
+
+    @Test
+    public void testDirectoryResolve_LegalCase() {
+        Link link = new Link("link.pdf", subDir, file1);
+        assertEquals(rootDir, subsubDir.resolve("/rootDir"));
+        assertEquals(subsubDir, rootDir.resolve("/rootDir/subDir/subsubDir"));
+        assertEquals(file1, rootDir.resolve("/rootDir/subDir/subsubDir/file1.pdf"));
+        assertEquals(file1, rootDir.resolve(file1.getAbsolutePath()));
+        assertEquals(link, file1.getParentDirectory().resolve("/rootDir/subDir/link.pdf"));
+    }
+
+    @Test
+    public void testDirectoryResolve_IllegalCase() {
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve(null));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("rootDir/subDir"));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/otherRoot/subDir"));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/subDir/"));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/subDir/subsubDir/file1"));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/subDir/subsubDir/file1.txt"));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/subDir/subsubDir/file1.pdf/x"));
+        assertThrows(IllegalArgumentException.class, () -> dirNameAndWriteable.resolve("/rootDir"));
+    }
+
+    @Test
+    public void testDirectoryResolve_AfterChanges() {
+        String path = "/rootDir/subDir/subsubDir/file1.pdf";
+        assertEquals(file1, rootDir.resolve(path));
+        file1.changeName("renamed");
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve(path));
+        assertEquals(file1, rootDir.resolve("/rootDir/subDir/subsubDir/renamed.pdf"));
+        subsubDir.move(dirFull);
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/subDir/subsubDir/renamed.pdf"));
+        assertEquals(file1, rootDir.resolve("/rootDir/dir/subsubDir/renamed.pdf"));
+        subsubDir.makeRoot();
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/dir/subsubDir"));
+        assertEquals(file1, subsubDir.resolve("/subsubDir/renamed.pdf"));
+        file1.delete();
+        assertThrows(IllegalArgumentException.class, () -> subsubDir.resolve("/subsubDir/renamed.pdf"));
+    }
+
+    @Test
+    public void testDirectoryResolve_OtherTrees() throws InterruptedException {
+        String path = "/rootDir/subDir/subsubDir/file1.pdf";
+        Directory otherRoot = new Directory("otherRoot");
+        File otherFile = new File(otherRoot, "other", FileType.TEXT);
+        assertEquals(file1, rootDir.resolve(path));
+        assertEquals(otherFile, otherRoot.resolve("/otherRoot/other.txt"));
+        // changes to another tree leave the paths of this tree resolvable, and the other way around
+        runConcurrently(2, thread -> {
+            for (int i = 0; i < 1000; i++) {
+                if (thread == 0) {
+                    otherFile.changeName("other" + i);
+                } else {
+                    assertEquals(file1, rootDir.resolve(path));
+                }
+            }
+        });
+        assertEquals(otherFile, otherRoot.resolve("/otherRoot/other999.txt"));
+        otherFile.move(subsubDir);
+        assertEquals(otherFile, rootDir.resolve("/rootDir/subDir/subsubDir/other999.txt"));
+        assertThrows(IllegalArgumentException.class, () -> otherRoot.resolve("/otherRoot/other999.txt"));
+        otherFile.move(otherRoot);
+        assertThrows(IllegalArgumentException.class,
+                () -> rootDir.resolve("/rootDir/subDir/subsubDir/other999.txt"));
+        assertEquals(otherFile, otherRoot.resolve("/otherRoot/other999.txt"));
+        assertEquals(file1, rootDir.resolve(path));
+    }
+
+    @Test
+    public void testDirectoryResolve_NewItems() {
+        String path = "/rootDir/subDir/subsubDir/file1.pdf";
+        Link link = new Link("notes.txt", subDir, file1);
+        assertEquals(file1, rootDir.resolve(path));
+        assertEquals(link, rootDir.resolve("/rootDir/subDir/notes.txt"));
+        // new items with paths of their own leave the resolved paths as they are
+        File otherFile = new File(subsubDir, "other", FileType.TEXT);
+        Link otherLink = new Link("otherLink", dirFull, file1);
+        assertEquals(file1, rootDir.resolve(path));
+        assertEquals(link, rootDir.resolve("/rootDir/subDir/notes.txt"));
+        assertEquals(otherFile, rootDir.resolve("/rootDir/subDir/subsubDir/other.txt"));
+        assertEquals(otherLink, rootDir.resolve("/rootDir/dir/otherLink"));
+        // a new file takes over the path of the link
+        File notes = new File(subDir, "notes", FileType.TEXT);
+        assertEquals(notes, rootDir.resolve("/rootDir/subDir/notes.txt"));
+        notes.delete();
+        assertEquals(link, rootDir.resolve("/rootDir/subDir/notes.txt"));
+    }
+
+    @Test
+    public void testDirectoryResolve_ManyPaths() {
+        String path = "/rootDir/subDir/subsubDir/file1.pdf";
+        int n = 5000;
+        File[] files = new File[n];
+        for (int i = 0; i < n; i++) {
+            files[i] = new File(dirFull, "file" + i, FileType.TEXT);
+        }
+        // far more paths than are remembered, with one path that is looked up all the time
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(files[i], rootDir.resolve("/rootDir/dir/file" + i + ".txt"));
+                assertEquals(file1, rootDir.resolve(path));
+            }
+        }
+        files[0].changeName("renamed");
+        assertThrows(IllegalArgumentException.class, () -> rootDir.resolve("/rootDir/dir/file0.txt"));
+        assertEquals(files[0], rootDir.resolve("/rootDir/dir/renamed.txt"));
+        assertEquals(files[n - 1], rootDir.resolve("/rootDir/dir/file" + (n - 1) + ".txt"));
     }
 
     @Test
@@ -420,6 +676,417 @@ public class DirectoryTest {
         assertEquals(0, dirFull.getTotalDiskUsage());
     }
 
+    @Test
+    public void testDirectoryHasProperDiskUsage() {
+        File file = new File(subDir, "item", 20, true, FileType.TEXT);
+        file.enlarge(5);
+        file1.shorten(3);
+        assertEquals(32, rootDir.getTotalDiskUsage());
+        assertEquals(32, rootDir.computeTotalDiskUsage());
+        subsubDir.move(dirFull);
+        assertEquals(25, subDir.getTotalDiskUsage());
+        assertEquals(7, dirFull.getTotalDiskUsage());
+        assertEquals(32, rootDir.getTotalDiskUsage());
+        file.delete();
+        assertEquals(0, subDir.getTotalDiskUsage());
+        assertEquals(7, rootDir.getTotalDiskUsage());
+        dirFull.makeRoot();
+        assertEquals(0, rootDir.getTotalDiskUsage());
+        assertEquals(7, dirFull.getTotalDiskUsage());
+        assertTrue(rootDir.hasProperDiskUsage());
+        assertTrue(subDir.hasProperDiskUsage());
+        assertTrue(dirFull.hasProperDiskUsage());
+        dirFull.deleteRecursive();
+        assertEquals(0, subsubDir.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testDirectoryConcurrentChanges_IndependentSubtrees() throws InterruptedException {
+        int nbOfThreads = 8;
+        int nbOfFiles = 200;
+        runConcurrently(nbOfThreads, thread -> {
+            Directory dir = new Directory(rootDir, "thread" + thread);
+            for (int i = 0; i < nbOfFiles; i++) {
+                File file = new File(dir, "file" + thread + "_" + i, i, true, FileType.TEXT);
+                file.enlarge(1);
+                if (i % 2 == 0) file.changeName("renamed" + thread + "_" + i);
+                // every thread also moves some files to a directory that all threads share
+                if (i % 4 == 0) file.move(dirFull);
+                if (i % 10 == 9) file.delete();
+            }
+        });
+        long expectedDiskUsage = 0;
+        for (int i = 0; i < nbOfFiles; i++) {
+            if (i % 10 != 9) expectedDiskUsage += i + 1;
+        }
+        // the disk usage of file1
+        expectedDiskUsage = nbOfThreads * expectedDiskUsage + 10;
+        assertEquals(expectedDiskUsage, rootDir.getTotalDiskUsage());
+        assertTrue(rootDir.hasProperDiskUsage());
+        assertEquals(expectedDiskUsage - 10, rootDir.getTotalDiskUsage(FileType.TEXT));
+        assertTrue(rootDir.hasProperStatistics());
+        assertEquals(nbOfThreads * nbOfFiles / 4, dirFull.getNbOfItems());
+        assertTrue(dirFull.hasProperItems());
+        for (int thread = 0; thread < nbOfThreads; thread++) {
+            Directory dir = (Directory) rootDir.getItem("thread" + thread);
+            assertEquals(nbOfFiles - nbOfFiles / 4 - nbOfFiles / 10, dir.getNbOfItems());
+            assertTrue(dir.hasProperItems());
+            assertTrue(dir.hasProperDiskUsage());
+        }
+    }
+
+    @Test
+    public void testDirectoryConcurrentChanges_Batches() throws InterruptedException {
+        int nbOfThreads = 4;
+        int nbOfBatches = 50;
+        int batchSize = 20;
+        runConcurrently(nbOfThreads, thread -> {
+            Directory dir = new Directory(rootDir, "thread" + thread);
+            for (int batch = 0; batch < nbOfBatches; batch++) {
+                Directory staging = new Directory("staging");
+                ArrayList<Item> items = new ArrayList<>();
+                for (int i = 0; i < batchSize; i++) {
+                    items.add(new File(staging, "file" + thread + "_" + batch + "_" + i, 1, true, FileType.TEXT));
+                }
+                items.add(new Directory("dir" + thread + "_" + batch));
+                // every thread also moves a batch to a directory that all threads share
+                if (batch % 5 == 0) dirFull.addItems(items);
+                else dir.addItems(items);
+            }
+        });
+        int nbOfSharedBatches = nbOfBatches / 5;
+        assertEquals(10 + nbOfThreads * nbOfBatches * batchSize, rootDir.getTotalDiskUsage());
+        assertTrue(rootDir.hasProperDiskUsage());
+        assertTrue(rootDir.hasProperStatistics());
+        assertEquals(nbOfThreads * nbOfSharedBatches * (batchSize + 1), dirFull.getNbOfItems());
+        assertTrue(dirFull.hasProperItems());
+        for (int thread = 0; thread < nbOfThreads; thread++) {
+            Directory dir = (Directory) rootDir.getItem("thread" + thread);
+            assertEquals((nbOfBatches - nbOfSharedBatches) * (batchSize + 1), dir.getNbOfItems());
+            assertTrue(dir.hasProperItems());
+            assertSame(rootDir, ((Directory) dir.getItem("dir" + thread + "_1")).getRoot());
+        }
+    }
+
+    @Test
+    public void testDirectoryConcurrentChanges_NewDirectories() throws InterruptedException {
+        int nbOfDirectories = 2000;
+        Directory[] directories = new Directory[nbOfDirectories];
+        for (int i = 0; i < nbOfDirectories; i++) {
+            directories[i] = new Directory("new" + i);
+        }
+        runConcurrently(2, thread -> {
+            // one thread moves every new directory into the tree, the other adds a file to it
+            for (Directory directory : directories) {
+                if (thread == 0) directory.move(dirFull);
+                else new File(directory, "file", 1, true, FileType.TEXT);
+            }
+        });
+        assertEquals(nbOfDirectories, dirFull.getNbOfItems());
+        assertEquals(10 + nbOfDirectories, rootDir.getTotalDiskUsage());
+        assertTrue(rootDir.hasProperDiskUsage());
+        assertTrue(rootDir.hasProperStatistics());
+        for (Directory directory : directories) {
+            Item file = directory.getItem("file");
+            assertSame(rootDir, file.getRoot());
+            assertEquals(directory.getDepth() + 1, file.getDepth());
+        }
+        assertEquals(nbOfDirectories, rootDir.getFilesOfType(FileType.TEXT).size());
+    }
+
+    @Test
+    public void testDirectoryConcurrentChanges_SeparateTrees() throws InterruptedException {
+        int nbOfThreads = 4;
+        int nbOfMoves = 500;
+        Directory[] roots = new Directory[nbOfThreads];
+        runConcurrently(nbOfThreads, thread -> {
+            Directory root = new Directory("root" + thread);
+            Directory otherRoot = new Directory("other" + thread);
+            Directory dir = new Directory(root, "dir");
+            new File(dir, "file", 5, true, FileType.TEXT);
+            for (int i = 0; i < nbOfMoves; i++) {
+                // a directory with items in it is moved between trees, and back out of them
+                dir.move((i % 2 == 0) ? otherRoot : root);
+                new Directory(root, "empty" + i).delete();
+                if (i % 50 == 0) {
+                    Directory parent = dir.getParentDirectory();
+                    dir.makeRoot();
+                    dir.move(parent);
+                }
+            }
+            otherRoot.move(rootDir);
+            otherRoot.makeRoot();
+            roots[thread] = root;
+        });
+        for (Directory root : roots) {
+            Directory dir = (Directory) root.getItem("dir");
+            assertEquals(root, dir.getRoot());
+            assertEquals(root, dir.getItem("file").getRoot());
+            assertEquals(1, root.getNbOfItems());
+            assertEquals(5, root.getTotalDiskUsage());
+            assertTrue(root.hasProperDiskUsage());
+            assertTrue(root.hasProperStatistics());
+        }
+        assertEquals(10, rootDir.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testDirectoryConcurrentMoves_OppositeDirections() throws InterruptedException {
+        int nbOfMoves = 2000;
+        File file2 = new File(dirFull, "file2", 20, true, FileType.TEXT);
+        runConcurrently(2, thread -> {
+            // both threads need the same two directories, but in the opposite order
+            File file = (thread == 0) ? file1 : file2;
+            Directory from = (thread == 0) ? subsubDir : dirFull;
+            Directory to = (thread == 0) ? dirFull : subsubDir;
+            for (int i = 0; i < nbOfMoves; i++) {
+                file.move((i % 2 == 0) ? to : from);
+            }
+        });
+        assertEquals(subsubDir, file1.getParentDirectory());
+        assertEquals(dirFull, file2.getParentDirectory());
+        assertEquals(10, subsubDir.getTotalDiskUsage());
+        assertEquals(20, dirFull.getTotalDiskUsage());
+        assertEquals(30, rootDir.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testDirectoryGetItems_Snapshot() {
+        File file2 = new File(subDir, "file2", 20, true, FileType.TEXT);
+        List<Item> items = subDir.getItems();
+        assertEquals(List.of(file2, subsubDir), items);
+        file2.changeName("zzz");
+        File file3 = new File(subDir, "file3", 30, true, FileType.TEXT);
+        subsubDir.move(dirFull);
+        // the snapshot doesn't follow the changes
+        assertEquals(List.of(file2, subsubDir), items);
+        assertEquals(List.of(file3, file2), subDir.getItems());
+        assertThrows(UnsupportedOperationException.class, () -> items.add(file3));
+    }
+
+    @Test
+    public void testDirectoryGetItems_ConcurrentChanges() throws InterruptedException {
+        int nbOfChanges = 3000;
+        runConcurrently(3, thread -> {
+            if (thread == 0) {
+                for (int i = 0; i < nbOfChanges; i++) {
+                    File file = new File(subDir, "file" + i, 1, true, FileType.TEXT);
+                    file.changeName("renamed" + i);
+                    if (i % 2 == 0) file.delete();
+                }
+            } else {
+                for (int i = 0; i < nbOfChanges; i++) {
+                    List<Item> items = subDir.getItems();
+                    long diskUsage = 0;
+                    for (Item item : items) {
+                        assertNotNull(item);
+                        diskUsage += item.getTotalDiskUsage();
+                    }
+                    assertTrue(diskUsage >= 10);
+                    assertTrue(subDir.computeTotalDiskUsage() >= 10);
+                }
+            }
+        });
+        assertEquals(nbOfChanges / 2 + 1, subDir.getNbOfItems());
+        assertTrue(subDir.hasProperItems());
+        assertTrue(rootDir.hasProperDiskUsage());
+    }
+
+    @Test
+    public void testDirectoryFold_LargeSubtree() {
+        // enough items per level for the fold to fork off tasks
+        File file = null;
+        for (int i = 0; i < 20; i++) {
+            Directory dir = new Directory(dirFull, "dir" + i);
+            for (int j = 0; j < 50; j++) {
+                file = new File(new Directory(dir, "sub" + j), "file", j, true, FileType.TEXT);
+            }
+        }
+        assertEquals(1 + 20 + 20 * 50 * 2, dirFull.countItems(item -> true));
+        assertEquals(20 * 50, dirFull.countItems(item -> item instanceof File));
+        assertEquals(20 * (49 * 50 / 2), dirFull.computeTotalDiskUsage());
+        assertTrue(dirFull.hasProperDiskUsage());
+        assertEquals(dirFull.countItems(item -> true),
+                (long) dirFull.fold(0L, (count, item) -> count + 1, Long::sum));
+        assertTrue(dirFull.isRecursivelyDeletable());
+        file.setWritable(false);
+        assertFalse(dirFull.isRecursivelyDeletable());
+    }
+
+    @Test
+    public void testDirectoryFold_IllegalCase() {
+        assertThrows(NullPointerException.class, () -> rootDir.fold(0, null, Integer::sum));
+        assertThrows(NullPointerException.class, () -> rootDir.countItems(null));
+        assertNull(rootDir.fold(null, (result, item) -> result, (first, second) -> first));
+    }
+
+    @Test
+    public void testDirectoryStreamDepthFirst() {
+        File file2 = new File(subDir, "file2", FileType.TEXT);
+        assertEquals(List.of(rootDir, dirFull, subDir, file2, subsubDir, file1),
+                rootDir.streamDepthFirst().collect(Collectors.toList()));
+        assertEquals(List.of(subsubDir, file1), subsubDir.streamDepthFirst().collect(Collectors.toList()));
+        assertEquals(List.of(dirFull), dirFull.streamDepthFirst().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDirectoryStreamBreadthFirst() {
+        File file2 = new File(subDir, "file2", FileType.TEXT);
+        assertEquals(List.of(rootDir, dirFull, subDir, file2, subsubDir, file1),
+                rootDir.streamBreadthFirst().collect(Collectors.toList()));
+        File file3 = new File(rootDir, "file3", FileType.TEXT);
+        assertEquals(List.of(rootDir, dirFull, file3, subDir, file2, subsubDir, file1),
+                rootDir.streamBreadthFirst().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDirectoryStreams_Parallel() {
+        for (int i = 0; i < 20; i++) {
+            Directory dir = new Directory(dirFull, "dir" + i);
+            Directory chain = new Directory(dir, "chain");
+            for (int j = 0; j < 50; j++) {
+                new File(new Directory(chain, "sub" + j), "file", j, true, FileType.TEXT);
+            }
+        }
+        List<Item> depthFirst = dirFull.streamDepthFirst().collect(Collectors.toList());
+        assertEquals(dirFull.countItems(item -> true), depthFirst.size());
+        assertEquals(depthFirst, dirFull.streamDepthFirst().parallel().collect(Collectors.toList()));
+        assertEquals(new HashSet<>(depthFirst),
+                dirFull.streamBreadthFirst().parallel().collect(Collectors.toSet()));
+        assertEquals(depthFirst.size(), dirFull.streamBreadthFirst().parallel().count());
+        assertEquals(dirFull.computeTotalDiskUsage(), dirFull.streamDepthFirst().parallel()
+                .filter(item -> item instanceof File).mapToLong(Item::getTotalDiskUsage).sum());
+    }
+
+    @Test
+    public void testDirectoryGetFilesOfType() {
+        File file2 = new File(subDir, "file2", FileType.PDF);
+        File file3 = new File(dirFull, "file3", FileType.TEXT);
+        assertEquals(Set.of(file1, file2), new HashSet<>(rootDir.getFilesOfType(FileType.PDF)));
+        assertEquals(List.of(file1), subsubDir.getFilesOfType(FileType.PDF));
+        assertEquals(List.of(file3), rootDir.getFilesOfType(FileType.TEXT));
+        assertEquals(List.of(), subDir.getFilesOfType(FileType.TEXT));
+        file3.move(subsubDir);
+        assertEquals(List.of(file3), subDir.getFilesOfType(FileType.TEXT));
+        file1.delete();
+        assertEquals(List.of(file2), rootDir.getFilesOfType(FileType.PDF));
+        subDir.deleteRecursive();
+        assertEquals(List.of(), rootDir.getFilesOfType(FileType.PDF));
+        assertEquals(List.of(), rootDir.getFilesOfType(FileType.TEXT));
+        assertThrows(IllegalArgumentException.class, () -> rootDir.getFilesOfType(null));
+    }
+
+    @Test
+    public void testDirectoryGetFilesOfType_OtherTrees() {
+        File file2 = new File(subDir, "file2", FileType.PDF);
+        Directory newRoot = new Directory("newRoot");
+        File file3 = new File(newRoot, "file3", FileType.PDF);
+        assertEquals(List.of(file3), newRoot.getFilesOfType(FileType.PDF));
+        subsubDir.move(newRoot);
+        assertEquals(List.of(file2), rootDir.getFilesOfType(FileType.PDF));
+        assertEquals(Set.of(file1, file3), new HashSet<>(newRoot.getFilesOfType(FileType.PDF)));
+        // renaming a directory doesn't change which files are in its subtree
+        subsubDir.changeName("renamed");
+        assertEquals(List.of(file1), subsubDir.getFilesOfType(FileType.PDF));
+        subDir.makeRoot();
+        assertEquals(List.of(), rootDir.getFilesOfType(FileType.PDF));
+        assertEquals(List.of(file2), subDir.getFilesOfType(FileType.PDF));
+        rootDir.addItems(List.of(subDir, subsubDir));
+        assertEquals(Set.of(file1, file2), new HashSet<>(rootDir.getFilesOfType(FileType.PDF)));
+        assertEquals(List.of(file3), newRoot.getFilesOfType(FileType.PDF));
+    }
+
+    @Test
+    public void testDirectoryGetFilesOfType_MovedDirectories() {
+        Directory deepDir = subsubDir;
+        for (int i = 0; i < 100; i++) deepDir = new Directory(deepDir, "deep" + i);
+        File file2 = new File(deepDir, "file2", FileType.PDF);
+        assertEquals(List.of(file2), deepDir.getFilesOfType(FileType.PDF));
+        // the keys the directories remember are not used any more after a move
+        subsubDir.move(dirFull);
+        File file3 = new File(deepDir, "file3", FileType.PDF);
+        assertEquals(List.of(), subDir.getFilesOfType(FileType.PDF));
+        assertEquals(Set.of(file1, file2, file3), new HashSet<>(dirFull.getFilesOfType(FileType.PDF)));
+        assertEquals(Set.of(file2, file3), new HashSet<>(deepDir.getFilesOfType(FileType.PDF)));
+        deepDir.getParentDirectory().move(subDir);
+        File file4 = new File(deepDir, "file4", FileType.PDF);
+        assertEquals(Set.of(file2, file3, file4), new HashSet<>(subDir.getFilesOfType(FileType.PDF)));
+        assertEquals(List.of(file1), dirFull.getFilesOfType(FileType.PDF));
+        file4.move(subsubDir);
+        assertEquals(Set.of(file1, file4), new HashSet<>(dirFull.getFilesOfType(FileType.PDF)));
+        assertEquals(Set.of(file1, file2, file3, file4), new HashSet<>(rootDir.getFilesOfType(FileType.PDF)));
+    }
+
+    @Test
+    public void testDirectoryGetFilesWithNamePrefix() {
+        File file2 = new File(subDir, "file2", FileType.PDF);
+        File other = new File(dirFull, "answer", FileType.TEXT);
+        assertEquals(Set.of(file1, file2), new HashSet<>(rootDir.getFilesWithNamePrefix("file")));
+        assertEquals(List.of(file2), rootDir.getFilesWithNamePrefix("file2"));
+        assertEquals(List.of(file1), subsubDir.getFilesWithNamePrefix(""));
+        file2.changeName("another");
+        assertEquals(List.of(file1), rootDir.getFilesWithNamePrefix("file"));
+        assertEquals(Set.of(file2, other), new HashSet<>(rootDir.getFilesWithNamePrefix("an")));
+        assertEquals(List.of(file2), subDir.getFilesWithNamePrefix("an"));
+        Directory newRoot = new Directory("newRoot");
+        subDir.move(newRoot);
+        assertEquals(List.of(other), rootDir.getFilesWithNamePrefix("an"));
+        assertEquals(List.of(file2), newRoot.getFilesWithNamePrefix("an"));
+        assertThrows(NullPointerException.class, () -> rootDir.getFilesWithNamePrefix(null));
+    }
+
+    @Test
+    public void testDirectoryStatistics() {
+        File file2 = new File(subDir, "file2", 20, true, FileType.TEXT);
+        new Link("link", dirFull, file2);
+        assertEquals(10, rootDir.getTotalDiskUsage(FileType.PDF));
+        assertEquals(20, rootDir.getTotalDiskUsage(FileType.TEXT));
+        assertEquals(0, rootDir.getTotalDiskUsage(FileType.JAVA));
+        assertEquals(1, rootDir.getTotalNbOfFiles(FileType.PDF));
+        assertEquals(2, rootDir.getTotalNbOfFiles());
+        assertEquals(3, rootDir.getTotalNbOfDirectories());
+        assertEquals(1, rootDir.getTotalNbOfLinks());
+        assertEquals(1, subDir.getTotalNbOfDirectories());
+        assertEquals(0, subsubDir.getTotalNbOfDirectories());
+        file1.enlarge(5);
+        assertEquals(15, subDir.getTotalDiskUsage(FileType.PDF));
+        assertEquals(15, rootDir.getTotalDiskUsage(FileType.PDF));
+        subsubDir.move(dirFull);
+        assertEquals(0, subDir.getTotalDiskUsage(FileType.PDF));
+        assertEquals(15, dirFull.getTotalDiskUsage(FileType.PDF));
+        assertEquals(2, dirFull.getTotalNbOfDirectories() + dirFull.getTotalNbOfLinks());
+        file2.delete();
+        assertEquals(0, rootDir.getTotalDiskUsage(FileType.TEXT));
+        assertEquals(1, rootDir.getTotalNbOfFiles());
+        assertTrue(rootDir.hasProperStatistics());
+        dirFull.deleteRecursive();
+        assertEquals(0, rootDir.getTotalNbOfFiles());
+        assertEquals(0, rootDir.getTotalNbOfLinks());
+        assertEquals(1, rootDir.getTotalNbOfDirectories());
+        assertTrue(rootDir.hasProperStatistics());
+        assertTrue(dirFull.hasProperStatistics());
+    }
+
+    private void runConcurrently(int nbOfThreads, IntConsumer task) throws InterruptedException {
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[nbOfThreads];
+        for (int i = 0; i < nbOfThreads; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    task.accept(thread);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+            assertFalse(thread.isAlive(), "A thread did not finish in time.");
+        }
+        assertEquals(List.of(), failures);
+    }
 
     private void sleep() {
         try {
@@ -201,6 +201,72 @@ public class FileTest {
 		assertFalse(timeAfterEnlarge.before(file.getModificationTime()));
 	}
 
+	@Test
+	public void testEnlarge_BeyondIntegerRange() {
+		long terabyte = 1L << 40;
+		File big = new File(anotherDirectory, "big", terabyte, true, FileType.PDF);
+		File other = new File(anotherDirectory, "other", Integer.MAX_VALUE, true, FileType.PDF);
+		big.enlarge(terabyte);
+		assertEquals(2 * terabyte, big.getSize());
+		assertEquals(2 * terabyte + Integer.MAX_VALUE, anotherDirectory.getTotalDiskUsage());
+		assertTrue(anotherDirectory.hasProperDiskUsage());
+	}
+
+	@Test
+	public void testEnlarge_DiskUsageOverflow() {
+		Directory root = new Directory("fullRoot");
+		Directory full = fillWithLargestFiles(root);
+		File file = new File(full, "last", File.getMaximumSize() - 2, true, FileType.TEXT);
+		assertEquals(Long.MAX_VALUE - 1, root.getTotalDiskUsage());
+		assertThrows(ArithmeticException.class, () -> file.enlarge(2));
+		assertEquals(File.getMaximumSize() - 2, file.getSize());
+		assertNull(file.getModificationTime());
+		assertEquals(Long.MAX_VALUE - 1, root.getTotalDiskUsage());
+		assertTrue(root.hasProperDiskUsage());
+		assertTrue(full.hasProperDiskUsage());
+		file.enlarge(1);
+		assertEquals(Long.MAX_VALUE, root.getTotalDiskUsage());
+	}
+
+	@Test
+	public void testMove_DiskUsageOverflow() {
+		Directory root = new Directory("fullRoot");
+		Directory full = fillWithLargestFiles(root);
+		File big = new File(anotherDirectory, "big", File.getMaximumSize(), true, FileType.TEXT);
+		long diskUsage = root.getTotalDiskUsage();
+		int nbOfItems = full.getNbOfItems();
+		assertThrows(ArithmeticException.class, () -> big.move(full));
+		assertSame(anotherDirectory, big.getParentDirectory());
+		assertTrue(anotherDirectory.hasAsItem(big));
+		assertEquals(File.getMaximumSize(), anotherDirectory.getTotalDiskUsage());
+		assertEquals(nbOfItems, full.getNbOfItems());
+		assertFalse(full.containsDiskItemWithName("big"));
+		assertEquals(diskUsage, root.getTotalDiskUsage());
+		assertTrue(root.hasProperDiskUsage());
+		// moving an item within the tree doesn't change the disk usage of its root
+		File moved = (File) full.getItemAt(1);
+		Directory other = new Directory(root, "other");
+		moved.move(other);
+		assertEquals(diskUsage, root.getTotalDiskUsage());
+		assertTrue(root.hasProperDiskUsage());
+	}
+
+	/**
+	 * Add as many files of maximum size to a new directory in the given empty root as its
+	 * disk usage can hold, which leaves room for one byte short of another file of maximum size.
+	 */
+	private static Directory fillWithLargestFiles(Directory root) {
+		Directory full = new Directory(root, "full");
+		int nbOfFiles = (int) (Long.MAX_VALUE / File.getMaximumSize());
+		Directory scratch = new Directory("scratch");
+		java.util.List<Item> files = new java.util.ArrayList<>();
+		for (int i = 0; i < nbOfFiles; i++) {
+			files.add(new File(scratch, "file" + i, File.getMaximumSize(), true, FileType.TEXT));
+		}
+		full.addItems(files);
+		return full;
+	}
+
 	@Test
 	public void testEnlarge_FileNotWritable() {
 		NotWritableException thrown = assertThrows(NotWritableException.class, () -> {
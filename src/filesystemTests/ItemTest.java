@@ -60,6 +60,55 @@ public class ItemTest {
         assertEquals("/rootDir/subDir/subSubDir", subSubDir.getAbsolutePath());
     }
 
+    @Test
+    public void absolutePathTest_AfterChanges(){
+        assertEquals("/rootDir/subDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        subDir.changeName("renamedDir");
+        assertEquals("/rootDir/renamedDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        assertEquals("/rootDir/renamedDir/main.java", main.getAbsolutePath());
+        subSubDir.move(rootDir);
+        assertEquals("/rootDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        Directory newRoot = new Directory("newRoot");
+        rootDir.move(newRoot);
+        assertEquals("/newRoot/rootDir/link_to_main", link.getAbsolutePath());
+        file1.delete();
+        assertEquals("/file1.pdf", file1.getAbsolutePath());
+    }
+
+    @Test
+    public void absolutePathTest_OtherTrees(){
+        Directory otherRoot = new Directory("otherRoot");
+        Directory otherDir = new Directory(otherRoot, "otherDir");
+        assertEquals("/rootDir/subDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        assertEquals("/otherRoot/otherDir", otherDir.getAbsolutePath());
+        otherDir.changeName("renamedOther");
+        assertEquals("/otherRoot/renamedOther", otherDir.getAbsolutePath());
+        assertEquals("/rootDir/subDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        // a subtree that leaves a tree and comes back gets its paths rebuilt every time
+        subSubDir.move(otherDir);
+        assertEquals("/otherRoot/renamedOther/subSubDir/file1.pdf", file1.getAbsolutePath());
+        otherDir.changeName("otherDir");
+        subSubDir.move(subDir);
+        assertEquals("/rootDir/subDir/subSubDir/file1.pdf", file1.getAbsolutePath());
+        otherRoot.move(rootDir);
+        assertEquals("/rootDir/otherRoot/otherDir", otherDir.getAbsolutePath());
+        otherRoot.makeRoot();
+        assertEquals("/otherRoot/otherDir", otherDir.getAbsolutePath());
+        file1.delete();
+        assertEquals("/file1.pdf", file1.getAbsolutePath());
+    }
+
+    @Test
+    public void absolutePathTest_AppendTo(){
+        StringBuilder builder = new StringBuilder("path: ");
+        assertSame(builder, file1.appendAbsolutePathTo(builder));
+        assertEquals("path: /rootDir/subDir/subSubDir/file1.pdf", builder.toString());
+        subDir.changeName("renamedDir");
+        builder.setLength(0);
+        main.appendAbsolutePathTo(builder);
+        assertEquals("/rootDir/renamedDir/main.java", builder.toString());
+    }
+
     @Test
     public void testItemChangeName() {
         assertEquals("file1", file1.getName());
@@ -80,6 +129,32 @@ public class ItemTest {
 
     }
 
+    @Test
+    public void testItemNamesAreShared() {
+        File other = new File(subDir, new String("file1"), FileType.TEXT);
+        assertSame(file1.getName(), other.getName());
+        Directory dir = new Directory(rootDir, "dir");
+        assertFalse(dir.isValidName("file1.txt"));
+        assertTrue(other.isValidName("file1.txt"));
+        assertTrue(dir.isValidName("file1"));
+    }
+
+    @Test
+    public void testItemTimes() {
+        assertFalse(file1.hasBeenModified());
+        assertEquals(Long.MIN_VALUE, file1.getModificationTimeMillis());
+        assertEquals(file1.getCreationTimeMillis(), file1.getCreationTime().getTime());
+        // the date that is handed out is a copy
+        file1.getCreationTime().setTime(0);
+        assertNotEquals(0, file1.getCreationTimeMillis());
+        assertTrue(Item.isValidCreationTime(file1.getCreationTime()));
+        file1.enlarge(1);
+        assertTrue(file1.hasBeenModified());
+        assertEquals(file1.getModificationTimeMillis(), file1.getModificationTime().getTime());
+        assertTrue(file1.getModificationTimeMillis() >= file1.getCreationTimeMillis());
+        assertTrue(file1.canHaveAsModificationTime(file1.getModificationTime()));
+    }
+
     @Test
     public void testItemIsAddableToDirectory() {
         assertTrue(file1.isAddableToDirectory(rootDir));
@@ -106,6 +181,64 @@ public class ItemTest {
         assertFalse(rootDir.isDirectOrIndirectChildOf(subSubDir));
     }
 
+    @Test
+    public void testItemIsDirectOrIndirectChildOf_DeepTree() throws InterruptedException {
+        int depth = 10_000;
+        Directory top = new Directory(subDir, "top");
+        Directory[] chain = new Directory[depth];
+        chain[0] = top;
+        for (int i = 1; i < depth; i++) {
+            chain[i] = new Directory(chain[i - 1], "dir" + i);
+        }
+        File bottom = new File(chain[depth - 1], "bottom", FileType.TEXT);
+        Directory newRoot = new Directory("newRoot");
+        // the whole chain is dragged along by a thread with a small stack, which must not overflow
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                top.move(newRoot);
+                chain[depth / 2].makeRoot();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "deep", 1 << 17);
+        thread.start();
+        thread.join();
+        assertNull(failure[0]);
+        assertEquals(chain[depth / 2], bottom.getRoot());
+        assertEquals(depth - depth / 2, bottom.getDepth());
+        assertEquals(newRoot, chain[depth / 2 - 1].getRoot());
+        for (int i = depth / 2; i < depth; i += 97) {
+            assertTrue(bottom.isDirectOrIndirectChildOf(chain[i]));
+            assertFalse(chain[i].isDirectOrIndirectChildOf(chain[depth - 1]));
+        }
+        assertFalse(bottom.isDirectOrIndirectChildOf(chain[depth / 2 - 1]));
+        assertTrue(chain[depth / 2 - 1].isDirectOrIndirectChildOf(newRoot));
+        assertTrue(chain[depth / 2 - 1].isDirectOrIndirectChildOf(chain[1]));
+        assertThrows(IllegalParentDirectoryException.class, () -> top.move(chain[depth / 2 - 1]));
+    }
+
+    @Test
+    public void testItemGetRootAndDepth() {
+        assertEquals(0, rootDir.getDepth());
+        assertEquals(3, file1.getDepth());
+        assertEquals(rootDir, file1.getRoot());
+        Directory newRoot = new Directory("newRoot");
+        subDir.move(newRoot);
+        assertEquals(newRoot, file1.getRoot());
+        assertEquals(newRoot, main.getRoot());
+        assertEquals(rootDir, link.getRoot());
+        assertEquals(3, file1.getDepth());
+        subSubDir.makeRoot();
+        assertEquals(subSubDir, file1.getRoot());
+        assertEquals(1, file1.getDepth());
+        assertFalse(file1.isDirectOrIndirectChildOf(subDir));
+        file1.move(newRoot);
+        assertEquals(1, file1.getDepth());
+        assertTrue(main.isDirectOrIndirectChildOf(newRoot));
+        assertFalse(main.isDirectOrIndirectChildOf(rootDir));
+    }
+
     @Test
     public void testItemMove_LegalCase_1() {
         assertTrue(subSubDir.hasAsItem(file1));
@@ -123,6 +256,18 @@ public class ItemTest {
         assertEquals(dir, rootDir.getParentDirectory());
     }
 
+    @Test
+    public void testItemMove_IllegalCase_NotWritable() {
+        Directory dir = new Directory(rootDir, "readOnly", false);
+        assertThrows(NotWritableException.class, () -> {
+            file1.move(dir);
+        });
+        assertEquals(subSubDir, file1.getParentDirectory());
+        assertTrue(subSubDir.hasAsItem(file1));
+        assertEquals(file1, subSubDir.getItem("file1"));
+        assertEquals(0, dir.getNbOfItems());
+    }
+
     @Test
     public void testItemMove_IllegalCase_1() {
         assertTrue(subDir.hasAsItem(subSubDir));
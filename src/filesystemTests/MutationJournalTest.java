@@ -0,0 +1,194 @@
+package filesystemTests;
+
+import filesystem.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit 5 test class for testing the public methods of the MutationJournal Class.
+ *
+ * @author  Flor Demeulemeester
+ * @author  Arne Claerhout
+ * @author  Vincent Van Schependom
+ * @version 1.0
+ */
+public class MutationJournalTest {
+
+    Directory rootDir, subDir, otherRoot;
+    File file1, main;
+    Path imagePath, journalPath;
+
+    @BeforeEach
+    public void setUpFixture() throws IOException {
+        rootDir = new Directory("rootDir");
+        subDir = new Directory(rootDir,"subDir");
+        file1 = new File(subDir, "file1", 100, true, FileType.PDF);
+        main = new File(rootDir, "main", 20, true, FileType.JAVA);
+        otherRoot = new Directory("otherRoot");
+        new File(new Directory(otherRoot, "docs"), "notes", 5, true, FileType.TEXT);
+        imagePath = Files.createTempFile("tree", ".img");
+        journalPath = Files.createTempFile("tree", ".journal");
+    }
+
+    @AfterEach
+    public void tearDownFixture() throws IOException {
+        Files.deleteIfExists(imagePath);
+        Files.deleteIfExists(journalPath);
+    }
+
+    /**
+     * Return a description of every item in the subtree of the given directory.
+     */
+    private static List<String> describe(Directory directory) {
+        return directory.streamDepthFirst().map(item -> {
+            StringBuilder description = new StringBuilder(item.getAbsolutePath())
+                    .append(' ').append(item.getCreationTimeMillis())
+                    .append(' ').append(item.getModificationTimeMillis());
+            if (item instanceof File) {
+                description.append(' ').append(((File) item).getSize()).append(' ').append(((File) item).isWritable());
+            } else if (item instanceof Directory) {
+                description.append(' ').append(((Directory) item).isWritable());
+            } else {
+                description.append(" -> ").append(((Link) item).getLinkedItem().getAbsolutePath());
+            }
+            return description.toString();
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Make all kinds of changes to the tree of the fixture.
+     */
+    private void changeTree() {
+        Directory newDir = new Directory(rootDir, "newDir");
+        File newFile = new File(newDir, "newFile", 10, true, FileType.TEXT);
+        new Link("link", rootDir, newFile);
+        newFile.enlarge(50);
+        file1.shorten(40);
+        main.move(newDir);
+        main.changeName("renamedMain");
+        // renaming a directory with items in it changes the paths below it
+        newDir.changeName("renamedDir");
+        newFile.enlarge(1);
+        subDir.setWritable(false);
+        subDir.setWritable(true);
+        file1.setWritable(false);
+        // a subtree from another tree enters this one
+        ((Directory) otherRoot.getItem("docs")).move(subDir);
+        Directory scratch = new Directory(rootDir, "scratch");
+        new File(scratch, "tmp", 1, true, FileType.TEXT);
+        scratch.deleteRecursive();
+        rootDir.addItems(List.of(new File(otherRoot, "a", 1, true, FileType.TEXT),
+                new Directory(otherRoot, "b")));
+        new File(subDir, "gone", 3, true, FileType.PDF).delete();
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        MutationJournal journal = MutationJournal.create(rootDir, imagePath, journalPath, Durability.WRITTEN);
+        assertSame(rootDir, journal.getRoot());
+        assertEquals(1, journal.getGeneration());
+        changeTree();
+        List<String> expected = describe(rootDir);
+        long expectedUsage = rootDir.getTotalDiskUsage();
+        journal.close();
+        MutationJournal recovered = MutationJournal.recover(imagePath, journalPath, Durability.SYNCED);
+        Directory copy = recovered.getRoot();
+        assertEquals(expected, describe(copy));
+        assertEquals(expectedUsage, copy.getTotalDiskUsage());
+        assertTrue(copy.hasProperStatistics());
+        // the recovered journal goes on where the old one stopped
+        new File(copy, "later", 7, true, FileType.TEXT);
+        expected = describe(copy);
+        recovered.close();
+        assertEquals(expected, describe(MutationJournal.recover(imagePath, journalPath, Durability.BUFFERED).getRoot()));
+    }
+
+    @Test
+    public void testRecover_TornRecord() throws IOException {
+        MutationJournal journal = MutationJournal.create(rootDir, imagePath, journalPath, Durability.SYNCED);
+        new File(rootDir, "kept", 1, true, FileType.TEXT);
+        List<String> expected = describe(rootDir);
+        new File(rootDir, "torn", 1, true, FileType.TEXT);
+        journal.close();
+        // cut the last record in half, as a crash while writing it would
+        long size = Files.size(journalPath);
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 10);
+        }
+        MutationJournal recovered = MutationJournal.recover(imagePath, journalPath, Durability.SYNCED);
+        assertEquals(expected, describe(recovered.getRoot()));
+        // new records follow the last complete one
+        new File(recovered.getRoot(), "after", 1, true, FileType.TEXT);
+        expected = describe(recovered.getRoot());
+        recovered.close();
+        assertEquals(expected, describe(MutationJournal.recover(imagePath, journalPath, Durability.SYNCED).getRoot()));
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        MutationJournal journal = MutationJournal.create(rootDir, imagePath, journalPath, Durability.BUFFERED);
+        changeTree();
+        journal.checkpoint();
+        assertEquals(2, journal.getGeneration());
+        assertEquals(24, Files.size(journalPath));
+        file1.setWritable(true);
+        file1.enlarge(1);
+        List<String> expected = describe(rootDir);
+        journal.close();
+        MutationJournal recovered = MutationJournal.recover(imagePath, journalPath, Durability.BUFFERED);
+        assertEquals(2, recovered.getGeneration());
+        assertEquals(expected, describe(recovered.getRoot()));
+        recovered.close();
+    }
+
+    @Test
+    public void testConcurrentChanges() throws Exception {
+        MutationJournal journal = MutationJournal.create(rootDir, imagePath, journalPath, Durability.SYNCED);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "thread" + t;
+            Directory dir = new Directory(rootDir, prefix);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    File file = new File(dir, prefix + "_file" + i, i, true, FileType.TEXT);
+                    file.enlarge(1);
+                    if (i % 2 == 0) file.move(subDir);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) thread.join();
+        List<String> expected = describe(rootDir);
+        journal.close();
+        Directory copy = MutationJournal.recover(imagePath, journalPath, Durability.SYNCED).getRoot();
+        assertEquals(expected, describe(copy));
+        assertEquals(rootDir.getTotalDiskUsage(), copy.getTotalDiskUsage());
+    }
+
+    @Test
+    public void testCreateAndRecover_IllegalCase() throws IOException {
+        assertThrows(NullPointerException.class,
+                () -> MutationJournal.create(null, imagePath, journalPath, Durability.SYNCED));
+        assertThrows(IllegalArgumentException.class,
+                () -> MutationJournal.create(subDir, imagePath, journalPath, Durability.SYNCED));
+        MutationJournal journal = MutationJournal.create(rootDir, imagePath, journalPath, Durability.SYNCED);
+        assertThrows(IllegalArgumentException.class,
+                () -> MutationJournal.create(rootDir, imagePath, journalPath, Durability.SYNCED));
+        journal.checkpoint();
+        journal.close();
+        // an image of an older generation doesn't go with the journal
+        TreeImage.save(rootDir, imagePath);
+        assertThrows(IOException.class, () -> MutationJournal.recover(imagePath, journalPath, Durability.SYNCED));
+    }
+
+}
@@ -0,0 +1,154 @@
+package filesystemTests;
+
+import filesystem.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit 5 test class for testing the public methods of the SubtreeSnapshot Class.
+ *
+ * @author  Flor Demeulemeester
+ * @author  Arne Claerhout
+ * @author  Vincent Van Schependom
+ * @version 1.0
+ */
+public class SubtreeSnapshotTest {
+
+    Directory rootDir, subDir, otherDir;
+    File file1, file2;
+
+    @BeforeEach
+    public void setUpFixture() {
+        rootDir = new Directory("rootDir");
+        subDir = new Directory(rootDir, "subDir");
+        otherDir = new Directory(rootDir, "otherDir");
+        file1 = new File(subDir, "file1", 100, true, FileType.PDF);
+        file2 = new File(subDir, "file2", 20, true, FileType.TEXT);
+    }
+
+    @Test
+    public void testTakeSnapshot() {
+        try (SubtreeSnapshot snapshot = subDir.takeSnapshot()) {
+            assertEquals(subDir, snapshot.getDirectory());
+            assertFalse(snapshot.isClosed());
+            assertEquals(List.of(file1, file2), snapshot.getItems(subDir));
+            assertEquals(100, snapshot.getSize(file1));
+            assertEquals(120, snapshot.computeTotalDiskUsage());
+        }
+        SubtreeSnapshot later = subDir.takeSnapshot();
+        assertTrue(later.getVersion() > 0);
+        later.close();
+        later.close();
+        assertTrue(later.isClosed());
+    }
+
+    @Test
+    public void testSnapshot_LaterChanges() {
+        try (SubtreeSnapshot snapshot = rootDir.takeSnapshot()) {
+            File file3 = new File(subDir, "file3", 5, true, FileType.TEXT);
+            file1.move(otherDir);
+            file2.changeName("a_file");
+            file2.enlarge(30);
+            Directory newDir = new Directory(otherDir, "newDir");
+            // the snapshot still shows the subtree as it was
+            assertEquals(List.of(otherDir, subDir), snapshot.getItems(rootDir));
+            assertEquals(List.of(file1, file2), snapshot.getItems(subDir));
+            assertEquals(List.of(), snapshot.getItems(otherDir));
+            assertEquals(20, snapshot.getSize(file2));
+            assertEquals(120, snapshot.computeTotalDiskUsage());
+            // while the items themselves have changed
+            assertEquals(List.of(file2, file3), subDir.getItems());
+            assertEquals(List.of(file1, newDir), otherDir.getItems());
+            assertEquals(50, file2.getSize());
+            assertEquals(155, rootDir.computeTotalDiskUsage());
+        }
+    }
+
+    @Test
+    public void testSnapshot_DeletedItems() {
+        try (SubtreeSnapshot snapshot = rootDir.takeSnapshot()) {
+            subDir.deleteRecursive();
+            assertEquals(List.of(otherDir), rootDir.getItems());
+            assertEquals(List.of(otherDir, subDir), snapshot.getItems(rootDir));
+            assertEquals(List.of(file1, file2), snapshot.getItems(subDir));
+            assertEquals(120, snapshot.computeTotalDiskUsage());
+        }
+    }
+
+    @Test
+    public void testSnapshot_SeveralVersions() {
+        try (SubtreeSnapshot first = subDir.takeSnapshot()) {
+            file1.enlarge(1);
+            try (SubtreeSnapshot second = subDir.takeSnapshot()) {
+                file1.enlarge(2);
+                File file3 = new File(subDir, "file3", 5, true, FileType.TEXT);
+                assertEquals(100, first.getSize(file1));
+                assertEquals(101, second.getSize(file1));
+                assertEquals(103, file1.getSize());
+                assertEquals(List.of(file1, file2), second.getItems(subDir));
+                assertEquals(List.of(file1, file2, file3), subDir.getItems());
+            }
+            file1.shorten(3);
+            assertEquals(100, first.getSize(file1));
+            assertEquals(120, first.computeTotalDiskUsage());
+        }
+    }
+
+    @Test
+    public void testSnapshot_IllegalCase() {
+        SubtreeSnapshot snapshot = subDir.takeSnapshot();
+        assertThrows(NullPointerException.class, () -> snapshot.getItems(null));
+        assertThrows(NullPointerException.class, () -> snapshot.getSize(null));
+        snapshot.close();
+        assertThrows(IllegalStateException.class, () -> snapshot.getItems(subDir));
+        assertThrows(IllegalStateException.class, () -> snapshot.getSize(file1));
+        assertThrows(IllegalStateException.class, snapshot::computeTotalDiskUsage);
+    }
+
+    @Test
+    public void testSnapshot_ConcurrentChanges() throws InterruptedException {
+        int n = 500;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            files.add(new File(subDir, "many" + i, 1, true, FileType.TEXT));
+        }
+        long diskUsage = rootDir.getTotalDiskUsage();
+        AtomicBoolean isDone = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // files go back and forth between two directories, so the tree keeps its disk usage
+        // and its number of items, but a walk that sees directories at different moments may
+        // count a file twice or not at all
+        Thread writer = new Thread(() -> {
+            try {
+                for (int round = 0; round < 20; round++) {
+                    for (File file : files) {
+                        file.move(file.getParentDirectory() == subDir ? otherDir : subDir);
+                    }
+                }
+            } catch (Throwable throwable) {
+                failure.set(throwable);
+            } finally {
+                isDone.set(true);
+            }
+        });
+        writer.start();
+        while (!isDone.get()) {
+            try (SubtreeSnapshot snapshot = rootDir.takeSnapshot()) {
+                assertEquals(diskUsage, snapshot.computeTotalDiskUsage());
+                assertEquals(n + 2, snapshot.getItems(subDir).size() + snapshot.getItems(otherDir).size());
+            }
+            assertEquals(diskUsage, rootDir.computeTotalDiskUsage());
+            assertEquals(n + 5, rootDir.countItems(item -> true));
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertTrue(rootDir.hasProperStatistics());
+    }
+
+}
@@ -0,0 +1,85 @@
+package filesystemTests;
+
+import filesystem.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit 5 test class for testing the public methods of the TreeImage Class.
+ *
+ * @author  Flor Demeulemeester
+ * @author  Arne Claerhout
+ * @author  Vincent Van Schependom
+ * @version 1.0
+ */
+public class TreeImageTest {
+
+    Directory rootDir, subDir;
+    File file1, main;
+    Link link;
+    Path path;
+
+    @BeforeEach
+    public void setUpFixture() throws IOException {
+        rootDir = new Directory("rootDir");
+        subDir = new Directory(rootDir,"subDir");
+        file1 = new File(subDir, "file1", 100, true, FileType.PDF);
+        main = new File(subDir, "main", 20, false, FileType.JAVA);
+        link = new Link("link_to_main", rootDir, main);
+        file1.enlarge(5);
+        path = Files.createTempFile("tree", ".img");
+    }
+
+    @AfterEach
+    public void tearDownFixture() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        TreeImage.save(rootDir, path);
+        ColumnarTree tree = TreeImage.load(path);
+        assertEquals(5, tree.getNbOfItems());
+        assertEquals("rootDir", tree.getName(0));
+        int subDir = tree.getChildWithName(0, "subDir");
+        int file1 = tree.getChildWithName(subDir, "file1");
+        assertEquals(105, tree.getSize(file1));
+        assertEquals(FileType.PDF, tree.getFileType(file1));
+        assertEquals(this.file1.getModificationTimeMillis(), tree.getModificationTimeMillis(file1));
+        assertEquals(tree.getChildWithName(subDir, "main"), tree.getLinkedItem(tree.getChildWithName(0, "link_to_main")));
+        assertFalse(tree.isWritable(tree.getChildWithName(subDir, "main")));
+        // the loaded tree can be turned into items again
+        Directory copy = tree.materialize();
+        assertEquals(rootDir.getTotalDiskUsage(), copy.getTotalDiskUsage());
+        assertTrue(copy.hasProperStatistics());
+        // saving again replaces the image
+        new File(rootDir, "extra", 1, true, FileType.TEXT);
+        TreeImage.save(rootDir, path);
+        assertEquals(6, TreeImage.load(path).getNbOfItems());
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void testSaveAndLoad_IllegalCase() throws IOException {
+        assertThrows(NullPointerException.class, () -> TreeImage.save((Directory) null, path));
+        assertThrows(NullPointerException.class, () -> TreeImage.save(rootDir, null));
+        assertThrows(NullPointerException.class, () -> TreeImage.load(null));
+        // the file is empty
+        assertThrows(IOException.class, () -> TreeImage.load(path));
+        // the file doesn't hold an image
+        Files.write(path, new byte[256]);
+        assertThrows(IOException.class, () -> TreeImage.load(path));
+        // the image is truncated
+        TreeImage.save(rootDir, path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 16));
+        assertThrows(IOException.class, () -> TreeImage.load(path));
+    }
+
+}